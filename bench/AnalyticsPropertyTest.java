@@ -0,0 +1,127 @@
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * AnalyticsPropertyTest checks StudyAnalytics against a full recomputation. It makes random changes to
+ * a repository with a fixed seed, adding and removing subjects and tasks and adding time, and after every
+ * change compares the totals, the most and least studied subjects, the top and bottom K and the chunked
+ * getEntries() listings with what a stable sort of the whole list gives. Times are drawn from a few
+ * values, so most subjects are tied with others and the tie order is checked too.
+ * It exits with status 1 if any check fails.
+ *
+ * Usage: java -cp out AnalyticsPropertyTest [steps] [seed]
+ */
+public class AnalyticsPropertyTest {
+    private static final long MINUTE = 60_000;
+    private static final int[] K = {1, 3, 10};
+    private static final int CHUNK = 4;
+
+    public static void main(String[] args) {
+        int steps = args.length > 0 ? Integer.parseInt(args[0]) : 5000;
+        long seed = args.length > 1 ? Long.parseLong(args[1]) : 20260101L;
+        Random random = new Random(seed);
+        InMemorySubjectRepository repository = new InMemorySubjectRepository();
+        for (int i = 0; i < 20; i++) {
+            repository.add(new Subject("Subject " + i, random.nextInt(4) * MINUTE));
+        }
+        StudyAnalytics analytics = new StudyAnalytics(repository);
+        int nextName = 20;
+
+        for (int step = 0; step < steps && !TestSupport.hasFailed(); step++) {
+            int action = random.nextInt(10);
+            String change;
+            if (repository.isEmpty() || action < 2) {
+                Subject subject = new Subject("Subject " + nextName++, random.nextInt(4) * MINUTE);
+                repository.add(subject);
+                change = "add " + subject.getName();
+            } else if (action < 4) {
+                Subject subject = repository.get(random.nextInt(repository.size()));
+                repository.remove(subject);
+                change = "remove " + subject.getName();
+            } else if (action < 8) {
+                Subject subject = repository.get(random.nextInt(repository.size()));
+                subject.addTime(random.nextInt(3) * MINUTE);
+                change = "add time to " + subject.getName();
+            } else {
+                Subject subject = repository.get(random.nextInt(repository.size()));
+                String task = "Task " + random.nextInt(3);
+                if (!subject.addTask(task)) {
+                    subject.removeTask(task);
+                }
+                change = "toggle " + task + " of " + subject.getName();
+            }
+            verify(repository, analytics, "step " + step + " (" + change + ")");
+        }
+        TestSupport.report();
+    }
+
+    private static void verify(SubjectRepository repository, StudyAnalytics analytics, String when) {
+        List<Subject> subjects = repository.toList();
+        long totalTime = 0;
+        long totalTasks = 0;
+        for (Subject subject : subjects) {
+            totalTime += subject.getTime();
+            totalTasks += subject.getTaskCount();
+        }
+        TestSupport.check(analytics.getSubjectCount() == subjects.size(), when + ": subject count " + analytics.getSubjectCount() + ", expected " + subjects.size());
+        TestSupport.check(analytics.getTotalTime() == totalTime, when + ": total time " + analytics.getTotalTime() + ", expected " + totalTime);
+        TestSupport.check(analytics.getTotalTasks() == totalTasks, when + ": total tasks " + analytics.getTotalTasks() + ", expected " + totalTasks);
+
+        // List.sort is stable, so tied subjects stay in list order
+        List<String> descending = names(sorted(subjects, Comparator.comparingLong(Subject::getTime).reversed()));
+        List<String> ascending = names(sorted(subjects, Comparator.comparingLong(Subject::getTime)));
+        StudyAnalytics.Entry most = analytics.getMostStudied();
+        StudyAnalytics.Entry least = analytics.getLeastStudied();
+        TestSupport.check(subjects.isEmpty() ? most == null : most != null && most.getName().equals(descending.get(0)),
+                when + ": most studied " + (most == null ? null : most.getName()) + ", expected " + descending);
+        TestSupport.check(subjects.isEmpty() ? least == null : least != null && least.getName().equals(ascending.get(0)),
+                when + ": least studied " + (least == null ? null : least.getName()) + ", expected " + ascending);
+        for (int k : K) {
+            List<String> top = descending.subList(0, Math.min(k, descending.size()));
+            List<String> bottom = ascending.subList(0, Math.min(k, ascending.size()));
+            TestSupport.check(entryNames(analytics.getMostStudied(k)).equals(top), when + ": top " + k + " " + entryNames(analytics.getMostStudied(k)) + ", expected " + top);
+            TestSupport.check(entryNames(analytics.getLeastStudied(k)).equals(bottom), when + ": bottom " + k + " " + entryNames(analytics.getLeastStudied(k)) + ", expected " + bottom);
+        }
+        TestSupport.check(chunked(analytics, StudyAnalytics.Order.TIME_DESCENDING).equals(descending), when + ": time descending listing differs");
+        TestSupport.check(chunked(analytics, StudyAnalytics.Order.TIME_ASCENDING).equals(ascending), when + ": time ascending listing differs");
+    }
+
+    private static List<Subject> sorted(List<Subject> subjects, Comparator<Subject> order) {
+        List<Subject> copy = new ArrayList<>(subjects);
+        copy.sort(order);
+        return copy;
+    }
+
+    private static List<String> names(List<Subject> subjects) {
+        List<String> names = new ArrayList<>(subjects.size());
+        for (Subject subject : subjects) {
+            names.add(subject.getName());
+        }
+        return names;
+    }
+
+    private static List<String> entryNames(List<StudyAnalytics.Entry> entries) {
+        List<String> names = new ArrayList<>(entries.size());
+        for (StudyAnalytics.Entry entry : entries) {
+            names.add(entry.getName());
+        }
+        return names;
+    }
+
+    /**
+     * Lists every subject through getEntries(), a few at a time.
+     */
+    private static List<String> chunked(StudyAnalytics analytics, StudyAnalytics.Order order) {
+        List<String> names = new ArrayList<>();
+        StudyAnalytics.Entry after = null;
+        List<StudyAnalytics.Entry> chunk;
+        do {
+            chunk = analytics.getEntries(order, after, CHUNK);
+            names.addAll(entryNames(chunk));
+            after = chunk.isEmpty() ? null : chunk.get(chunk.size() - 1);
+        } while (chunk.size() == CHUNK);
+        return names;
+    }
+}
@@ -0,0 +1,100 @@
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+
+/**
+ * AnalyticsReportBenchmark compares building a full report with one String.format line per subject in a
+ * single StringBuilder, as showAnalytics used to, with streaming the same rows from AnalyticsReport into
+ * a writer that discards them, and with listing the first page of the analytics table. It reports the
+ * time and how much the heap grew, which for the streamed report should not depend on the subject count.
+ *
+ * Usage: java -cp out AnalyticsReportBenchmark [subjects]
+ */
+public class AnalyticsReportBenchmark {
+    private static final int ITERATIONS = 5;
+    private static final int PAGE_SIZE = 200;
+
+    public static void main(String[] args) throws IOException {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 500_000;
+        InMemorySubjectRepository repository = new InMemorySubjectRepository();
+        repository.addAll(new SyntheticSubjects(count, 5, 42).generate());
+        StudyAnalytics analytics = new StudyAnalytics(repository);
+        System.out.printf("%,d subjects%n", count);
+
+        for (int iteration = 1; iteration <= ITERATIONS; iteration++) {
+            long heap = usedHeap();
+            long start = System.nanoTime();
+            String text = buildString(analytics);
+            long stringMillis = (System.nanoTime() - start) / 1_000_000;
+            long stringHeap = usedHeap() - heap;
+            int length = text.length();
+            text = null;
+
+            AnalyticsReport report = new AnalyticsReport(analytics, null, Runnable::run);
+            for (AnalyticsReport.Format format : AnalyticsReport.Format.values()) {
+                heap = usedHeap();
+                start = System.nanoTime();
+                CountingWriter out = new CountingWriter();
+                report.write(out, format, StudyAnalytics.Order.TIME_DESCENDING);
+                long streamMillis = (System.nanoTime() - start) / 1_000_000;
+                System.out.printf("iteration %d: %s streamed %,d chars in %,d ms, heap grew %,d KB%n",
+                        iteration, format, out.count, streamMillis, Math.max(0, usedHeap() - heap) / 1024);
+            }
+
+            start = System.nanoTime();
+            AnalyticsTableModel model = new AnalyticsTableModel(report, PAGE_SIZE);
+            model.sortByColumn(1);
+            model.nextPage();
+            long pageMicros = (System.nanoTime() - start) / 1_000;
+            System.out.printf("iteration %d: one String of %,d chars in %,d ms, heap grew %,d KB; table pages in %,d us%n",
+                    iteration, length, stringMillis, Math.max(0, stringHeap) / 1024, pageMicros);
+        }
+    }
+
+    /**
+     * The report as it used to be built: every line formatted into one StringBuilder.
+     */
+    private static String buildString(StudyAnalytics analytics) {
+        StringBuilder report = new StringBuilder();
+        report.append("Study Analytics Report\n\n");
+        long totalTime = analytics.getTotalTime();
+        List<StudyAnalytics.Entry> entries = analytics.getMostStudied(analytics.getSubjectCount());
+        for (StudyAnalytics.Entry entry : entries) {
+            report.append(String.format("%s: %s, %d tasks, %.1f%%\n", entry.getName(),
+                    TimeFormatter.formatDuration(entry.getTime()), entry.getTasks(), entry.getTime() * 100.0 / totalTime));
+        }
+        return report.toString();
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        System.gc();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * Counts the characters written and discards them.
+     */
+    private static class CountingWriter extends Writer {
+        long count;
+
+        @Override
+        public void write(char[] buffer, int offset, int length) {
+            count += length;
+        }
+
+        @Override
+        public Writer append(CharSequence text) {
+            count += text.length();
+            return this;
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
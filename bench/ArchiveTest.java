@@ -0,0 +1,222 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * ArchiveTest gives a temporary data file subjects with old and recent sessions, archives the inactive
+ * ones with SubjectArchiver.archiveInactive() and checks that:
+ *   - only subjects with no recent session are archived, and timed or never-timed subjects stay;
+ *   - the lifetime totals of the analytics reports are the same as before archiving;
+ *   - the data file and session log shrink, and the archive is much smaller than the CSV rows and
+ *     session records it replaces;
+ *   - a restored subject comes back with its time, tasks and sessions, and leaves the archive;
+ *   - reopening the files gives the same subjects, sessions and archive;
+ *   - archiving as the GUI does, with the archive written on another thread and the data file and
+ *     session log on the autosave thread, gives the same files.
+ * It reports the time to archive, the sizes and the time to look up one archived subject.
+ * It exits with status 1 if any check fails.
+ *
+ * Usage: java -cp out ArchiveTest [subjects]
+ */
+public class ArchiveTest {
+    private static final int ACTIVE_PERCENT = 20;
+    private static final int SESSIONS_PER_SUBJECT = 3;
+    private static final int LOOKUPS = 200;
+
+    public static void main(String[] args) throws Exception {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 20_000;
+        Path dir = Files.createTempDirectory("archive-test");
+        try {
+            run(dir, dir.resolve("data.csv"), count);
+            testInBackground(dir.resolve("background.csv"));
+        } finally {
+            TestSupport.deleteRecursively(dir);
+        }
+        TestSupport.report();
+    }
+
+    private static void run(Path dir, Path dataFile, int count) throws Exception {
+        List<Subject> subjects = new ArrayList<>(new SyntheticSubjects(count, 3, 11).generate());
+        subjects.add(new Subject("Never Timed", 5_000));
+        SubjectStore.writeCsv(dataFile, subjects);
+
+        StudyTracker tracker = new StudyTracker(dataFile);
+        tracker.load();
+        SessionLog sessionLog = tracker.getSessionLog();
+        long now = System.currentTimeMillis();
+        long old = now - TimeUnit.DAYS.toMillis(800);
+        Random random = new Random(5);
+        List<String> active = new ArrayList<>();
+        List<String> inactive = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            String name = subjects.get(i).getName();
+            boolean recent = random.nextInt(100) < ACTIVE_PERCENT;
+            (recent ? active : inactive).add(name);
+            long start = (recent ? now - TimeUnit.DAYS.toMillis(3) : old) + i * 1_000L;
+            for (int s = 0; s < SESSIONS_PER_SUBJECT; s++) {
+                sessionLog.record(name, start + s * 3_600_000L, 600_000 + random.nextInt(1_800_000));
+            }
+        }
+        // An inactive subject that is being timed stays
+        String timedName = inactive.remove(inactive.size() - 1);
+        Subject timed = tracker.getRepository().findByName(timedName);
+        tracker.startTimer(timed);
+        tracker.save(true);
+
+        AnalyticsReport before = tracker.buildAnalyticsReport(Runnable::run);
+        String reportBefore = totalLine(tracker.buildReport(10));
+        long csvBytes = Files.size(dataFile);
+        long workingSetBefore = workingSet(dir);
+
+        long start = System.nanoTime();
+        int archived = tracker.getArchiver().archiveInactive(365);
+        long archiveMillis = (System.nanoTime() - start) / 1_000_000;
+        SubjectArchive archive = tracker.getArchiver().getArchive();
+        long archiveBytes = Files.size(Path.of(dataFile + ".archive"));
+        long replacedBytes = csvBytes - Files.size(dataFile) + (long) archived * SESSIONS_PER_SUBJECT * 21;
+        System.out.printf("archived %,d of %,d subjects in %,d ms%n", archived, subjects.size(), archiveMillis);
+        System.out.printf("working set %,d KB -> %,d KB; archive %,d KB for %,d KB of CSV rows and session records (%.1fx)%n",
+                workingSetBefore / 1024, workingSet(dir) / 1024, archiveBytes / 1024, replacedBytes / 1024,
+                replacedBytes / (double) archiveBytes);
+
+        SubjectRepository repository = tracker.getRepository();
+        TestSupport.check(archived == inactive.size(), "archived " + archived + ", expected " + inactive.size());
+        TestSupport.check(repository.size() == active.size() + 2, "unexpected subject count " + repository.size());
+        TestSupport.check(repository.containsName("Never Timed") && repository.findByName(timedName) == timed, "a never-timed or timed subject was archived");
+        TestSupport.check(sessionLog.getSessionCount() == (active.size() + 1) * SESSIONS_PER_SUBJECT, "archived sessions are still in the log");
+        TestSupport.check(archive.size() == archived, "the archive holds " + archive.size());
+        TestSupport.check(archiveBytes * 3 < replacedBytes, "the archive is not much smaller than what it replaces");
+
+        AnalyticsReport after = tracker.buildAnalyticsReport(Runnable::run);
+        TestSupport.check(after.getTotalTime() == before.getTotalTime(), "lifetime total changed from " + before.getTotalTime() + " to " + after.getTotalTime());
+        TestSupport.check(after.getSubjectCount() == repository.size(), "the report rows are not the subjects in use");
+        TestSupport.check(reportBefore.equals(totalLine(tracker.buildReport(10))), "the text report's total changed");
+
+        // One lookup decompresses a single block
+        start = System.nanoTime();
+        for (int i = 0; i < LOOKUPS; i++) {
+            String name = inactive.get(random.nextInt(inactive.size()));
+            TestSupport.check(archive.find(name) != null, name + " was not found");
+        }
+        System.out.printf("lookup: %.0f us%n", (System.nanoTime() - start) / 1e3 / LOOKUPS);
+
+        // Restoring brings the subject back with its sessions
+        String name = inactive.get(inactive.size() / 2);
+        Subject original = null;
+        for (Subject subject : subjects) {
+            if (subject.getName().equals(name)) {
+                original = subject;
+            }
+        }
+        Subject restored = tracker.getArchiver().restore(name);
+        TestSupport.check(restored.getTime() == original.getTime() && new TreeSet<>(restored.getTasks()).equals(new TreeSet<>(original.getTasks())),
+                "restored " + restored + ", expected " + original);
+        TestSupport.check(repository.findByName(name) == restored, "the restored subject is not in the repository");
+        TestSupport.check(sessionLog.getSessions(List.of(name)).get(SubjectRepository.normalize(name)).length == 2 * SESSIONS_PER_SUBJECT,
+                "the restored subject's sessions were not restored");
+        TestSupport.check(archive.find(name) == null && archive.size() == archived - 1, "the restored subject is still archived");
+        TestSupport.check(tracker.buildAnalyticsReport(Runnable::run).getTotalTime() == before.getTotalTime(), "restoring changed the lifetime total");
+        try {
+            tracker.getArchiver().restore(name);
+            TestSupport.check(false, "a subject was restored twice");
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+
+        tracker.stopTimer(timed);
+        tracker.save(false);
+        Map<String, String> expected = TestSupport.contents(repository);
+        int sessions = sessionLog.getSessionCount();
+        long totalTime = tracker.buildAnalyticsReport(Runnable::run).getTotalTime();
+        tracker.close();
+
+        StudyTracker reopened = new StudyTracker(dataFile);
+        reopened.load();
+        TestSupport.check(expected.equals(TestSupport.contents(reopened.getRepository())), "the reopened files differ from the tracker");
+        TestSupport.check(reopened.getSessionLog().getSessionCount() == sessions, "the reopened session log differs");
+        TestSupport.check(reopened.getArchiver().getArchive().size() == archived - 1, "the reopened archive differs");
+        TestSupport.check(reopened.buildAnalyticsReport(Runnable::run).getTotalTime() == totalTime, "the reopened lifetime total differs");
+        reopened.close();
+    }
+
+    private static void testInBackground(Path dataFile) throws Exception {
+        SubjectStore.writeCsv(dataFile, List.of(new Subject("Old", 100, List.of("Notes")), new Subject("Recent", 200), new Subject("Older", 300)));
+        StudyTracker tracker = new StudyTracker(dataFile);
+        tracker.load();
+        long now = System.currentTimeMillis();
+        tracker.getSessionLog().record("Old", now - TimeUnit.DAYS.toMillis(400), 60_000);
+        tracker.getSessionLog().record("Recent", now - TimeUnit.DAYS.toMillis(1), 60_000);
+        tracker.getSessionLog().record("Older", now - TimeUnit.DAYS.toMillis(900), 60_000);
+        tracker.startAutosave(new AutosaveScheduler.Listener() {
+            @Override
+            public void saved() {
+            }
+
+            @Override
+            public void saveFailed(IOException e) {
+            }
+        });
+
+        SubjectArchiver.Archiving archiving = tracker.getArchiver().prepare(365);
+        TestSupport.check(archiving != null && archiving.size() == 2, "expected two subjects to archive");
+        Thread writer = new Thread(() -> {
+            try {
+                archiving.write();
+            } catch (IOException e) {
+                TestSupport.check(false, "the archive was not written: " + e);
+            }
+        });
+        writer.start();
+        writer.join();
+        TestSupport.check(tracker.getRepository().size() == 3, "writing the archive changed the subjects");
+        CountDownLatch done = new CountDownLatch(1);
+        List<IOException> errors = new ArrayList<>();
+        tracker.getArchiver().finish(archiving, e -> {
+            if (e != null) {
+                errors.add(e);
+            }
+            done.countDown();
+        });
+        TestSupport.check(done.await(10, TimeUnit.SECONDS) && errors.isEmpty(), "archiving did not finish: " + errors);
+        TestSupport.check(tracker.getRepository().size() == 1 && tracker.getSessionLog().getSessionCount() == 1, "the archived subjects are still in use");
+        tracker.close();
+
+        StudyTracker reopened = new StudyTracker(dataFile);
+        reopened.load();
+        TestSupport.check(TestSupport.contents(reopened.getRepository()).keySet().equals(Set.of("recent")), "the reopened data file differs");
+        TestSupport.check(reopened.getSessionLog().getSessionCount() == 1, "the reopened session log still has archived sessions");
+        SubjectArchive.Entry old = reopened.getArchiver().getArchive().find("old");
+        TestSupport.check(reopened.getArchiver().getArchive().size() == 2 && old != null && old.getSubject().getTime() == 100 && old.getSessionCount() == 1,
+                "the reopened archive differs");
+        reopened.close();
+    }
+
+    /**
+     * Returns the size of the files the tracker reads on startup: everything but the archive.
+     */
+    private static long workingSet(Path dir) throws IOException {
+        long size = 0;
+        try (Stream<Path> files = Files.list(dir)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                if (!file.getFileName().toString().endsWith(".archive")) {
+                    size += Files.size(file);
+                }
+            }
+        }
+        return size;
+    }
+
+    private static String totalLine(String report) {
+        int start = report.indexOf("Total Study Time");
+        return report.substring(start, report.indexOf('\n', start));
+    }
+}
@@ -0,0 +1,150 @@
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * BackgroundSnapshotTest checks that a snapshot written on another thread, as the GUI does on the
+ * autosave thread, keeps every change:
+ *   - changes made after the compaction was prepared are journaled after the snapshot, even if a flush
+ *     runs before the compaction does;
+ *   - a compaction superseded by a newer one writes nothing;
+ *   - after a failed compaction the held back changes are flushed to the journal as usual;
+ *   - StudyTracker.snapshotInBackground() with autosave running writes the data file in full.
+ * It exits with status 1 if any check fails.
+ *
+ * Usage: java -cp out BackgroundSnapshotTest
+ */
+public class BackgroundSnapshotTest {
+    public static void main(String[] args) throws Exception {
+        Path dir = Files.createTempDirectory("background-snapshot-test");
+        try {
+            testFlushWhileWaiting(dir.resolve("flush.csv"));
+            testSuperseded(dir.resolve("superseded.csv"));
+            testFailed(dir.resolve("failed.csv"));
+            testTracker(dir.resolve("tracker.csv"));
+        } finally {
+            TestSupport.deleteRecursively(dir);
+        }
+        TestSupport.report();
+    }
+
+    private static void testFlushWhileWaiting(Path dataFile) throws IOException {
+        InMemorySubjectRepository repository = create(dataFile);
+        SubjectStore store = new SubjectStore(dataFile);
+        addTime(store, repository, "Math", 10);
+        SubjectStorage.Compaction compaction = store.prepareCompact(repository.toList());
+        addTime(store, repository, "Math", 1000);
+        repository.add(new Subject("Chemistry"));
+        store.record(SubjectChange.addSubject("Chemistry"));
+
+        // Autosave got to the journal first
+        store.flush();
+        compaction.run();
+        TestSupport.check(Files.readAllLines(dataFile, StandardCharsets.UTF_8).contains("Math,110"), "the snapshot does not hold the subjects as prepared");
+        store.flush();
+        TestSupport.check(reload(dataFile).equals(List.of("Math,1110", "Physics,200", "Chemistry,0")), "changes made while compacting were lost: " + reload(dataFile));
+    }
+
+    private static void testSuperseded(Path dataFile) throws IOException {
+        InMemorySubjectRepository repository = create(dataFile);
+        SubjectStore store = new SubjectStore(dataFile);
+        addTime(store, repository, "Math", 10);
+        SubjectStorage.Compaction older = store.prepareCompact(repository.toList());
+        addTime(store, repository, "Physics", 20);
+        SubjectStorage.Compaction newer = store.prepareCompact(repository.toList());
+        addTime(store, repository, "Physics", 300);
+
+        newer.run();
+        older.run();
+        store.flush();
+        TestSupport.check(reload(dataFile).equals(List.of("Math,110", "Physics,520")), "a superseded compaction overwrote a newer one: " + reload(dataFile));
+    }
+
+    private static void testFailed(Path dataFile) throws IOException {
+        InMemorySubjectRepository repository = create(dataFile);
+        SubjectStore store = new SubjectStore(dataFile);
+        addTime(store, repository, "Math", 10);
+        SubjectStorage.Compaction compaction = store.prepareCompact(repository.toList());
+        addTime(store, repository, "Math", 1000);
+
+        // A directory with a file in it where the snapshot is written first cannot be replaced
+        Path temp = dataFile.resolveSibling(dataFile.getFileName() + ".tmp");
+        Files.createDirectory(temp);
+        Files.createFile(temp.resolve("blocker"));
+        try {
+            compaction.run();
+            TestSupport.check(false, "the compaction did not fail");
+        } catch (IOException e) {
+            // Expected
+        }
+        store.flush();
+        Files.delete(temp.resolve("blocker"));
+        Files.delete(temp);
+        TestSupport.check(reload(dataFile).equals(List.of("Math,1110", "Physics,200")), "changes were lost after a failed compaction: " + reload(dataFile));
+    }
+
+    private static void testTracker(Path dataFile) throws Exception {
+        create(dataFile);
+        StudyTracker tracker = new StudyTracker(dataFile);
+        tracker.load();
+        tracker.startAutosave(new AutosaveScheduler.Listener() {
+            @Override
+            public void saved() {
+            }
+
+            @Override
+            public void saveFailed(IOException e) {
+            }
+        });
+        tracker.addTime(tracker.getRepository().findByName("Math"), 10);
+        tracker.addSubject("Chemistry");
+        CountDownLatch written = new CountDownLatch(1);
+        List<IOException> errors = new ArrayList<>();
+        tracker.snapshotInBackground(e -> {
+            if (e != null) {
+                errors.add(e);
+            }
+            written.countDown();
+        });
+        tracker.addTime(tracker.getRepository().findByName("Physics"), 5);
+        TestSupport.check(written.await(10, TimeUnit.SECONDS) && errors.isEmpty(), "the snapshot was not written: " + errors);
+        TestSupport.check(Files.readAllLines(dataFile, StandardCharsets.UTF_8).contains("Chemistry,0"), "the data file was not written in full");
+        tracker.close();
+        TestSupport.check(reload(dataFile).equals(List.of("Math,110", "Physics,205", "Chemistry,0")), "changes were lost: " + reload(dataFile));
+    }
+
+    /**
+     * Writes a data file with two subjects and returns a repository holding them.
+     */
+    private static InMemorySubjectRepository create(Path dataFile) throws IOException {
+        Files.write(dataFile, List.of(SubjectCsvReader.HEADER, "Math,100", "Physics,200"), StandardCharsets.UTF_8);
+        InMemorySubjectRepository repository = new InMemorySubjectRepository();
+        repository.add(new Subject("Math", 100));
+        repository.add(new Subject("Physics", 200));
+        return repository;
+    }
+
+    private static void addTime(SubjectStore store, SubjectRepository repository, String name, long time) {
+        repository.findByName(name).addTime(time);
+        store.record(SubjectChange.addTime(name, time));
+    }
+
+    /**
+     * Loads the data file and its journal as a start does, and lists the subjects as name,time.
+     */
+    private static List<String> reload(Path dataFile) throws IOException {
+        StudyTracker tracker = new StudyTracker(dataFile);
+        tracker.load();
+        List<String> subjects = new ArrayList<>();
+        for (Subject subject : tracker.getRepository().toList()) {
+            subjects.add(subject.getName() + "," + subject.getTime());
+        }
+        tracker.close();
+        return subjects;
+    }
+}
@@ -0,0 +1,101 @@
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * BinarySnapshotBenchmark compares load time and retained heap of a CSV load against opening the same
+ * data as a memory-mapped BinarySnapshot, both lazily and with every Subject built.
+ * It also round-trips the data through the binary format and back to CSV, and exits with status 1 if
+ * anything changed. BinarySnapshotTest covers the format's edge cases.
+ *
+ * Usage: java -cp out BinarySnapshotBenchmark [subjects]
+ */
+public class BinarySnapshotBenchmark {
+    // Keeps loaded data reachable while its heap usage is measured
+    private static Object retained;
+
+    public static void main(String[] args) throws IOException {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+
+        String[] taskNames = {"Homework", "Reading", "Review", "Lab Report", "Exam Prep"};
+        List<Subject> subjects = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Subject subject = new Subject("Subject " + i, i * 7919L % 36_000_000L);
+            for (int t = 0; t < i % 4; t++) {
+                subject.addTask(taskNames[(i + t) % taskNames.length]);
+            }
+            subjects.add(subject);
+        }
+
+        Path csv = File.createTempFile("subjects", ".csv").toPath();
+        Path bin = File.createTempFile("subjects", ".bin").toPath();
+        Path roundTrip = File.createTempFile("subjects-roundtrip", ".csv").toPath();
+        csv.toFile().deleteOnExit();
+        bin.toFile().deleteOnExit();
+        roundTrip.toFile().deleteOnExit();
+        SubjectStore.writeCsv(csv, subjects);
+        BinarySnapshot.write(bin, subjects);
+        subjects = null;
+        System.out.printf("%,d subjects: csv %,d bytes, binary %,d bytes%n", count, Files.size(csv), Files.size(bin));
+
+        BinarySnapshot.exportCsv(bin, roundTrip);
+        boolean identical = Files.mismatch(csv, roundTrip) == -1;
+        System.out.println("Round trip identical: " + identical);
+
+        for (int iteration = 1; iteration <= 3; iteration++) {
+            long heapBefore = usedHeap();
+            long start = System.nanoTime();
+            retained = loadCsv(csv);
+            long csvTime = System.nanoTime() - start;
+            long csvHeap = usedHeap() - heapBefore;
+            retained = null;
+
+            heapBefore = usedHeap();
+            start = System.nanoTime();
+            BinarySnapshot snapshot = BinarySnapshot.open(bin);
+            retained = snapshot;
+            long openTime = System.nanoTime() - start;
+            long lazyHeap = usedHeap() - heapBefore;
+
+            start = System.nanoTime();
+            List<Subject> materialized = new ArrayList<>(snapshot.size());
+            retained = materialized;
+            for (int i = 0; i < snapshot.size(); i++) {
+                materialized.add(snapshot.get(i));
+            }
+            long materializeTime = System.nanoTime() - start + openTime;
+            long materializedHeap = usedHeap() - heapBefore;
+
+            System.out.printf("iteration %d: csv %,d ms / %,d KB, binary open %,d ms / %,d KB, binary full %,d ms / %,d KB%n",
+                    iteration, csvTime / 1_000_000, csvHeap / 1024, openTime / 1_000_000, lazyHeap / 1024,
+                    materializeTime / 1_000_000, materializedHeap / 1024);
+            retained = null;
+        }
+        if (!identical) {
+            System.exit(1);
+        }
+    }
+
+    private static List<Subject> loadCsv(Path csv) throws IOException {
+        List<Subject> subjects = new ArrayList<>();
+        try (SubjectCsvReader reader = new SubjectCsvReader(new FileReader(csv.toFile()))) {
+            Subject subject;
+            while ((subject = reader.next()) != null) {
+                subjects.add(subject);
+            }
+        }
+        return subjects;
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
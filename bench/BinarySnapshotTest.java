@@ -0,0 +1,127 @@
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * BinarySnapshotTest writes subjects with BinarySnapshot, opens the file again and checks that:
+ *   - an empty snapshot opens with no subjects and exports to a data file with only the header;
+ *   - names and tasks with quotes, commas and non-ASCII text, shared tasks and extreme times are read
+ *     back as written, through get() and through nameAt(), timeAt() and taskCountAt();
+ *   - exporting to CSV and reading that back gives the same subjects;
+ *   - a file with a changed byte, in the contents or in the stored checksum, is refused;
+ *   - a file cut short anywhere is refused.
+ * It exits with status 1 if any check fails.
+ *
+ * Usage: java -cp out BinarySnapshotTest
+ */
+public class BinarySnapshotTest {
+    // magic, version, five offsets and counts, then the checksum
+    private static final int HEADER_SIZE = 7 * Integer.BYTES + Long.BYTES;
+
+    public static void main(String[] args) throws IOException {
+        Path dir = Files.createTempDirectory("binary-snapshot-test");
+        try {
+            testEmpty(dir.resolve("empty.bin"), dir.resolve("empty.csv"));
+            Path snapshot = dir.resolve("subjects.bin");
+            testRoundTrip(snapshot, dir.resolve("subjects.csv"));
+            testCorrupt(snapshot, dir.resolve("corrupt.bin"));
+            testTruncated(snapshot, dir.resolve("truncated.bin"));
+        } finally {
+            TestSupport.deleteRecursively(dir);
+        }
+        TestSupport.report();
+    }
+
+    private static void testEmpty(Path snapshot, Path csv) throws IOException {
+        long checksum = BinarySnapshot.write(snapshot, List.of());
+        BinarySnapshot opened = BinarySnapshot.open(snapshot);
+        TestSupport.check(opened.size() == 0, "an empty snapshot has " + opened.size() + " subjects");
+        TestSupport.check(opened.getChecksum() == checksum, "the stored checksum differs from the one written");
+        try {
+            opened.get(0);
+            TestSupport.check(false, "an empty snapshot returned a subject");
+        } catch (IndexOutOfBoundsException e) {
+            // Expected
+        }
+        BinarySnapshot.exportCsv(snapshot, csv);
+        List<String> lines = Files.readAllLines(csv, StandardCharsets.UTF_8);
+        TestSupport.check(lines.equals(List.of(SubjectCsvReader.HEADER)), "an empty snapshot exported " + lines);
+    }
+
+    private static void testRoundTrip(Path snapshot, Path csv) throws IOException {
+        List<Subject> subjects = List.of(
+                new Subject("Math", 100, List.of("Homework", "Reading")),
+                new Subject("The \"Odyssey\", Book 1", 0, List.of("\"", "Reading")),
+                new Subject("\u0395\u03BB\u03BB\u03B7\u03BD\u03B9\u03BA\u03AC \u65E5\u672C\u8A9E", Long.MAX_VALUE, List.of("\u00DCbung", "\uD83D\uDE00", "Homework")),
+                new Subject("  Padded  ", -1, List.of("Homework")));
+        List<String> expected = describe(subjects);
+        long checksum = BinarySnapshot.write(snapshot, subjects);
+        BinarySnapshot opened = BinarySnapshot.open(snapshot);
+        TestSupport.check(opened.getChecksum() == checksum, "the stored checksum differs from the one written");
+        List<Subject> read = new ArrayList<>();
+        // Backwards, so strings are decoded out of order
+        for (int i = opened.size() - 1; i >= 0; i--) {
+            Subject subject = opened.get(i);
+            TestSupport.check(opened.nameAt(i).equals(subject.getName()) && opened.timeAt(i) == subject.getTime()
+                    && opened.taskCountAt(i) == subject.getTaskCount(), "row " + i + " differs from its subject");
+            read.add(0, subject);
+        }
+        TestSupport.check(describe(read).equals(expected), "the subjects were not read back as written: " + describe(read));
+
+        BinarySnapshot.exportCsv(snapshot, csv);
+        List<Subject> exported = new ArrayList<>();
+        try (SubjectCsvReader reader = new SubjectCsvReader(new StringReader(Files.readString(csv, StandardCharsets.UTF_8)))) {
+            Subject subject;
+            while ((subject = reader.next()) != null) {
+                exported.add(subject);
+            }
+        }
+        TestSupport.check(describe(exported).equals(expected), "the exported data file differs: " + describe(exported));
+    }
+
+    private static void testCorrupt(Path snapshot, Path corrupt) throws IOException {
+        byte[] bytes = Files.readAllBytes(snapshot);
+        // The last byte of the contents, the first one after the header and a byte of the checksum
+        for (int position : new int[] {bytes.length - 1, HEADER_SIZE, HEADER_SIZE - 1}) {
+            byte[] changed = bytes.clone();
+            changed[position] ^= 0x10;
+            Files.write(corrupt, changed);
+            expectRefused(corrupt, "a snapshot with byte " + position + " changed");
+        }
+    }
+
+    private static void testTruncated(Path snapshot, Path truncated) throws IOException {
+        long size = Files.size(snapshot);
+        for (long length : new long[] {0, 3, HEADER_SIZE - 1, HEADER_SIZE, size / 2, size - 1}) {
+            Files.copy(snapshot, truncated, StandardCopyOption.REPLACE_EXISTING);
+            try (FileChannel channel = FileChannel.open(truncated, StandardOpenOption.WRITE)) {
+                channel.truncate(length);
+            }
+            expectRefused(truncated, "a snapshot cut to " + length + " of " + size + " bytes");
+        }
+    }
+
+    private static void expectRefused(Path snapshot, String what) {
+        try {
+            BinarySnapshot.open(snapshot);
+            TestSupport.check(false, what + " was opened");
+        } catch (IOException e) {
+            // Expected
+        }
+    }
+
+    private static List<String> describe(List<Subject> subjects) {
+        List<String> lines = new ArrayList<>(subjects.size());
+        for (Subject subject : subjects) {
+            lines.add(subject.getName() + "|" + subject.getTime() + "|" + subject.getTasks());
+        }
+        return lines;
+    }
+}
@@ -0,0 +1,56 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * BulkImportBenchmark merges a directory of generated per-user data files with BulkImporter on
+ * 1, 2, 4, ... threads up to the number of cores and reports files/s and the speedup over one thread.
+ * Every run is checked against a plain sequential merge, as in BulkImportTest, and the benchmark exits
+ * with status 1 if a result differs.
+ *
+ * Usage: java -cp out BulkImportBenchmark [files] [subjectsPerFile]
+ */
+public class BulkImportBenchmark {
+
+    public static void main(String[] args) throws IOException {
+        int fileCount = args.length > 0 ? Integer.parseInt(args[0]) : 2_000;
+        int subjectsPerFile = args.length > 1 ? Integer.parseInt(args[1]) : 500;
+
+        Path dir = Files.createTempDirectory("bulk-import");
+        boolean differs = false;
+        try {
+            for (int i = 0; i < fileCount; i++) {
+                Path userDir = Files.createDirectories(dir.resolve(String.format("user%05d", i)));
+                // Every user has the same subject names with their own times and tasks
+                new SyntheticSubjects(subjectsPerFile, 5, i).writeCsv(userDir.resolve("data.csv"));
+            }
+            List<Path> files = BulkImporter.findDataFiles(List.of(dir));
+            System.out.printf("Generated %,d files with %,d subjects each%n", files.size(), subjectsPerFile);
+
+            List<String> expected = BulkImportTest.describe(BulkImportTest.mergeSequentially(files));
+            int cores = Runtime.getRuntime().availableProcessors();
+            for (int iteration = 1; iteration <= 3; iteration++) {
+                double single = 0;
+                for (int threads = 1; threads <= cores; threads = threads < cores ? Math.min(threads * 2, cores) : threads + 1) {
+                    long start = System.nanoTime();
+                    BulkImporter.Result result = new BulkImporter(threads).importFiles(files);
+                    double seconds = (System.nanoTime() - start) / 1e9;
+                    if (threads == 1) {
+                        single = seconds;
+                    }
+                    boolean identical = BulkImportTest.describe(result.getSubjects()).equals(expected);
+                    differs |= !identical;
+                    System.out.printf("iteration %d: %2d threads %,8.0f files/s %,12.0f rows/s speedup %.2fx%s%n",
+                            iteration, threads, fileCount / seconds, result.getRowCount() / seconds, single / seconds,
+                            identical ? "" : "  RESULT DIFFERS FROM SEQUENTIAL MERGE");
+                }
+            }
+        } finally {
+            TestSupport.deleteRecursively(dir);
+        }
+        if (differs) {
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,110 @@
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * BulkImportTest merges a directory of generated data files, some with invalid lines, with BulkImporter
+ * on 1 to 8 threads and checks that:
+ *   - every thread count gives the same subjects as merging the files one after another;
+ *   - the reported errors are the first ones in file order, and all of them are counted;
+ *   - an interrupted import throws InterruptedIOException instead of returning part of the result.
+ * It exits with status 1 if any check fails.
+ *
+ * Usage: java -cp out BulkImportTest
+ */
+public class BulkImportTest {
+    private static final int FILES = 40;
+    private static final int SUBJECTS_PER_FILE = 200;
+
+    public static void main(String[] args) throws IOException {
+        Path dir = Files.createTempDirectory("bulk-import-test");
+        try {
+            List<String> invalid = new ArrayList<>();
+            for (int i = 0; i < FILES; i++) {
+                Path file = Files.createDirectories(dir.resolve(String.format("user%02d", i))).resolve("data.csv");
+                new SyntheticSubjects(SUBJECTS_PER_FILE, 5, i).writeCsv(file);
+                if (i % 3 == 0) {
+                    // Lines 9 and 10 of every third file: more errors than are reported, and line 10
+                    // sorts before line 9 as text
+                    List<String> lines = new ArrayList<>(Files.readAllLines(file, StandardCharsets.UTF_8));
+                    lines.add(8, "Bad " + i + ",not a number");
+                    lines.add(9, "Bad " + i + ",-");
+                    Files.write(file, lines, StandardCharsets.UTF_8);
+                    invalid.add(file + " line 9");
+                    invalid.add(file + " line 10");
+                }
+            }
+            List<Path> files = BulkImporter.findDataFiles(List.of(dir));
+            testThreadCounts(files, invalid);
+            testInterrupted(files);
+        } finally {
+            TestSupport.deleteRecursively(dir);
+        }
+        TestSupport.report();
+    }
+
+    private static void testThreadCounts(List<Path> files, List<String> invalid) throws IOException {
+        List<String> expected = describe(mergeSequentially(files));
+        for (int threads = 1; threads <= 8; threads *= 2) {
+            BulkImporter.Result result = new BulkImporter(threads).importFiles(files);
+            TestSupport.check(describe(result.getSubjects()).equals(expected), threads + " threads: the result differs from a sequential merge");
+            TestSupport.check(result.getRowCount() == (long) FILES * SUBJECTS_PER_FILE, threads + " threads: " + result.getRowCount() + " rows");
+            TestSupport.check(result.getErrorCount() == invalid.size(), threads + " threads: " + result.getErrorCount() + " errors, expected " + invalid.size());
+            List<String> errors = result.getErrors();
+            boolean inOrder = errors.size() == 20;
+            for (int i = 0; i < errors.size() && inOrder; i++) {
+                inOrder = errors.get(i).startsWith(invalid.get(i) + ":");
+            }
+            TestSupport.check(inOrder, threads + " threads: the errors are not the first 20 in file order: " + errors);
+        }
+    }
+
+    private static void testInterrupted(List<Path> files) {
+        Thread.currentThread().interrupt();
+        try {
+            new BulkImporter(4).importFiles(files);
+            TestSupport.check(false, "an interrupted import returned a result");
+        } catch (InterruptedIOException e) {
+            TestSupport.check(Thread.currentThread().isInterrupted(), "the interrupt was cleared");
+        } finally {
+            Thread.interrupted();
+        }
+    }
+
+    /**
+     * Merges the files one after another the way StudyTrackerCli import used to.
+     */
+    static List<Subject> mergeSequentially(List<Path> files) throws IOException {
+        InMemorySubjectRepository merged = new InMemorySubjectRepository();
+        for (Path file : files) {
+            InMemorySubjectRepository input = new InMemorySubjectRepository();
+            StudyTracker.readCsv(file, input);
+            for (Subject subject : input.toList()) {
+                Subject existing = merged.findByName(subject.getName());
+                if (existing == null) {
+                    existing = new Subject(subject.getName());
+                    merged.add(existing);
+                }
+                existing.addTime(subject.getTime());
+                for (String task : subject.getTasks()) {
+                    if (!existing.hasTask(task)) {
+                        existing.addTask(task);
+                    }
+                }
+            }
+        }
+        return merged.toList();
+    }
+
+    static List<String> describe(List<Subject> subjects) {
+        List<String> lines = new ArrayList<>(subjects.size());
+        for (Subject subject : subjects) {
+            lines.add(subject.getName() + "," + subject.getTime() + "," + subject.getTasks());
+        }
+        return lines;
+    }
+}
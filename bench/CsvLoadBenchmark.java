@@ -0,0 +1,128 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+
+/**
+ * CsvLoadBenchmark compares the rows/sec of SubjectCsvReader against the original
+ * readLine + String.split + String.matches parser on a generated multi-million-row file.
+ * SubjectCsvReader is also timed on the same rows written by SubjectCsvWriter in the current format,
+ * with one name in ten and some tasks containing commas or quotes so they have to be quoted.
+ *
+ * Usage: java -cp out CsvLoadBenchmark [rows] [iterations]
+ */
+public class CsvLoadBenchmark {
+
+    public static void main(String[] args) throws IOException {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 2_000_000;
+        int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+        File file = File.createTempFile("subjects", ".csv");
+        file.deleteOnExit();
+        writeFile(file, rows);
+        File quotedFile = File.createTempFile("subjects-quoted", ".csv");
+        quotedFile.deleteOnExit();
+        writeQuotedFile(quotedFile, rows);
+        System.out.printf("Generated %,d rows (%,d bytes unquoted, %,d bytes quoted)%n", rows, file.length(), quotedFile.length());
+
+        for (int i = 0; i < iterations; i++) {
+            long legacy = time(() -> loadLegacy(file));
+            long streaming = time(() -> loadStreaming(file));
+            long quoted = time(() -> loadStreaming(quotedFile));
+            System.out.printf("iteration %d: split %,.0f rows/s, streaming %,.0f rows/s, streaming quoted %,.0f rows/s%n",
+                    i + 1, rows / (legacy / 1e9), rows / (streaming / 1e9), rows / (quoted / 1e9));
+        }
+    }
+
+    private static void writeFile(File file, int rows) throws IOException {
+        String[] tasks = {"Homework", "Reading", "Review", "Lab Report", "Exam Prep"};
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(file))) {
+            writer.write("Subject Name,Time,Tasks\n");
+            for (int i = 0; i < rows; i++) {
+                writer.write("Subject " + i + "," + (i * 7919L % 36_000_000L));
+                for (int t = 0; t < i % 4; t++) {
+                    writer.write("," + tasks[(i + t) % tasks.length]);
+                }
+                writer.write("\n");
+            }
+        }
+    }
+
+    private static void writeQuotedFile(File file, int rows) throws IOException {
+        String[] tasks = {"Homework", "Reading, Ch 4", "Review", "Lab \"Report\"", "Exam Prep"};
+        try (SubjectCsvWriter writer = new SubjectCsvWriter(new BufferedWriter(new FileWriter(file)))) {
+            for (int i = 0; i < rows; i++) {
+                Subject subject = new Subject(i % 10 == 0 ? "Subject, " + i : "Subject " + i, i * 7919L % 36_000_000L);
+                for (int t = 0; t < i % 4; t++) {
+                    subject.addTask(tasks[(i + t) % tasks.length]);
+                }
+                writer.write(subject);
+            }
+        }
+    }
+
+    private static long time(IORunnable runnable) throws IOException {
+        long start = System.nanoTime();
+        runnable.run();
+        return System.nanoTime() - start;
+    }
+
+    private static int loadStreaming(File file) throws IOException {
+        int count = 0;
+        try (SubjectCsvReader reader = new SubjectCsvReader(new FileReader(file))) {
+            while (reader.next() != null) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static int loadLegacy(File file) throws IOException {
+        int count = 0;
+        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+            String line;
+            reader.readLine();
+            while ((line = reader.readLine()) != null) {
+                parseLegacy(line);
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * The parser StudyTrackerGUI used before SubjectCsvReader, kept here as the baseline.
+     */
+    private static Subject parseLegacy(String input) {
+        input = input.trim();
+        String[] parts = input.split(",");
+        if (parts.length < 2) {
+            throw new IllegalArgumentException("Invalid data format");
+        }
+        String name = parts[0].trim();
+        if (!name.matches("[a-zA-Z0-9 ]+")) {
+            throw new IllegalArgumentException("Invalid name value");
+        }
+        long time = Long.parseLong(parts[1].trim());
+        ArrayList<String> tasks = new ArrayList<>();
+        for (int i = 2; i < parts.length; i++) {
+            String task = parts[i].trim();
+            if (!task.matches("[a-zA-Z0-9 ]+")) {
+                throw new IllegalArgumentException("Invalid task value");
+            }
+            tasks.add(task);
+        }
+        if (tasks.isEmpty()) {
+            return new Subject(name, time);
+        } else {
+            return new Subject(name, time, tasks);
+        }
+    }
+
+    private interface IORunnable {
+        void run() throws IOException;
+    }
+}
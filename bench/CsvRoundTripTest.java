@@ -0,0 +1,121 @@
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * CsvRoundTripTest writes subjects with SubjectCsvWriter, reads them back with SubjectCsvReader and
+ * checks that:
+ *   - names and tasks with commas, quotes, an escaped quote (""), leading and trailing spaces and
+ *     non-ASCII text come back exactly as written;
+ *   - files with the old header, which has no format version, are read as version 1 with their
+ *     unquoted fields trimmed;
+ *   - a header naming a newer format version, such as format=3, is refused;
+ *   - fields holding control characters are invalid rows, quoted or not.
+ * It exits with status 1 if any check fails.
+ *
+ * Usage: java -cp out CsvRoundTripTest
+ */
+public class CsvRoundTripTest {
+    public static void main(String[] args) throws IOException {
+        testRoundTrip();
+        testOldHeader();
+        testNewerVersion();
+        testControlCharacters();
+        TestSupport.report();
+    }
+
+    private static void testRoundTrip() throws IOException {
+        List<Subject> subjects = List.of(
+                new Subject("Math", 100),
+                new Subject("Reading, Writing", 200, List.of("Essay, draft", "Notes")),
+                new Subject("The \"Odyssey\"", 300, List.of("\"", "\"\"", "Book \"1\"")),
+                new Subject("\"\"", 0),
+                new Subject("  Padded  ", 400, List.of(" leading", "trailing ", " , ")),
+                new Subject("\u0395\u03BB\u03BB\u03B7\u03BD\u03B9\u03BA\u03AC \u65E5\u672C\u8A9E \u03A9", -5, List.of("\u00DCbung", "\uD83D\uDE00")),
+                new Subject("Longest", Long.MAX_VALUE, List.of("x")));
+        StringWriter text = new StringWriter();
+        try (SubjectCsvWriter writer = new SubjectCsvWriter(text)) {
+            for (Subject subject : subjects) {
+                writer.write(subject);
+            }
+        }
+        List<String> expected = new ArrayList<>();
+        for (Subject subject : subjects) {
+            expected.add(describe(subject));
+        }
+        List<String> invalid = new ArrayList<>();
+        List<String> read = read(text.toString(), invalid);
+        TestSupport.check(invalid.isEmpty(), "rows written by SubjectCsvWriter are invalid: " + invalid);
+        TestSupport.check(read.equals(expected), "the subjects were not read back as written: " + read);
+
+        try (SubjectCsvReader reader = new SubjectCsvReader(new StringReader(text.toString()))) {
+            TestSupport.check(reader.getVersion() == SubjectCsvReader.FORMAT_VERSION, "the header names version " + reader.getVersion());
+        }
+    }
+
+    private static void testOldHeader() throws IOException {
+        String text = "Subject Name,Time,Tasks\n"
+                + "Math,100\n"
+                + "  Physics , 200 , Lab , Homework ,,\n"
+                + "Chemistry,300,Titration\n";
+        try (SubjectCsvReader reader = new SubjectCsvReader(new StringReader(text))) {
+            TestSupport.check(reader.getVersion() == 1, "the old header was read as version " + reader.getVersion());
+        }
+        List<String> invalid = new ArrayList<>();
+        List<String> read = read(text, invalid);
+        TestSupport.check(invalid.isEmpty(), "rows of an old file are invalid: " + invalid);
+        TestSupport.check(read.equals(List.of("Math|100|[]", "Physics|200|[Lab, Homework]", "Chemistry|300|[Titration]")),
+                "an old file was read as " + read);
+    }
+
+    private static void testNewerVersion() {
+        try (SubjectCsvReader reader = new SubjectCsvReader(new StringReader("Subject Name,Time,Tasks,format=3\nMath,100\n"))) {
+            TestSupport.check(false, "a format=3 file was read as version " + reader.getVersion());
+        } catch (IOException e) {
+            // Expected
+        }
+    }
+
+    private static void testControlCharacters() throws IOException {
+        String text = SubjectCsvReader.HEADER + "\n"
+                + "Math,100\n"
+                + "Tab\tName,1\n"
+                + "\"Quoted\tTab\",2\n"
+                + "Physics,3,\"Lab\u0007\"\n"
+                + "\"A,1\n"
+                + "C,2\n"
+                + "D\",3\n";
+        List<String> invalid = new ArrayList<>();
+        List<String> read = read(text, invalid);
+        TestSupport.check(read.equals(List.of("Math|100|[]", "C|2|[]")), "rows with control characters were read: " + read);
+        TestSupport.check(invalid.size() == 5, "expected 5 invalid rows, got " + invalid);
+    }
+
+    /**
+     * Reads every row, listing the subjects as name|time|tasks and the raw text of the invalid rows.
+     */
+    private static List<String> read(String text, List<String> invalid) throws IOException {
+        List<String> subjects = new ArrayList<>();
+        try (SubjectCsvReader reader = new SubjectCsvReader(new StringReader(text))) {
+            while (true) {
+                try {
+                    Subject subject = reader.next();
+                    if (subject == null) {
+                        break;
+                    }
+                    subjects.add(describe(subject));
+                } catch (IllegalArgumentException e) {
+                    invalid.add(reader.getLine());
+                }
+            }
+            TestSupport.check(reader.getCharsRead() == text.length(), "read " + reader.getCharsRead() + " of " + text.length() + " characters");
+        }
+        return subjects;
+    }
+
+    private static String describe(Subject subject) {
+        return subject.getName() + "|" + subject.getTime() + "|" + subject.getTasks();
+    }
+}
@@ -0,0 +1,161 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * HotReloadTest opens a StudyTracker on a temporary data.csv, makes edits and starts a timer, then
+ * rewrites the file the way a script would and checks that:
+ *   - only the changed rows are parsed and applied, to the same Subject objects;
+ *   - time and tasks changed in the file are merged with the edits made in the tracker;
+ *   - a removed row removes its subject unless it is being timed, and new rows are added;
+ *   - the tracker's own snapshot is not reported as a change, and later changes are diffed against it;
+ *   - a file with an invalid row is reported as failed and changes nothing;
+ *   - reopening the files gives the same subjects as the tracker had.
+ * It reports the time from the file being replaced to the changes being applied, next to a full load.
+ * It exits with status 1 if any check fails.
+ *
+ * Usage: java -cp out HotReloadTest [subjects]
+ */
+public class HotReloadTest {
+    private static final long TIMEOUT_SECONDS = 10;
+
+    public static void main(String[] args) throws Exception {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+        Path dir = Files.createTempDirectory("hot-reload-test");
+        try {
+            run(dir.resolve("data.csv"), count);
+        } finally {
+            TestSupport.deleteRecursively(dir);
+        }
+        TestSupport.report();
+    }
+
+    private static void run(Path dataFile, int count) throws Exception {
+        List<Subject> subjects = new ArrayList<>(new SyntheticSubjects(count, 3, 7).generate());
+        subjects.add(new Subject("Math", 60_000, List.of("Homework")));
+        subjects.add(new Subject("Art", 10_000));
+        subjects.add(new Subject("Chemistry", 5_000));
+        SubjectStore.writeCsv(dataFile, subjects);
+
+        long start = System.nanoTime();
+        StudyTracker tracker = new StudyTracker(dataFile);
+        tracker.load();
+        System.out.printf("full load of %,d subjects: %.0f ms%n", subjects.size(), (System.nanoTime() - start) / 1e6);
+
+        // The tracker is changed on one thread, as on the Event Dispatch Thread
+        ExecutorService owner = Executors.newSingleThreadExecutor();
+        BlockingQueue<Object> events = new LinkedBlockingQueue<>();
+        owner.submit(() -> {
+            tracker.getExternalChanges().start(owner, new DataFileWatcher.Listener() {
+                @Override
+                public void changed(DataFileWatcher.Diff diff) {
+                    events.add(diff);
+                }
+
+                @Override
+                public void failed(IOException e) {
+                    events.add(e);
+                }
+            });
+            return null;
+        }).get();
+        SubjectRepository repository = tracker.getRepository();
+        Subject math = repository.findByName("Math");
+        Subject art = repository.findByName("Art");
+        owner.submit(() -> {
+            tracker.addTime(math, 1_000);
+            tracker.addTask(math, "Reading");
+            tracker.startTimer(art);
+        }).get();
+
+        // A script updates the file: changes Math, removes Art and Chemistry, adds Physics
+        List<Subject> edited = new ArrayList<>(subjects.subList(0, count));
+        edited.add(new Subject("Math", 65_000, List.of("Exam")));
+        edited.add(new Subject("Physics", 2_000, List.of("Lab")));
+        start = System.nanoTime();
+        replace(dataFile, edited);
+        Object event = events.poll(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        long reloadMillis = (System.nanoTime() - start) / 1_000_000;
+        if (!(event instanceof DataFileWatcher.Diff)) {
+            TestSupport.check(false, "the change was not reported: " + event);
+            owner.shutdown();
+            return;
+        }
+        DataFileWatcher.Diff diff = (DataFileWatcher.Diff) event;
+        System.out.printf("reload: %d changes, %d of %,d rows parsed, applied %d ms after the file was replaced%n",
+                diff.getChanges().size(), diff.getParsedRows(), diff.getRowCount(), reloadMillis);
+        TestSupport.check(diff.getChanges().size() == 4 && diff.getParsedRows() == 2, "unexpected diff size");
+        owner.submit(() -> {
+            TestSupport.check(repository.findByName("Math") == math, "Math was replaced instead of updated");
+            TestSupport.check(math.getTime() == 66_000, "time did not merge: " + math);
+            TestSupport.check(math.hasTask("Exam") && math.hasTask("Reading") && !math.hasTask("Homework"), "tasks did not merge: " + math);
+            TestSupport.check(repository.findByName("Art") == art, "a timed subject was removed");
+            TestSupport.check(!repository.containsName("Chemistry"), "a removed row was kept");
+            Subject physics = repository.findByName("Physics");
+            TestSupport.check(physics != null && physics.getTime() == 2_000 && physics.hasTask("Lab"), "a new row was not added: " + physics);
+            TestSupport.check(repository.size() == count + 3, "unexpected subject count " + repository.size());
+            return null;
+        }).get();
+
+        // The tracker's own snapshot is not a change
+        owner.submit(() -> {
+            tracker.snapshot();
+            return null;
+        }).get();
+        event = events.poll(1, TimeUnit.SECONDS);
+        TestSupport.check(event == null, "the tracker's own write was reported: " + event);
+
+        // A row that cannot be parsed fails the reload
+        List<String> lines = new ArrayList<>(Files.readAllLines(dataFile));
+        lines.add("Broken,not a time");
+        replaceLines(dataFile, lines);
+        event = events.poll(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        TestSupport.check(event instanceof IOException, "an invalid row was not reported: " + event);
+
+        // Changes after the snapshot are diffed against it
+        lines.remove(lines.size() - 1);
+        lines.add("Biology,1000,Dissection");
+        replaceLines(dataFile, lines);
+        event = events.poll(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        TestSupport.check(event instanceof DataFileWatcher.Diff && ((DataFileWatcher.Diff) event).getChanges().size() == 1,
+                "a change after the snapshot was not diffed against it: " + event);
+
+        Map<String, String> expected = owner.submit(() -> {
+            tracker.stopTimer(art);
+            tracker.save(false);
+            tracker.close();
+            return TestSupport.contents(repository);
+        }).get();
+        owner.shutdown();
+
+        StudyTracker reopened = new StudyTracker(dataFile);
+        reopened.load();
+        TestSupport.check(expected.equals(TestSupport.contents(reopened.getRepository())), "the reopened files differ from the tracker");
+        TestSupport.check(reopened.getRepository().findByName("Biology") != null, "the reloaded subject was not kept");
+        reopened.close();
+    }
+
+    /**
+     * Replaces the file with a new version, as a script writing a temporary file and renaming it would.
+     */
+    private static void replace(Path dataFile, List<Subject> subjects) throws IOException {
+        Path temp = dataFile.resolveSibling("script.tmp");
+        SubjectStore.writeCsv(temp, subjects);
+        Files.move(temp, dataFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private static void replaceLines(Path dataFile, List<String> lines) throws IOException {
+        Path temp = dataFile.resolveSibling("script.tmp");
+        Files.write(temp, lines);
+        Files.move(temp, dataFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+}
@@ -0,0 +1,164 @@
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * InvalidLinesTest checks that lines of the data file that cannot be read are never lost:
+ *   - a file with an invalid line is loaded with the line skipped, and saving and exiting as the GUI
+ *     does keeps the line in the data file while the changes made since survive in the journal;
+ *   - such a file is not snapshotted or archived from;
+ *   - a stray, unbalanced quote only makes its own line invalid, whether it is never closed, closed by
+ *     a later stray quote or left open for many lines, with "\n" or "\r\n" line ends, and a quoted
+ *     field that spans lines is read line by line, since names cannot hold line breaks;
+ *   - a subject whose name, ignoring case, is already taken is an invalid line, so the list, its name
+ *     index and the analytics all see one subject per name.
+ * It exits with status 1 if any check fails.
+ *
+ * Usage: java -cp out InvalidLinesTest
+ */
+public class InvalidLinesTest {
+    public static void main(String[] args) throws Exception {
+        Path dir = Files.createTempDirectory("invalid-lines-test");
+        try {
+            testExitKeepsInvalidLine(dir.resolve("data.csv"));
+            testUnbalancedQuote(dir.resolve("quotes.csv"));
+            testDuplicateNames(dir.resolve("duplicates.csv"));
+        } finally {
+            TestSupport.deleteRecursively(dir);
+        }
+        TestSupport.report();
+    }
+
+    private static void testExitKeepsInvalidLine(Path dataFile) throws IOException {
+        String badLine = "Biology,not a number,Lab";
+        write(dataFile, SubjectCsvReader.HEADER, "Math,100", badLine, "Chemistry,300");
+
+        StudyTracker tracker = new StudyTracker(dataFile);
+        List<String> errors = tracker.load();
+        TestSupport.check(errors.size() == 1 && tracker.getRepository().size() == 2, "expected one invalid line, got " + errors);
+        Subject math = tracker.getRepository().findByName("Math");
+        tracker.addTask(math, "Homework");
+        tracker.addSubject("Physics");
+        TestSupport.check(!tracker.isSnapshotDue(), "a snapshot is due for a file with an invalid line");
+        try {
+            tracker.getArchiver().archiveInactive(1);
+            TestSupport.check(false, "subjects were archived from a file with an invalid line");
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+
+        // As StudyTrackerGUI.exit() does
+        tracker.stopAllTimers();
+        tracker.stopAutosave();
+        tracker.save(true);
+        tracker.close();
+        TestSupport.check(Files.readAllLines(dataFile, StandardCharsets.UTF_8).contains(badLine), "the invalid line was removed from the data file");
+
+        StudyTracker reopened = new StudyTracker(dataFile);
+        errors = reopened.load();
+        SubjectRepository repository = reopened.getRepository();
+        TestSupport.check(errors.size() == 1, "the invalid line was not read again: " + errors);
+        TestSupport.check(repository.size() == 3 && repository.containsName("Physics") && repository.findByName("Math").hasTask("Homework"),
+                "the changes made before exiting were lost");
+        reopened.close();
+    }
+
+    private static void testUnbalancedQuote(Path file) throws IOException {
+        for (String end : List.of("\n", "\r\n")) {
+            // Never closed
+            read(file, end, List.of("Math", "Chemistry", "Physics"), List.of(3),
+                    "Math,100", "\"Biology,200", "Chemistry,300", "Physics,400");
+            // Closed by another stray quote, so the joined row does not parse
+            read(file, end, List.of("Math", "Chemistry"), List.of(3, 5),
+                    "Math,100", "\"Biology,200", "Chemistry,300", "Physics,\"400");
+            // A quoted line break, which names may not hold, so the lines are read one by one
+            read(file, end, List.of("Math"), List.of(2, 3),
+                    "\"Two", "Lines\",5", "Math,100");
+            read(file, end, List.of("C"), List.of(2, 4),
+                    "\"A,1", "C,2", "D\",3");
+
+            // Open for longer than a row may span
+            String[] lines = new String[302];
+            lines[0] = "\"Stray,1";
+            List<String> names = new ArrayList<>();
+            for (int i = 1; i <= 300; i++) {
+                lines[i] = "Subject " + i + "," + i;
+                names.add("Subject " + i);
+            }
+            lines[301] = "End\",5";
+            read(file, end, names, List.of(2, 303), lines);
+        }
+    }
+
+    private static void testDuplicateNames(Path dataFile) throws IOException {
+        write(dataFile, SubjectCsvReader.HEADER, "Math,100,Homework", "math,50", "Chemistry,300", "MATH,1,Exam");
+
+        StudyTracker tracker = new StudyTracker(dataFile);
+        List<String> errors = tracker.load();
+        SubjectRepository repository = tracker.getRepository();
+        TestSupport.check(errors.size() == 2 && errors.get(0).startsWith("Line 3:") && errors.get(1).startsWith("Line 5:"),
+                "expected lines 3 and 5 to be duplicates, got " + errors);
+        TestSupport.check(repository.size() == 2 && repository.findByName("MATH") == repository.get(0) && repository.get(0).getTime() == 100,
+                "the first of the duplicate subjects was not kept");
+        StudyAnalytics analytics = tracker.getAnalytics();
+        TestSupport.check(analytics.getSubjectCount() == 2 && analytics.getTotalTime() == 400 && analytics.getTotalTasks() == 1,
+                "the analytics do not match the loaded subjects");
+        tracker.removeSubject(repository.findByName("math"));
+        TestSupport.check(repository.size() == 1 && analytics.getSubjectCount() == 1 && analytics.getTotalTime() == 300,
+                "removing the subject left it behind");
+        tracker.stopAutosave();
+        tracker.save(true);
+        tracker.close();
+        TestSupport.check(Files.readAllLines(dataFile, StandardCharsets.UTF_8).contains("MATH,1,Exam"), "the duplicate line was removed from the data file");
+
+        InMemorySubjectRepository imported = new InMemorySubjectRepository();
+        imported.add(new Subject("Chemistry"));
+        errors = StudyTracker.readCsv(dataFile, imported);
+        TestSupport.check(errors.size() == 3 && imported.size() == 2, "reading the file into a repository kept duplicates: " + errors);
+    }
+
+    /**
+     * Writes the lines after a header and checks which subjects are read and which lines are invalid.
+     */
+    private static void read(Path file, String end, List<String> names, List<Integer> invalid, String... lines) throws IOException {
+        StringBuilder text = new StringBuilder(SubjectCsvReader.HEADER).append(end);
+        for (String line : lines) {
+            text.append(line).append(end);
+        }
+        Files.writeString(file, text, StandardCharsets.UTF_8);
+
+        List<String> read = new ArrayList<>();
+        List<Integer> errors = new ArrayList<>();
+        try (SubjectCsvReader reader = new SubjectCsvReader(new StringReader(text.toString()))) {
+            while (true) {
+                try {
+                    Subject subject = reader.next();
+                    if (subject == null) {
+                        break;
+                    }
+                    read.add(subject.getName());
+                } catch (IllegalArgumentException e) {
+                    errors.add(reader.getLineNumber());
+                }
+            }
+            TestSupport.check(reader.getCharsRead() == text.length(), "read " + reader.getCharsRead() + " of " + text.length() + " characters");
+        }
+        String description = lines[0] + " ... with " + (end.length() == 1 ? "LF" : "CRLF");
+        TestSupport.check(read.equals(names), description + ": read " + read);
+        TestSupport.check(errors.equals(invalid), description + ": invalid lines " + errors + ", expected " + invalid);
+
+        // Loading the data file skips the same lines
+        StudyTracker tracker = new StudyTracker(file);
+        TestSupport.check(tracker.load().size() == invalid.size() && tracker.getRepository().size() == names.size(),
+                description + ": loading gave different rows");
+        tracker.close();
+    }
+
+    private static void write(Path path, String... lines) throws IOException {
+        Files.write(path, List.of(lines), StandardCharsets.UTF_8);
+    }
+}
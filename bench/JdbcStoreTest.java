@@ -0,0 +1,164 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * JdbcStoreTest writes subjects, tasks and sessions to an embedded H2 database through JdbcSubjectStore,
+ * opens it again with a new store, as a restart does, and checks that:
+ *   - recorded changes are read back in order, with names and tasks longer than 255 characters, quotes
+ *     and non-ASCII text;
+ *   - replaceAll() replaces everything stored;
+ *   - a lazy load gives the same subjects, page by page, as a full load;
+ *   - timing sessions are stored and read back.
+ * It exits with status 1 if any check fails.
+ *
+ * Usage: java -cp out JdbcStoreTest
+ */
+public class JdbcStoreTest {
+    private static final String LONG_NAME = "\u03A9 \"Quoted\", " + "x".repeat(300);
+    private static final String LONG_TASK = "Read chapter " + "y".repeat(1000);
+
+    public static void main(String[] args) throws Exception {
+        Path dir = Files.createTempDirectory("jdbc-store-test");
+        try {
+            testChanges(url(dir, "changes"));
+            testReplaceAll(url(dir, "replace"));
+            testLazy(url(dir, "lazy"));
+            testSessions(url(dir, "sessions"));
+        } finally {
+            TestSupport.deleteRecursively(dir);
+        }
+        TestSupport.report();
+    }
+
+    private static void testChanges(String url) throws IOException {
+        try (JdbcSubjectStore store = new JdbcSubjectStore(url)) {
+            store.recover();
+            store.record(SubjectChange.addSubject("Math"));
+            store.record(SubjectChange.addSubject(LONG_NAME));
+            store.record(SubjectChange.addTime("Math", 100));
+            store.record(SubjectChange.addTask(LONG_NAME, LONG_TASK));
+            store.record(SubjectChange.addTask(LONG_NAME, "Second"));
+            store.record(SubjectChange.addTime(LONG_NAME, 20));
+            store.record(SubjectChange.addSubject("Physics"));
+            store.record(SubjectChange.addTask("Physics", "Lab"));
+            store.flush();
+            TestSupport.check(!store.hasPendingChanges(), "changes are still pending after a flush");
+            store.record(SubjectChange.removeTask("Physics", "Lab"));
+            store.record(SubjectChange.addTime(LONG_NAME, 5));
+            store.record(SubjectChange.removeSubject("Math"));
+            store.record(SubjectChange.addSubject("math"));
+            store.flush();
+        }
+        TestSupport.check(load(url, false).equals(List.of(LONG_NAME + "," + 25 + "," + List.of(LONG_TASK, "Second"),
+                        "Physics,0,[]", "math,0,[]")),
+                "the changes were not read back: " + load(url, false));
+    }
+
+    private static void testReplaceAll(String url) throws IOException {
+        try (JdbcSubjectStore store = new JdbcSubjectStore(url)) {
+            store.recover();
+            store.record(SubjectChange.addSubject("Old"));
+            store.flush();
+            store.replaceAll(List.of(new Subject("Chemistry", 7, List.of("Titration")), new Subject(LONG_NAME, 3)));
+            store.record(SubjectChange.addSubject("Biology"));
+            store.flush();
+        }
+        TestSupport.check(load(url, false).equals(List.of("Chemistry,7,[Titration]", LONG_NAME + ",3,[]", "Biology,0,[]")),
+                "replaceAll() did not replace the subjects: " + load(url, false));
+    }
+
+    private static void testLazy(String url) throws IOException {
+        // Several pages, the last one partly filled, with gaps in seq from removed subjects
+        List<Subject> subjects = new SyntheticSubjects(1000, 3, 42).generate();
+        try (JdbcSubjectStore store = new JdbcSubjectStore(url)) {
+            store.recover();
+            store.replaceAll(subjects);
+            for (int i = 0; i < subjects.size(); i += 7) {
+                store.record(SubjectChange.removeSubject(subjects.get(i).getName()));
+            }
+            store.record(SubjectChange.addSubject(LONG_NAME));
+            store.record(SubjectChange.addTask(LONG_NAME, LONG_TASK));
+            store.flush();
+        }
+        List<String> full = load(url, false);
+        List<String> lazy = load(url, true);
+        TestSupport.check(full.size() == subjects.size() - (subjects.size() + 6) / 7 + 1, "the full load has " + full.size() + " subjects");
+        TestSupport.check(lazy.equals(full), "the lazy load differs from the full load");
+    }
+
+    private static void testSessions(String url) throws IOException {
+        try (JdbcSubjectStore store = new JdbcSubjectStore(url)) {
+            store.recover();
+            SessionLog log = new SessionLog(store.openSessionStorage());
+            log.load();
+            log.record("Math", 1000, 60);
+            log.record(LONG_NAME, 2000, 30);
+            log.record("math", 3000, 90);
+            log.flush();
+            TestSupport.check(!log.hasPending(), "sessions are still pending after a flush");
+        }
+        try (JdbcSubjectStore store = new JdbcSubjectStore(url)) {
+            store.recover();
+            SessionLog log = new SessionLog(store.openSessionStorage());
+            log.load();
+            TestSupport.check(log.getSessionCount() == 3, "read " + log.getSessionCount() + " sessions, expected 3");
+            TestSupport.check(log.hasSession("Math", 1000) && log.hasSession("Math", 3000) && log.hasSession(LONG_NAME, 2000),
+                    "the sessions were not read back");
+            log.removeSessions(List.of("MATH"));
+        }
+        try (JdbcSubjectStore store = new JdbcSubjectStore(url)) {
+            store.recover();
+            SessionLog log = new SessionLog(store.openSessionStorage());
+            log.load();
+            TestSupport.check(log.getSessionCount() == 1 && log.hasSession(LONG_NAME, 2000), "removed sessions were read back");
+        }
+    }
+
+    private static String url(Path dir, String name) {
+        return JdbcSubjectStore.url(dir.resolve(name + ".db"));
+    }
+
+    /**
+     * Opens the database with a new store and lists the subjects as name,time,tasks.
+     */
+    private static List<String> load(String url, boolean lazy) throws IOException {
+        List<String> subjects = new ArrayList<>();
+        try (JdbcSubjectStore store = new JdbcSubjectStore(url)) {
+            store.recover();
+            SubjectSource source = store.load(new SubjectStorage.Sink() {
+                @Override
+                public void subjects(List<Subject> batch) {
+                    for (Subject subject : batch) {
+                        subjects.add(describe(subject));
+                    }
+                }
+
+                @Override
+                public void invalid(String message) {
+                    TestSupport.check(false, "invalid row: " + message);
+                }
+
+                @Override
+                public void progress(int percent) {
+                }
+            }, lazy);
+            if (lazy) {
+                // Backwards, so pages are read out of order
+                for (int i = source.size() - 1; i >= 0; i--) {
+                    Subject subject = source.get(i);
+                    TestSupport.check(source.nameAt(i).equals(subject.getName()) && source.timeAt(i) == subject.getTime()
+                            && source.taskCountAt(i) == subject.getTaskCount(), "row " + i + " differs from its subject");
+                    subjects.add(0, describe(subject));
+                }
+            }
+        }
+        return subjects;
+    }
+
+    private static String describe(Subject subject) {
+        return subject.getName() + "," + subject.getTime() + "," + subject.getTasks();
+    }
+}
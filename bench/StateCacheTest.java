@@ -0,0 +1,133 @@
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * StateCacheTest loads a temporary data.csv cold, saves it, and loads it again from the StateCache that
+ * saving wrote, checking that:
+ *   - a saved data file is loaded from the cache, with the same subjects as parsing it gives;
+ *   - changes in the journal are replayed on top of the cache;
+ *   - a data file changed by another program is parsed again, not taken from the stale cache;
+ *   - a corrupt cache is parsed around and replaced at the next save.
+ * It reports the time to load by parsing, from the cache with every subject built (as the CLI does)
+ * and from the cache lazily (as the GUI does).
+ * It exits with status 1 if any check fails.
+ *
+ * Usage: java -cp out StateCacheTest [subjects]
+ */
+public class StateCacheTest {
+    private static final int ITERATIONS = 5;
+
+    public static void main(String[] args) throws Exception {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+        Path dir = Files.createTempDirectory("state-cache-test");
+        try {
+            run(dir.resolve("data.csv"), count);
+        } finally {
+            TestSupport.deleteRecursively(dir);
+        }
+        TestSupport.report();
+    }
+
+    private static void run(Path dataFile, int count) throws Exception {
+        new SyntheticSubjects(count, 5, 3).writeCsv(dataFile);
+        StateCache cache = new StateCache(dataFile);
+        TestSupport.check(cache.open() == null, "a cache was found before one was written");
+
+        // Cold: parsed, then saved as on exit
+        StudyTracker tracker = new StudyTracker(dataFile);
+        tracker.load();
+        Map<String, String> parsed = TestSupport.contents(tracker.getRepository());
+        tracker.save(true);
+        tracker.close();
+        TestSupport.check(cache.open() != null, "saving did not write a valid cache");
+
+        for (int iteration = 1; iteration <= ITERATIONS; iteration++) {
+            Files.write(dataFile, Files.readAllBytes(dataFile));
+            long start = System.nanoTime();
+            StudyTracker cold = new StudyTracker(dataFile);
+            cold.load();
+            long parseMillis = (System.nanoTime() - start) / 1_000_000;
+            cold.save(true);
+            cold.close();
+
+            start = System.nanoTime();
+            StudyTracker warm = new StudyTracker(dataFile);
+            warm.load();
+            long warmMillis = (System.nanoTime() - start) / 1_000_000;
+            if (iteration == 1) {
+                TestSupport.check(parsed.equals(TestSupport.contents(warm.getRepository())), "the cache holds different subjects than the data file");
+            }
+            warm.close();
+
+            start = System.nanoTime();
+            SubjectStore store = new SubjectStore(dataFile);
+            SubjectSource source = store.load(new DiscardingSink(), true);
+            long lazyMicros = (System.nanoTime() - start) / 1_000;
+            TestSupport.check(source != null && source.size() == count, "the cache was not opened lazily");
+            store.close();
+            System.out.printf("iteration %d: %,d subjects parsed in %,d ms, from the cache in %,d ms, lazily in %,d us%n",
+                    iteration, count, parseMillis, warmMillis, lazyMicros);
+        }
+
+        // The journal is replayed over the cache
+        tracker = new StudyTracker(dataFile);
+        tracker.load();
+        Subject first = tracker.getRepository().get(0);
+        tracker.addTask(first, "Cached Task");
+        tracker.addTime(first, 1_234);
+        tracker.save(false);
+        Map<String, String> expected = TestSupport.contents(tracker.getRepository());
+        tracker.close();
+        TestSupport.check(cache.open() != null, "a journal save invalidated the cache");
+        tracker = new StudyTracker(dataFile);
+        tracker.load();
+        TestSupport.check(expected.equals(TestSupport.contents(tracker.getRepository())), "the journal was not replayed over the cache");
+        tracker.save(true);
+        tracker.close();
+
+        // Another program changes the data file
+        List<Subject> edited = new ArrayList<>();
+        edited.add(new Subject("Edited Elsewhere", 42, List.of("Script")));
+        SubjectStore.writeCsv(dataFile, edited);
+        TestSupport.check(cache.open() == null, "the cache was used for a changed data file");
+        tracker = new StudyTracker(dataFile);
+        tracker.load();
+        TestSupport.check(tracker.getRepository().size() == 1 && tracker.getRepository().containsName("Edited Elsewhere"),
+                "a changed data file was not parsed again");
+        tracker.save(true);
+        expected = TestSupport.contents(tracker.getRepository());
+        tracker.close();
+
+        // A corrupt cache is a miss
+        try (FileChannel channel = FileChannel.open(Path.of(dataFile + ".cache"), StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[] {1, 2, 3, 4}), channel.size() - 4);
+        }
+        TestSupport.check(cache.open() == null, "a corrupt cache was used");
+        tracker = new StudyTracker(dataFile);
+        tracker.load();
+        TestSupport.check(expected.equals(TestSupport.contents(tracker.getRepository())), "a corrupt cache changed the subjects");
+        tracker.save(true);
+        tracker.close();
+        TestSupport.check(cache.open() != null, "a corrupt cache was not replaced");
+    }
+
+    private static class DiscardingSink implements SubjectStorage.Sink {
+        @Override
+        public void subjects(List<Subject> batch) {
+        }
+
+        @Override
+        public void invalid(String message) {
+        }
+
+        @Override
+        public void progress(int percent) {
+        }
+    }
+}
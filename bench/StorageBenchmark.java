@@ -0,0 +1,115 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * StorageBenchmark compares the SubjectStorage implementations on the same generated subjects:
+ * writing everything, saving a small batch of changes, reading everything, and opening lazily and
+ * showing the first screen of rows. The CSV store also writes its StateCache when writing everything
+ * and reads it back; run with -Dstudytracker.cache=false to measure parsing the CSV instead.
+ *
+ * The database is only measured when a JDBC driver for its URL is on the class path, e.g.
+ *   java -cp out:h2.jar StorageBenchmark [subjects] [changesPerSave]
+ *   java -cp out:sqlite-jdbc.jar -Dstudytracker.jdbc.url=jdbc:sqlite:/tmp/bench.db StorageBenchmark
+ */
+public class StorageBenchmark {
+    private static final int ITERATIONS = 3;
+    private static final int VISIBLE_ROWS = 30;
+
+    public static void main(String[] args) throws IOException {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+        int changesPerSave = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+
+        List<Subject> subjects = new SyntheticSubjects(count, 5, 42).generate();
+        System.out.printf("%,d subjects, %d changes per save%n", count, changesPerSave);
+
+        Path dir = Files.createTempDirectory("storage-bench");
+        try {
+            measure("csv", new SubjectStore(dir.resolve("data.csv")), subjects, changesPerSave);
+            measure("bin", new SubjectStore(dir.resolve("data.bin")), subjects, changesPerSave);
+            String url = JdbcSubjectStore.url(dir.resolve("data.db"));
+            try (JdbcSubjectStore database = new JdbcSubjectStore(url)) {
+                database.recover();
+                measure("db", database, subjects, changesPerSave);
+            } catch (IOException e) {
+                System.out.println("db: skipped, " + e.getMessage());
+            }
+        } finally {
+            TestSupport.deleteRecursively(dir);
+        }
+    }
+
+    private static void measure(String label, SubjectStorage storage, List<Subject> subjects, int changesPerSave) throws IOException {
+        SplittableRandom random = new SplittableRandom(7);
+        for (int iteration = 1; iteration <= ITERATIONS; iteration++) {
+            long start = System.nanoTime();
+            if (storage instanceof JdbcSubjectStore) {
+                ((JdbcSubjectStore) storage).replaceAll(subjects);
+            } else {
+                storage.compact(subjects);
+            }
+            double writeAll = millis(start);
+
+            start = System.nanoTime();
+            for (int i = 0; i < changesPerSave; i++) {
+                String name = subjects.get(random.nextInt(subjects.size())).getName();
+                storage.record(i % 2 == 0 ? SubjectChange.addTime(name, 1000) : SubjectChange.addTask(name, "Change" + i));
+            }
+            storage.flush();
+            double save = millis(start);
+
+            storage.recover();
+            start = System.nanoTime();
+            List<Subject> loaded = new ArrayList<>(subjects.size());
+            storage.load(new SubjectStorage.Sink() {
+                @Override
+                public void subjects(List<Subject> batch) {
+                    loaded.addAll(batch);
+                }
+
+                @Override
+                public void invalid(String message) {
+                }
+
+                @Override
+                public void progress(int percent) {
+                }
+            }, false);
+            SubjectStore.replay(storage.readJournal(), new InMemorySubjectRepository());
+            double loadAll = millis(start);
+
+            start = System.nanoTime();
+            SubjectSource source = storage.load(new SubjectStorage.Sink() {
+                @Override
+                public void subjects(List<Subject> batch) {
+                }
+
+                @Override
+                public void invalid(String message) {
+                }
+
+                @Override
+                public void progress(int percent) {
+                }
+            }, true);
+            int shown = 0;
+            if (source != null) {
+                for (int i = 0; i < Math.min(VISIBLE_ROWS, source.size()); i++) {
+                    shown += source.get(i).toString().isEmpty() ? 0 : 1;
+                }
+            }
+            double openLazily = millis(start);
+
+            System.out.printf("%-4s iteration %d: write all %8.1f ms, save %6.1f ms, load all %8.1f ms (%,d subjects), first screen %s%n",
+                    label, iteration, writeAll, save, loadAll, loaded.size(),
+                    source != null ? String.format("%.1f ms (%d rows)", openLazily, shown) : "needs load all");
+        }
+    }
+
+    private static double millis(long start) {
+        return (System.nanoTime() - start) / 1e6;
+    }
+}
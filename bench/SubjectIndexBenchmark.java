@@ -0,0 +1,55 @@
+/**
+ * SubjectIndexBenchmark measures bulk-adding subjects with a duplicate check before each add, comparing
+ * the original linear equalsIgnoreCase scan with the name index in SubjectListModel.
+ * The linear scan is quadratic, so it is run on a smaller count by default and extrapolated.
+ *
+ * Usage: java -cp out SubjectIndexBenchmark [subjects] [linearSubjects]
+ */
+public class SubjectIndexBenchmark {
+
+    public static void main(String[] args) {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 500_000;
+        int linearCount = args.length > 1 ? Integer.parseInt(args[1]) : 50_000;
+
+        for (int iteration = 1; iteration <= 3; iteration++) {
+            long start = System.nanoTime();
+            addWithLinearScan(linearCount);
+            long linear = System.nanoTime() - start;
+            double linearExtrapolated = linear * Math.pow((double) count / linearCount, 2);
+
+            start = System.nanoTime();
+            addWithIndex(count);
+            long indexed = System.nanoTime() - start;
+
+            System.out.printf("iteration %d: linear scan %,d subjects in %,d ms (about %,.0f ms for %,d), index %,d subjects in %,d ms%n",
+                    iteration, linearCount, linear / 1_000_000, linearExtrapolated / 1_000_000, count, count, indexed / 1_000_000);
+        }
+    }
+
+    private static void addWithLinearScan(int count) {
+        SubjectListModel model = new SubjectListModel();
+        for (int i = 0; i < count; i++) {
+            String name = "Subject " + i;
+            boolean duplicate = false;
+            for (int j = 0; j < model.size(); j++) {
+                if (model.getElementAt(j).getName().equalsIgnoreCase(name)) {
+                    duplicate = true;
+                    break;
+                }
+            }
+            if (!duplicate) {
+                model.addElement(new Subject(name));
+            }
+        }
+    }
+
+    private static void addWithIndex(int count) {
+        SubjectListModel model = new SubjectListModel();
+        for (int i = 0; i < count; i++) {
+            String name = "Subject " + i;
+            if (!model.containsName(name)) {
+                model.addElement(new Subject(name));
+            }
+        }
+    }
+}
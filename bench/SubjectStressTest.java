@@ -0,0 +1,188 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * SubjectStressTest changes subjects from many threads at once and checks that nothing is lost:
+ *   - every thread adds time to one shared Subject, next to a plain long field updated the way
+ *     Subject.addTime used to be, which does lose updates;
+ *   - every thread adds and removes its own tasks on the shared subject while a reader checks that
+ *     each snapshot of the tasks has no duplicates and its display text matches it;
+ *   - threads add subjects to a shared InMemorySubjectRepository and add time to each other's
+ *     subjects, and the StudyAnalytics totals must match the subjects afterwards.
+ * It exits with status 1 if any check fails.
+ *
+ * Usage: java -cp out SubjectStressTest [threads] [operationsPerThread]
+ */
+public class SubjectStressTest {
+
+    /**
+     * The time field as Subject had it before: a plain long, added to without synchronization.
+     */
+    private static class PlainTime {
+        long time;
+
+        void addTime(long time) {
+            this.time += time;
+        }
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : Math.max(4, Runtime.getRuntime().availableProcessors() * 2);
+        int operations = args.length > 1 ? Integer.parseInt(args[1]) : 1_000_000;
+        System.out.printf("%d threads, %,d operations per thread%n", threads, operations);
+
+        testTime(threads, operations);
+        testTasks(threads, operations / 10);
+        testRepository(threads, operations / 10);
+
+        TestSupport.report();
+    }
+
+    private static void testTime(int threads, int operations) throws InterruptedException {
+        Subject subject = new Subject("Shared");
+        PlainTime plain = new PlainTime();
+        long start = System.nanoTime();
+        run(threads, thread -> {
+            for (int i = 0; i < operations; i++) {
+                subject.addTime(1);
+                plain.addTime(1);
+            }
+        });
+        long expected = (long) threads * operations;
+        System.out.printf("time: expected %,d, Subject %,d, plain long %,d (%,d lost), %.0f ms%n",
+                expected, subject.getTime(), plain.time, expected - plain.time, (System.nanoTime() - start) / 1e6);
+        TestSupport.check(subject.getTime() == expected, "Subject lost time updates");
+    }
+
+    private static void testTasks(int threads, int operations) throws InterruptedException {
+        Subject subject = new Subject("Shared");
+        int tasksPerThread = 4;
+        AtomicBoolean done = new AtomicBoolean();
+        AtomicLong snapshots = new AtomicLong();
+        AtomicBoolean readerFailed = new AtomicBoolean();
+
+        Thread reader = new Thread(() -> {
+            while (!done.get()) {
+                List<String> tasks = subject.getTasks();
+                if (new HashSet<>(tasks).size() != tasks.size()) {
+                    readerFailed.set(true);
+                }
+                // The text is built from one version of the tasks, so it lists each task at most once
+                String text = subject.toString();
+                String listed = text.substring(text.indexOf("Tasks: [") + 8, text.length() - 1);
+                String[] names = listed.isEmpty() ? new String[0] : listed.split(", ");
+                if (names.length > threads * tasksPerThread || new HashSet<>(Arrays.asList(names)).size() != names.length) {
+                    readerFailed.set(true);
+                }
+                snapshots.incrementAndGet();
+            }
+        });
+        reader.start();
+
+        long start = System.nanoTime();
+        run(threads, thread -> {
+            for (int i = 0; i < operations; i++) {
+                String task = "Task " + thread + "-" + (i % tasksPerThread);
+                if (!subject.addTask(task)) {
+                    throw new IllegalStateException("task " + task + " was already there");
+                }
+                if (i % tasksPerThread == tasksPerThread - 1 && i < operations - tasksPerThread) {
+                    for (int t = 0; t < tasksPerThread; t++) {
+                        if (!subject.removeTask("Task " + thread + "-" + t)) {
+                            throw new IllegalStateException("task " + thread + "-" + t + " was lost");
+                        }
+                    }
+                }
+            }
+        });
+        done.set(true);
+        reader.join();
+
+        Set<String> expected = new HashSet<>();
+        for (int thread = 0; thread < threads; thread++) {
+            for (int t = 0; t < Math.min(tasksPerThread, operations); t++) {
+                expected.add("Task " + thread + "-" + t);
+            }
+        }
+        System.out.printf("tasks: expected %d, found %d, %,d consistent snapshots read, %.0f ms%n",
+                expected.size(), subject.getTaskCount(), snapshots.get(), (System.nanoTime() - start) / 1e6);
+        TestSupport.check(new HashSet<>(subject.getTasks()).equals(expected), "tasks were lost or duplicated");
+        TestSupport.check(!readerFailed.get(), "a reader saw an inconsistent task list");
+    }
+
+    private static void testRepository(int threads, int operations) throws InterruptedException {
+        InMemorySubjectRepository repository = new InMemorySubjectRepository();
+        StudyAnalytics analytics = new StudyAnalytics(repository);
+        int subjectsPerThread = 100;
+        AtomicLong added = new AtomicLong();
+
+        long start = System.nanoTime();
+        run(threads, thread -> {
+            SplittableRandom random = new SplittableRandom(thread);
+            for (int i = 0; i < subjectsPerThread; i++) {
+                repository.add(new Subject("Subject " + thread + "-" + i));
+            }
+            for (int i = 0; i < operations; i++) {
+                // Add to any thread's subjects that exist by now
+                Subject subject = repository.findByName("Subject " + random.nextInt(threads) + "-" + random.nextInt(subjectsPerThread));
+                if (subject != null) {
+                    long time = 1 + random.nextInt(1000);
+                    subject.addTime(time);
+                    added.addAndGet(time);
+                }
+            }
+        });
+
+        long sum = 0;
+        for (Subject subject : repository.toList()) {
+            sum += subject.getTime();
+        }
+        System.out.printf("repository: %,d subjects, time added %,d, subjects %,d, analytics %,d, %.0f ms%n",
+                repository.size(), added.get(), sum, analytics.getTotalTime(), (System.nanoTime() - start) / 1e6);
+        TestSupport.check(repository.size() == threads * subjectsPerThread, "subjects were lost");
+        TestSupport.check(sum == added.get(), "time was lost");
+        TestSupport.check(analytics.getTotalTime() == sum && analytics.getSubjectCount() == repository.size(), "analytics do not match the subjects");
+    }
+
+    /**
+     * Runs the work on the given number of threads, started together, and waits for all of them.
+     */
+    private static void run(int threads, Work work) throws InterruptedException {
+        CountDownLatch ready = new CountDownLatch(1);
+        List<Thread> workers = new ArrayList<>();
+        List<Throwable> errors = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int thread = t;
+            Thread worker = new Thread(() -> {
+                try {
+                    ready.await();
+                    work.run(thread);
+                } catch (Throwable e) {
+                    synchronized (errors) {
+                        errors.add(e);
+                    }
+                }
+            });
+            worker.start();
+            workers.add(worker);
+        }
+        ready.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        for (Throwable error : errors) {
+            TestSupport.check(false, error.toString());
+        }
+    }
+
+    private interface Work {
+        void run(int thread) throws Exception;
+    }
+}
@@ -0,0 +1,181 @@
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SyncTest runs three StudyTracker instances on temporary data files and syncs them over sockets on
+ * localhost, checking that:
+ *   - instances that start with different data end up with the union of it;
+ *   - concurrent edits merge without conflicts: time adds up, a task added on one instance survives a
+ *     removal on another that did not see it, and time added to a subject another instance removed is dropped;
+ *   - changes reach an instance through another that relays them;
+ *   - a sync with nothing new sends no deltas, and a sync after one change sends a few hundred bytes
+ *     however many subjects there are;
+ *   - an instance reopened from its files has the same replica and has nothing to exchange;
+ *   - a sync server listens on the loopback interface by default, a sync without a secret is refused,
+ *     and a peer with the wrong secret gets and gives no deltas.
+ * It exits with status 1 if any check fails.
+ *
+ * Usage: java -cp out SyncTest [subjects]
+ */
+public class SyncTest {
+    private static final InetSocketAddress ANY_PORT = new InetSocketAddress(InetAddress.getLoopbackAddress(), 0);
+    private static final String SECRET = "correct horse battery staple";
+
+    private static final SyncServer.Listener QUIET = new SyncServer.Listener() {
+        @Override
+        public void synced(SyncConnection.Result result) {
+        }
+
+        @Override
+        public void syncFailed(IOException e) {
+            TestSupport.check(false, "server sync failed: " + e);
+        }
+    };
+
+    public static void main(String[] args) throws Exception {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 20_000;
+        Path dir = Files.createTempDirectory("sync-test");
+        try {
+            run(dir, count);
+            testAuthentication(dir);
+        } finally {
+            TestSupport.deleteRecursively(dir);
+        }
+        TestSupport.report();
+    }
+
+    private static void run(Path dir, int count) throws IOException {
+        StudyTracker a = open(dir.resolve("a.csv"));
+        StudyTracker b = open(dir.resolve("b.csv"));
+        StudyTracker c = open(dir.resolve("c.csv"));
+
+        // Different data on each machine before sync is enabled
+        for (Subject subject : new SyntheticSubjects(count, 3, 1).generate()) {
+            a.getRepository().add(subject);
+        }
+        a.save(true);
+        Subject math = b.addSubject("Math");
+        b.addTime(math, 60_000);
+        b.addTask(math, "Homework");
+        b.addTask(b.addSubject("Art"), "Sketch");
+
+        for (StudyTracker tracker : List.of(a, b, c)) {
+            tracker.getSync().enable();
+        }
+        a.getSync().start(ANY_PORT, List.of(), 0, SECRET, Runnable::run, QUIET);
+        InetSocketAddress serverA = new InetSocketAddress(InetAddress.getLoopbackAddress(), port(a));
+
+        long start = System.nanoTime();
+        SyncConnection.Result first = b.getSync().sync(serverA, SECRET);
+        System.out.printf("initial sync: %s, %.0f ms%n", first, (System.nanoTime() - start) / 1e6);
+        TestSupport.check(same(a, b), "instances differ after the initial sync");
+        TestSupport.check(a.getRepository().size() == count + 2, "subjects were lost in the initial sync");
+
+        // Concurrent edits on both sides
+        a.addTime(a.getRepository().findByName("math"), 30_000);
+        b.addTime(b.getRepository().findByName("Math"), 15_000);
+        b.removeTask(b.getRepository().findByName("Math"), "Homework");
+        a.addTask(a.getRepository().findByName("Math"), "Reading");
+        a.removeSubject(a.getRepository().findByName("Art"));
+        b.addTime(b.getRepository().findByName("Art"), 5_000);
+        b.getSync().sync(serverA, SECRET);
+        TestSupport.check(same(a, b), "instances differ after concurrent edits");
+        Subject merged = a.getRepository().findByName("Math");
+        TestSupport.check(merged != null && merged.getTime() == 105_000, "time did not add up: " + merged);
+        TestSupport.check(merged != null && merged.hasTask("Reading") && !merged.hasTask("Homework"), "tasks did not merge: " + merged);
+        TestSupport.check(!b.getRepository().containsName("Art"), "a removed subject came back");
+
+        // C only ever talks to B, which relays A's changes
+        SyncConnection.Result relayed = c.getSync().sync(new InetSocketAddress(InetAddress.getLoopbackAddress(), startServer(b)), SECRET);
+        TestSupport.check(same(a, c), "changes were not relayed");
+        System.out.printf("relay to a third instance: %s%n", relayed);
+
+        SyncConnection.Result idle = b.getSync().sync(serverA, SECRET);
+        TestSupport.check(idle.getDeltasSent() == 0 && idle.getDeltasReceived() == 0, "a sync without changes exchanged " + idle);
+        System.out.printf("sync without changes: %s%n", idle);
+
+        b.addTime(b.getRepository().findByName("Math"), 1_000);
+        SyncConnection.Result small = b.getSync().sync(serverA, SECRET);
+        System.out.printf("sync after one change: %s%n", small);
+        TestSupport.check(small.getDeltasSent() == 1 && small.getBytesSent() < 1_000, "one change cost " + small);
+
+        // Reopen B from its files
+        b.save(false);
+        b.close();
+        StudyTracker reopened = open(dir.resolve("b.csv"));
+        reopened.getSync().enable();
+        TestSupport.check(same(a, reopened), "the reopened instance differs");
+        SyncConnection.Result afterRestart = reopened.getSync().sync(serverA, SECRET);
+        TestSupport.check(afterRestart.getDeltasSent() == 0 && afterRestart.getDeltasReceived() == 0, "the reopened instance exchanged " + afterRestart);
+
+        reopened.close();
+        a.close();
+        c.close();
+    }
+
+    private static void testAuthentication(Path dir) throws Exception {
+        StudyTracker server = open(dir.resolve("server.csv"));
+        StudyTracker client = open(dir.resolve("client.csv"));
+        server.addSubject("Math");
+        client.addSubject("Art");
+        client.getSync().enable();
+        CountDownLatch refused = new CountDownLatch(1);
+        server.getSync().start(SyncServer.bindAddress(null, 0), List.of(), 0, SECRET, Runnable::run, new SyncServer.Listener() {
+            @Override
+            public void synced(SyncConnection.Result result) {
+                TestSupport.check(false, "a sync with the wrong secret was accepted");
+            }
+
+            @Override
+            public void syncFailed(IOException e) {
+                refused.countDown();
+            }
+        });
+        TestSupport.check(server.getSync().getServer() != null, "the sync server did not start");
+        InetSocketAddress address = new InetSocketAddress(InetAddress.getLoopbackAddress(), port(server));
+        TestSupport.check(SyncServer.bindAddress(null, 0).getAddress().isLoopbackAddress(), "the default sync address is not the loopback interface");
+
+        try {
+            client.getSync().sync(address, "");
+            TestSupport.check(false, "a sync without a secret was started");
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+        try {
+            client.getSync().sync(address, "wrong " + SECRET);
+            TestSupport.check(false, "a sync with the wrong secret succeeded");
+        } catch (IOException e) {
+            // Expected
+        }
+        TestSupport.check(!client.getRepository().containsName("Math") && !server.getRepository().containsName("Art"),
+                "deltas were exchanged with the wrong secret");
+        TestSupport.check(refused.await(10, TimeUnit.SECONDS), "the server did not report the refused sync");
+        server.close();
+        client.close();
+    }
+
+    private static StudyTracker open(Path dataFile) throws IOException {
+        StudyTracker tracker = new StudyTracker(dataFile);
+        tracker.load();
+        return tracker;
+    }
+
+    private static int startServer(StudyTracker tracker) throws IOException {
+        tracker.getSync().start(ANY_PORT, List.of(), 0, SECRET, Runnable::run, QUIET);
+        return port(tracker);
+    }
+
+    private static int port(StudyTracker tracker) {
+        return tracker.getSync().getServer().getPort();
+    }
+
+    private static boolean same(StudyTracker first, StudyTracker second) {
+        return TestSupport.contents(first.getRepository()).equals(TestSupport.contents(second.getRepository()));
+    }
+}
@@ -0,0 +1,99 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * SyntheticSubjects generates reproducible study data for the benchmarks: unique subject names,
+ * skewed study times and a varying number of tasks per subject drawn from a small vocabulary, the way
+ * real task names repeat. The same seed always produces the same data.
+ */
+public class SyntheticSubjects {
+    private static final String[] TASK_NAMES = {
+            "Homework", "Reading", "Review", "Lab Report", "Exam Prep", "Essay", "Problem Set", "Flashcards",
+            "Lecture Notes", "Project", "Quiz", "Group Study"
+    };
+
+    private final int count;
+    private final int maxTasks;
+    private final long seed;
+
+    /**
+     * @param count The number of subjects.
+     * @param maxTasks The largest number of tasks on one subject; each subject gets 0 to maxTasks.
+     * @param seed The random seed.
+     */
+    public SyntheticSubjects(int count, int maxTasks, long seed) {
+        this.count = count;
+        this.maxTasks = maxTasks;
+        this.seed = seed;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * Builds every subject in memory.
+     *
+     * @return The generated subjects.
+     */
+    public List<Subject> generate() {
+        SplittableRandom random = new SplittableRandom(seed);
+        List<Subject> subjects = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Subject subject = new Subject(name(i), time(random));
+            int tasks = random.nextInt(maxTasks + 1);
+            for (int t = 0; t < tasks; t++) {
+                subject.addTask(task(random));
+            }
+            subjects.add(subject);
+        }
+        return subjects;
+    }
+
+    /**
+     * Writes the subjects straight to a CSV file in the format StudyTrackerGUI saves, without holding
+     * them in memory, so files with tens of millions of subjects can be generated on a small heap.
+     *
+     * @param path The file to write.
+     * @throws IOException If the file could not be written.
+     */
+    public void writeCsv(Path path) throws IOException {
+        SplittableRandom random = new SplittableRandom(seed);
+        try (BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+            // The generated names never need quoting, so they are written as is
+            writer.write(SubjectCsvReader.HEADER);
+            writer.write('\n');
+            for (int i = 0; i < count; i++) {
+                writer.write(name(i));
+                writer.write(',');
+                writer.write(Long.toString(time(random)));
+                int tasks = random.nextInt(maxTasks + 1);
+                for (int t = 0; t < tasks; t++) {
+                    writer.write(',');
+                    writer.write(task(random));
+                }
+                writer.write('\n');
+            }
+        }
+    }
+
+    private static String name(int i) {
+        return "Subject " + i;
+    }
+
+    private static long time(SplittableRandom random) {
+        // Most subjects get a little time and a few get a lot, up to about 100 hours
+        double skewed = Math.pow(random.nextDouble(), 3);
+        return (long) (skewed * 360_000_000L);
+    }
+
+    private static String task(SplittableRandom random) {
+        return TASK_NAMES[random.nextInt(TASK_NAMES.length)];
+    }
+}
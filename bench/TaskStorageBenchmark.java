@@ -0,0 +1,146 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * TaskStorageBenchmark measures the heap retained by a loaded data set with the interned int[] task
+ * storage of Subject, against the previous layout where every subject owned an ArrayList of its own
+ * task strings, as the CSV reader created them. It then times task lookups and removals in both layouts.
+ *
+ * Run with a fixed heap so the numbers are comparable, e.g.
+ *   java -Xms2g -Xmx2g -cp out TaskStorageBenchmark [subjects] [maxTasks]
+ */
+public class TaskStorageBenchmark {
+
+    /**
+     * The fields Subject had before tasks were interned.
+     */
+    private static class ListSubject {
+        final String name;
+        long time;
+        final ArrayList<String> tasks;
+        String text;
+        Object changeListener;
+
+        ListSubject(String name, long time, ArrayList<String> tasks) {
+            this.name = name;
+            this.time = time;
+            this.tasks = tasks;
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int maxTasks = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+
+        Path file = Files.createTempFile("task-storage", ".csv");
+        try {
+            new SyntheticSubjects(count, maxTasks, 42).writeCsv(file);
+
+            long before = usedHeap();
+            List<ListSubject> listSubjects = readLists(file);
+            long listBytes = usedHeap() - before;
+
+            before = usedHeap();
+            List<Subject> subjects = readSubjects(file);
+            long internedBytes = usedHeap() - before;
+
+            long tasks = 0;
+            for (Subject subject : subjects) {
+                tasks += subject.getTaskCount();
+            }
+            System.out.printf("%,d subjects, %,d tasks, %d distinct task names%n", subjects.size(), tasks, TaskDictionary.size());
+            System.out.printf("ArrayList<String> tasks: %,12d bytes (%.1f per subject)%n", listBytes, (double) listBytes / count);
+            System.out.printf("interned int[] tasks:    %,12d bytes (%.1f per subject)%n", internedBytes, (double) internedBytes / count);
+            System.out.printf("reduction: %.1f%%%n", 100.0 * (listBytes - internedBytes) / listBytes);
+
+            for (int iteration = 1; iteration <= 3; iteration++) {
+                System.out.printf("iteration %d: lookup+remove ArrayList %6.1f ns/op, interned %6.1f ns/op%n",
+                        iteration, timeLists(listSubjects), timeSubjects(subjects));
+            }
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    private static List<Subject> readSubjects(Path file) throws IOException {
+        List<Subject> subjects = new ArrayList<>();
+        try (SubjectCsvReader reader = new SubjectCsvReader(Files.newBufferedReader(file, StandardCharsets.UTF_8))) {
+            Subject subject;
+            while ((subject = reader.next()) != null) {
+                subjects.add(subject);
+            }
+        }
+        return subjects;
+    }
+
+    /**
+     * Reads the file into the old layout, with a new String for every task as the old reader made.
+     */
+    private static List<ListSubject> readLists(Path file) throws IOException {
+        List<ListSubject> subjects = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            reader.readLine();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] parts = line.split(",");
+                ArrayList<String> tasks = new ArrayList<>();
+                for (int i = 2; i < parts.length; i++) {
+                    if (!tasks.contains(parts[i])) {
+                        tasks.add(new String(parts[i].toCharArray()));
+                    }
+                }
+                subjects.add(new ListSubject(parts[0], Long.parseLong(parts[1]), tasks));
+            }
+        }
+        return subjects;
+    }
+
+    private static double timeLists(List<ListSubject> subjects) {
+        long start = System.nanoTime();
+        int hits = 0;
+        for (ListSubject subject : subjects) {
+            if (subject.tasks.contains("Review")) {
+                hits++;
+            }
+            if (subject.tasks.remove("Homework")) {
+                subject.tasks.add("Homework");
+            }
+        }
+        return report(start, subjects.size(), hits);
+    }
+
+    private static double timeSubjects(List<Subject> subjects) {
+        long start = System.nanoTime();
+        int hits = 0;
+        for (Subject subject : subjects) {
+            if (subject.hasTask("Review")) {
+                hits++;
+            }
+            if (subject.removeTask("Homework")) {
+                subject.addTask("Homework");
+            }
+        }
+        return report(start, subjects.size(), hits);
+    }
+
+    private static double report(long start, int operations, int hits) {
+        double nanos = (double) (System.nanoTime() - start) / operations;
+        if (hits < 0) {
+            System.out.println(hits);
+        }
+        return nanos;
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,77 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.stream.Stream;
+
+/**
+ * TestSupport holds what the tests share: recording failed checks, reporting PASSED or FAILED with the
+ * exit status, comparing the subjects of two repositories and removing temporary directories.
+ */
+public class TestSupport {
+    // Set from listener threads too
+    private static volatile boolean failed = false;
+
+    private TestSupport() {
+    }
+
+    /**
+     * Prints the message and marks the test as failed if the condition does not hold. The test goes on,
+     * so one run reports every failed check.
+     *
+     * @param condition The condition that should hold.
+     * @param message What went wrong.
+     */
+    static void check(boolean condition, String message) {
+        if (!condition) {
+            System.out.println("  check failed: " + message);
+            failed = true;
+        }
+    }
+
+    static boolean hasFailed() {
+        return failed;
+    }
+
+    /**
+     * Prints PASSED or FAILED, and exits with status 1 if any check failed.
+     */
+    static void report() {
+        System.out.println(failed ? "FAILED" : "PASSED");
+        if (failed) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Maps each subject's normalized name to its time and sorted tasks, so two repositories can be
+     * compared whatever the order of their subjects and tasks.
+     *
+     * @param repository The subjects.
+     * @return The subjects as name to "time [tasks]".
+     */
+    static Map<String, String> contents(SubjectRepository repository) {
+        Map<String, String> contents = new TreeMap<>();
+        for (Subject subject : repository.toList()) {
+            contents.put(SubjectRepository.normalize(subject.getName()), subject.getTime() + " " + new TreeSet<>(subject.getTasks()));
+        }
+        return contents;
+    }
+
+    /**
+     * Deletes a directory and everything in it.
+     *
+     * @param dir The directory.
+     * @throws IOException If a file cannot be deleted.
+     */
+    static void deleteRecursively(Path dir) throws IOException {
+        try (Stream<Path> files = Files.walk(dir)) {
+            for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+}
@@ -0,0 +1,80 @@
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * TimerRecoveryTest stops a timer with autosave running, waits until autosave has written the session
+ * to the session log and then reads the files as a start after a crash would, checking that:
+ *   - the stopped session's time is in the data, since the session is already in the session log and
+ *     recoverTimers() does not add it again;
+ *   - the time is counted once, whether or not the timer checkpoint still had the timer;
+ *   - the same holds when the timer is stopped while a snapshot is waiting to be written, which holds
+ *     back the changes made after it was prepared.
+ * It exits with status 1 if any check fails.
+ *
+ * Usage: java -cp out TimerRecoveryTest
+ */
+public class TimerRecoveryTest {
+    public static void main(String[] args) throws Exception {
+        Path dir = Files.createTempDirectory("timer-recovery-test");
+        try {
+            testCrashAfterStop(dir.resolve("data.csv"), false);
+            testCrashAfterStop(dir.resolve("compacting.csv"), true);
+        } finally {
+            TestSupport.deleteRecursively(dir);
+        }
+        TestSupport.report();
+    }
+
+    private static void testCrashAfterStop(Path dataFile, boolean compacting) throws Exception {
+        Files.write(dataFile, List.of(SubjectCsvReader.HEADER, "Math,100"), StandardCharsets.UTF_8);
+        StudyTracker running = new StudyTracker(dataFile);
+        running.load();
+        running.startAutosave(new AutosaveScheduler.Listener() {
+            @Override
+            public void saved() {
+            }
+
+            @Override
+            public void saveFailed(IOException e) {
+            }
+        });
+        Subject math = running.getRepository().findByName("Math");
+        running.startTimer(math);
+        Thread.sleep(50);
+        if (compacting) {
+            running.snapshotInBackground(e -> {
+            });
+        }
+        TimerEngine.Timing timing = running.stopTimer(math);
+        TestSupport.check(awaitSession(dataFile), "the session was not written");
+
+        StudyTracker restarted = new StudyTracker(dataFile);
+        restarted.load();
+        List<TimerCheckpoint.Entry> recovered = restarted.recoverTimers();
+        long time = restarted.getRepository().findByName("Math").getTime();
+        TestSupport.check(restarted.getSessionLog().hasSession("Math", timing.getStartMillis()), "the session was not logged");
+        TestSupport.check(recovered.isEmpty(), "a stopped timer was recovered: " + recovered.size());
+        TestSupport.check(time == 100 + timing.getElapsedMillis(), "the time after a crash is " + time + ", expected " + (100 + timing.getElapsedMillis()));
+        restarted.close();
+        running.close();
+    }
+
+    /**
+     * Waits until the session log holds the subject and its first session, which stopTimer() leaves to
+     * autosave.
+     */
+    private static boolean awaitSession(Path dataFile) throws InterruptedException, IOException {
+        Path sessions = dataFile.resolveSibling(dataFile.getFileName() + ".sessions");
+        long sessionBytes = 1 + 2 * Integer.BYTES + "Math".length() + 1 + Integer.BYTES + 2 * Long.BYTES;
+        for (int i = 0; i < 1000; i++) {
+            if (Files.exists(sessions) && Files.size(sessions) >= sessionBytes) {
+                return true;
+            }
+            Thread.sleep(10);
+        }
+        return false;
+    }
+}
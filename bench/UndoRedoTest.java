@@ -0,0 +1,160 @@
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * UndoRedoTest makes edits through StudyTracker, undoes and redoes them and checks that:
+ *   - the history ring keeps only the newest edits once it wraps, and undo and redo walk it in order;
+ *   - a new edit discards what could have been redone;
+ *   - undoing a removal brings the subject back with its time and tasks;
+ *   - an added subject cannot be undone while it is being timed;
+ *   - after every test the data file and its journal, reopened as a restart does, hold the same
+ *     subjects as the tracker.
+ * It exits with status 1 if any check fails.
+ *
+ * Usage: java -cp out UndoRedoTest
+ */
+public class UndoRedoTest {
+    public static void main(String[] args) throws Exception {
+        Path dir = Files.createTempDirectory("undo-redo-test");
+        try {
+            testRing();
+            testRingThroughTracker(dir.resolve("ring.csv"));
+            testNewEditClearsRedo(dir.resolve("redo.csv"));
+            testUndoRemoval(dir.resolve("removal.csv"));
+            testTimedSubject(dir.resolve("timed.csv"));
+        } finally {
+            TestSupport.deleteRecursively(dir);
+        }
+        TestSupport.report();
+    }
+
+    private static void testRing() {
+        UndoHistory history = new UndoHistory(4);
+        for (int i = 1; i <= 10; i++) {
+            history.record(SubjectChange.addTime("Math", i));
+        }
+        // Undo part of the way, record again and wrap once more past the start of the array
+        history.undo();
+        history.undo();
+        history.record(SubjectChange.addTime("Math", 11));
+        history.record(SubjectChange.addTime("Math", 12));
+        history.record(SubjectChange.addTime("Math", 13));
+        long[] expected = {13, 12, 11, 8};
+        for (long time : expected) {
+            UndoHistory.Entry entry = history.undo();
+            TestSupport.check(entry != null && entry.getChange().getTime() == time, "undo returned " + describe(entry) + ", expected time " + time);
+        }
+        TestSupport.check(history.undo() == null && !history.canUndo(), "the ring kept more than its capacity");
+        for (int i = expected.length - 1; i >= 0; i--) {
+            UndoHistory.Entry entry = history.redo();
+            TestSupport.check(entry != null && entry.getChange().getTime() == expected[i], "redo returned " + describe(entry) + ", expected time " + expected[i]);
+        }
+        TestSupport.check(history.redo() == null && !history.canRedo(), "redo went past the newest edit");
+    }
+
+    private static void testRingThroughTracker(Path dataFile) throws IOException {
+        StudyTracker tracker = open(dataFile);
+        Subject math = tracker.addSubject("Math");
+        int edits = 2_500;
+        for (int i = 0; i < edits; i++) {
+            tracker.addTime(math, 1);
+        }
+        int undone = 0;
+        while (tracker.undo()) {
+            undone++;
+        }
+        TestSupport.check(undone > 0 && undone < edits, undone + " edits were undone out of " + (edits + 1));
+        TestSupport.check(tracker.getRepository().findByName("Math") == math && math.getTime() == edits - undone,
+                "the oldest edits were not the ones dropped: time " + math.getTime());
+        int redone = 0;
+        while (tracker.redo()) {
+            redone++;
+        }
+        TestSupport.check(redone == undone && math.getTime() == edits, "redo gave back " + redone + " edits and time " + math.getTime());
+        checkReopened(tracker, dataFile);
+    }
+
+    private static void testNewEditClearsRedo(Path dataFile) throws IOException {
+        StudyTracker tracker = open(dataFile);
+        Subject math = tracker.addSubject("Math");
+        tracker.addTime(math, 10);
+        tracker.addTask(math, "Homework");
+        tracker.undo();
+        tracker.undo();
+        TestSupport.check(tracker.canRedo() && "Add Time to Math".equals(tracker.getRedoDescription()),
+                "the redo is " + tracker.getRedoDescription());
+        tracker.addTask(math, "Reading");
+        TestSupport.check(!tracker.canRedo() && !tracker.redo(), "an edit did not discard the redo");
+        TestSupport.check(math.getTime() == 0 && math.getTasks().equals(List.of("Reading")), "the subject is " + math.getTime() + " " + math.getTasks());
+        TestSupport.check("Add Task Reading to Math".equals(tracker.getUndoDescription()), "the undo is " + tracker.getUndoDescription());
+        checkReopened(tracker, dataFile);
+    }
+
+    private static void testUndoRemoval(Path dataFile) throws IOException {
+        StudyTracker tracker = open(dataFile);
+        Subject math = tracker.addSubject("Math");
+        tracker.addTime(math, 100);
+        tracker.addTask(math, "Homework");
+        tracker.addTask(math, "Reading");
+        tracker.addSubject("Physics");
+        tracker.removeSubject(math);
+        TestSupport.check(tracker.undo(), "the removal was not undone");
+        Subject restored = tracker.getRepository().findByName("Math");
+        TestSupport.check(restored != null && restored.getTime() == 100 && restored.getTasks().equals(List.of("Homework", "Reading")),
+                "the subject was not restored as it was: " + (restored == null ? null : restored.getTime() + " " + restored.getTasks()));
+        TestSupport.check(tracker.redo() && !tracker.getRepository().containsName("Math"), "the removal was not redone");
+        TestSupport.check(tracker.undo() && tracker.getRepository().findByName("Math").getTasks().size() == 2, "the second undo lost the tasks");
+        checkReopened(tracker, dataFile);
+    }
+
+    private static void testTimedSubject(Path dataFile) throws Exception {
+        StudyTracker tracker = open(dataFile);
+        Subject timed = tracker.addSubject("Timed");
+        tracker.startTimer(timed);
+        try {
+            tracker.undo();
+            TestSupport.check(false, "adding a subject being timed was undone");
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+        TestSupport.check(tracker.getRepository().findByName("Timed") == timed && tracker.canUndo(),
+                "a refused undo changed the subject or the history");
+        Thread.sleep(5);
+        tracker.stopTimer(timed);
+        long time = timed.getTime();
+        TestSupport.check(tracker.undo() && !tracker.getRepository().containsName("Timed"), "the addition was not undone after the timer stopped");
+        TestSupport.check(tracker.redo() && tracker.getRepository().findByName("Timed").getTime() == time,
+                "redo did not bring back the timed time " + time);
+        checkReopened(tracker, dataFile);
+    }
+
+    private static StudyTracker open(Path dataFile) throws IOException {
+        Files.write(dataFile, List.of(SubjectCsvReader.HEADER), StandardCharsets.UTF_8);
+        StudyTracker tracker = new StudyTracker(dataFile);
+        tracker.load();
+        return tracker;
+    }
+
+    /**
+     * Saves and closes the tracker and checks that a tracker loading the data file and replaying its
+     * journal ends up with the same subjects.
+     */
+    private static void checkReopened(StudyTracker tracker, Path dataFile) throws IOException {
+        Map<String, String> expected = TestSupport.contents(tracker.getRepository());
+        tracker.saveNow();
+        tracker.close();
+        StudyTracker reopened = new StudyTracker(dataFile);
+        reopened.load();
+        Map<String, String> actual = TestSupport.contents(reopened.getRepository());
+        TestSupport.check(actual.equals(expected), dataFile.getFileName() + ": the journal replays to " + actual + ", expected " + expected);
+        reopened.close();
+    }
+
+    private static String describe(UndoHistory.Entry entry) {
+        return entry == null ? "nothing" : entry.describe() + " " + entry.getChange().getTime();
+    }
+}
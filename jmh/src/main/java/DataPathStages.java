@@ -0,0 +1,121 @@
+import java.io.FileReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import javax.swing.JList;
+import studytracker.jmh.DataPath;
+
+/**
+ * DataPathStages runs the stages of the data path measured by studytracker.jmh.DataPathBenchmark on
+ * data generated by SyntheticSubjects: loading the CSV and binary formats, saving them, generating
+ * the list row text, duplicate checks while adding subjects, and building the analytics.
+ */
+public class DataPathStages implements DataPath {
+    private static final long SEED = 42;
+
+    private Path csv;
+    private Path bin;
+    private Path out;
+    private List<Subject> subjects;
+    private SubjectListCellRenderer renderer;
+    private JList<Subject> list;
+    private SubjectListModel model;
+
+    @Override
+    public void setUp(int count, int maxTasks) throws IOException {
+        SyntheticSubjects data = new SyntheticSubjects(count, maxTasks, SEED);
+        csv = Files.createTempFile("subjects", ".csv");
+        bin = Files.createTempFile("subjects", ".bin");
+        out = Files.createTempFile("subjects-out", ".tmp");
+        data.writeCsv(csv);
+        subjects = data.generate();
+        BinarySnapshot.write(bin, subjects);
+
+        renderer = new SubjectListCellRenderer(new TimerEngine());
+        list = new JList<>();
+        // A copy of its own, since rendering detaches the subjects from their model
+        model = new SubjectListModel();
+        model.addAll(data.generate());
+    }
+
+    @Override
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(csv);
+        Files.deleteIfExists(bin);
+        Files.deleteIfExists(out);
+    }
+
+    @Override
+    public long loadCsv() throws IOException {
+        List<Subject> loaded = new ArrayList<>();
+        try (SubjectCsvReader reader = new SubjectCsvReader(new FileReader(csv.toFile(), StandardCharsets.UTF_8))) {
+            Subject subject;
+            while ((subject = reader.next()) != null) {
+                loaded.add(subject);
+            }
+        }
+        return loaded.size();
+    }
+
+    @Override
+    public long loadBinary() throws IOException {
+        // Opening is lazy, so read what the list and analytics touch on every row
+        BinarySnapshot snapshot = BinarySnapshot.open(bin);
+        long total = 0;
+        for (int i = 0; i < snapshot.size(); i++) {
+            total += snapshot.nameAt(i).length() + snapshot.timeAt(i) + snapshot.taskCountAt(i);
+        }
+        return total;
+    }
+
+    @Override
+    public long saveCsv() throws IOException {
+        SubjectStore.writeCsv(out, subjects);
+        return Files.size(out);
+    }
+
+    @Override
+    public long saveBinary() throws IOException {
+        BinarySnapshot.write(out, subjects);
+        return Files.size(out);
+    }
+
+    @Override
+    public long renderText() {
+        // Adding no time clears each subject's cached text, so every row's text is generated again
+        for (Subject subject : subjects) {
+            subject.setChangeListener(null);
+            subject.addTime(0);
+        }
+        long total = 0;
+        for (int i = 0; i < subjects.size(); i++) {
+            renderer.getListCellRendererComponent(list, subjects.get(i), i, false, false);
+            total += renderer.getText().length();
+        }
+        return total;
+    }
+
+    @Override
+    public long duplicates() {
+        SubjectListModel added = new SubjectListModel();
+        long duplicates = 0;
+        for (Subject subject : subjects) {
+            if (added.containsName(subject.getName())) {
+                duplicates++;
+            } else {
+                added.addElement(subject);
+            }
+        }
+        return duplicates + added.size();
+    }
+
+    @Override
+    public long analytics() {
+        StudyAnalytics analytics = new StudyAnalytics(model);
+        model.removeSubjectModelListener(analytics);
+        return analytics.getTotalTime() + analytics.getMostStudied(10).size() + analytics.getLeastStudied(10).size();
+    }
+}
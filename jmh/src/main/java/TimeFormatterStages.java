@@ -0,0 +1,100 @@
+import studytracker.jmh.TimeFormatting;
+
+/**
+ * TimeFormatterStages runs the formatting measured by studytracker.jmh.TimeFormatterBenchmark: the
+ * TimeFormatter paths and the original implementations they replaced.
+ */
+public class TimeFormatterStages implements TimeFormatting {
+    private final StringBuilder reused = new StringBuilder(64);
+
+    @Override
+    public void verify() {
+        StringBuilder builder = new StringBuilder();
+        long[] samples = {0, 999, 1000, 59_999, 60_000, 3_600_000, 86_399_999, 86_400_000, 90_061_001, 400 * 86_400_000L, -1, -61_000, -90_000_000};
+        for (long sample : samples) {
+            for (long ms = sample - 2000; ms <= sample + 2000; ms += 250) {
+                check(legacyFormatDuration(ms), TimeFormatter.formatDuration(ms), ms);
+                check(legacyFormatDuration(ms), TimeFormatter.formatDuration(ms), ms); // cached
+                builder.setLength(0);
+                check(legacyFormatDuration(ms), TimeFormatter.formatDuration(ms, builder).toString(), ms);
+                check(legacyFormatClock(ms), TimeFormatter.formatClock(ms), ms);
+            }
+        }
+    }
+
+    @Override
+    public CharSequence legacyDuration(long milliseconds) {
+        return legacyFormatDuration(milliseconds);
+    }
+
+    @Override
+    public CharSequence cachedDuration(long milliseconds) {
+        return TimeFormatter.formatDuration(milliseconds);
+    }
+
+    @Override
+    public CharSequence appendDuration(long milliseconds) {
+        reused.setLength(0);
+        return TimeFormatter.formatDuration(milliseconds, reused);
+    }
+
+    @Override
+    public CharSequence legacyClock(long milliseconds) {
+        return legacyFormatClock(milliseconds);
+    }
+
+    @Override
+    public CharSequence clock(long milliseconds) {
+        return TimeFormatter.formatClock(milliseconds);
+    }
+
+    @Override
+    public CharSequence appendClock(long milliseconds) {
+        reused.setLength(0);
+        return TimeFormatter.formatClock(milliseconds, reused);
+    }
+
+    private static void check(String expected, String actual, long ms) {
+        if (!expected.equals(actual)) {
+            throw new AssertionError(ms + ": expected \"" + expected + "\" but was \"" + actual + "\"");
+        }
+    }
+
+    private static String legacyFormatClock(long milliseconds) {
+        long seconds = milliseconds / 1000;
+        return String.format("%02d:%02d:%02d", (seconds / 3600) % 24, (seconds / 60) % 60, seconds % 60);
+    }
+
+    private static String legacyFormatDuration(long milliseconds) {
+        long secondsInMilli = 1000;
+        long minutesInMilli = secondsInMilli * 60;
+        long hoursInMilli = minutesInMilli * 60;
+        long daysInMilli = hoursInMilli * 24;
+
+        long days = milliseconds / daysInMilli;
+        milliseconds %= daysInMilli;
+        long hours = milliseconds / hoursInMilli;
+        milliseconds %= hoursInMilli;
+        long minutes = milliseconds / minutesInMilli;
+        milliseconds %= minutesInMilli;
+        long seconds = milliseconds / secondsInMilli;
+
+        StringBuilder timeString = new StringBuilder();
+        if (days > 0) {
+            timeString.append(days).append(" days ");
+        }
+        if (hours > 0 || days > 0) {
+            timeString.append(hours).append(" hours ");
+        }
+        if (minutes > 0 || hours > 0 || days > 0) {
+            timeString.append(minutes).append(" minutes ");
+        }
+        if (seconds > 0 || minutes > 0 || hours > 0 || days > 0) {
+            timeString.append(seconds).append(" seconds");
+        }
+        if (timeString.length() == 0) {
+            timeString.append(seconds).append(" seconds");
+        }
+        return timeString.toString().trim();
+    }
+}
@@ -0,0 +1,45 @@
+package studytracker.jmh;
+
+import java.io.IOException;
+
+/**
+ * DataPath runs the stages of the data path on one generated data set. Each stage returns a value
+ * derived from its work, which the benchmark returns so the JIT cannot drop the work.
+ * It is implemented by DataPathStages; see Stages.
+ */
+public interface DataPath {
+
+    /**
+     * Generates the data set: the subjects in memory, as a CSV file and as a BinarySnapshot.
+     *
+     * @param subjects The number of subjects.
+     * @param maxTasks The largest number of tasks on one subject.
+     * @throws IOException If the files could not be written.
+     */
+    void setUp(int subjects, int maxTasks) throws IOException;
+
+    /**
+     * Deletes the files written by setUp() and the stages.
+     *
+     * @throws IOException If a file could not be deleted.
+     */
+    void tearDown() throws IOException;
+
+    long loadCsv() throws IOException;
+
+    long loadBinary() throws IOException;
+
+    long saveCsv() throws IOException;
+
+    long saveBinary() throws IOException;
+
+    long renderText();
+
+    long duplicates();
+
+    long analytics();
+
+    static DataPath create() {
+        return Stages.create(DataPath.class, "DataPathStages");
+    }
+}
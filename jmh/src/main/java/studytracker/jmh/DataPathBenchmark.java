@@ -0,0 +1,88 @@
+package studytracker.jmh;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * DataPathBenchmark measures every stage of the data path on generated data sets: loading the CSV
+ * and binary formats, saving them, generating the list row text, duplicate checks while adding
+ * subjects, and building the analytics. One operation is one pass over the whole data set, so rows
+ * per second is the score times the number of subjects. Run with -prof gc for the allocation rate
+ * and bytes allocated per pass (gc.alloc.rate.norm).
+ *
+ * Data sets of 10M subjects need a larger heap: -p subjects=10000000 -jvmArgsAppend -Xmx12g.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g", "-Djava.awt.headless=true"})
+public class DataPathBenchmark {
+    @Param({"1000", "100000", "1000000"})
+    public int subjects;
+
+    @Param({"2", "8"})
+    public int maxTasks;
+
+    private DataPath stages;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        stages = DataPath.create();
+        stages.setUp(subjects, maxTasks);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        stages.tearDown();
+    }
+
+    @Benchmark
+    public long loadCsv() throws IOException {
+        return stages.loadCsv();
+    }
+
+    @Benchmark
+    public long loadBinary() throws IOException {
+        return stages.loadBinary();
+    }
+
+    @Benchmark
+    public long saveCsv() throws IOException {
+        return stages.saveCsv();
+    }
+
+    @Benchmark
+    public long saveBinary() throws IOException {
+        return stages.saveBinary();
+    }
+
+    @Benchmark
+    public long renderText() {
+        return stages.renderText();
+    }
+
+    @Benchmark
+    public long duplicates() {
+        return stages.duplicates();
+    }
+
+    @Benchmark
+    public long analytics() {
+        return stages.analytics();
+    }
+}
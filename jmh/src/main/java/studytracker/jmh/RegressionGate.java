@@ -0,0 +1,190 @@
+package studytracker.jmh;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * RegressionGate compares a JMH run against a baseline run, both written with -rf csv, and exits
+ * with status 1 if a benchmark regressed beyond the tolerances:
+ *   - its score is worse by more than --tolerance (default 0.20): lower throughput, or a higher time
+ *     per operation in the time-based modes;
+ *   - it allocates more bytes per operation (gc.alloc.rate.norm, from -prof gc) than --alloc-tolerance
+ *     (default 0.10) allows, plus 64 bytes for allocation the JVM does on its own.
+ * Allocation is deterministic, so it makes a much tighter gate than the score on a noisy machine.
+ * Benchmarks that are only in one of the files are skipped.
+ *
+ * Usage: java -cp jmh/target/benchmarks.jar studytracker.jmh.RegressionGate baseline.csv results.csv
+ *            [--tolerance 0.20] [--alloc-tolerance 0.10]
+ */
+public class RegressionGate {
+    private static final String ALLOCATION = "gc.alloc.rate.norm";
+    private static final double ALLOCATION_SLACK_BYTES = 64;
+
+    /**
+     * One row of a JMH CSV result file.
+     */
+    private static class Result {
+        final String benchmark;
+        final String metric;
+        final String mode;
+        final double score;
+        final String unit;
+        final String params;
+
+        Result(String benchmark, String metric, String mode, double score, String unit, String params) {
+            this.benchmark = benchmark;
+            this.metric = metric;
+            this.mode = mode;
+            this.score = score;
+            this.unit = unit;
+            this.params = params;
+        }
+
+        String key() {
+            return benchmark + (metric != null ? ":" + metric : "") + (params.isEmpty() ? "" : " " + params);
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: RegressionGate baseline.csv results.csv [--tolerance 0.20] [--alloc-tolerance 0.10]");
+            System.exit(2);
+        }
+        double tolerance = 0.20;
+        double allocTolerance = 0.10;
+        for (int i = 2; i < args.length; i++) {
+            switch (args[i]) {
+                case "--tolerance":
+                    tolerance = Double.parseDouble(args[++i]);
+                    break;
+                case "--alloc-tolerance":
+                    allocTolerance = Double.parseDouble(args[++i]);
+                    break;
+                default:
+                    System.err.println("Unknown option: " + args[i]);
+                    System.exit(2);
+            }
+        }
+        Map<String, Result> baseline = read(Path.of(args[0]));
+        Map<String, Result> results = read(Path.of(args[1]));
+        if (!compare(baseline, results, tolerance, allocTolerance)) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Compares a run against a baseline and prints every benchmark that regressed.
+     *
+     * @return True if nothing regressed beyond the tolerances.
+     */
+    private static boolean compare(Map<String, Result> baseline, Map<String, Result> results, double tolerance, double allocTolerance) {
+        boolean passed = true;
+        int compared = 0;
+        for (Result result : results.values()) {
+            Result before = baseline.get(result.key());
+            if (before == null) {
+                continue;
+            }
+            boolean regressed;
+            if (result.metric == null) {
+                // Throughput is better when higher, every other mode measures time
+                regressed = result.mode.equals("thrpt")
+                        ? result.score < before.score * (1 - tolerance)
+                        : result.score > before.score * (1 + tolerance);
+            } else if (result.metric.equals(ALLOCATION)) {
+                regressed = result.score > before.score * (1 + allocTolerance) + ALLOCATION_SLACK_BYTES;
+            } else {
+                continue;
+            }
+            compared++;
+            if (regressed) {
+                System.out.printf("REGRESSION %s: %,.1f %s, baseline %,.1f %s%n", result.key(), result.score, result.unit, before.score, before.unit);
+                passed = false;
+            }
+        }
+        System.out.println(passed ? "No regressions in " + compared + " results against the baseline" : "Regressions found");
+        return passed;
+    }
+
+    /**
+     * Reads a JMH CSV result file, keyed by benchmark, secondary metric and parameters.
+     */
+    private static Map<String, Result> read(Path path) throws IOException {
+        List<String> lines = Files.readAllLines(path, StandardCharsets.UTF_8);
+        if (lines.isEmpty()) {
+            throw new IOException(path + " is empty");
+        }
+        List<String> header = split(lines.get(0));
+        int benchmarkColumn = column(header, "Benchmark", path);
+        int modeColumn = column(header, "Mode", path);
+        int scoreColumn = column(header, "Score", path);
+        int unitColumn = column(header, "Unit", path);
+
+        Map<String, Result> results = new LinkedHashMap<>();
+        for (String line : lines.subList(1, lines.size())) {
+            if (line.isBlank()) {
+                continue;
+            }
+            List<String> fields = split(line);
+            String benchmark = fields.get(benchmarkColumn);
+            String metric = null;
+            // Secondary metrics are named benchmark:metric (benchmark·metric in older JMH versions)
+            int separator = Math.max(benchmark.indexOf(':'), benchmark.indexOf('·'));
+            if (separator >= 0) {
+                metric = benchmark.substring(separator + 1);
+                benchmark = benchmark.substring(0, separator);
+            }
+            StringBuilder params = new StringBuilder();
+            for (int i = 0; i < header.size() && i < fields.size(); i++) {
+                if (header.get(i).startsWith("Param: ")) {
+                    params.append(params.length() > 0 ? "," : "").append(header.get(i).substring(7)).append('=').append(fields.get(i));
+                }
+            }
+            Result result = new Result(benchmark, metric, fields.get(modeColumn),
+                    Double.parseDouble(fields.get(scoreColumn)), fields.get(unitColumn), params.toString());
+            results.put(result.key(), result);
+        }
+        return results;
+    }
+
+    private static int column(List<String> header, String name, Path path) throws IOException {
+        int column = header.indexOf(name);
+        if (column < 0) {
+            throw new IOException(path + " is not a JMH CSV result file: it has no " + name + " column");
+        }
+        return column;
+    }
+
+    /**
+     * Splits a CSV line into its fields, removing the quotes around them.
+     */
+    private static List<String> split(String line) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c == '"') {
+                if (quoted && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else {
+                    quoted = !quoted;
+                }
+            } else if (c == ',' && !quoted) {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+}
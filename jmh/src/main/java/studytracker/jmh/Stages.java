@@ -0,0 +1,28 @@
+package studytracker.jmh;
+
+/**
+ * Stages creates the classes that run the measured work. The application lives in the unnamed package,
+ * which classes in a named package cannot refer to, and JMH cannot generate code for benchmarks in the
+ * unnamed package. So each benchmark here calls an interface, implemented by a class next to the
+ * application in the unnamed package and created by name.
+ */
+final class Stages {
+
+    private Stages() {
+    }
+
+    /**
+     * Creates an instance of a class in the unnamed package.
+     *
+     * @param type The interface it implements.
+     * @param className The name of the class.
+     * @return The new instance.
+     */
+    static <T> T create(Class<T> type, String className) {
+        try {
+            return type.cast(Class.forName(className).getDeclaredConstructor().newInstance());
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Cannot create " + className, e);
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package studytracker.jmh;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * TimeFormatterBenchmark measures the time per call of the TimeFormatter paths used by the list
+ * renderer and the stopwatch, against the original implementations (StringBuilder + toString + trim
+ * for durations, String.format for the clock). Run with -prof gc for the bytes allocated per call
+ * (gc.alloc.rate.norm). The new paths are checked to produce the same text as the old ones first.
+ *
+ * The list shows the same few hundred totals over and over, so the durations cycle through 500
+ * values; the stopwatch moves one second per call.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TimeFormatterBenchmark {
+    private TimeFormatting formatting;
+    private long call;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        formatting = TimeFormatting.create();
+        formatting.verify();
+    }
+
+    private long duration() {
+        return (call++ % 500) * 7_919_000L + 123;
+    }
+
+    private long clockTime() {
+        return call++ * 1000;
+    }
+
+    @Benchmark
+    public CharSequence formatDurationOriginal() {
+        return formatting.legacyDuration(duration());
+    }
+
+    @Benchmark
+    public CharSequence formatDurationCached() {
+        return formatting.cachedDuration(duration());
+    }
+
+    @Benchmark
+    public CharSequence formatDurationAppend() {
+        return formatting.appendDuration(duration());
+    }
+
+    @Benchmark
+    public CharSequence formatClockOriginal() {
+        return formatting.legacyClock(clockTime());
+    }
+
+    @Benchmark
+    public CharSequence formatClock() {
+        return formatting.clock(clockTime());
+    }
+
+    @Benchmark
+    public CharSequence formatClockAppend() {
+        return formatting.appendClock(clockTime());
+    }
+}
@@ -0,0 +1,37 @@
+package studytracker.jmh;
+
+/**
+ * TimeFormatting runs the TimeFormatter paths used by the list renderer and the stopwatch, and the
+ * original implementations they replaced. It is implemented by TimeFormatterStages; see Stages.
+ */
+public interface TimeFormatting {
+
+    /**
+     * Checks that the new paths produce exactly the same text as the original ones.
+     *
+     * @throws AssertionError If any output differs.
+     */
+    void verify();
+
+    /** The original formatDuration: StringBuilder + toString + trim. */
+    CharSequence legacyDuration(long milliseconds);
+
+    /** formatDuration(long), cached per whole second. */
+    CharSequence cachedDuration(long milliseconds);
+
+    /** formatDuration(long, StringBuilder) into a reused builder. */
+    CharSequence appendDuration(long milliseconds);
+
+    /** The original clock: String.format("%02d:%02d:%02d"). */
+    CharSequence legacyClock(long milliseconds);
+
+    /** formatClock(long). */
+    CharSequence clock(long milliseconds);
+
+    /** formatClock(long, StringBuilder) into a reused builder. */
+    CharSequence appendClock(long milliseconds);
+
+    static TimeFormatting create() {
+        return Stages.create(TimeFormatting.class, "TimeFormatterStages");
+    }
+}
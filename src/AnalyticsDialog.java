@@ -0,0 +1,152 @@
+import java.awt.BorderLayout;
+import java.awt.Dimension;
+import java.awt.FlowLayout;
+import java.awt.Font;
+import java.awt.Frame;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import javax.swing.*;
+
+/**
+ * AnalyticsDialog shows an analytics report: the summary lines above a table with one page of
+ * subjects, their time and share of the total. The table is sorted by clicking the Subject or Time
+ * header, and the whole report can be exported to a CSV, HTML or JSON file.
+ *
+ * StudyTrackerGUI builds it the first time analytics are viewed, not at startup, and shows each new
+ * report in the same dialog.
+ */
+public class AnalyticsDialog extends JDialog {
+    private static final long serialVersionUID = 1L;
+
+    private final JTextArea summaryArea = new JTextArea();
+    private final JTable table = new JTable();
+    private final JButton previousButton = new JButton("Previous");
+    private final JButton nextButton = new JButton("Next");
+    private final JLabel pageLabel = new JLabel();
+    private final JButton exportButton = new JButton("Export...");
+    private final int pageSize;
+
+    private AnalyticsReport report;
+    private AnalyticsTableModel tableModel;
+
+    /**
+     * @param owner The frame the dialog is shown over.
+     * @param pageSize The number of subjects on each page of the table.
+     */
+    public AnalyticsDialog(Frame owner, int pageSize) {
+        super(owner, "Study Analytics", true);
+        this.pageSize = pageSize;
+        setDefaultCloseOperation(JDialog.HIDE_ON_CLOSE);
+
+        summaryArea.setEditable(false);
+        summaryArea.setFont(new Font("Monospaced", Font.PLAIN, 12));
+
+        table.getTableHeader().setReorderingAllowed(false);
+        table.getTableHeader().addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                int column = table.columnAtPoint(e.getPoint());
+                if (column >= 0) {
+                    tableModel.sortByColumn(table.convertColumnIndexToModel(column));
+                }
+            }
+        });
+
+        // Paging and export controls
+        previousButton.addActionListener(e -> tableModel.previousPage());
+        nextButton.addActionListener(e -> tableModel.nextPage());
+        exportButton.addActionListener(e -> export());
+        JButton closeButton = new JButton("Close");
+        closeButton.addActionListener(e -> setVisible(false));
+        JPanel controls = new JPanel(new FlowLayout(FlowLayout.CENTER));
+        controls.add(previousButton);
+        controls.add(pageLabel);
+        controls.add(nextButton);
+        controls.add(exportButton);
+        controls.add(closeButton);
+
+        JPanel panel = new JPanel(new BorderLayout(0, 5));
+        panel.setBorder(BorderFactory.createEmptyBorder(10, 10, 10, 10));
+        panel.add(summaryArea, BorderLayout.NORTH);
+        JScrollPane scrollPane = new JScrollPane(table);
+        scrollPane.setPreferredSize(new Dimension(560, 320));
+        panel.add(scrollPane, BorderLayout.CENTER);
+        panel.add(controls, BorderLayout.SOUTH);
+        setContentPane(panel);
+    }
+
+    /**
+     * Shows a new report, replacing the previous one. Must be called on the Event Dispatch Thread.
+     *
+     * @param report The report to show.
+     */
+    public void setReport(AnalyticsReport report) {
+        this.report = report;
+        StringBuilder summaryText = new StringBuilder();
+        for (String[] line : report.getSummary()) {
+            if (summaryText.length() > 0) {
+                summaryText.append('\n');
+            }
+            summaryText.append(line[0]).append(": ").append(line[1]);
+        }
+        summaryArea.setText(summaryText.toString());
+
+        // One page of subjects, sorted by clicking a column header
+        tableModel = new AnalyticsTableModel(report, pageSize);
+        tableModel.addTableModelListener(e -> updatePaging());
+        table.setModel(tableModel);
+        updatePaging();
+        pack();
+        setLocationRelativeTo(getOwner());
+    }
+
+    private void updatePaging() {
+        previousButton.setEnabled(tableModel.hasPreviousPage());
+        nextButton.setEnabled(tableModel.hasNextPage());
+        pageLabel.setText("Page " + (tableModel.getPage() + 1) + " of " + tableModel.getPageCount());
+    }
+
+    /**
+     * Asks for a file and exports the report to it in the background, in the format given by its
+     * extension and in the order shown in the table. The rows are listed on the Event Dispatch Thread a
+     * chunk at a time and written on the worker thread, so the dialog stays responsive.
+     */
+    private void export() {
+        JFileChooser chooser = new JFileChooser();
+        chooser.setDialogTitle("Export Analytics");
+        chooser.setSelectedFile(new File("analytics.csv"));
+        if (chooser.showSaveDialog(this) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+        Path path = chooser.getSelectedFile().toPath();
+        if (AnalyticsReport.Format.forPath(path) == null) {
+            JOptionPane.showMessageDialog(this, "Please choose a .csv, .html or .json file.", "Error", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+        AnalyticsReport exported = report;
+        StudyAnalytics.Order order = tableModel.getOrder();
+        exportButton.setEnabled(false);
+        new SwingWorker<Void, Void>() {
+            @Override
+            protected Void doInBackground() throws IOException {
+                exported.export(path, order);
+                return null;
+            }
+
+            @Override
+            protected void done() {
+                exportButton.setEnabled(true);
+                try {
+                    get();
+                    JOptionPane.showMessageDialog(AnalyticsDialog.this, "Report exported to " + path + ".", "Success", JOptionPane.INFORMATION_MESSAGE);
+                } catch (Exception e) {
+                    Throwable cause = e.getCause() != null ? e.getCause() : e;
+                    JOptionPane.showMessageDialog(AnalyticsDialog.this, "Error exporting report: " + cause.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+                }
+            }
+        }.execute();
+    }
+}
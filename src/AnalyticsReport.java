@@ -0,0 +1,349 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+
+/**
+ * AnalyticsReport is the analytics report as a short summary plus one row per subject, streamed from
+ * StudyAnalytics in chunks instead of being built into one string. AnalyticsTableModel shows the rows a
+ * page at a time, and export() writes them to a CSV, HTML or JSON file through a buffered writer, so
+ * neither holds more than a page or chunk of rows however many subjects there are.
+ *
+ * The summary is taken when the report is created. Rows show each subject's values at the time they
+ * are listed, and their share is of the total time in the summary, which includes archived subjects.
+ * StudyAnalytics is only read on the thread that changes the subjects: the report must be created
+ * there, and exports from other threads fetch each chunk of rows through the owner executor.
+ */
+public class AnalyticsReport {
+    private static final int CHUNK_SIZE = 1000;
+    private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * The file formats the report can be exported to.
+     */
+    public enum Format {
+        CSV, HTML, JSON;
+
+        /**
+         * Picks the format from a file name's extension.
+         *
+         * @param path The file.
+         * @return The format, or null if the extension is not .csv, .html, .htm or .json.
+         */
+        public static Format forPath(Path path) {
+            String name = path.getFileName().toString().toLowerCase(Locale.ROOT);
+            if (name.endsWith(".csv")) {
+                return CSV;
+            } else if (name.endsWith(".html") || name.endsWith(".htm")) {
+                return HTML;
+            } else if (name.endsWith(".json")) {
+                return JSON;
+            }
+            return null;
+        }
+    }
+
+    /** The column names of the rows. */
+    public static final String[] COLUMNS = {"Rank", "Subject", "Time", "Tasks", "Share"};
+
+    private final StudyAnalytics analytics;
+    private final Executor owner;
+    private final long totalTime;
+    private final int subjectCount;
+    // Label and value of each summary line
+    private final List<String[]> summary = new ArrayList<>();
+
+    /**
+     * Takes the summary of the analytics. Must be called on the thread that changes the subjects.
+     *
+     * @param analytics The analytics of a non-empty repository.
+     * @param sessionLog The session history to report recent activity from, or null for none.
+     * @param owner Runs reads of the analytics on the thread that changes the subjects.
+     */
+    public AnalyticsReport(StudyAnalytics analytics, SessionLog sessionLog, Executor owner) {
+        this(analytics, sessionLog, null, owner);
+    }
+
+    /**
+     * Takes the summary of the analytics with lifetime totals that include archived subjects, whose
+     * time is part of the total the shares are of. The rows are only the subjects in use. Must be
+     * called on the thread that changes the subjects.
+     *
+     * @param analytics The analytics of the subjects in use.
+     * @param sessionLog The session history to report recent activity from, or null for none.
+     * @param archived The aggregates of the archived subjects, or null for none. There must be at least
+     *                 one subject in use or archived.
+     * @param owner Runs reads of the analytics on the thread that changes the subjects.
+     */
+    public AnalyticsReport(StudyAnalytics analytics, SessionLog sessionLog, SubjectArchive.Summary archived, Executor owner) {
+        this.analytics = analytics;
+        this.owner = owner;
+        this.subjectCount = analytics.getSubjectCount();
+
+        SubjectArchive.Summary lifetime = SubjectArchive.Summary.lifetime(analytics, archived);
+        this.totalTime = lifetime.getTotalTime();
+        addSummary("Total Study Time", TimeFormatter.formatDuration(totalTime));
+        addSummary("Subjects", String.valueOf(subjectCount));
+        if (archived != null && archived.getCount() > 0) {
+            addSummary("Archived Subjects", archived.getCount() + " (" + TimeFormatter.formatDuration(archived.getTotalTime()) + ")");
+        }
+        addSummary("Most Studied Subject", lifetime.getMostStudied() + " (" + TimeFormatter.formatDuration(lifetime.getMostStudiedTime()) + ")");
+        addSummary("Least Studied Subject", lifetime.getLeastStudied() + " (" + TimeFormatter.formatDuration(lifetime.getLeastStudiedTime()) + ")");
+        addSummary("Average Time per Subject", TimeFormatter.formatDuration(totalTime / lifetime.getCount()));
+        addSummary("Total Tasks", String.valueOf(lifetime.getTotalTasks()));
+        addSummary("Average Tasks per Subject", String.format("%.1f", lifetime.getTotalTasks() / (double) lifetime.getCount()));
+        if (sessionLog != null && sessionLog.getSessionCount() > 0) {
+            addSummary("Last 7 Days", TimeFormatter.formatDuration(sum(sessionLog.getTimeBySubject(7))));
+            addSummary("Last 30 Days", TimeFormatter.formatDuration(sum(sessionLog.getTimeBySubject(30))));
+        }
+    }
+
+    /**
+     * Returns the summary lines as label and value pairs.
+     *
+     * @return The summary.
+     */
+    public List<String[]> getSummary() {
+        return summary;
+    }
+
+    public long getTotalTime() {
+        return totalTime;
+    }
+
+    public int getSubjectCount() {
+        return subjectCount;
+    }
+
+    /**
+     * Lists the next chunk of rows. Must be called on the thread that changes the subjects.
+     *
+     * @param order The order of the rows.
+     * @param after The last row of the previous chunk, or null to start with the first.
+     * @param count The maximum number of rows.
+     * @return The rows.
+     */
+    public List<StudyAnalytics.Entry> getRows(StudyAnalytics.Order order, StudyAnalytics.Entry after, int count) {
+        return analytics.getEntries(order, after, count);
+    }
+
+    /**
+     * Writes the report to a file in the format given by its extension. Every format has the summary
+     * before the rows.
+     *
+     * @param path The file to write.
+     * @param order The order of the rows.
+     * @throws IOException If the file could not be written.
+     * @throws IllegalArgumentException If the extension is not one of the formats.
+     */
+    public void export(Path path, StudyAnalytics.Order order) throws IOException {
+        Format format = Format.forPath(path);
+        if (format == null) {
+            throw new IllegalArgumentException("Please choose a .csv, .html or .json file.");
+        }
+        try (Writer out = new BufferedWriter(new OutputStreamWriter(Files.newOutputStream(path), StandardCharsets.UTF_8), WRITE_BUFFER_SIZE)) {
+            write(out, format, order);
+        }
+    }
+
+    /**
+     * Writes the report, fetching the rows a chunk at a time through the owner executor.
+     *
+     * @param out The writer; it is flushed but not closed.
+     * @param format The format.
+     * @param order The order of the rows.
+     * @throws IOException If the report could not be written.
+     */
+    public void write(Writer out, Format format, StudyAnalytics.Order order) throws IOException {
+        StringBuilder line = new StringBuilder(256);
+        writeHeader(out, format, line);
+        long rank = 0;
+        StudyAnalytics.Entry last = null;
+        while (true) {
+            List<StudyAnalytics.Entry> rows = fetch(order, last);
+            for (StudyAnalytics.Entry row : rows) {
+                line.setLength(0);
+                appendRow(line, format, ++rank, row);
+                out.append(line);
+            }
+            if (rows.size() < CHUNK_SIZE) {
+                break;
+            }
+            last = rows.get(rows.size() - 1);
+        }
+        line.setLength(0);
+        writeFooter(out, format, line);
+        out.flush();
+    }
+
+    /**
+     * Appends a subject's share of the total time as a percentage with one decimal, e.g. "12.5".
+     *
+     * @param time The subject's time.
+     * @param totalTime The total time.
+     * @param out The builder to append to.
+     * @return The builder.
+     */
+    public static StringBuilder appendShare(long time, long totalTime, StringBuilder out) {
+        long tenths = totalTime == 0 ? 0 : Math.round(time * 1000.0 / totalTime);
+        if (tenths < 0) {
+            out.append('-');
+            tenths = -tenths;
+        }
+        return out.append(tenths / 10).append('.').append(tenths % 10);
+    }
+
+    private List<StudyAnalytics.Entry> fetch(StudyAnalytics.Order order, StudyAnalytics.Entry after) throws IOException {
+        FutureTask<List<StudyAnalytics.Entry>> task = new FutureTask<>(() -> getRows(order, after, CHUNK_SIZE));
+        owner.execute(task);
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while exporting the report");
+        } catch (ExecutionException e) {
+            throw new IOException(e.getCause());
+        }
+    }
+
+    private void writeHeader(Writer out, Format format, StringBuilder line) throws IOException {
+        switch (format) {
+            case CSV:
+                // The summary lines come first as label,value pairs, set apart from the rows by a blank line
+                for (String[] entry : summary) {
+                    SubjectCsvWriter.appendField(line, entry[0]);
+                    line.append(',');
+                    SubjectCsvWriter.appendField(line, entry[1]);
+                    line.append('\n');
+                }
+                if (!summary.isEmpty()) {
+                    line.append('\n');
+                }
+                line.append("Rank,Subject,Time (ms),Time,Tasks,Share (%)\n");
+                break;
+            case HTML:
+                line.append("<!DOCTYPE html>\n<html>\n<head><meta charset=\"utf-8\"><title>Study Analytics Report</title></head>\n<body>\n")
+                    .append("<h1>Study Analytics Report</h1>\n<table>\n");
+                for (String[] entry : summary) {
+                    line.append("<tr><th>");
+                    appendHtml(line, entry[0]).append("</th><td>");
+                    appendHtml(line, entry[1]).append("</td></tr>\n");
+                }
+                line.append("</table>\n<table>\n<tr>");
+                for (String column : COLUMNS) {
+                    line.append("<th>").append(column).append("</th>");
+                }
+                line.append("</tr>\n");
+                break;
+            case JSON:
+                line.append("{\n  \"summary\": {");
+                for (int i = 0; i < summary.size(); i++) {
+                    line.append(i > 0 ? ",\n    " : "\n    ");
+                    appendJson(line, summary.get(i)[0]).append(": ");
+                    appendJson(line, summary.get(i)[1]);
+                }
+                line.append("\n  },\n  \"subjects\": [");
+                break;
+        }
+        out.append(line);
+    }
+
+    private void appendRow(StringBuilder line, Format format, long rank, StudyAnalytics.Entry row) {
+        switch (format) {
+            case CSV:
+                line.append(rank).append(',');
+                SubjectCsvWriter.appendField(line, row.getName());
+                line.append(',').append(row.getTime()).append(',');
+                TimeFormatter.formatDuration(row.getTime(), line).append(',').append(row.getTasks()).append(',');
+                appendShare(row.getTime(), totalTime, line).append('\n');
+                break;
+            case HTML:
+                line.append("<tr><td>").append(rank).append("</td><td>");
+                appendHtml(line, row.getName()).append("</td><td>");
+                TimeFormatter.formatDuration(row.getTime(), line).append("</td><td>").append(row.getTasks()).append("</td><td>");
+                appendShare(row.getTime(), totalTime, line).append("%</td></tr>\n");
+                break;
+            case JSON:
+                line.append(rank > 1 ? ",\n    " : "\n    ").append("{\"rank\": ").append(rank).append(", \"name\": ");
+                appendJson(line, row.getName()).append(", \"timeMillis\": ").append(row.getTime())
+                    .append(", \"tasks\": ").append(row.getTasks()).append(", \"share\": ");
+                appendShare(row.getTime(), totalTime, line).append('}');
+                break;
+        }
+    }
+
+    private static void writeFooter(Writer out, Format format, StringBuilder line) throws IOException {
+        switch (format) {
+            case HTML:
+                line.append("</table>\n</body>\n</html>\n");
+                break;
+            case JSON:
+                line.append("\n  ]\n}\n");
+                break;
+            default:
+                break;
+        }
+        out.append(line);
+    }
+
+    private static StringBuilder appendHtml(StringBuilder out, String text) {
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '<':
+                    out.append("&lt;");
+                    break;
+                case '>':
+                    out.append("&gt;");
+                    break;
+                case '&':
+                    out.append("&amp;");
+                    break;
+                case '"':
+                    out.append("&quot;");
+                    break;
+                default:
+                    out.append(c);
+            }
+        }
+        return out;
+    }
+
+    private static StringBuilder appendJson(StringBuilder out, String text) {
+        out.append('"');
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '"' || c == '\\') {
+                out.append('\\').append(c);
+            } else if (c < 0x20) {
+                out.append("\\u00").append(Character.forDigit(c >> 4, 16)).append(Character.forDigit(c & 0xF, 16));
+            } else {
+                out.append(c);
+            }
+        }
+        return out.append('"');
+    }
+
+    private void addSummary(String label, String value) {
+        summary.add(new String[] {label, value});
+    }
+
+    private static long sum(Map<String, Long> times) {
+        long total = 0;
+        for (long time : times.values()) {
+            total += time;
+        }
+        return total;
+    }
+}
@@ -0,0 +1,147 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import javax.swing.table.AbstractTableModel;
+
+/**
+ * AnalyticsTableModel shows the rows of an AnalyticsReport one page at a time. Only the current page
+ * is held; moving to another page or changing the order lists that page from StudyAnalytics again.
+ * Sorting is done here rather than by a TableRowSorter, which could only sort the rows on the page.
+ * It is only used on the Event Dispatch Thread.
+ */
+public class AnalyticsTableModel extends AbstractTableModel {
+    private static final long serialVersionUID = 1L;
+
+    private final AnalyticsReport report;
+    private final int pageSize;
+    private StudyAnalytics.Order order = StudyAnalytics.Order.TIME_DESCENDING;
+    private int page = 0;
+    private List<StudyAnalytics.Entry> rows = Collections.emptyList();
+
+    // The last row of each page before the current one, to list the next page from
+    private final List<StudyAnalytics.Entry> pageEnds = new ArrayList<>();
+
+    /**
+     * Shows the first page of the report, most studied first.
+     *
+     * @param report The report.
+     * @param pageSize The number of rows on a page.
+     */
+    public AnalyticsTableModel(AnalyticsReport report, int pageSize) {
+        this.report = report;
+        this.pageSize = pageSize;
+        load();
+    }
+
+    public StudyAnalytics.Order getOrder() {
+        return order;
+    }
+
+    /**
+     * Lists the rows in another order, starting again on the first page.
+     *
+     * @param order The new order.
+     */
+    public void setOrder(StudyAnalytics.Order order) {
+        this.order = order;
+        page = 0;
+        pageEnds.clear();
+        load();
+    }
+
+    /**
+     * Sorts by a column when its header is clicked: by time or name, reversing the order if it is
+     * already sorted by that column. Other columns cannot be sorted.
+     *
+     * @param column The model index of the column.
+     */
+    public void sortByColumn(int column) {
+        switch (column) {
+            case 0:
+            case 2:
+            case 4:
+                setOrder(order == StudyAnalytics.Order.TIME_DESCENDING ? StudyAnalytics.Order.TIME_ASCENDING : StudyAnalytics.Order.TIME_DESCENDING);
+                break;
+            case 1:
+                setOrder(order == StudyAnalytics.Order.NAME_ASCENDING ? StudyAnalytics.Order.NAME_DESCENDING : StudyAnalytics.Order.NAME_ASCENDING);
+                break;
+            default:
+                break;
+        }
+    }
+
+    public int getPage() {
+        return page;
+    }
+
+    public int getPageCount() {
+        return Math.max(1, (report.getSubjectCount() + pageSize - 1) / pageSize);
+    }
+
+    public boolean hasNextPage() {
+        return rows.size() == pageSize && page + 1 < getPageCount();
+    }
+
+    public boolean hasPreviousPage() {
+        return page > 0;
+    }
+
+    public void nextPage() {
+        if (hasNextPage()) {
+            pageEnds.add(rows.get(rows.size() - 1));
+            page++;
+            load();
+        }
+    }
+
+    public void previousPage() {
+        if (hasPreviousPage()) {
+            page--;
+            pageEnds.remove(pageEnds.size() - 1);
+            load();
+        }
+    }
+
+    @Override
+    public int getRowCount() {
+        return rows.size();
+    }
+
+    @Override
+    public int getColumnCount() {
+        return AnalyticsReport.COLUMNS.length;
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        return AnalyticsReport.COLUMNS[column];
+    }
+
+    @Override
+    public Class<?> getColumnClass(int column) {
+        return column == 0 || column == 3 ? Integer.class : String.class;
+    }
+
+    @Override
+    public Object getValueAt(int row, int column) {
+        StudyAnalytics.Entry entry = rows.get(row);
+        switch (column) {
+            case 0:
+                return page * pageSize + row + 1;
+            case 1:
+                return entry.getName();
+            case 2:
+                return TimeFormatter.formatDuration(entry.getTime());
+            case 3:
+                return entry.getTasks();
+            default:
+                return AnalyticsReport.appendShare(entry.getTime(), report.getTotalTime(), new StringBuilder(8)).append('%').toString();
+        }
+    }
+
+    private void load() {
+        StudyAnalytics.Entry after = pageEnds.isEmpty() ? null : pageEnds.get(pageEnds.size() - 1);
+        rows = report.getRows(order, after, pageSize);
+        fireTableDataChanged();
+    }
+}
@@ -0,0 +1,244 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * AutosaveScheduler writes recorded changes to the journal, and then recorded sessions to the session
+ * log, on a background thread shortly after they are made, and checkpoints the running timers at a
+ * fixed interval.
+ *
+ * Saves are debounced: each change pushes the save back by the delay, so a burst of changes is written
+ * with one journal append and one fsync, but a steady stream of changes is still saved at least once
+ * per maximum delay. The caller never waits for the disk. Only the journal is written here, unless a
+ * compaction prepared on the thread that owns the subjects is handed over with compact().
+ *
+ * The listener is called on the autosave thread when saving starts failing and when it succeeds again.
+ */
+public class AutosaveScheduler implements Closeable {
+
+    /**
+     * Told about the outcome of background saves. Called on the autosave thread.
+     */
+    public interface Listener {
+
+        /**
+         * Called after the changes recorded so far were written.
+         */
+        void saved();
+
+        /**
+         * Called when a save or checkpoint fails after the previous one succeeded.
+         *
+         * @param e The error.
+         */
+        void saveFailed(IOException e);
+    }
+
+    private final SubjectStorage store;
+    private final SessionLog sessionLog;
+    private final TimerEngine timerEngine;
+    private final TimerCheckpoint checkpoint;
+    private final long delayNanos;
+    private final long maxDelayNanos;
+    private final Listener listener;
+    private final ScheduledThreadPoolExecutor executor;
+
+    // Guarded by this
+    private ScheduledFuture<?> scheduledSave;
+    private long firstChangeNanos = -1;
+
+    // Only used on the autosave thread
+    private boolean failing = false;
+
+    /**
+     * Creates the scheduler and starts checkpointing the running timers.
+     *
+     * @param store The store whose recorded changes are saved.
+     * @param sessionLog The session log whose recorded sessions are saved.
+     * @param timerEngine The timers to checkpoint.
+     * @param checkpoint Where to checkpoint the timers.
+     * @param delayMillis How long to wait after the last change before saving.
+     * @param maxDelayMillis The longest a change may wait while further changes keep coming.
+     * @param checkpointMillis The interval between timer checkpoints.
+     * @param listener Told about failed and successful saves.
+     */
+    public AutosaveScheduler(SubjectStorage store, SessionLog sessionLog, TimerEngine timerEngine, TimerCheckpoint checkpoint,
+                             long delayMillis, long maxDelayMillis, long checkpointMillis, Listener listener) {
+        this.store = store;
+        this.sessionLog = sessionLog;
+        this.timerEngine = timerEngine;
+        this.checkpoint = checkpoint;
+        this.delayNanos = TimeUnit.MILLISECONDS.toNanos(delayMillis);
+        this.maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(maxDelayMillis);
+        this.listener = listener;
+        this.executor = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "autosave");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // Delayed saves are dropped on close(), which saves once more itself
+        executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+        executor.setContinueExistingPeriodicTasksAfterShutdownPolicy(false);
+        executor.scheduleWithFixedDelay(this::checkpoint, checkpointMillis, checkpointMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Schedules a save after a change has been recorded in the store.
+     */
+    public synchronized void changed() {
+        if (executor.isShutdown()) {
+            return;
+        }
+        long now = System.nanoTime();
+        if (firstChangeNanos < 0) {
+            firstChangeNanos = now;
+        }
+        if (scheduledSave != null) {
+            scheduledSave.cancel(false);
+        }
+        long due = Math.min(now + delayNanos, firstChangeNanos + maxDelayNanos);
+        scheduledSave = executor.schedule(this::save, Math.max(0, due - now), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Saves the recorded changes on the autosave thread as soon as possible.
+     */
+    public synchronized void saveNow() {
+        if (executor.isShutdown()) {
+            return;
+        }
+        if (scheduledSave != null) {
+            scheduledSave.cancel(false);
+        }
+        scheduledSave = executor.schedule(this::save, 0, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Checkpoints the running timers on the autosave thread as soon as possible, e.g. after a timer
+     * was started or stopped.
+     */
+    public synchronized void timersChanged() {
+        if (!executor.isShutdown()) {
+            executor.execute(this::checkpoint);
+        }
+    }
+
+    /**
+     * Saves a stopped timer's time and session on the autosave thread as soon as possible, and then
+     * checkpoints the timers without it: the journal first, then the session log, then the checkpoint,
+     * so a crash at any point neither loses the time nor counts it twice (see
+     * StudyTracker.recoverTimers()). It runs after any compaction handed over before, so the journal
+     * write is not held back by it.
+     */
+    public synchronized void timerStopped() {
+        if (!executor.isShutdown()) {
+            executor.execute(() -> {
+                save();
+                checkpoint();
+            });
+        }
+    }
+
+    /**
+     * Runs a compaction prepared with SubjectStorage.prepareCompact() on the autosave thread, after the
+     * saves already due, and then saves the changes recorded while it ran. Once autosave has been
+     * closed it runs on the calling thread instead.
+     *
+     * @param compaction The compaction to run.
+     * @param done Called with null once the compaction is written, or with the error.
+     */
+    public void compact(SubjectStorage.Compaction compaction, Consumer<IOException> done) {
+        synchronized (this) {
+            if (!executor.isShutdown()) {
+                executor.execute(() -> {
+                    IOException error = run(compaction);
+                    save();
+                    done.accept(error);
+                });
+                return;
+            }
+        }
+        done.accept(run(compaction));
+    }
+
+    /**
+     * Stops the background thread, then saves the recorded changes and checkpoints the timers one
+     * last time on the calling thread.
+     *
+     * @throws IOException If the final save failed.
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (scheduledSave != null) {
+                scheduledSave.cancel(false);
+            }
+            executor.shutdown();
+        }
+        try {
+            executor.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        store.flush();
+        sessionLog.flush();
+        checkpoint.write(timerEngine.getRunning());
+    }
+
+    private void save() {
+        synchronized (this) {
+            firstChangeNanos = -1;
+            scheduledSave = null;
+        }
+        try {
+            // The journal first, so the time of a logged session is always saved
+            store.flush();
+            sessionLog.flush();
+            succeeded();
+        } catch (IOException e) {
+            failed(e);
+            // The changes are still recorded; try again even if nothing else changes
+            synchronized (this) {
+                if (scheduledSave == null && !executor.isShutdown()) {
+                    scheduledSave = executor.schedule(this::save, maxDelayNanos, TimeUnit.NANOSECONDS);
+                }
+            }
+        }
+    }
+
+    private static IOException run(SubjectStorage.Compaction compaction) {
+        try {
+            compaction.run();
+            return null;
+        } catch (IOException e) {
+            return e;
+        }
+    }
+
+    private void checkpoint() {
+        // A stopped timer stays in the checkpoint until its session is saved
+        if (sessionLog.hasPending()) {
+            return;
+        }
+        try {
+            checkpoint.write(timerEngine.getRunning());
+        } catch (IOException e) {
+            failed(e);
+        }
+    }
+
+    private void succeeded() {
+        failing = false;
+        listener.saved();
+    }
+
+    private void failed(IOException e) {
+        if (!failing) {
+            failing = true;
+            listener.saveFailed(e);
+        }
+    }
+}
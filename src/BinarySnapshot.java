@@ -0,0 +1,338 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * BinarySnapshot is a compact binary storage format for subjects that is read through a memory-mapped file.
+ *
+ * Every distinct string (subject names and task names) is stored once in a string table, and each subject
+ * record refers to its name and tasks by string id. Offset tables for strings and records allow any
+ * subject to be decoded on its own, so subjects can be built lazily as they are needed.
+ *
+ * Layout (big-endian):
+ * <pre>
+ * header:   magic, version, subjectCount, stringCount, stringOffsetsPos, recordsPos, recordOffsetsPos (ints), checksum (long)
+ * strings:  per string: byte length (int), UTF-8 bytes
+ * string offsets:  stringCount ints
+ * records:  per subject: name id (int), time (long), task count (int), task ids (ints)
+ * record offsets:  subjectCount ints
+ * </pre>
+ * The checksum is a CRC32 of everything after the header.
+ */
+public class BinarySnapshot implements SubjectSource {
+    private static final int MAGIC = 0x5354424E; // "STBN"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 7 * Integer.BYTES + Long.BYTES;
+    private static final int WRITE_BUFFER_SIZE = 256 * 1024;
+
+    private final MappedByteBuffer buffer;
+    private final int subjectCount;
+    private final int stringCount;
+    private final int stringOffsetsPos;
+    private final int recordOffsetsPos;
+    private final String[] strings;
+    private final long checksum;
+
+    private BinarySnapshot(MappedByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+        if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not a study tracker binary snapshot");
+        }
+        if (buffer.getInt(4) != VERSION) {
+            throw new IOException("Unsupported snapshot version " + buffer.getInt(4));
+        }
+        subjectCount = buffer.getInt(8);
+        stringCount = buffer.getInt(12);
+        stringOffsetsPos = buffer.getInt(16);
+        recordOffsetsPos = buffer.getInt(24);
+        checksum = buffer.getLong(28);
+
+        CRC32 crc = new CRC32();
+        crc.update(buffer.duplicate().position(HEADER_SIZE));
+        if (crc.getValue() != checksum) {
+            throw new IOException("Snapshot checksum mismatch, the file is corrupt");
+        }
+        strings = new String[stringCount];
+    }
+
+    /**
+     * Maps a snapshot file into memory and verifies its header and checksum.
+     * No subjects are decoded until they are requested.
+     *
+     * @param path The snapshot file.
+     * @return The opened snapshot.
+     * @throws IOException If the file cannot be read or is not a valid snapshot.
+     */
+    public static BinarySnapshot open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Snapshot is too large to map");
+            }
+            return new BinarySnapshot(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * Returns the CRC32 of the snapshot's contents, as stored in its header.
+     *
+     * @return The checksum.
+     */
+    public long getChecksum() {
+        return checksum;
+    }
+
+    /**
+     * Returns the number of subjects in the snapshot.
+     *
+     * @return The subject count.
+     */
+    @Override
+    public int size() {
+        return subjectCount;
+    }
+
+    /**
+     * Returns the name of a subject without building the Subject.
+     *
+     * @param index The index of the subject.
+     * @return The subject's name.
+     */
+    @Override
+    public String nameAt(int index) {
+        return string(buffer.getInt(recordOffset(index)));
+    }
+
+    /**
+     * Returns the time of a subject without building the Subject.
+     *
+     * @param index The index of the subject.
+     * @return The subject's time in milliseconds.
+     */
+    @Override
+    public long timeAt(int index) {
+        return buffer.getLong(recordOffset(index) + Integer.BYTES);
+    }
+
+    /**
+     * Returns the number of tasks of a subject without building the Subject.
+     *
+     * @param index The index of the subject.
+     * @return The subject's task count.
+     */
+    @Override
+    public int taskCountAt(int index) {
+        return buffer.getInt(recordOffset(index) + Integer.BYTES + Long.BYTES);
+    }
+
+    /**
+     * Decodes a subject. Each call builds a new Subject; task names are shared between subjects.
+     *
+     * @param index The index of the subject.
+     * @return The decoded Subject.
+     */
+    @Override
+    public Subject get(int index) {
+        int pos = recordOffset(index);
+        String name = string(buffer.getInt(pos));
+        long time = buffer.getLong(pos + Integer.BYTES);
+        int taskCount = buffer.getInt(pos + Integer.BYTES + Long.BYTES);
+        if (taskCount == 0) {
+            return new Subject(name, time);
+        }
+        ArrayList<String> tasks = new ArrayList<>(taskCount);
+        pos += 2 * Integer.BYTES + Long.BYTES;
+        for (int i = 0; i < taskCount; i++) {
+            tasks.add(string(buffer.getInt(pos + i * Integer.BYTES)));
+        }
+        return new Subject(name, time, tasks);
+    }
+
+    private int recordOffset(int index) {
+        if (index < 0 || index >= subjectCount) {
+            throw new IndexOutOfBoundsException("Subject index " + index + " out of range");
+        }
+        return buffer.getInt(recordOffsetsPos + index * Integer.BYTES);
+    }
+
+    private String string(int id) {
+        String value = strings[id];
+        if (value == null) {
+            int pos = buffer.getInt(stringOffsetsPos + id * Integer.BYTES);
+            byte[] bytes = new byte[buffer.getInt(pos)];
+            buffer.get(pos + Integer.BYTES, bytes);
+            value = new String(bytes, StandardCharsets.UTF_8);
+            strings[id] = value;
+        }
+        return value;
+    }
+
+    /**
+     * Writes subjects to a snapshot file and fsyncs it.
+     *
+     * @param path The file to write.
+     * @param subjects The subjects to store.
+     * @return The checksum written to the header.
+     * @throws IOException If the file could not be written.
+     */
+    public static long write(Path path, List<Subject> subjects) throws IOException {
+        // Intern every name and task into the string table. The tasks are read once, so a task added
+        // by another thread while writing cannot be missing from the table.
+        Map<String, Integer> ids = new HashMap<>();
+        List<String> table = new ArrayList<>();
+        List<List<String>> taskLists = new ArrayList<>(subjects.size());
+        for (Subject subject : subjects) {
+            intern(subject.getName(), ids, table);
+            List<String> tasks = subject.getTasks();
+            for (String task : tasks) {
+                intern(task, ids, table);
+            }
+            taskLists.add(tasks);
+        }
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            channel.position(HEADER_SIZE);
+            CheckedOutputStream checked = new CheckedOutputStream(Channels.newOutputStream(channel), new CRC32());
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(checked, WRITE_BUFFER_SIZE));
+
+            int[] stringOffsets = new int[table.size()];
+            for (int i = 0; i < table.size(); i++) {
+                stringOffsets[i] = position(out);
+                byte[] bytes = table.get(i).getBytes(StandardCharsets.UTF_8);
+                out.writeInt(bytes.length);
+                out.write(bytes);
+            }
+            int stringOffsetsPos = position(out);
+            for (int offset : stringOffsets) {
+                out.writeInt(offset);
+            }
+
+            int recordsPos = position(out);
+            int[] recordOffsets = new int[subjects.size()];
+            for (int i = 0; i < subjects.size(); i++) {
+                Subject subject = subjects.get(i);
+                recordOffsets[i] = position(out);
+                out.writeInt(ids.get(subject.getName()));
+                out.writeLong(subject.getTime());
+                List<String> tasks = taskLists.get(i);
+                out.writeInt(tasks.size());
+                for (String task : tasks) {
+                    out.writeInt(ids.get(task));
+                }
+            }
+            int recordOffsetsPos = position(out);
+            for (int offset : recordOffsets) {
+                out.writeInt(offset);
+            }
+            position(out);
+            out.flush();
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            long checksum = checked.getChecksum().getValue();
+            header.putInt(MAGIC).putInt(VERSION).putInt(subjects.size()).putInt(table.size())
+                    .putInt(stringOffsetsPos).putInt(recordsPos).putInt(recordOffsetsPos)
+                    .putLong(checksum);
+            header.flip();
+            while (header.hasRemaining()) {
+                channel.write(header, header.position());
+            }
+            channel.force(true);
+            return checksum;
+        }
+    }
+
+    /**
+     * Converts a data.csv file into a binary snapshot. Invalid lines are skipped.
+     *
+     * @param csv The CSV file to read.
+     * @param snapshot The snapshot file to write.
+     * @return The number of lines that were skipped.
+     * @throws IOException If either file cannot be accessed.
+     */
+    public static int importCsv(Path csv, Path snapshot) throws IOException {
+        List<Subject> subjects = new ArrayList<>();
+        int skipped = 0;
+        try (SubjectCsvReader reader = new SubjectCsvReader(new FileReader(csv.toFile(), StandardCharsets.UTF_8))) {
+            while (true) {
+                try {
+                    Subject subject = reader.next();
+                    if (subject == null) {
+                        break;
+                    }
+                    subjects.add(subject);
+                } catch (IllegalArgumentException e) {
+                    skipped++;
+                }
+            }
+        }
+        write(snapshot, subjects);
+        return skipped;
+    }
+
+    /**
+     * Converts a binary snapshot into a data.csv file.
+     *
+     * @param snapshot The snapshot file to read.
+     * @param csv The CSV file to write.
+     * @throws IOException If either file cannot be accessed.
+     */
+    public static void exportCsv(Path snapshot, Path csv) throws IOException {
+        BinarySnapshot source = open(snapshot);
+        List<Subject> subjects = new ArrayList<>(source.size());
+        for (int i = 0; i < source.size(); i++) {
+            subjects.add(source.get(i));
+        }
+        SubjectStore.writeCsv(csv, subjects);
+    }
+
+    /**
+     * Converts between data.csv and the binary format from the command line.
+     *
+     * @param args "import data.csv data.bin" or "export data.bin data.csv".
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length == 3 && args[0].equals("import")) {
+            int skipped = importCsv(Paths.get(args[1]), Paths.get(args[2]));
+            System.out.println("Imported " + args[1] + " into " + args[2] + (skipped > 0 ? " (" + skipped + " invalid lines skipped)" : ""));
+        } else if (args.length == 3 && args[0].equals("export")) {
+            exportCsv(Paths.get(args[1]), Paths.get(args[2]));
+            System.out.println("Exported " + args[1] + " to " + args[2]);
+        } else {
+            System.err.println("Usage: java BinarySnapshot import <data.csv> <data.bin>");
+            System.err.println("       java BinarySnapshot export <data.bin> <data.csv>");
+            System.exit(1);
+        }
+    }
+
+    private static void intern(String value, Map<String, Integer> ids, List<String> table) {
+        if (!ids.containsKey(value)) {
+            ids.put(value, table.size());
+            table.add(value);
+        }
+    }
+
+    /**
+     * Returns the file offset the next byte written to out will land at.
+     */
+    private static int position(DataOutputStream out) throws IOException {
+        // DataOutputStream.size() saturates at Integer.MAX_VALUE, so this also catches larger files
+        if (out.size() > Integer.MAX_VALUE - HEADER_SIZE) {
+            throw new IOException("Snapshot would exceed 2 GB");
+        }
+        return HEADER_SIZE + out.size();
+    }
+}
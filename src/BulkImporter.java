@@ -0,0 +1,257 @@
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * BulkImporter merges many data files, e.g. one data.csv per user, into one set of subjects.
+ *
+ * Files are parsed in parallel on a ForkJoinPool and merged into a ConcurrentHashMap keyed by
+ * normalized subject name: time is summed in a LongAdder and tasks are collected in a concurrent
+ * set, so workers only contend when they hit the same subject at the same moment.
+ *
+ * The result does not depend on the number of threads or on scheduling. It is the same as importing
+ * the files one after another in the given order. Every subject and task remembers where it was
+ * first seen, as a (file, position) pair, and the output is sorted by that. A subject keeps the
+ * spelling of its first occurrence. Its time is the sum over all files. Its tasks are the distinct
+ * tasks in the order they first appear. The reported errors are likewise the first ones in file order.
+ */
+public class BulkImporter {
+    private static final int MAX_REPORTED_ERRORS = 20;
+
+    /**
+     * The merged values of one subject. Time is accumulated without locking; only the short
+     * first-seen check takes the entry's lock.
+     */
+    private static class Aggregate {
+        private final LongAdder time = new LongAdder();
+        private final Map<String, Long> tasks = new ConcurrentHashMap<>();
+        private String name;
+        private long first = Long.MAX_VALUE;
+
+        synchronized void seen(String name, long order) {
+            if (order < first) {
+                first = order;
+                this.name = name;
+            }
+        }
+    }
+
+    /**
+     * The outcome of a bulk import.
+     */
+    public static class Result {
+        private final List<Subject> subjects;
+        private final int fileCount;
+        private final long rowCount;
+        private final int errorCount;
+        private final List<String> errors;
+
+        private Result(List<Subject> subjects, int fileCount, long rowCount, int errorCount, List<String> errors) {
+            this.subjects = subjects;
+            this.fileCount = fileCount;
+            this.rowCount = rowCount;
+            this.errorCount = errorCount;
+            this.errors = errors;
+        }
+
+        /**
+         * Returns the merged subjects in order of first appearance.
+         *
+         * @return The merged subjects.
+         */
+        public List<Subject> getSubjects() {
+            return subjects;
+        }
+
+        public int getFileCount() {
+            return fileCount;
+        }
+
+        public long getRowCount() {
+            return rowCount;
+        }
+
+        /**
+         * Returns the number of invalid lines and unreadable files that were skipped.
+         *
+         * @return The error count.
+         */
+        public int getErrorCount() {
+            return errorCount;
+        }
+
+        /**
+         * Returns messages for the first skipped lines and files, in file order and by line within a file.
+         *
+         * @return Up to MAX_REPORTED_ERRORS messages.
+         */
+        public List<String> getErrors() {
+            return errors;
+        }
+    }
+
+    private final int parallelism;
+
+    /**
+     * @param parallelism The number of files to parse at the same time.
+     */
+    public BulkImporter(int parallelism) {
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Expands the given paths into data files: files are taken as they are, and directories are
+     * searched recursively for files ending in ".csv" or ".bin". The result is sorted so that the
+     * merge order does not depend on the file system.
+     *
+     * @param paths Files and directories.
+     * @return The data files.
+     * @throws IOException If a directory could not be read.
+     */
+    public static List<Path> findDataFiles(List<Path> paths) throws IOException {
+        List<Path> files = new ArrayList<>();
+        for (Path path : paths) {
+            if (Files.isDirectory(path)) {
+                try (Stream<Path> walk = Files.walk(path)) {
+                    walk.filter(Files::isRegularFile)
+                        .filter(file -> file.toString().endsWith(".csv") || file.toString().endsWith(".bin"))
+                        .sorted()
+                        .forEach(files::add);
+                }
+            } else {
+                files.add(path);
+            }
+        }
+        return files;
+    }
+
+    /**
+     * Parses and merges the given files. Invalid lines and unreadable files are skipped and reported
+     * in the result.
+     *
+     * @param files The files to merge, in merge order.
+     * @return The merged subjects.
+     * @throws InterruptedIOException If the thread was interrupted. Files still being parsed are abandoned.
+     */
+    public Result importFiles(List<Path> files) throws InterruptedIOException {
+        Map<String, Aggregate> merged = new ConcurrentHashMap<>();
+        LongAdder rows = new LongAdder();
+        AtomicInteger errorCount = new AtomicInteger();
+        TreeMap<Long, String> errors = new TreeMap<>();
+
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            pool.submit(() -> IntStream.range(0, files.size()).parallel().forEach(fileIndex -> {
+                Path file = files.get(fileIndex);
+                try {
+                    rows.add(mergeFile(file, fileIndex, merged, errorCount, errors));
+                } catch (IOException | RuntimeException e) {
+                    // After the file's line errors, which were found before it failed
+                    addError(errorCount, errors, ((long) fileIndex << 32) | 0xFFFFFFFFL, file + ": " + e.getMessage());
+                }
+            })).get();
+        } catch (InterruptedException e) {
+            pool.shutdownNow();
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Import interrupted");
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+
+        List<Aggregate> aggregates = new ArrayList<>(merged.values());
+        aggregates.sort((a, b) -> Long.compare(a.first, b.first));
+        List<Subject> subjects = new ArrayList<>(aggregates.size());
+        for (Aggregate aggregate : aggregates) {
+            ArrayList<String> tasks = aggregate.tasks.entrySet().stream()
+                    .sorted(Map.Entry.comparingByValue())
+                    .map(Map.Entry::getKey)
+                    .collect(Collectors.toCollection(ArrayList::new));
+            subjects.add(new Subject(aggregate.name, aggregate.time.sum(), tasks));
+        }
+
+        return new Result(subjects, files.size(), rows.sum(), errorCount.get(), new ArrayList<>(errors.values()));
+    }
+
+    /**
+     * Parses one file and merges its rows. Orders are (file index, position in file), so that
+     * sorting by them reproduces a sequential merge.
+     *
+     * @return The number of valid rows.
+     */
+    private static long mergeFile(Path file, int fileIndex, Map<String, Aggregate> merged,
+                                  AtomicInteger errorCount, TreeMap<Long, String> errors) throws IOException {
+        long base = (long) fileIndex << 32;
+        long taskPosition = base;
+        long count = 0;
+        if (file.getFileName().toString().endsWith(".bin")) {
+            BinarySnapshot snapshot = BinarySnapshot.open(file);
+            for (int i = 0; i < snapshot.size(); i++) {
+                taskPosition = merge(snapshot.get(i), base + i, taskPosition, merged);
+                count++;
+            }
+            return count;
+        }
+        try (SubjectCsvReader reader = new SubjectCsvReader(new FileReader(file.toFile(), StandardCharsets.UTF_8))) {
+            while (true) {
+                try {
+                    Subject subject = reader.next();
+                    if (subject == null) {
+                        break;
+                    }
+                    taskPosition = merge(subject, base + reader.getLineNumber(), taskPosition, merged);
+                    count++;
+                } catch (IllegalArgumentException e) {
+                    addError(errorCount, errors, base + reader.getLineNumber(),
+                            file + " line " + reader.getLineNumber() + ": " + reader.getLine() + " (" + e.getMessage() + ")");
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Merges one subject; returns the position for the next task in the file.
+     */
+    private static long merge(Subject subject, long order, long taskPosition, Map<String, Aggregate> merged) {
+        Aggregate aggregate = merged.computeIfAbsent(SubjectRepository.normalize(subject.getName()), key -> new Aggregate());
+        aggregate.seen(subject.getName(), order);
+        aggregate.time.add(subject.getTime());
+        for (String task : subject.getTasks()) {
+            aggregate.tasks.merge(task, taskPosition++, Math::min);
+        }
+        return taskPosition;
+    }
+
+    /**
+     * Counts an error and keeps its message if it is among the first MAX_REPORTED_ERRORS in file order
+     * so far. Errors arrive in file order from each file, but files are parsed in any order.
+     */
+    private static void addError(AtomicInteger errorCount, TreeMap<Long, String> errors, long order, String message) {
+        errorCount.incrementAndGet();
+        synchronized (errors) {
+            if (errors.size() < MAX_REPORTED_ERRORS || order < errors.lastKey()) {
+                errors.put(order, message);
+                if (errors.size() > MAX_REPORTED_ERRORS) {
+                    errors.pollLastEntry();
+                }
+            }
+        }
+    }
+}
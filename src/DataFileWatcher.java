@@ -0,0 +1,383 @@
+import java.io.Closeable;
+import java.io.FileReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * DataFileWatcher notices when another program changes a CSV data file while the application is
+ * running, e.g. a script that updates data.csv, and works out which rows it changed.
+ *
+ * A WatchService on the file's directory wakes a daemon thread, which waits until the file has been
+ * quiet for QUIET_MILLIS so a write in progress is read once it is finished. The file is then read
+ * row by row and each row's text is hashed: a row whose hash was in the file the last time it was read
+ * is unchanged and is not parsed. Only added and changed rows are parsed, and the rows that are gone
+ * are found from the hashes that were not seen again. The listener gets the result as a Diff of the
+ * rows before and after; the rows are Subjects that are only read, never added to a repository.
+ *
+ * A file with an invalid row is not reported, since a half-edited row would otherwise look like a
+ * removed subject; the listener is told it failed instead. The application's own writes of the data
+ * file are announced with beginWrite() and endWrite(), and only refresh the rows without being
+ * reported. A diff read before such a write has a stale generation and should be dropped.
+ */
+public class DataFileWatcher implements Closeable {
+    private static final long QUIET_MILLIS = 300;
+
+    private static final LatencyHistogram RELOAD_TIME = Metrics.timer("watch.reload");
+    private static final Metrics.Counter ROWS_PARSED = Metrics.counter("watch.rows.parsed");
+
+    /**
+     * Told about changes made to the data file by other programs. Called on the watcher thread.
+     */
+    public interface Listener {
+
+        void changed(Diff diff);
+
+        void failed(IOException e);
+    }
+
+    /**
+     * A row that was added, changed or removed.
+     */
+    public static class Change {
+        private final Subject before;
+        private final Subject after;
+
+        Change(Subject before, Subject after) {
+            this.before = before;
+            this.after = after;
+        }
+
+        /**
+         * Returns the row as it was.
+         *
+         * @return The row, or null if it was added.
+         */
+        public Subject getBefore() {
+            return before;
+        }
+
+        /**
+         * Returns the row as it is now.
+         *
+         * @return The row, or null if it was removed.
+         */
+        public Subject getAfter() {
+            return after;
+        }
+    }
+
+    /**
+     * The rows that changed between two reads of the file.
+     */
+    public static class Diff {
+        private final List<Change> changes;
+        private final int rowCount;
+        private final int parsedRows;
+        private final int generation;
+        // Every row of the file, by the hash of its text
+        private final Map<Long, Subject> rows;
+
+        Diff(List<Change> changes, Map<Long, Subject> rows, int rowCount, int parsedRows, int generation) {
+            this.changes = changes;
+            this.rows = rows;
+            this.rowCount = rowCount;
+            this.parsedRows = parsedRows;
+            this.generation = generation;
+        }
+
+        public List<Change> getChanges() {
+            return changes;
+        }
+
+        /**
+         * Returns the number of rows in the file.
+         *
+         * @return The number of rows.
+         */
+        public int getRowCount() {
+            return rowCount;
+        }
+
+        /**
+         * Returns the number of rows that had to be parsed, because their text was new.
+         *
+         * @return The number of parsed rows.
+         */
+        public int getParsedRows() {
+            return parsedRows;
+        }
+
+        /**
+         * Returns the number of writes announced by endWrite() before the file was read.
+         *
+         * @return The generation.
+         */
+        public int getGeneration() {
+            return generation;
+        }
+    }
+
+    private final Path file;
+    private final Path fileName;
+    private final Listener listener;
+    private final WatchService watchService;
+    private final Thread thread;
+
+    // The rows last read, by the hash of their text. Only used on the watcher thread.
+    private Map<Long, Subject> rows = Collections.emptyMap();
+    // What the file looked like when it was last read
+    private Fingerprint known;
+    private boolean started = false;
+
+    // Written on the thread that writes the data file
+    private volatile Fingerprint ownWrite;
+    private Fingerprint beforeWrite;
+    private final AtomicInteger generation = new AtomicInteger();
+
+    /**
+     * Reads the file on the calling thread and starts watching it. Changes made to the file between
+     * loading it and reading it here are not reported.
+     *
+     * @param file The CSV data file.
+     * @param listener Told about changes on the watcher thread.
+     * @throws IOException If the directory could not be watched.
+     */
+    public DataFileWatcher(Path file, Listener listener) throws IOException {
+        this.file = file.toAbsolutePath();
+        this.fileName = this.file.getFileName();
+        this.listener = listener;
+        this.watchService = FileSystems.getDefault().newWatchService();
+        try {
+            this.file.getParent().register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        } catch (IOException e) {
+            watchService.close();
+            throw e;
+        }
+        check();
+        this.thread = new Thread(this::run, "data-file-watcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Returns the number of writes announced by endWrite() so far. A Diff with an older generation was
+     * read before the application last wrote the file, so it no longer describes the file.
+     *
+     * @return The generation.
+     */
+    public int getGeneration() {
+        return generation.get();
+    }
+
+    /**
+     * Announces that the application may be about to write the data file. Must be followed by endWrite()
+     * on the same thread.
+     */
+    public void beginWrite() {
+        beforeWrite = Fingerprint.read(file);
+    }
+
+    /**
+     * Announces that the write started by beginWrite() is finished. If the file changed, it is the
+     * application's own version: it is read to refresh the rows but not reported.
+     */
+    public void endWrite() {
+        Fingerprint after = Fingerprint.read(file);
+        if (after != null && !after.equals(beforeWrite)) {
+            ownWrite = after;
+            generation.incrementAndGet();
+        }
+    }
+
+    /**
+     * Stops watching the file.
+     *
+     * @throws IOException If the watch service could not be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        thread.interrupt();
+        watchService.close();
+    }
+
+    private void run() {
+        try {
+            while (true) {
+                if (isAboutFile(watchService.take())) {
+                    // Wait until nothing in the directory has changed for a while
+                    WatchKey key;
+                    while ((key = watchService.poll(QUIET_MILLIS, TimeUnit.MILLISECONDS)) != null) {
+                        isAboutFile(key);
+                    }
+                    check();
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // Closed
+        }
+    }
+
+    private boolean isAboutFile(WatchKey key) {
+        boolean about = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW || fileName.equals(event.context())) {
+                about = true;
+            }
+        }
+        key.reset();
+        return about;
+    }
+
+    /**
+     * Reads the file if it is not as it was last read, and reports what changed unless it is the
+     * application's own write. An empty or missing file is taken to be in the middle of being written.
+     */
+    private void check() {
+        // The file as it was when watching started is what the application loaded
+        boolean own = !started;
+        started = true;
+        Fingerprint current = Fingerprint.read(file);
+        if (current == null || current.size == 0 || current.equals(known)) {
+            return;
+        }
+        int readGeneration = generation.get();
+        own |= current.equals(ownWrite);
+        try {
+            long start = Metrics.start();
+            Diff diff = read(!own, readGeneration);
+            if (!current.equals(Fingerprint.read(file))) {
+                // Changed while it was read; the next event reads it again
+                return;
+            }
+            rows = diff.rows;
+            known = current;
+            RELOAD_TIME.recordSince(start);
+            if (!own && !diff.getChanges().isEmpty()) {
+                listener.changed(diff);
+            }
+        } catch (IOException e) {
+            // Keep the rows last read, so the changes are reported once the file is valid again
+            known = current;
+            listener.failed(e);
+        }
+    }
+
+    /**
+     * Reads the file and diffs it against the rows read last time.
+     *
+     * @param strict True to fail on an invalid row, false to skip it as loading does.
+     */
+    private Diff read(boolean strict, int readGeneration) throws IOException {
+        Map<Long, Subject> previous = rows;
+        Map<Long, Subject> current = new HashMap<>(Math.max(16, previous.size() * 4 / 3 + 1));
+        List<Subject> parsed = new ArrayList<>();
+        int rowCount = 0;
+        try (SubjectCsvReader reader = new SubjectCsvReader(new FileReader(file.toFile(), StandardCharsets.UTF_8))) {
+            while (reader.nextRow()) {
+                long hash = reader.hashRow();
+                if (current.containsKey(hash)) {
+                    // The same row twice
+                    continue;
+                }
+                Subject row = previous.get(hash);
+                if (row == null) {
+                    try {
+                        row = reader.parseRow();
+                    } catch (IllegalArgumentException e) {
+                        if (strict) {
+                            throw new IOException("Line " + reader.getLineNumber() + ": " + reader.getLine() + " (" + e.getMessage() + ")");
+                        }
+                        continue;
+                    }
+                    parsed.add(row);
+                }
+                current.put(hash, row);
+                rowCount++;
+            }
+        }
+        ROWS_PARSED.add(parsed.size());
+
+        // Rows that are not in the file any more were changed or removed
+        Map<String, Subject> gone = new HashMap<>();
+        if (previous.size() + parsed.size() > rowCount) {
+            for (Map.Entry<Long, Subject> entry : previous.entrySet()) {
+                if (!current.containsKey(entry.getKey())) {
+                    gone.put(SubjectRepository.normalize(entry.getValue().getName()), entry.getValue());
+                }
+            }
+        }
+        List<Change> changes = new ArrayList<>();
+        Set<String> names = new HashSet<>();
+        for (Subject row : parsed) {
+            String name = SubjectRepository.normalize(row.getName());
+            if (names.add(name)) {
+                changes.add(new Change(gone.remove(name), row));
+            }
+        }
+        for (Subject row : gone.values()) {
+            changes.add(new Change(row, null));
+        }
+        return new Diff(changes, current, rowCount, parsed.size(), readGeneration);
+    }
+
+    /**
+     * Identifies a version of the file by its file key, size and modification time, which an atomic
+     * rename or a rewrite in place changes.
+     */
+    private static class Fingerprint {
+        private final Object fileKey;
+        private final long size;
+        private final FileTime modified;
+
+        private Fingerprint(BasicFileAttributes attributes) {
+            this.fileKey = attributes.fileKey();
+            this.size = attributes.size();
+            this.modified = attributes.lastModifiedTime();
+        }
+
+        /**
+         * Returns the fingerprint of the file, or null if it does not exist or cannot be read.
+         */
+        static Fingerprint read(Path file) {
+            try {
+                return new Fingerprint(Files.readAttributes(file, BasicFileAttributes.class));
+            } catch (IOException e) {
+                return null;
+            }
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Fingerprint)) {
+                return false;
+            }
+            Fingerprint other = (Fingerprint) o;
+            return size == other.size && modified.equals(other.modified) && Objects.equals(fileKey, other.fileKey);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(fileKey, size, modified);
+        }
+    }
+}
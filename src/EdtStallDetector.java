@@ -0,0 +1,137 @@
+import java.awt.AWTEvent;
+import java.awt.Component;
+import java.awt.EventQueue;
+import java.awt.Toolkit;
+import java.awt.event.ActionEvent;
+import javax.swing.AbstractButton;
+
+/**
+ * EdtStallDetector times every event dispatched on the Event Dispatch Thread and logs any event whose
+ * listeners run longer than a threshold to standard error, with the stack of the EDT taken while it
+ * was stalled, so the slow listener can be found. Dispatch times are recorded in the "edt.dispatch"
+ * histogram.
+ *
+ * A modal dialog dispatches further events while its opening listener waits, so an event that
+ * dispatched nested events is not counted: its time is spent waiting for the user, not blocking.
+ */
+public class EdtStallDetector extends EventQueue {
+    private static final LatencyHistogram DISPATCH_TIME = Metrics.timer("edt.dispatch");
+    private static final Metrics.Counter STALLS = Metrics.counter("edt.stalls");
+
+    /**
+     * An event being dispatched. Written on the EDT, read by the watchdog.
+     */
+    private static class Dispatch {
+        final AWTEvent event;
+        final long startNanos;
+        volatile boolean nested;
+        volatile StackTraceElement[] stack;
+
+        Dispatch(AWTEvent event, long startNanos) {
+            this.event = event;
+            this.startNanos = startNanos;
+        }
+    }
+
+    private final long thresholdNanos;
+    private volatile Dispatch current;
+    private volatile Thread dispatchThread;
+
+    private EdtStallDetector(long thresholdMillis) {
+        this.thresholdNanos = thresholdMillis * 1_000_000L;
+    }
+
+    /**
+     * Installs a detector on the system event queue, with a watchdog thread that captures the stack
+     * of a stalled EDT. Does nothing if metrics are disabled.
+     *
+     * @param thresholdMillis Events taking longer than this are logged.
+     */
+    public static void install(long thresholdMillis) {
+        if (!Metrics.ENABLED) {
+            return;
+        }
+        EdtStallDetector detector = new EdtStallDetector(thresholdMillis);
+        Toolkit.getDefaultToolkit().getSystemEventQueue().push(detector);
+        Thread watchdog = new Thread(detector::watch, "edt-stall-detector");
+        watchdog.setDaemon(true);
+        watchdog.start();
+    }
+
+    @Override
+    protected void dispatchEvent(AWTEvent event) {
+        Dispatch outer = current;
+        if (outer != null) {
+            outer.nested = true;
+        }
+        dispatchThread = Thread.currentThread();
+        Dispatch dispatch = new Dispatch(event, System.nanoTime());
+        current = dispatch;
+        try {
+            super.dispatchEvent(event);
+        } finally {
+            current = outer;
+            long nanos = System.nanoTime() - dispatch.startNanos;
+            if (!dispatch.nested) {
+                DISPATCH_TIME.record(nanos);
+                if (nanos > thresholdNanos) {
+                    STALLS.increment();
+                    report(dispatch, nanos);
+                }
+            }
+        }
+    }
+
+    /**
+     * Samples the EDT's stack once while an event runs past the threshold.
+     */
+    private void watch() {
+        long sleepMillis = Math.max(1, thresholdNanos / 2_000_000L);
+        while (true) {
+            try {
+                Thread.sleep(sleepMillis);
+            } catch (InterruptedException e) {
+                return;
+            }
+            Dispatch dispatch = current;
+            Thread thread = dispatchThread;
+            if (dispatch != null && thread != null && !dispatch.nested && dispatch.stack == null
+                    && System.nanoTime() - dispatch.startNanos > thresholdNanos) {
+                StackTraceElement[] stack = thread.getStackTrace();
+                // The event may have finished while the stack was taken
+                if (current == dispatch) {
+                    dispatch.stack = stack;
+                }
+            }
+        }
+    }
+
+    private static void report(Dispatch dispatch, long nanos) {
+        StringBuilder message = new StringBuilder("EDT stall: ");
+        message.append(nanos / 1_000_000L).append(" ms in ").append(describe(dispatch.event));
+        StackTraceElement[] stack = dispatch.stack;
+        if (stack != null) {
+            message.append("\n  stack while stalled:");
+            for (StackTraceElement element : stack) {
+                message.append("\n    at ").append(element);
+            }
+        }
+        System.err.println(message);
+    }
+
+    private static String describe(AWTEvent event) {
+        StringBuilder text = new StringBuilder(event.getClass().getSimpleName());
+        if (event instanceof ActionEvent) {
+            text.append(" \"").append(((ActionEvent) event).getActionCommand()).append('"');
+        }
+        Object source = event.getSource();
+        if (source instanceof AbstractButton) {
+            text.append(" on button \"").append(((AbstractButton) source).getText()).append('"');
+        } else if (source instanceof Component) {
+            text.append(" on ").append(source.getClass().getSimpleName());
+        } else if (source != null) {
+            text.append(" from ").append(source.getClass().getName());
+        }
+        return text.toString();
+    }
+}
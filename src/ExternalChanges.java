@@ -0,0 +1,158 @@
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+/**
+ * ExternalChanges picks up changes that other programs make to a StudyTracker's CSV data file while it
+ * is open, e.g. a script that updates data.csv.
+ *
+ * Only the rows that changed are applied, as a three-way merge: what the file changed is applied on
+ * top of the changes made here since it was read, which is also what the next load would see from
+ * replaying the journal over the new file. The applied changes are shared with sync peers but not
+ * journaled, since the data file already has them, and cannot be undone. A subject whose row is
+ * removed while it is being timed is kept and journaled, so it survives the next load.
+ *
+ * Like StudyTracker it is not thread-safe. Changes are applied by an executor on the thread that
+ * changes the subjects.
+ */
+public class ExternalChanges {
+    private final StudyTracker tracker;
+
+    // Null until started
+    private DataFileWatcher watcher;
+
+    /**
+     * @param tracker The tracker whose data file is watched.
+     */
+    ExternalChanges(StudyTracker tracker) {
+        this.tracker = tracker;
+    }
+
+    /**
+     * Starts applying changes that other programs make to the data file. The file is read once on the
+     * calling thread; from then on each change is diffed against it by row and only the rows that
+     * changed are applied, without replacing the other subjects. Must be called after
+     * StudyTracker.load(), on the thread that changes the subjects.
+     *
+     * @param executor Runs the updates to the subjects on the thread that changes them, e.g. the Event
+     *                 Dispatch Thread.
+     * @param listener Told about each applied change through the executor, and about files that could not
+     *                 be read on the watcher thread.
+     * @throws IOException If the data file could not be watched.
+     * @throws IllegalArgumentException If the data file is not a CSV file.
+     */
+    public void start(Executor executor, DataFileWatcher.Listener listener) throws IOException {
+        if (watcher != null) {
+            return;
+        }
+        SubjectStorage store = tracker.getStore();
+        if (!(store instanceof SubjectStore) || ((SubjectStore) store).isBinary()) {
+            throw new IllegalArgumentException("Only CSV data files can be watched for changes.");
+        }
+        watcher = new DataFileWatcher(((SubjectStore) store).getSnapshotPath(), new DataFileWatcher.Listener() {
+            @Override
+            public void changed(DataFileWatcher.Diff diff) {
+                executor.execute(() -> {
+                    if (apply(diff)) {
+                        listener.changed(diff);
+                    }
+                });
+            }
+
+            @Override
+            public void failed(IOException e) {
+                listener.failed(e);
+            }
+        });
+    }
+
+    /**
+     * Stops watching the data file for changes.
+     *
+     * @throws IOException If the watcher could not be closed.
+     */
+    public void stop() throws IOException {
+        if (watcher != null) {
+            DataFileWatcher stopped = watcher;
+            watcher = null;
+            stopped.close();
+        }
+    }
+
+    /**
+     * Returns the watcher, which must be told when the tracker writes the data file itself.
+     *
+     * @return The watcher, or null if the data file is not watched.
+     */
+    DataFileWatcher getWatcher() {
+        return watcher;
+    }
+
+    /**
+     * Applies the rows of the data file that another program changed, unless the tracker has written
+     * the file since they were read.
+     *
+     * @return True if the diff was applied.
+     */
+    private boolean apply(DataFileWatcher.Diff diff) {
+        if (watcher == null || diff.getGeneration() != watcher.getGeneration()) {
+            return false;
+        }
+        SubjectRepository repository = tracker.getRepository();
+        List<Subject> added = new ArrayList<>();
+        for (DataFileWatcher.Change change : diff.getChanges()) {
+            Subject before = change.getBefore();
+            Subject after = change.getAfter();
+            Subject subject = repository.findByName((after != null ? after : before).getName());
+            if (after == null) {
+                if (subject == null) {
+                    continue;
+                }
+                if (tracker.getTimerEngine().isRunning(subject)) {
+                    // Keep it, and journal it whole so the next load brings it back
+                    tracker.journalSubject(subject);
+                } else {
+                    repository.remove(subject);
+                    tracker.share(SubjectChange.removeSubject(subject.getName()));
+                }
+            } else if (subject == null) {
+                // A changed row of a subject removed here stays removed, as the journal will have it
+                if (before == null) {
+                    added.add(new Subject(after.getName(), after.getTime(), after.getTasks()));
+                }
+            } else {
+                long time = after.getTime() - (before != null ? before.getTime() : 0);
+                if (time != 0) {
+                    subject.addTime(time);
+                    tracker.share(SubjectChange.addTime(subject.getName(), time));
+                }
+                for (String task : after.getTasks()) {
+                    if ((before == null || !before.hasTask(task)) && subject.addTask(task)) {
+                        tracker.share(SubjectChange.addTask(subject.getName(), task));
+                    }
+                }
+                if (before != null) {
+                    for (String task : before.getTasks()) {
+                        if (!after.hasTask(task) && subject.removeTask(task)) {
+                            tracker.share(SubjectChange.removeTask(subject.getName(), task));
+                        }
+                    }
+                }
+            }
+        }
+        if (!added.isEmpty()) {
+            repository.addAll(added);
+            for (Subject subject : added) {
+                tracker.share(SubjectChange.addSubject(subject.getName()));
+                if (subject.getTime() != 0) {
+                    tracker.share(SubjectChange.addTime(subject.getName(), subject.getTime()));
+                }
+                for (String task : subject.getTasks()) {
+                    tracker.share(SubjectChange.addTask(subject.getName(), task));
+                }
+            }
+        }
+        return true;
+    }
+}
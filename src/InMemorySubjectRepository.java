@@ -0,0 +1,193 @@
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * InMemorySubjectRepository is a plain, headless SubjectRepository: the subjects are held in a list
+ * with a case-insensitive name index beside it. It does not depend on Swing, so it can be used by
+ * batch jobs and servers without a display.
+ *
+ * Like SubjectListModel, the index is maintained on add and only re-indexed from the first removed
+ * position when a shifted row is looked up. It is thread-safe: every method holds the repository's
+ * lock, so loaders, timers and import jobs can share it. Listeners are called while the lock is held,
+ * one change at a time, so aggregates such as StudyAnalytics stay consistent.
+ */
+public class InMemorySubjectRepository implements SubjectRepository, Subject.ChangeListener {
+    private final List<Subject> subjects = new ArrayList<>();
+
+    // Normalized name -> row. Rows at or after staleFrom may have shifted since they were indexed.
+    private final Map<String, Integer> nameIndex = new HashMap<>();
+    private int staleFrom = Integer.MAX_VALUE;
+
+    private final List<SubjectModelListener> modelListeners = new ArrayList<>();
+
+    @Override
+    public synchronized int size() {
+        return subjects.size();
+    }
+
+    @Override
+    public synchronized boolean isEmpty() {
+        return subjects.isEmpty();
+    }
+
+    @Override
+    public synchronized Subject get(int index) {
+        return subjects.get(index);
+    }
+
+    @Override
+    public synchronized String nameAt(int index) {
+        return subjects.get(index).getName();
+    }
+
+    @Override
+    public synchronized long timeAt(int index) {
+        return subjects.get(index).getTime();
+    }
+
+    @Override
+    public synchronized int taskCountAt(int index) {
+        return subjects.get(index).getTaskCount();
+    }
+
+    @Override
+    public synchronized void add(Subject subject) {
+        subject.setChangeListener(this);
+        nameIndex.put(SubjectRepository.normalize(subject.getName()), subjects.size());
+        subjects.add(subject);
+        fireRowsAdded(subjects.size() - 1, subjects.size() - 1);
+    }
+
+    @Override
+    public synchronized void addAll(Collection<? extends Subject> added) {
+        if (added.isEmpty()) {
+            return;
+        }
+        int first = subjects.size();
+        for (Subject subject : added) {
+            subject.setChangeListener(this);
+            nameIndex.put(SubjectRepository.normalize(subject.getName()), subjects.size());
+            subjects.add(subject);
+        }
+        fireRowsAdded(first, subjects.size() - 1);
+    }
+
+    @Override
+    public synchronized boolean remove(Subject subject) {
+        int index = indexOfName(subject.getName());
+        if (index < 0 || subjects.get(index) != subject) {
+            return false;
+        }
+        subjects.remove(index);
+        nameIndex.remove(SubjectRepository.normalize(subject.getName()));
+        staleFrom = Math.min(staleFrom, index);
+        subject.setChangeListener(null);
+        for (SubjectModelListener listener : modelListeners) {
+            listener.subjectRemoved(subject);
+        }
+        return true;
+    }
+
+    @Override
+    public synchronized int removeAll(Collection<? extends Subject> removed) {
+        Set<Subject> remove = Collections.newSetFromMap(new IdentityHashMap<>());
+        remove.addAll(removed);
+        List<Subject> gone = new ArrayList<>();
+        int kept = 0;
+        for (int i = 0; i < subjects.size(); i++) {
+            Subject subject = subjects.get(i);
+            if (remove.contains(subject)) {
+                gone.add(subject);
+                nameIndex.remove(SubjectRepository.normalize(subject.getName()));
+                staleFrom = Math.min(staleFrom, kept);
+            } else {
+                subjects.set(kept++, subject);
+            }
+        }
+        subjects.subList(kept, subjects.size()).clear();
+        for (Subject subject : gone) {
+            subject.setChangeListener(null);
+            for (SubjectModelListener listener : modelListeners) {
+                listener.subjectRemoved(subject);
+            }
+        }
+        return gone.size();
+    }
+
+    @Override
+    public synchronized boolean containsName(String name) {
+        return nameIndex.containsKey(SubjectRepository.normalize(name));
+    }
+
+    @Override
+    public synchronized Subject findByName(String name) {
+        int index = indexOfName(name);
+        return index < 0 ? null : subjects.get(index);
+    }
+
+    @Override
+    public synchronized List<Subject> toList() {
+        return new ArrayList<>(subjects);
+    }
+
+    @Override
+    public synchronized void clear() {
+        for (Subject subject : subjects) {
+            subject.setChangeListener(null);
+        }
+        subjects.clear();
+        nameIndex.clear();
+        staleFrom = Integer.MAX_VALUE;
+        for (SubjectModelListener listener : modelListeners) {
+            listener.cleared();
+        }
+    }
+
+    @Override
+    public synchronized void addSubjectModelListener(SubjectModelListener listener) {
+        modelListeners.add(listener);
+    }
+
+    @Override
+    public synchronized void removeSubjectModelListener(SubjectModelListener listener) {
+        modelListeners.remove(listener);
+    }
+
+    /**
+     * Passes changes to a subject's time or tasks on to the model listeners.
+     */
+    @Override
+    public synchronized void subjectChanged(Subject subject) {
+        for (SubjectModelListener listener : modelListeners) {
+            listener.subjectChanged(subject);
+        }
+    }
+
+    private int indexOfName(String name) {
+        String key = SubjectRepository.normalize(name);
+        Integer row = nameIndex.get(key);
+        if (row == null) {
+            return -1;
+        }
+        if (row >= staleFrom) {
+            for (int i = staleFrom; i < subjects.size(); i++) {
+                nameIndex.put(SubjectRepository.normalize(subjects.get(i).getName()), i);
+            }
+            staleFrom = Integer.MAX_VALUE;
+            row = nameIndex.get(key);
+        }
+        return row;
+    }
+
+    private void fireRowsAdded(int from, int to) {
+        for (SubjectModelListener listener : modelListeners) {
+            listener.rowsAdded(from, to);
+        }
+    }
+}
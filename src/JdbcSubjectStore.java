@@ -0,0 +1,700 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * JdbcSubjectStore keeps subjects, their tasks and the timing sessions in an embedded database, such
+ * as an H2 or SQLite file, so a save only touches the rows that changed and a start only reads the rows
+ * that are shown.
+ *
+ * Tables:
+ *   subjects (name_key, name, seq, time_millis)      name_key is the normalized name; seq keeps the list order
+ *   tasks (name_key, seq, task)                      one row per task, in the order it was added
+ *   session_subjects (id, name), sessions (subject_id, start_millis, duration_millis)
+ * with indexes on subjects(seq), tasks(name_key, seq) and sessions(subject_id, start_millis). Names and
+ * tasks are VARCHAR without a length, since the application does not limit them either.
+ *
+ * Recorded changes are written by flush() in one transaction, as batches of prepared statements:
+ * consecutive changes of the same kind share a batch, so the order of the changes is kept. The database
+ * is always complete once flushed, so there is no journal and compacting only flushes.
+ *
+ * Only standard SQL is used and no driver is compiled in: the JDBC URL picks the database, and its driver
+ * must be on the class path at run time. A ".db" data file opens jdbc:h2:&lt;path without .db&gt; unless
+ * -Dstudytracker.jdbc.url is set, e.g. to jdbc:sqlite:data.db.
+ *
+ * Writes use one connection under a lock; the SubjectSource returned by a lazy load() reads pages of
+ * subjects through a second connection and must be used by one thread at a time.
+ */
+public class JdbcSubjectStore implements SubjectStorage {
+    private static final int LOAD_BATCH_SIZE = 1000;
+    private static final int WRITE_BATCH_SIZE = 1000;
+    private static final int PAGE_SIZE = 256;
+    private static final int MAX_CACHED_PAGES = 64;
+
+    private static final String[] SCHEMA = {
+            "CREATE TABLE IF NOT EXISTS subjects (name_key VARCHAR NOT NULL PRIMARY KEY, name VARCHAR NOT NULL,"
+                    + " seq BIGINT NOT NULL, time_millis BIGINT NOT NULL)",
+            "CREATE UNIQUE INDEX IF NOT EXISTS subjects_seq ON subjects (seq)",
+            "CREATE TABLE IF NOT EXISTS tasks (name_key VARCHAR NOT NULL, seq INTEGER NOT NULL, task VARCHAR NOT NULL,"
+                    + " PRIMARY KEY (name_key, task))",
+            "CREATE INDEX IF NOT EXISTS tasks_seq ON tasks (name_key, seq)",
+            "CREATE TABLE IF NOT EXISTS session_subjects (id INTEGER NOT NULL PRIMARY KEY, name VARCHAR NOT NULL)",
+            "CREATE TABLE IF NOT EXISTS sessions (subject_id INTEGER NOT NULL, start_millis BIGINT NOT NULL, duration_millis BIGINT NOT NULL)",
+            "CREATE INDEX IF NOT EXISTS sessions_subject_start ON sessions (subject_id, start_millis)"
+    };
+
+    private static final String INSERT_SUBJECT = "INSERT INTO subjects (name_key, name, seq, time_millis) VALUES (?, ?, ?, ?)";
+    private static final String DELETE_SUBJECT = "DELETE FROM subjects WHERE name_key = ?";
+    private static final String DELETE_SUBJECT_TASKS = "DELETE FROM tasks WHERE name_key = ?";
+    private static final String ADD_TIME = "UPDATE subjects SET time_millis = time_millis + ? WHERE name_key = ?";
+    // Appends after the subject's last task, so tasks keep the order they were added in
+    private static final String APPEND_TASK = "INSERT INTO tasks (name_key, seq, task)"
+            + " SELECT ?, COALESCE(MAX(seq), -1) + 1, ? FROM tasks WHERE name_key = ?";
+    private static final String INSERT_TASK = "INSERT INTO tasks (name_key, seq, task) VALUES (?, ?, ?)";
+    private static final String DELETE_TASK = "DELETE FROM tasks WHERE name_key = ? AND task = ?";
+
+    private static final LatencyHistogram FLUSH_TIME = Metrics.timer("store.flush");
+    private static final Metrics.Counter CHANGES_WRITTEN = Metrics.counter("store.changes.written");
+
+    private final String url;
+    private final List<SubjectChange> pending = new ArrayList<>();
+
+    // Guarded by ioLock
+    private final Object ioLock = new Object();
+    private Connection connection;
+    private long nextSeq = -1;
+
+    // Connection of the last lazy source, closed with the store
+    private Connection readConnection;
+
+    /**
+     * Returns true if a data file should be stored in a database rather than as a file.
+     *
+     * @param dataFile The data file.
+     * @return True if the file name ends in ".db".
+     */
+    public static boolean isDatabase(Path dataFile) {
+        return dataFile.getFileName().toString().endsWith(".db");
+    }
+
+    /**
+     * Returns the JDBC URL for a ".db" data file: the studytracker.jdbc.url property if it is set,
+     * otherwise an embedded H2 database next to the data file.
+     *
+     * @param dataFile The data file.
+     * @return The JDBC URL.
+     */
+    public static String url(Path dataFile) {
+        String url = System.getProperty("studytracker.jdbc.url");
+        if (url != null) {
+            return url;
+        }
+        String path = dataFile.toAbsolutePath().toString();
+        return "jdbc:h2:" + path.substring(0, path.length() - ".db".length());
+    }
+
+    /**
+     * Creates a store for the database at the given URL. Nothing is opened until the store is used.
+     *
+     * @param url The JDBC URL.
+     */
+    public JdbcSubjectStore(String url) {
+        this.url = url;
+    }
+
+    @Override
+    public String getLocation() {
+        return url;
+    }
+
+    /**
+     * Opens the database and creates the tables and indexes that do not exist yet. Incomplete
+     * transactions are rolled back by the database itself.
+     *
+     * @throws IOException If the database could not be opened.
+     */
+    @Override
+    public void recover() throws IOException {
+        synchronized (ioLock) {
+            try {
+                connection();
+            } catch (SQLException e) {
+                throw new IOException("Error opening " + url + ": " + e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * Reads the subjects. When lazy, only the order of the rows is read and the returned source reads
+     * pages of rows as they are needed; otherwise every subject is read with one query and passed to the
+     * sink in batches.
+     *
+     * @param sink Receives the subjects and progress.
+     * @param lazy True to read rows on demand.
+     * @return The source when lazy, otherwise null.
+     * @throws IOException If the database could not be read.
+     */
+    @Override
+    public SubjectSource load(Sink sink, boolean lazy) throws IOException {
+        try {
+            if (lazy) {
+                Connection reader = DriverManager.getConnection(url);
+                synchronized (ioLock) {
+                    if (readConnection != null) {
+                        readConnection.close();
+                    }
+                    readConnection = reader;
+                }
+                SubjectSource source = new PagedSource(reader);
+                sink.progress(100);
+                return source;
+            }
+            loadAll(sink);
+            sink.progress(100);
+            return null;
+        } catch (SQLException e) {
+            throw new IOException("Error reading " + url + ": " + e.getMessage(), e);
+        }
+    }
+
+    private void loadAll(Sink sink) throws SQLException {
+        synchronized (ioLock) {
+            Connection db = connection();
+            int total = 0;
+            try (Statement statement = db.createStatement();
+                 ResultSet rows = statement.executeQuery("SELECT COUNT(*) FROM subjects")) {
+                rows.next();
+                total = Math.max(1, rows.getInt(1));
+            }
+            String query = "SELECT s.name, s.time_millis, t.task FROM subjects s LEFT JOIN tasks t ON t.name_key = s.name_key"
+                    + " ORDER BY s.seq, t.seq";
+            List<Subject> batch = new ArrayList<>(LOAD_BATCH_SIZE);
+            int count = 0;
+            try (Statement statement = db.createStatement()) {
+                statement.setFetchSize(LOAD_BATCH_SIZE);
+                try (ResultSet rows = statement.executeQuery(query)) {
+                    Subject subject = null;
+                    while (rows.next()) {
+                        String name = rows.getString(1);
+                        if (subject == null || !subject.getName().equals(name)) {
+                            if (batch.size() == LOAD_BATCH_SIZE) {
+                                sink.subjects(batch);
+                                sink.progress((int) Math.min(100, count * 100L / total));
+                                batch = new ArrayList<>(LOAD_BATCH_SIZE);
+                            }
+                            subject = new Subject(name, rows.getLong(2));
+                            batch.add(subject);
+                            count++;
+                        }
+                        String task = rows.getString(3);
+                        if (task != null) {
+                            subject.addTask(task);
+                        }
+                    }
+                }
+            }
+            db.commit();
+            if (!batch.isEmpty()) {
+                sink.subjects(batch);
+            }
+        }
+    }
+
+    /**
+     * Returns an empty list: changes are written straight to the tables.
+     *
+     * @return An empty list.
+     */
+    @Override
+    public List<SubjectChange> readJournal() {
+        return new ArrayList<>();
+    }
+
+    @Override
+    public void record(SubjectChange change) {
+        synchronized (pending) {
+            pending.add(change);
+        }
+    }
+
+    @Override
+    public boolean hasPendingChanges() {
+        synchronized (pending) {
+            return !pending.isEmpty();
+        }
+    }
+
+    /**
+     * Writes the recorded changes in one transaction. If it fails, the transaction is rolled back and
+     * the changes stay recorded for the next attempt.
+     *
+     * @return True if there were changes to write.
+     * @throws IOException If the changes could not be written.
+     */
+    @Override
+    public boolean flush() throws IOException {
+        long start = Metrics.start();
+        synchronized (ioLock) {
+            List<SubjectChange> changes;
+            synchronized (pending) {
+                changes = new ArrayList<>(pending);
+                pending.clear();
+            }
+            if (changes.isEmpty()) {
+                return false;
+            }
+            try {
+                Connection db = connection();
+                long seq = nextSeq;
+                try {
+                    write(db, changes);
+                    db.commit();
+                } catch (SQLException e) {
+                    nextSeq = seq;
+                    db.rollback();
+                    throw e;
+                }
+            } catch (SQLException e) {
+                synchronized (pending) {
+                    pending.addAll(0, changes);
+                }
+                throw new IOException("Error writing " + url + ": " + e.getMessage(), e);
+            }
+            CHANGES_WRITTEN.add(changes.size());
+            FLUSH_TIME.recordSince(start);
+            return true;
+        }
+    }
+
+    @Override
+    public void save(List<Subject> subjects) throws IOException {
+        flush();
+    }
+
+    /**
+     * Flushes the recorded changes; the tables never hold anything to fold away.
+     *
+     * @param subjects Not used.
+     * @throws IOException If the changes could not be written.
+     */
+    @Override
+    public void compact(List<Subject> subjects) throws IOException {
+        flush();
+    }
+
+    /**
+     * Replaces everything stored with the given subjects in one transaction, e.g. to convert a CSV file.
+     * Recorded changes that were not flushed are discarded. Must not be called while a lazy source is in use.
+     *
+     * @param subjects The subjects to store.
+     * @throws IOException If the subjects could not be written. The previous contents are left intact.
+     */
+    public void replaceAll(List<Subject> subjects) throws IOException {
+        synchronized (ioLock) {
+            try {
+                Connection db = connection();
+                try {
+                    try (Statement statement = db.createStatement()) {
+                        statement.executeUpdate("DELETE FROM tasks");
+                        statement.executeUpdate("DELETE FROM subjects");
+                    }
+                    try (PreparedStatement insertSubject = db.prepareStatement(INSERT_SUBJECT);
+                         PreparedStatement insertTask = db.prepareStatement(INSERT_TASK)) {
+                        int subjectRows = 0;
+                        int taskRows = 0;
+                        for (int i = 0; i < subjects.size(); i++) {
+                            Subject subject = subjects.get(i);
+                            String key = SubjectRepository.normalize(subject.getName());
+                            insertSubject.setString(1, key);
+                            insertSubject.setString(2, subject.getName());
+                            insertSubject.setLong(3, i);
+                            insertSubject.setLong(4, subject.getTime());
+                            insertSubject.addBatch();
+                            if (++subjectRows % WRITE_BATCH_SIZE == 0) {
+                                insertSubject.executeBatch();
+                            }
+                            List<String> tasks = subject.getTasks();
+                            for (int t = 0; t < tasks.size(); t++) {
+                                insertTask.setString(1, key);
+                                insertTask.setInt(2, t);
+                                insertTask.setString(3, tasks.get(t));
+                                insertTask.addBatch();
+                                if (++taskRows % WRITE_BATCH_SIZE == 0) {
+                                    insertTask.executeBatch();
+                                }
+                            }
+                        }
+                        insertSubject.executeBatch();
+                        insertTask.executeBatch();
+                    }
+                    db.commit();
+                } catch (SQLException e) {
+                    db.rollback();
+                    throw e;
+                }
+                nextSeq = subjects.size();
+                synchronized (pending) {
+                    pending.clear();
+                }
+            } catch (SQLException e) {
+                throw new IOException("Error writing " + url + ": " + e.getMessage(), e);
+            }
+        }
+    }
+
+    @Override
+    public SessionLog.Storage openSessionStorage() {
+        return new SessionStorage();
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (ioLock) {
+            try {
+                if (readConnection != null) {
+                    readConnection.close();
+                    readConnection = null;
+                }
+                if (connection != null) {
+                    connection.close();
+                    connection = null;
+                }
+            } catch (SQLException e) {
+                throw new IOException("Error closing " + url + ": " + e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * Writes changes in order, sending consecutive changes of the same kind as one batch.
+     */
+    private void write(Connection db, List<SubjectChange> changes) throws SQLException {
+        int from = 0;
+        while (from < changes.size()) {
+            SubjectChange.Type type = changes.get(from).getType();
+            int to = from + 1;
+            while (to < changes.size() && changes.get(to).getType() == type && to - from < WRITE_BATCH_SIZE) {
+                to++;
+            }
+            List<SubjectChange> run = changes.subList(from, to);
+            switch (type) {
+                case ADD_SUBJECT:
+                    try (PreparedStatement statement = db.prepareStatement(INSERT_SUBJECT)) {
+                        for (SubjectChange change : run) {
+                            statement.setString(1, SubjectRepository.normalize(change.getName()));
+                            statement.setString(2, change.getName());
+                            statement.setLong(3, nextSeq++);
+                            statement.setLong(4, 0);
+                            statement.addBatch();
+                        }
+                        statement.executeBatch();
+                    }
+                    break;
+                case REMOVE_SUBJECT:
+                    try (PreparedStatement tasks = db.prepareStatement(DELETE_SUBJECT_TASKS);
+                         PreparedStatement subjects = db.prepareStatement(DELETE_SUBJECT)) {
+                        for (SubjectChange change : run) {
+                            String key = SubjectRepository.normalize(change.getName());
+                            tasks.setString(1, key);
+                            tasks.addBatch();
+                            subjects.setString(1, key);
+                            subjects.addBatch();
+                        }
+                        tasks.executeBatch();
+                        subjects.executeBatch();
+                    }
+                    break;
+                case ADD_TIME:
+                    try (PreparedStatement statement = db.prepareStatement(ADD_TIME)) {
+                        for (SubjectChange change : run) {
+                            statement.setLong(1, change.getTime());
+                            statement.setString(2, SubjectRepository.normalize(change.getName()));
+                            statement.addBatch();
+                        }
+                        statement.executeBatch();
+                    }
+                    break;
+                case ADD_TASK:
+                    try (PreparedStatement statement = db.prepareStatement(APPEND_TASK)) {
+                        for (SubjectChange change : run) {
+                            String key = SubjectRepository.normalize(change.getName());
+                            statement.setString(1, key);
+                            statement.setString(2, change.getTask());
+                            statement.setString(3, key);
+                            statement.addBatch();
+                        }
+                        statement.executeBatch();
+                    }
+                    break;
+                case REMOVE_TASK:
+                    try (PreparedStatement statement = db.prepareStatement(DELETE_TASK)) {
+                        for (SubjectChange change : run) {
+                            statement.setString(1, SubjectRepository.normalize(change.getName()));
+                            statement.setString(2, change.getTask());
+                            statement.addBatch();
+                        }
+                        statement.executeBatch();
+                    }
+                    break;
+            }
+            from = to;
+        }
+    }
+
+    /**
+     * Returns the write connection, opening it and creating the schema on first use. Call under ioLock.
+     */
+    private Connection connection() throws SQLException {
+        if (connection == null) {
+            Connection db = DriverManager.getConnection(url);
+            try {
+                db.setAutoCommit(false);
+                try (Statement statement = db.createStatement()) {
+                    for (String sql : SCHEMA) {
+                        statement.execute(sql);
+                    }
+                    try (ResultSet rows = statement.executeQuery("SELECT COALESCE(MAX(seq), -1) FROM subjects")) {
+                        rows.next();
+                        nextSeq = rows.getLong(1) + 1;
+                    }
+                }
+                db.commit();
+            } catch (SQLException e) {
+                db.close();
+                throw e;
+            }
+            connection = db;
+        }
+        return connection;
+    }
+
+    /**
+     * Wraps a database error for SubjectSource methods, which cannot throw checked exceptions.
+     */
+    private UncheckedIOException readError(SQLException e) {
+        return new UncheckedIOException(new IOException("Error reading " + url + ": " + e.getMessage(), e));
+    }
+
+    /**
+     * A page of consecutive rows of a PagedSource.
+     */
+    private static class Page {
+        final String[] names = new String[PAGE_SIZE];
+        final long[] times = new long[PAGE_SIZE];
+        final int[] taskCounts = new int[PAGE_SIZE];
+    }
+
+    /**
+     * PagedSource is the subjects as they were when it was opened, read a page of rows at a time.
+     * Only the seq of every row is read up front; a page is read with one range query on the seq index,
+     * and the most recently used pages are cached. The tasks of a row are read when it is built.
+     *
+     * Rows that change later are pinned in memory by SubjectListModel and never read again, so the
+     * source stays valid while the tables change, as long as they are not rewritten by replaceAll().
+     */
+    private class PagedSource implements SubjectSource {
+        private final Connection db;
+        private final long[] seqs;
+        private final PreparedStatement pageQuery;
+        private final PreparedStatement taskQuery;
+        private final Map<Integer, Page> pages = new LinkedHashMap<Integer, Page>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, Page> eldest) {
+                return size() > MAX_CACHED_PAGES;
+            }
+        };
+
+        PagedSource(Connection db) throws SQLException {
+            this.db = db;
+            long[] rows = new long[1024];
+            int count = 0;
+            try (Statement statement = db.createStatement()) {
+                statement.setFetchSize(LOAD_BATCH_SIZE);
+                try (ResultSet result = statement.executeQuery("SELECT seq FROM subjects ORDER BY seq")) {
+                    while (result.next()) {
+                        if (count == rows.length) {
+                            rows = Arrays.copyOf(rows, count * 2);
+                        }
+                        rows[count++] = result.getLong(1);
+                    }
+                }
+            }
+            this.seqs = Arrays.copyOf(rows, count);
+            this.pageQuery = db.prepareStatement("SELECT s.seq, s.name, s.time_millis,"
+                    + " (SELECT COUNT(*) FROM tasks t WHERE t.name_key = s.name_key)"
+                    + " FROM subjects s WHERE s.seq >= ? AND s.seq <= ? ORDER BY s.seq");
+            this.taskQuery = db.prepareStatement("SELECT task FROM tasks WHERE name_key = ? ORDER BY seq");
+        }
+
+        @Override
+        public int size() {
+            return seqs.length;
+        }
+
+        @Override
+        public String nameAt(int index) {
+            return page(index).names[index % PAGE_SIZE];
+        }
+
+        @Override
+        public long timeAt(int index) {
+            return page(index).times[index % PAGE_SIZE];
+        }
+
+        @Override
+        public int taskCountAt(int index) {
+            return page(index).taskCounts[index % PAGE_SIZE];
+        }
+
+        @Override
+        public Subject get(int index) {
+            Page page = page(index);
+            String name = page.names[index % PAGE_SIZE];
+            if (page.taskCounts[index % PAGE_SIZE] == 0) {
+                return new Subject(name, page.times[index % PAGE_SIZE]);
+            }
+            List<String> tasks = new ArrayList<>();
+            try {
+                taskQuery.setString(1, SubjectRepository.normalize(name));
+                try (ResultSet rows = taskQuery.executeQuery()) {
+                    while (rows.next()) {
+                        tasks.add(rows.getString(1));
+                    }
+                }
+            } catch (SQLException e) {
+                throw readError(e);
+            }
+            return new Subject(name, page.times[index % PAGE_SIZE], tasks);
+        }
+
+        private Page page(int index) {
+            int number = index / PAGE_SIZE;
+            Page page = pages.get(number);
+            if (page == null) {
+                page = readPage(number);
+                pages.put(number, page);
+            }
+            return page;
+        }
+
+        private Page readPage(int number) {
+            int from = number * PAGE_SIZE;
+            int to = Math.min(seqs.length, from + PAGE_SIZE);
+            Page page = new Page();
+            try {
+                pageQuery.setLong(1, seqs[from]);
+                pageQuery.setLong(2, seqs[to - 1]);
+                try (ResultSet rows = pageQuery.executeQuery()) {
+                    while (rows.next()) {
+                        // Rows deleted since the source was opened are missing; the others keep their place
+                        int row = Arrays.binarySearch(seqs, from, to, rows.getLong(1));
+                        if (row >= 0) {
+                            page.names[row - from] = rows.getString(2);
+                            page.times[row - from] = rows.getLong(3);
+                            page.taskCounts[row - from] = rows.getInt(4);
+                        }
+                    }
+                }
+            } catch (SQLException e) {
+                throw readError(e);
+            }
+            return page;
+        }
+    }
+
+    /**
+     * Stores timing sessions in the session tables, one transaction per session.
+     */
+    private class SessionStorage implements SessionLog.Storage {
+
+        @Override
+        public void load(SessionLog.Loader loader) throws IOException {
+            synchronized (ioLock) {
+                try {
+                    Connection db = connection();
+                    try (Statement statement = db.createStatement()) {
+                        try (ResultSet rows = statement.executeQuery("SELECT id, name FROM session_subjects ORDER BY id")) {
+                            while (rows.next()) {
+                                loader.subject(rows.getInt(1), rows.getString(2));
+                            }
+                        }
+                        statement.setFetchSize(LOAD_BATCH_SIZE);
+                        try (ResultSet rows = statement.executeQuery("SELECT subject_id, start_millis, duration_millis FROM sessions")) {
+                            while (rows.next()) {
+                                loader.session(rows.getInt(1), rows.getLong(2), rows.getLong(3));
+                            }
+                        }
+                    }
+                    db.commit();
+                } catch (SQLException e) {
+                    throw new IOException("Error reading " + url + ": " + e.getMessage(), e);
+                }
+            }
+        }
+
+        @Override
+        public void append(int subjectId, String newSubjectName, long start, long duration) throws IOException {
+            synchronized (ioLock) {
+                try {
+                    Connection db = connection();
+                    try {
+                        if (newSubjectName != null) {
+                            try (PreparedStatement statement = db.prepareStatement("INSERT INTO session_subjects (id, name) VALUES (?, ?)")) {
+                                statement.setInt(1, subjectId);
+                                statement.setString(2, newSubjectName);
+                                statement.executeUpdate();
+                            }
+                        }
+                        try (PreparedStatement statement = db.prepareStatement(
+                                "INSERT INTO sessions (subject_id, start_millis, duration_millis) VALUES (?, ?, ?)")) {
+                            statement.setInt(1, subjectId);
+                            statement.setLong(2, start);
+                            statement.setLong(3, duration);
+                            statement.executeUpdate();
+                        }
+                        db.commit();
+                    } catch (SQLException e) {
+                        db.rollback();
+                        throw e;
+                    }
+                } catch (SQLException e) {
+                    throw new IOException("Error writing " + url + ": " + e.getMessage(), e);
+                }
+            }
+        }
+
+        @Override
+        public void removeSessions(Set<Integer> subjectIds) throws IOException {
+            synchronized (ioLock) {
+                try {
+                    Connection db = connection();
+                    try (PreparedStatement statement = db.prepareStatement("DELETE FROM sessions WHERE subject_id = ?")) {
+                        for (int id : subjectIds) {
+                            statement.setInt(1, id);
+                            statement.addBatch();
+                        }
+                        statement.executeBatch();
+                        db.commit();
+                    } catch (SQLException e) {
+                        db.rollback();
+                        throw e;
+                    }
+                } catch (SQLException e) {
+                    throw new IOException("Error writing " + url + ": " + e.getMessage(), e);
+                }
+            }
+        }
+    }
+}
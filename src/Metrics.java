@@ -0,0 +1,271 @@
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.ObjectName;
+
+/**
+ * Metrics holds the application's counters and latency histograms and exports snapshots of them.
+ *
+ * Metrics are enabled by the studytracker.metrics system property, a comma separated list of exports:
+ *   jmx          registers the metrics as attributes of the MBean StudyTracker:type=Metrics
+ *   file=<path>  rewrites a text snapshot to the file every studytracker.metrics.interval seconds (default 10)
+ *                and when the application exits
+ * Any other value, e.g. "true", enables the metrics without exporting them; values other than "true"
+ * print a warning.
+ *
+ * When the property is not set, ENABLED is a constant false, so the JIT removes the recording code
+ * and instrumented code paths pay nothing but a call to Metrics.start() that returns 0.
+ * Counters and histograms are created once, typically in static fields of the instrumented class.
+ */
+public final class Metrics {
+
+    /**
+     * True if metrics are recorded. Fixed at startup.
+     */
+    public static final boolean ENABLED = System.getProperty("studytracker.metrics") != null;
+
+    private static final Map<String, Counter> counters = new ConcurrentHashMap<>();
+    private static final Map<String, LatencyHistogram> timers = new ConcurrentHashMap<>();
+    private static boolean installed = false;
+
+    /**
+     * Counter is a monotonically increasing count, safe to increment from any thread.
+     */
+    public static class Counter {
+        private final LongAdder value = new LongAdder();
+
+        private Counter() {
+        }
+
+        public void increment() {
+            if (ENABLED) {
+                value.increment();
+            }
+        }
+
+        public void add(long amount) {
+            if (ENABLED) {
+                value.add(amount);
+            }
+        }
+
+        public long get() {
+            return value.sum();
+        }
+    }
+
+    private Metrics() {
+    }
+
+    /**
+     * Returns the counter with the given name, creating it on first use.
+     *
+     * @param name The name, e.g. "load.rows".
+     * @return The counter.
+     */
+    public static Counter counter(String name) {
+        return counters.computeIfAbsent(name, key -> new Counter());
+    }
+
+    /**
+     * Returns the latency histogram with the given name, creating it on first use.
+     *
+     * @param name The name, e.g. "store.flush".
+     * @return The histogram.
+     */
+    public static LatencyHistogram timer(String name) {
+        return timers.computeIfAbsent(name, LatencyHistogram::new);
+    }
+
+    /**
+     * Returns a start time to pass to LatencyHistogram.recordSince(), or 0 when metrics are disabled.
+     *
+     * @return The current System.nanoTime(), or 0.
+     */
+    public static long start() {
+        return ENABLED ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Sets up the exports named by the studytracker.metrics property. Does nothing if metrics are
+     * disabled or the exports are already set up. Values that name no export, e.g. "true" or "1", only
+     * enable the metrics; a warning is printed for any but "true", in case an export was misspelled.
+     */
+    public static synchronized void install() {
+        if (!ENABLED || installed) {
+            return;
+        }
+        installed = true;
+        for (String export : System.getProperty("studytracker.metrics").split(",")) {
+            export = export.trim();
+            if (export.equals("jmx")) {
+                registerMBean();
+            } else if (export.startsWith("file=")) {
+                exportToFile(Paths.get(export.substring("file=".length())),
+                        Long.getLong("studytracker.metrics.interval", 10));
+            } else if (!export.isEmpty() && !export.equals("true")) {
+                System.err.println("Unknown metrics export " + export + " ignored, expected jmx or file=<path>");
+            }
+        }
+    }
+
+    /**
+     * Formats every counter and histogram, one per line and sorted by name. Durations are in milliseconds.
+     *
+     * @return The snapshot text.
+     */
+    public static String snapshot() {
+        StringBuilder text = new StringBuilder();
+        for (Map.Entry<String, Counter> entry : new TreeMap<>(counters).entrySet()) {
+            text.append(entry.getKey()).append(" count=").append(entry.getValue().get()).append('\n');
+        }
+        for (Map.Entry<String, LatencyHistogram> entry : new TreeMap<>(timers).entrySet()) {
+            LatencyHistogram.Snapshot snapshot = entry.getValue().snapshot();
+            text.append(entry.getKey()).append(" count=").append(snapshot.getCount());
+            text.append(String.format(" mean=%.3f p50=%.3f p90=%.3f p99=%.3f p999=%.3f max=%.3f ms%n",
+                    millis(snapshot.getMean()), millis(snapshot.getPercentile(0.5)), millis(snapshot.getPercentile(0.9)),
+                    millis(snapshot.getPercentile(0.99)), millis(snapshot.getPercentile(0.999)), millis(snapshot.getMax())));
+        }
+        return text.toString();
+    }
+
+    /**
+     * Atomically replaces a file with the current snapshot.
+     *
+     * @param path The file to write.
+     * @throws IOException If the file could not be written.
+     */
+    public static void writeSnapshot(Path path) throws IOException {
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        Files.write(temp, snapshot().getBytes(StandardCharsets.UTF_8));
+        Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private static void exportToFile(Path path, long intervalSeconds) {
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "metrics-export");
+            thread.setDaemon(true);
+            return thread;
+        });
+        Runnable write = () -> {
+            try {
+                writeSnapshot(path);
+            } catch (IOException e) {
+                System.err.println("Error writing metrics to " + path + ": " + e.getMessage());
+            }
+        };
+        executor.scheduleWithFixedDelay(write, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+        Runtime.getRuntime().addShutdownHook(new Thread(write, "metrics-export-final"));
+    }
+
+    private static void registerMBean() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(new MetricsMBean(), new ObjectName("StudyTracker:type=Metrics"));
+        } catch (JMException e) {
+            throw new IllegalStateException("Could not register the metrics MBean", e);
+        }
+    }
+
+    private static double millis(double nanos) {
+        return nanos / 1_000_000.0;
+    }
+
+    /**
+     * Exposes each counter as a long attribute and each histogram as count, mean, p50, p99 and max
+     * attributes in milliseconds. Attributes appear as metrics are created.
+     */
+    private static class MetricsMBean implements DynamicMBean {
+        private static final String[] STATISTICS = {"count", "meanMillis", "p50Millis", "p99Millis", "maxMillis"};
+
+        @Override
+        public Object getAttribute(String attribute) throws AttributeNotFoundException {
+            Counter counter = counters.get(attribute);
+            if (counter != null) {
+                return counter.get();
+            }
+            int dot = attribute.lastIndexOf('.');
+            LatencyHistogram timer = dot > 0 ? timers.get(attribute.substring(0, dot)) : null;
+            if (timer == null) {
+                throw new AttributeNotFoundException(attribute);
+            }
+            LatencyHistogram.Snapshot snapshot = timer.snapshot();
+            switch (attribute.substring(dot + 1)) {
+                case "count":
+                    return snapshot.getCount();
+                case "meanMillis":
+                    return millis(snapshot.getMean());
+                case "p50Millis":
+                    return millis(snapshot.getPercentile(0.5));
+                case "p99Millis":
+                    return millis(snapshot.getPercentile(0.99));
+                case "maxMillis":
+                    return millis(snapshot.getMax());
+                default:
+                    throw new AttributeNotFoundException(attribute);
+            }
+        }
+
+        @Override
+        public AttributeList getAttributes(String[] attributes) {
+            AttributeList list = new AttributeList();
+            for (String attribute : attributes) {
+                try {
+                    list.add(new Attribute(attribute, getAttribute(attribute)));
+                } catch (AttributeNotFoundException e) {
+                    // Leave out unknown attributes, as the interface allows
+                }
+            }
+            return list;
+        }
+
+        @Override
+        public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+            throw new AttributeNotFoundException("Metrics are read-only");
+        }
+
+        @Override
+        public AttributeList setAttributes(AttributeList attributes) {
+            return new AttributeList();
+        }
+
+        @Override
+        public Object invoke(String actionName, Object[] params, String[] signature) {
+            throw new UnsupportedOperationException(actionName);
+        }
+
+        @Override
+        public MBeanInfo getMBeanInfo() {
+            List<MBeanAttributeInfo> attributes = new ArrayList<>();
+            for (String name : new TreeMap<>(counters).keySet()) {
+                attributes.add(new MBeanAttributeInfo(name, "long", "Counter " + name, true, false, false));
+            }
+            for (String name : new TreeMap<>(timers).keySet()) {
+                for (String statistic : STATISTICS) {
+                    String type = statistic.equals("count") ? "long" : "double";
+                    attributes.add(new MBeanAttributeInfo(name + "." + statistic, type, "Latency " + name, true, false, false));
+                }
+            }
+            return new MBeanInfo(Metrics.class.getName(), "Study Tracker metrics",
+                    attributes.toArray(new MBeanAttributeInfo[0]), null, null, null);
+        }
+    }
+}
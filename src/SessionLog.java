@@ -0,0 +1,701 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.DayOfWeek;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * SessionLog records every timing session as a compact event: subject id, start time and duration.
+ *
+ * Events are kept in parallel primitive arrays rather than one object per session. Recorded sessions
+ * are stored by flush(), which autosave calls on its own thread after writing the journal, so the
+ * thread that records a session never waits for the disk. Each session is also added to daily, weekly and monthly
+ * per-subject rollups (split at midnight in the local time zone), so questions like "time per subject
+ * over the last 30 days" are answered from a few buckets without looking at the raw sessions.
+ *
+ * Sessions are persisted by a Storage: a binary log file (FileStorage), or the sessions table of
+ * an embedded database (JdbcSubjectStore).
+ */
+public class SessionLog {
+    private static final int SUBJECT_BITS = 24;
+    private static final int SESSION_RECORD_SIZE = 1 + Integer.BYTES + 2 * Long.BYTES;
+
+    private final Storage storage;
+    private final ZoneId zone;
+
+    // Subject ids, keyed by normalized subject name
+    private final Map<String, Integer> subjectIds = new HashMap<>();
+    private final List<String> subjectNames = new ArrayList<>();
+
+    // Raw sessions, one column per field
+    private int[] sessionSubjects = new int[64];
+    private long[] sessionStarts = new long[64];
+    private long[] sessionDurations = new long[64];
+    private int sessionCount = 0;
+
+    private final LongSumMap daily = new LongSumMap();
+    private final LongSumMap weekly = new LongSumMap();
+    private final LongSumMap monthly = new LongSumMap();
+
+    // Sessions recorded but not stored yet, oldest first. Guarded by pending; flush() and
+    // removeSessions() hold ioLock while they store them, so they are stored in order.
+    private final List<PendingSession> pending = new ArrayList<>();
+    private final Object ioLock = new Object();
+
+    /**
+     * Storage persists the sessions of a SessionLog. Subjects are identified by small ids that the log
+     * assigns in order, starting at 0.
+     */
+    public interface Storage {
+
+        /**
+         * Reads the stored sessions. Each subject id is defined before its first session.
+         *
+         * @param loader Receives the subjects and sessions.
+         * @throws IOException If the sessions could not be read.
+         */
+        void load(Loader loader) throws IOException;
+
+        /**
+         * Stores a session.
+         *
+         * @param subjectId The subject id.
+         * @param newSubjectName The subject name if this is the first session with this id, otherwise null.
+         * @param start The start of the session in epoch milliseconds.
+         * @param duration The length of the session in milliseconds.
+         * @throws IOException If the session could not be stored.
+         */
+        void append(int subjectId, String newSubjectName, long start, long duration) throws IOException;
+
+        /**
+         * Removes every stored session of the given subjects. Their ids stay defined.
+         *
+         * @param subjectIds The subject ids.
+         * @throws IOException If the sessions could not be removed. The stored sessions are then unchanged.
+         */
+        void removeSessions(Set<Integer> subjectIds) throws IOException;
+    }
+
+    /**
+     * Receives what Storage.load() reads.
+     */
+    public interface Loader {
+
+        void subject(int id, String name);
+
+        void session(int id, long start, long duration);
+    }
+
+    /**
+     * Removes sessions from storage, for removeSessionsLater().
+     */
+    public interface Removal {
+
+        /**
+         * @throws IOException If the sessions could not be removed from storage.
+         */
+        void run() throws IOException;
+    }
+
+    /**
+     * Creates an empty session log backed by the given file.
+     *
+     * @param path The log file; it is created when the first session is recorded.
+     */
+    public SessionLog(Path path) {
+        this(new FileStorage(path));
+    }
+
+    /**
+     * Creates an empty session log backed by the given storage.
+     *
+     * @param storage Where the sessions are persisted.
+     */
+    public SessionLog(Storage storage) {
+        this.storage = storage;
+        this.zone = ZoneId.systemDefault();
+    }
+
+    /**
+     * Reads the stored sessions and rebuilds the rollups.
+     *
+     * @throws IOException If the sessions could not be read.
+     */
+    public void load() throws IOException {
+        storage.load(new Loader() {
+            @Override
+            public void subject(int id, String name) {
+                defineSubject(id, name);
+            }
+
+            @Override
+            public void session(int id, long start, long duration) {
+                if (id < subjectNames.size()) {
+                    add(id, start, duration);
+                }
+            }
+        });
+    }
+
+    /**
+     * Records a timing session. It is stored by the next flush().
+     *
+     * @param subjectName The name of the timed subject.
+     * @param start The start of the session in epoch milliseconds.
+     * @param duration The length of the session in milliseconds.
+     */
+    public void record(String subjectName, long start, long duration) {
+        Integer id = subjectIds.get(SubjectRepository.normalize(subjectName));
+        String newSubjectName = null;
+        if (id == null) {
+            id = subjectNames.size();
+            defineSubject(id, subjectName);
+            newSubjectName = subjectName;
+        }
+        add(id, start, duration);
+        synchronized (pending) {
+            pending.add(new PendingSession(id, newSubjectName, start, duration));
+        }
+    }
+
+    /**
+     * Stores the sessions recorded since the last flush. May be called from any thread.
+     *
+     * @throws IOException If a session could not be stored. It and the sessions after it stay pending.
+     */
+    public void flush() throws IOException {
+        synchronized (ioLock) {
+            List<PendingSession> sessions;
+            synchronized (pending) {
+                sessions = new ArrayList<>(pending);
+                pending.clear();
+            }
+            for (int i = 0; i < sessions.size(); i++) {
+                PendingSession session = sessions.get(i);
+                try {
+                    storage.append(session.subjectId, session.newSubjectName, session.start, session.duration);
+                } catch (IOException e) {
+                    synchronized (pending) {
+                        pending.addAll(0, sessions.subList(i, sessions.size()));
+                    }
+                    throw e;
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns true if some recorded sessions have not been stored yet.
+     *
+     * @return True if flush() has sessions to store.
+     */
+    public boolean hasPending() {
+        synchronized (pending) {
+            return !pending.isEmpty();
+        }
+    }
+
+    public int getSessionCount() {
+        return sessionCount;
+    }
+
+    /**
+     * Returns true if a session of the given subject that started at the given time has been recorded.
+     *
+     * @param subjectName The subject name.
+     * @param start The start of the session in epoch milliseconds.
+     * @return True if the session is in the log.
+     */
+    public boolean hasSession(String subjectName, long start) {
+        Integer id = subjectIds.get(SubjectRepository.normalize(subjectName));
+        if (id == null) {
+            return false;
+        }
+        for (int i = sessionCount - 1; i >= 0; i--) {
+            if (sessionSubjects[i] == id && sessionStarts[i] == start) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns when each subject's most recent session ended, e.g. to find subjects nobody has studied
+     * for a long time.
+     *
+     * @return Normalized subject name to the end of its last session in epoch milliseconds, for
+     *         subjects with sessions.
+     */
+    public Map<String, Long> getLastSessionEnds() {
+        long[] ends = new long[subjectNames.size()];
+        Arrays.fill(ends, Long.MIN_VALUE);
+        for (int i = 0; i < sessionCount; i++) {
+            int id = sessionSubjects[i];
+            ends[id] = Math.max(ends[id], sessionStarts[i] + sessionDurations[i]);
+        }
+        Map<String, Long> result = new HashMap<>();
+        for (int id = 0; id < ends.length; id++) {
+            if (ends[id] != Long.MIN_VALUE) {
+                result.put(SubjectRepository.normalize(subjectNames.get(id)), ends[id]);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the sessions of the given subjects in the order they were recorded, in one pass over the log.
+     *
+     * @param names The subject names.
+     * @return Normalized subject name to the start and duration of each of its sessions in milliseconds,
+     *         alternating, for the subjects with sessions.
+     */
+    public Map<String, long[]> getSessions(Collection<String> names) {
+        long[][] sessions = new long[subjectNames.size()][];
+        int[] counts = new int[subjectNames.size()];
+        for (String name : names) {
+            Integer id = subjectIds.get(SubjectRepository.normalize(name));
+            if (id != null) {
+                sessions[id] = new long[8];
+            }
+        }
+        for (int i = 0; i < sessionCount; i++) {
+            int id = sessionSubjects[i];
+            long[] found = sessions[id];
+            if (found != null) {
+                if (counts[id] == found.length) {
+                    found = sessions[id] = Arrays.copyOf(found, found.length * 2);
+                }
+                found[counts[id]++] = sessionStarts[i];
+                found[counts[id]++] = sessionDurations[i];
+            }
+        }
+        Map<String, long[]> result = new HashMap<>();
+        for (int id = 0; id < sessions.length; id++) {
+            if (counts[id] > 0) {
+                result.put(SubjectRepository.normalize(subjectNames.get(id)), Arrays.copyOf(sessions[id], counts[id]));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Removes every session of the given subjects from the log and its storage, e.g. once they have
+     * been moved to a SubjectArchive. Their time is taken out of the rollups. The pending sessions are
+     * stored first.
+     *
+     * @param names The subject names.
+     * @throws IOException If the sessions could not be removed from storage. The log is then unchanged.
+     */
+    public void removeSessions(Collection<String> names) throws IOException {
+        Set<Integer> ids = ids(names);
+        if (ids.isEmpty()) {
+            return;
+        }
+        synchronized (ioLock) {
+            flush();
+            storage.removeSessions(ids);
+        }
+        drop(ids);
+    }
+
+    /**
+     * Removes every session of the given subjects from the log like removeSessions(), but leaves them
+     * in storage until the returned removal is run, e.g. on another thread once the subjects are gone
+     * from the data file.
+     *
+     * @param names The subject names.
+     * @return Removes the sessions from storage, storing the pending sessions first. May be run on any thread.
+     */
+    public Removal removeSessionsLater(Collection<String> names) {
+        Set<Integer> ids = ids(names);
+        if (ids.isEmpty()) {
+            return () -> {
+            };
+        }
+        drop(ids);
+        return () -> {
+            synchronized (ioLock) {
+                flush();
+                storage.removeSessions(ids);
+            }
+        };
+    }
+
+    private Set<Integer> ids(Collection<String> names) {
+        Set<Integer> ids = new HashSet<>();
+        for (String name : names) {
+            Integer id = subjectIds.get(SubjectRepository.normalize(name));
+            if (id != null) {
+                ids.add(id);
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * Removes the sessions of the given subjects from memory and the rollups.
+     */
+    private void drop(Set<Integer> ids) {
+        int kept = 0;
+        for (int i = 0; i < sessionCount; i++) {
+            int id = sessionSubjects[i];
+            if (ids.contains(id)) {
+                roll(id, sessionStarts[i], sessionDurations[i], -1);
+            } else {
+                sessionSubjects[kept] = id;
+                sessionStarts[kept] = sessionStarts[i];
+                sessionDurations[kept] = sessionDurations[i];
+                kept++;
+            }
+        }
+        sessionCount = kept;
+    }
+
+    /**
+     * Returns the time spent on a subject between two dates, inclusive, using the largest rollup
+     * buckets that fit inside the range.
+     *
+     * @param subjectName The subject name.
+     * @param from The first day of the range.
+     * @param to The last day of the range.
+     * @return The time in milliseconds.
+     */
+    public long getTime(String subjectName, LocalDate from, LocalDate to) {
+        Integer id = subjectIds.get(SubjectRepository.normalize(subjectName));
+        return id == null ? 0 : getTime(id, from, to);
+    }
+
+    /**
+     * Returns the time spent on every subject that has sessions in the last given number of days,
+     * including today.
+     *
+     * @param days The number of days to look back.
+     * @return Subject name to time in milliseconds, for subjects with time in the range.
+     */
+    public Map<String, Long> getTimeBySubject(int days) {
+        LocalDate to = LocalDate.now(zone);
+        LocalDate from = to.minusDays(days - 1L);
+        Map<String, Long> result = new HashMap<>();
+        for (int id = 0; id < subjectNames.size(); id++) {
+            long time = getTime(id, from, to);
+            if (time > 0) {
+                result.put(subjectNames.get(id), time);
+            }
+        }
+        return result;
+    }
+
+    private long getTime(int id, LocalDate from, LocalDate to) {
+        long total = 0;
+        LocalDate day = from;
+        while (!day.isAfter(to)) {
+            LocalDate monthEnd = day.withDayOfMonth(day.lengthOfMonth());
+            LocalDate weekEnd = day.plusDays(6);
+            if (day.getDayOfMonth() == 1 && !monthEnd.isAfter(to)) {
+                total += monthly.get(key(monthBucket(day), id));
+                day = monthEnd.plusDays(1);
+            } else if (day.getDayOfWeek() == DayOfWeek.MONDAY && !weekEnd.isAfter(to)) {
+                total += weekly.get(key(weekBucket(day), id));
+                day = weekEnd.plusDays(1);
+            } else {
+                total += daily.get(key(day.toEpochDay(), id));
+                day = day.plusDays(1);
+            }
+        }
+        return total;
+    }
+
+    private void defineSubject(int id, String name) {
+        if (id == subjectNames.size()) {
+            subjectIds.put(SubjectRepository.normalize(name), id);
+            subjectNames.add(name);
+        }
+    }
+
+    /**
+     * Appends a session to the columns and adds it to the rollups.
+     */
+    private void add(int id, long start, long duration) {
+        if (sessionCount == sessionSubjects.length) {
+            int capacity = sessionCount * 2;
+            sessionSubjects = Arrays.copyOf(sessionSubjects, capacity);
+            sessionStarts = Arrays.copyOf(sessionStarts, capacity);
+            sessionDurations = Arrays.copyOf(sessionDurations, capacity);
+        }
+        sessionSubjects[sessionCount] = id;
+        sessionStarts[sessionCount] = start;
+        sessionDurations[sessionCount] = duration;
+        sessionCount++;
+        roll(id, start, duration, 1);
+    }
+
+    /**
+     * Adds a session to the rollups, or takes it out with a sign of -1, split at each local midnight.
+     */
+    private void roll(int id, long start, long duration, int sign) {
+        long pieceStart = start;
+        long end = start + duration;
+        while (pieceStart < end) {
+            ZonedDateTime time = Instant.ofEpochMilli(pieceStart).atZone(zone);
+            LocalDate day = time.toLocalDate();
+            long nextMidnight = day.plusDays(1).atStartOfDay(zone).toInstant().toEpochMilli();
+            long pieceEnd = Math.min(end, nextMidnight);
+            long piece = (pieceEnd - pieceStart) * sign;
+            daily.add(key(day.toEpochDay(), id), piece);
+            weekly.add(key(weekBucket(day), id), piece);
+            monthly.add(key(monthBucket(day), id), piece);
+            pieceStart = pieceEnd;
+        }
+    }
+
+    private static long key(long bucket, int id) {
+        return (bucket << SUBJECT_BITS) | id;
+    }
+
+    private static long weekBucket(LocalDate day) {
+        return day.with(DayOfWeek.MONDAY).toEpochDay();
+    }
+
+    private static long monthBucket(LocalDate day) {
+        return day.getYear() * 12L + day.getMonthValue() - 1;
+    }
+
+    /**
+     * A recorded session waiting for flush().
+     */
+    private static class PendingSession {
+        final int subjectId;
+        final String newSubjectName;
+        final long start;
+        final long duration;
+
+        PendingSession(int subjectId, String newSubjectName, long start, long duration) {
+            this.subjectId = subjectId;
+            this.newSubjectName = newSubjectName;
+            this.start = start;
+            this.duration = duration;
+        }
+    }
+
+    /**
+     * An open-addressing map from long keys to long sums, so rollup buckets are not boxed.
+     */
+    private static class LongSumMap {
+        private static final long EMPTY = Long.MIN_VALUE;
+
+        private long[] keys = newKeys(64);
+        private long[] values = new long[64];
+        private int count = 0;
+
+        void add(long key, long value) {
+            if ((count + 1) * 4 > keys.length * 3) {
+                grow();
+            }
+            int slot = slot(keys, key);
+            if (keys[slot] == EMPTY) {
+                keys[slot] = key;
+                count++;
+            }
+            values[slot] += value;
+        }
+
+        long get(long key) {
+            int slot = slot(keys, key);
+            return keys[slot] == EMPTY ? 0 : values[slot];
+        }
+
+        private static int slot(long[] keys, long key) {
+            int mask = keys.length - 1;
+            int slot = (int) (key ^ (key >>> 29) ^ (key >>> 47)) * 0x9E3779B1 & mask;
+            while (keys[slot] != EMPTY && keys[slot] != key) {
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+
+        private void grow() {
+            long[] oldKeys = keys;
+            long[] oldValues = values;
+            keys = newKeys(oldKeys.length * 2);
+            values = new long[oldKeys.length * 2];
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != EMPTY) {
+                    int slot = slot(keys, oldKeys[i]);
+                    keys[slot] = oldKeys[i];
+                    values[slot] = oldValues[i];
+                }
+            }
+        }
+
+        private static long[] newKeys(int capacity) {
+            long[] keys = new long[capacity];
+            Arrays.fill(keys, EMPTY);
+            return keys;
+        }
+    }
+
+    /**
+     * FileStorage appends sessions to a binary log file, fsyncing each append.
+     *
+     * Records: 'N' id (int) name (int length, UTF-8 bytes) defines a subject id;
+     * 'E' id (int) start (long) duration (long) is a session. A truncated last record left by a crash is
+     * cut off when the log is loaded.
+     */
+    public static class FileStorage implements Storage {
+        private final Path path;
+
+        /**
+         * @param path The log file; it is created when the first session is stored.
+         */
+        public FileStorage(Path path) {
+            this.path = path;
+        }
+
+        @Override
+        public void load(Loader loader) throws IOException {
+            if (!Files.exists(path)) {
+                return;
+            }
+            long validLength = 0;
+            try (InputStream in = new BufferedInputStream(Files.newInputStream(path), 64 * 1024)) {
+                DataInputStream data = new DataInputStream(in);
+                while (true) {
+                    int type = data.read();
+                    if (type == 'N') {
+                        int id = data.readInt();
+                        byte[] name = new byte[data.readInt()];
+                        data.readFully(name);
+                        loader.subject(id, new String(name, StandardCharsets.UTF_8));
+                        validLength += 1 + 2 * Integer.BYTES + name.length;
+                    } else if (type == 'E') {
+                        int id = data.readInt();
+                        long start = data.readLong();
+                        long duration = data.readLong();
+                        loader.session(id, start, duration);
+                        validLength += SESSION_RECORD_SIZE;
+                    } else {
+                        break;
+                    }
+                }
+            } catch (EOFException e) {
+                // A record was cut off by a crash; everything before it has been read
+            }
+
+            // Drop anything after the last complete record so new sessions are appended after valid data
+            if (validLength < Files.size(path)) {
+                try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+                    channel.truncate(validLength);
+                }
+            }
+        }
+
+        @Override
+        public void append(int subjectId, String newSubjectName, long start, long duration) throws IOException {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+            DataOutputStream out = new DataOutputStream(bytes);
+            if (newSubjectName != null) {
+                byte[] name = newSubjectName.getBytes(StandardCharsets.UTF_8);
+                out.writeByte('N');
+                out.writeInt(subjectId);
+                out.writeInt(name.length);
+                out.write(name);
+            }
+            out.writeByte('E');
+            out.writeInt(subjectId);
+            out.writeLong(start);
+            out.writeLong(duration);
+
+            boolean created = !Files.exists(path);
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+                ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                // Like the journal: a session that was reported as stored survives a crash
+                channel.force(true);
+            }
+            if (created) {
+                SubjectStore.forceDirectory(path);
+            }
+        }
+
+        /**
+         * Rewrites the log without the sessions of the given subjects to a temporary file, fsyncs it and
+         * renames it over the log, fsyncing the directory.
+         */
+        @Override
+        public void removeSessions(Set<Integer> subjectIds) throws IOException {
+            if (!Files.exists(path)) {
+                return;
+            }
+            Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), 64 * 1024));
+                IOException[] error = new IOException[1];
+                load(new Loader() {
+                    @Override
+                    public void subject(int id, String name) {
+                        try {
+                            byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+                            out.writeByte('N');
+                            out.writeInt(id);
+                            out.writeInt(bytes.length);
+                            out.write(bytes);
+                        } catch (IOException e) {
+                            error[0] = e;
+                        }
+                    }
+
+                    @Override
+                    public void session(int id, long start, long duration) {
+                        if (subjectIds.contains(id)) {
+                            return;
+                        }
+                        try {
+                            out.writeByte('E');
+                            out.writeInt(id);
+                            out.writeLong(start);
+                            out.writeLong(duration);
+                        } catch (IOException e) {
+                            error[0] = e;
+                        }
+                    }
+                });
+                if (error[0] != null) {
+                    throw error[0];
+                }
+                out.flush();
+                channel.force(true);
+            } catch (IOException e) {
+                Files.deleteIfExists(temp);
+                throw e;
+            }
+            Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            SubjectStore.forceDirectory(path);
+        }
+    }
+}
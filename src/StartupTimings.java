@@ -0,0 +1,73 @@
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Optional;
+
+/**
+ * StartupTimings measures how long each phase of starting the application takes, so regressions in
+ * startup time show up. A phase ends when phase() is called and started when the previous one ended;
+ * the first starts when the process was launched, as reported by the operating system, or when this
+ * class was loaded if that is not known.
+ *
+ * Each phase is recorded in the Metrics timer "startup.<phase>", and the whole startup in
+ * "startup.total". When metrics are enabled, finish() also prints every phase to standard error on
+ * one line. Phases after finish() are ignored, so only the first startup is measured.
+ */
+public final class StartupTimings {
+    private static final long LAUNCH_NANOS = launchNanos();
+
+    private static final StringBuilder line = new StringBuilder("Startup:");
+    private static long lastNanos = LAUNCH_NANOS;
+    private static boolean finished = false;
+
+    private StartupTimings() {
+    }
+
+    /**
+     * Ends a phase of startup.
+     *
+     * @param name The name of the phase that just ended, e.g. "frame".
+     */
+    public static synchronized void phase(String name) {
+        if (finished) {
+            return;
+        }
+        long now = System.nanoTime();
+        Metrics.timer("startup." + name).record(now - lastNanos);
+        line.append(' ').append(name).append(' ').append((now - lastNanos) / 1_000_000).append(" ms,");
+        lastNanos = now;
+    }
+
+    /**
+     * Ends startup, recording the total time since launch.
+     *
+     * @param detail A note to print after the phases, e.g. how the data was loaded, or null for none.
+     */
+    public static synchronized void finish(String detail) {
+        if (finished) {
+            return;
+        }
+        finished = true;
+        long total = System.nanoTime() - LAUNCH_NANOS;
+        Metrics.timer("startup.total").record(total);
+        if (Metrics.ENABLED) {
+            line.append(" total ").append(total / 1_000_000).append(" ms");
+            if (detail != null) {
+                line.append(" (").append(detail).append(')');
+            }
+            System.err.println(line);
+        }
+    }
+
+    /**
+     * Returns the launch of the process on the System.nanoTime() scale.
+     */
+    private static long launchNanos() {
+        long now = System.nanoTime();
+        Optional<Instant> started = ProcessHandle.current().info().startInstant();
+        if (started.isEmpty()) {
+            return now;
+        }
+        long sinceLaunch = Duration.between(started.get(), Instant.now()).toNanos();
+        return now - Math.max(0, sinceLaunch);
+    }
+}
@@ -0,0 +1,124 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * StateCache keeps the subjects of a CSV data file as a BinarySnapshot beside it, so a start can map
+ * them instead of parsing the CSV. It is written whenever SubjectStore writes the data file in full,
+ * which includes every normal exit, so a normal start finds it valid.
+ *
+ * A stamp file records the size and modification time the data file had when the cache was written,
+ * and the cache's checksum. The cache is only used while the data file still has that size and
+ * modification time, so a data file edited by another program, or rewritten by recover() after a
+ * crash, is parsed again. The cache holds what the data file holds; the journal is replayed on top of
+ * it as usual. A missing, stale or corrupt cache is a miss, never an error.
+ */
+public class StateCache {
+    private static final int MAGIC = 0x53545343; // "STSC"
+    // Version 1 caches may hold subjects with duplicate names, which loading the data file now skips
+    private static final int VERSION = 2;
+
+    private static final Metrics.Counter HITS = Metrics.counter("cache.hits");
+    private static final Metrics.Counter MISSES = Metrics.counter("cache.misses");
+
+    private final Path dataFile;
+    private final Path cacheFile;
+    private final Path stampFile;
+    private final Path tempFile;
+
+    /**
+     * @param dataFile The CSV data file. The cache files live next to it.
+     */
+    public StateCache(Path dataFile) {
+        this.dataFile = dataFile;
+        this.cacheFile = dataFile.resolveSibling(dataFile.getFileName() + ".cache");
+        this.stampFile = dataFile.resolveSibling(dataFile.getFileName() + ".cache.stamp");
+        this.tempFile = dataFile.resolveSibling(dataFile.getFileName() + ".cache.tmp");
+    }
+
+    /**
+     * Maps the cache if it matches the data file as it is now.
+     *
+     * @return The cached subjects, or null if there is no valid cache.
+     */
+    public BinarySnapshot open() {
+        try {
+            DataInputStream stamp = new DataInputStream(new ByteArrayInputStream(Files.readAllBytes(stampFile)));
+            if (stamp.readInt() != MAGIC || stamp.readInt() != VERSION) {
+                return miss();
+            }
+            long size = stamp.readLong();
+            long modified = stamp.readLong();
+            long checksum = stamp.readLong();
+            BasicFileAttributes data = Files.readAttributes(dataFile, BasicFileAttributes.class);
+            if (data.size() != size || data.lastModifiedTime().to(TimeUnit.NANOSECONDS) != modified) {
+                return miss();
+            }
+            BinarySnapshot snapshot = BinarySnapshot.open(cacheFile);
+            if (snapshot.getChecksum() != checksum) {
+                return miss();
+            }
+            HITS.increment();
+            return snapshot;
+        } catch (IOException e) {
+            // Missing, truncated or corrupt; it is replaced at the next write
+            return miss();
+        }
+    }
+
+    /**
+     * Writes the subjects that were just written to the data file as the cache.
+     *
+     * @param subjects The subjects in the data file.
+     * @param data The attributes of the data file as it was written, read before it was renamed into
+     *             place, so a change made by another program since then is not taken for it.
+     * @throws IOException If the cache could not be written. It is then not used.
+     */
+    public void write(List<Subject> subjects, BasicFileAttributes data) throws IOException {
+        try {
+            long checksum = BinarySnapshot.write(tempFile, subjects);
+            Files.move(tempFile, cacheFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(36);
+            DataOutputStream stamp = new DataOutputStream(bytes);
+            stamp.writeInt(MAGIC);
+            stamp.writeInt(VERSION);
+            stamp.writeLong(data.size());
+            stamp.writeLong(data.lastModifiedTime().to(TimeUnit.NANOSECONDS));
+            stamp.writeLong(checksum);
+            Files.write(tempFile, bytes.toByteArray());
+            Files.move(tempFile, stampFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            try {
+                delete();
+            } catch (IOException suppressed) {
+                e.addSuppressed(suppressed);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Removes the cache, e.g. when it could not be written.
+     *
+     * @throws IOException If the files could not be deleted.
+     */
+    public void delete() throws IOException {
+        Files.deleteIfExists(stampFile);
+        Files.deleteIfExists(tempFile);
+        Files.deleteIfExists(cacheFile);
+    }
+
+    private static BinarySnapshot miss() {
+        MISSES.increment();
+        return null;
+    }
+}
@@ -0,0 +1,291 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.NoSuchElementException;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * StudyAnalytics keeps running aggregates over the subjects in a SubjectRepository.
+ *
+ * It is built with one pass over the repository and then updated incrementally from SubjectModelListener
+ * events: total time, total tasks and subject count are running sums, and subjects are kept in a tree
+ * ordered by time, so adding time, adding or removing a task, or adding or removing a subject costs
+ * O(log n) and the most/least studied subjects and top-K views are available without a rescan.
+ * Ties are broken by list order, matching a front-to-back scan of the list. Subjects are also kept in
+ * name order, so every subject can be listed in either order a chunk at a time with getEntries(),
+ * without copying or sorting the whole set.
+ */
+public class StudyAnalytics implements SubjectModelListener {
+
+    /**
+     * The aggregated values of one subject.
+     */
+    public static class Entry {
+        private final String name;
+        private final long order;
+        private long time;
+        private int tasks;
+
+        private Entry(String name, long order, long time, int tasks) {
+            this.name = name;
+            this.order = order;
+            this.time = time;
+            this.tasks = tasks;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getTime() {
+            return time;
+        }
+
+        public int getTasks() {
+            return tasks;
+        }
+    }
+
+    /**
+     * The orders in which getEntries() lists subjects.
+     */
+    public enum Order {
+        TIME_DESCENDING,
+        TIME_ASCENDING,
+        NAME_ASCENDING,
+        NAME_DESCENDING
+    }
+
+    private static final Comparator<Entry> BY_TIME = Comparator.comparingLong((Entry e) -> e.time).thenComparingLong(e -> e.order);
+
+    private final SubjectRepository model;
+    // By normalized name, which is unique in a repository and also gives the name order
+    private final NavigableMap<String, Entry> entries = new TreeMap<>();
+    private final TreeSet<Entry> byTime = new TreeSet<>(BY_TIME);
+    private long nextOrder = 0;
+    private long totalTime = 0;
+    private long totalTasks = 0;
+
+    /**
+     * Builds the aggregates for the current contents of the repository and starts following its changes.
+     *
+     * @param model The repository to analyze.
+     */
+    public StudyAnalytics(SubjectRepository model) {
+        this.model = model;
+        if (model.size() > 0) {
+            rowsAdded(0, model.size() - 1);
+        }
+        model.addSubjectModelListener(this);
+    }
+
+    public int getSubjectCount() {
+        return entries.size();
+    }
+
+    public long getTotalTime() {
+        return totalTime;
+    }
+
+    public long getTotalTasks() {
+        return totalTasks;
+    }
+
+    public double getAverageTime() {
+        return entries.isEmpty() ? 0 : totalTime / (double) entries.size();
+    }
+
+    public double getAverageTasks() {
+        return entries.isEmpty() ? 0 : totalTasks / (double) entries.size();
+    }
+
+    /**
+     * Returns the subject with the most time, the first in list order if several are tied.
+     *
+     * @return The most studied subject, or null if there are no subjects.
+     */
+    public Entry getMostStudied() {
+        if (byTime.isEmpty()) {
+            return null;
+        }
+        return byTime.ceiling(firstWithTime(byTime.last().time));
+    }
+
+    /**
+     * Returns the subject with the least time, the first in list order if several are tied.
+     *
+     * @return The least studied subject, or null if there are no subjects.
+     */
+    public Entry getLeastStudied() {
+        return byTime.isEmpty() ? null : byTime.first();
+    }
+
+    /**
+     * Returns the k subjects with the most time, most studied first and in list order if tied.
+     *
+     * @param k The maximum number of subjects to return.
+     * @return The top subjects.
+     */
+    public List<Entry> getMostStudied(int k) {
+        return take(new MostStudiedIterator(null), k);
+    }
+
+    /**
+     * Returns the k subjects with the least time, least studied first.
+     *
+     * @param k The maximum number of subjects to return.
+     * @return The bottom subjects.
+     */
+    public List<Entry> getLeastStudied(int k) {
+        return take(byTime.iterator(), k);
+    }
+
+    /**
+     * Lists subjects in the given order, a chunk at a time. The entries are copies, so they keep the
+     * values they had when listed; pass the last one back to get the next chunk.
+     *
+     * @param order The order to list them in.
+     * @param after The last entry of the previous chunk, or null to start with the first subject.
+     * @param count The maximum number of entries to return.
+     * @return The next entries in order, fewer than count at the end.
+     */
+    public List<Entry> getEntries(Order order, Entry after, int count) {
+        Iterator<Entry> iterator;
+        switch (order) {
+            case TIME_DESCENDING:
+                iterator = new MostStudiedIterator(after);
+                break;
+            case TIME_ASCENDING:
+                iterator = (after == null ? byTime : byTime.tailSet(after, false)).iterator();
+                break;
+            case NAME_ASCENDING:
+                iterator = (after == null ? entries : entries.tailMap(SubjectRepository.normalize(after.name), false)).values().iterator();
+                break;
+            default:
+                iterator = (after == null ? entries.descendingMap() : entries.headMap(SubjectRepository.normalize(after.name), false).descendingMap()).values().iterator();
+                break;
+        }
+        List<Entry> result = new ArrayList<>(Math.min(count, entries.size()));
+        while (result.size() < count && iterator.hasNext()) {
+            Entry entry = iterator.next();
+            result.add(new Entry(entry.name, entry.order, entry.time, entry.tasks));
+        }
+        return result;
+    }
+
+    @Override
+    public void rowsAdded(int from, int to) {
+        for (int i = from; i <= to; i++) {
+            String name = model.nameAt(i);
+            Entry entry = new Entry(name, nextOrder++, model.timeAt(i), model.taskCountAt(i));
+            Entry previous = entries.put(SubjectRepository.normalize(name), entry);
+            if (previous != null) {
+                remove(previous);
+            }
+            byTime.add(entry);
+            totalTime += entry.time;
+            totalTasks += entry.tasks;
+        }
+    }
+
+    @Override
+    public void subjectRemoved(Subject subject) {
+        Entry entry = entries.remove(SubjectRepository.normalize(subject.getName()));
+        if (entry != null) {
+            remove(entry);
+        }
+    }
+
+    @Override
+    public void subjectChanged(Subject subject) {
+        Entry entry = entries.get(SubjectRepository.normalize(subject.getName()));
+        if (entry == null) {
+            return;
+        }
+        byTime.remove(entry);
+        totalTime += subject.getTime() - entry.time;
+        totalTasks += subject.getTaskCount() - entry.tasks;
+        entry.time = subject.getTime();
+        entry.tasks = subject.getTaskCount();
+        byTime.add(entry);
+    }
+
+    @Override
+    public void cleared() {
+        entries.clear();
+        byTime.clear();
+        totalTime = 0;
+        totalTasks = 0;
+    }
+
+    private void remove(Entry entry) {
+        byTime.remove(entry);
+        totalTime -= entry.time;
+        totalTasks -= entry.tasks;
+    }
+
+    /**
+     * A bound that sorts before every entry with the given time.
+     */
+    private static Entry firstWithTime(long time) {
+        return new Entry(null, Long.MIN_VALUE, time, 0);
+    }
+
+    private static Entry lastWithTime(long time) {
+        return new Entry(null, Long.MAX_VALUE, time, 0);
+    }
+
+    /**
+     * Iterates over byTime from the most to the least time, but in list order among subjects with the
+     * same time, so ties come out in the same order as from a stable sort of the list. Each run of tied
+     * subjects is a subset of the tree, so moving to the next one is a single O(log n) lookup.
+     */
+    private class MostStudiedIterator implements Iterator<Entry> {
+        // The rest of the current run of tied subjects, and a bound just before that run
+        private Iterator<Entry> tied;
+        private Entry runStart;
+
+        MostStudiedIterator(Entry after) {
+            if (after == null) {
+                tied = Collections.emptyIterator();
+                runStart = lastWithTime(Long.MAX_VALUE);
+            } else {
+                tied = byTime.subSet(after, false, lastWithTime(after.time), true).iterator();
+                runStart = firstWithTime(after.time);
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (!tied.hasNext()) {
+                Entry previous = byTime.lower(runStart);
+                if (previous == null) {
+                    return false;
+                }
+                runStart = firstWithTime(previous.time);
+                tied = byTime.subSet(runStart, true, lastWithTime(previous.time), true).iterator();
+            }
+            return true;
+        }
+
+        @Override
+        public Entry next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return tied.next();
+        }
+    }
+
+    private static List<Entry> take(Iterator<Entry> iterator, int k) {
+        List<Entry> result = new ArrayList<>(k);
+        while (result.size() < k && iterator.hasNext()) {
+            result.add(iterator.next());
+        }
+        return result;
+    }
+}
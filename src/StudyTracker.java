@@ -0,0 +1,933 @@
+import java.io.FileReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+
+/**
+ * StudyTracker is the UI-independent core of the application. It ties a SubjectRepository to its
+ * persistence (a SubjectStorage and SessionLog), the per-subject timers and the analytics, and holds the
+ * rules for changing subjects: names and tasks are validated here, every change is journaled, and a
+ * stopped timer adds its time to the subject and the session history.
+ *
+ * StudyTrackerGUI is a thin Swing client on top of it, backed by a SubjectListModel; StudyTrackerCli
+ * runs it headless with an InMemorySubjectRepository. Invalid input is reported with an
+ * IllegalArgumentException whose message can be shown to the user as is.
+ * It is not thread-safe; the GUI only uses it on the Event Dispatch Thread.
+ *
+ * With autosave started, changes are written to the journal in the background shortly after they
+ * are made, and running timers are checkpointed so their sessions can be recovered after a crash.
+ *
+ * Edits made through this class can be undone and redone, up to UNDO_LIMIT of them. Undoing or redoing
+ * an edit records the change it makes like any other, so the journal and autosave see one stream of
+ * changes. Time added by stopping a timer is not an edit and cannot be undone. Once SNAPSHOT_CHANGES
+ * changes have been journaled, snapshot() folds them into the data file so replaying the journal on the
+ * next load stays bounded.
+ *
+ * Syncing with other instances, applying changes other programs make to the data file and archiving
+ * inactive subjects are done by SubjectSync, ExternalChanges and SubjectArchiver, reached through
+ * getSync(), getExternalChanges() and getArchiver(). They change the subjects through this class, so
+ * their changes are journaled and shared like any other.
+ *
+ * A data file that had invalid lines when it was loaded is never rewritten, so the skipped lines are
+ * kept for the user to fix: saves and snapshots only append to the journal, and subjects cannot be
+ * archived.
+ */
+public class StudyTracker {
+    private static final long AUTOSAVE_DELAY_MILLIS = 2_000;
+    private static final long AUTOSAVE_MAX_DELAY_MILLIS = 30_000;
+    private static final long TIMER_CHECKPOINT_MILLIS = 15_000;
+    private static final int UNDO_LIMIT = 1_000;
+    private static final int SNAPSHOT_CHANGES = 10_000;
+
+    private final SubjectRepository repository;
+    private final SubjectStorage store;
+    private final SessionLog sessionLog;
+    private final TimerEngine timerEngine = new TimerEngine();
+    private final TimerCheckpoint timerCheckpoint;
+    private final UndoHistory history = new UndoHistory(UNDO_LIMIT);
+
+    // Changes journaled since the data file was last written in full
+    private int changesSinceSnapshot = 0;
+
+    // Lines of the data file that were skipped as invalid when it was loaded
+    private int invalidLines = 0;
+
+    // Background saving, null until started
+    private AutosaveScheduler autosave;
+
+    // Running aggregates, created on first use
+    private StudyAnalytics analytics;
+
+    private final SubjectSync sync;
+    private final ExternalChanges externalChanges;
+    private final SubjectArchiver archiver;
+
+    /**
+     * Creates a headless tracker for the given data file, with its subjects held in memory.
+     *
+     * @param dataFile The data file: CSV, a BinarySnapshot if the name ends in ".bin", or an embedded
+     *                 database if it ends in ".db".
+     */
+    public StudyTracker(Path dataFile) {
+        this(dataFile, new InMemorySubjectRepository());
+    }
+
+    /**
+     * Creates a tracker for the given data file that keeps its subjects in the given repository.
+     *
+     * @param dataFile The data file: CSV, a BinarySnapshot if the name ends in ".bin", or an embedded
+     *                 database if it ends in ".db".
+     * @param repository The repository to load the subjects into.
+     */
+    public StudyTracker(Path dataFile, SubjectRepository repository) {
+        this.repository = repository;
+        this.store = SubjectStorage.open(dataFile);
+        this.sessionLog = new SessionLog(store.openSessionStorage());
+        this.timerCheckpoint = new TimerCheckpoint(Path.of(dataFile + ".timers"));
+        this.sync = new SubjectSync(this, Path.of(dataFile + ".sync"));
+        this.externalChanges = new ExternalChanges(this);
+        this.archiver = new SubjectArchiver(this, Path.of(dataFile + ".archive"));
+    }
+
+    public SubjectRepository getRepository() {
+        return repository;
+    }
+
+    public SubjectStorage getStore() {
+        return store;
+    }
+
+    public SessionLog getSessionLog() {
+        return sessionLog;
+    }
+
+    public TimerEngine getTimerEngine() {
+        return timerEngine;
+    }
+
+    public SubjectSync getSync() {
+        return sync;
+    }
+
+    public ExternalChanges getExternalChanges() {
+        return externalChanges;
+    }
+
+    public SubjectArchiver getArchiver() {
+        return archiver;
+    }
+
+    /**
+     * Returns the analytics for the repository, building them on first use. They are kept up to date
+     * as subjects change from then on.
+     *
+     * @return The analytics.
+     */
+    public StudyAnalytics getAnalytics() {
+        if (analytics == null) {
+            analytics = new StudyAnalytics(repository);
+        }
+        return analytics;
+    }
+
+    /**
+     * Records how many lines of the data file were skipped as invalid by a load that did not go through
+     * load(), e.g. by SubjectLoadWorker. While there are any, the data file is not rewritten.
+     *
+     * @param count The number of invalid lines.
+     */
+    public void setInvalidLineCount(int count) {
+        invalidLines = count;
+    }
+
+    /**
+     * Returns the number of lines of the data file that were skipped as invalid when it was loaded.
+     *
+     * @return The number of invalid lines, 0 if the whole file was read.
+     */
+    public int getInvalidLineCount() {
+        return invalidLines;
+    }
+
+    /**
+     * Loads the subjects, their journal and the session history into the repository on the calling thread.
+     * Invalid CSV lines are skipped, and the data file is then no longer rewritten. Every subject is read in full.
+     *
+     * @return A message for each invalid line that was skipped.
+     * @throws IOException If the data could not be read.
+     */
+    public List<String> load() throws IOException {
+        store.recover();
+
+        List<String> errors = new ArrayList<>();
+        List<Subject> subjects = new ArrayList<>();
+        store.load(new SubjectStorage.Sink() {
+            @Override
+            public void subjects(List<Subject> batch) {
+                subjects.addAll(batch);
+            }
+
+            @Override
+            public void invalid(String message) {
+                errors.add(message);
+            }
+
+            @Override
+            public void progress(int percent) {
+            }
+        }, false);
+        repository.addAll(subjects);
+        List<SubjectChange> journal = store.readJournal();
+        SubjectStore.replay(journal, repository);
+        changesSinceSnapshot = journal.size();
+        invalidLines = errors.size();
+        sessionLog.load();
+        return errors;
+    }
+
+    /**
+     * Reads a CSV file in the data.csv format and adds its subjects to a repository, skipping invalid lines
+     * and subjects whose name, ignoring case, is already taken.
+     *
+     * @param path The file to read.
+     * @param repository The repository to add the subjects to.
+     * @return A message for each invalid line that was skipped.
+     * @throws IOException If the file could not be read.
+     */
+    public static List<String> readCsv(Path path, SubjectRepository repository) throws IOException {
+        List<String> errors = new ArrayList<>();
+        List<Subject> subjects = new ArrayList<>();
+        Set<String> names = new HashSet<>();
+        try (SubjectCsvReader reader = new SubjectCsvReader(new FileReader(path.toFile(), StandardCharsets.UTF_8))) {
+            while (true) {
+                try {
+                    Subject subject = reader.next();
+                    if (subject == null) {
+                        break;
+                    }
+                    if (repository.containsName(subject.getName()) || !names.add(SubjectRepository.normalize(subject.getName()))) {
+                        throw new IllegalArgumentException("Duplicate subject name");
+                    }
+                    subjects.add(subject);
+                } catch (IllegalArgumentException e) {
+                    // Remember the error and continue with next line
+                    errors.add("Line " + reader.getLineNumber() + ": " + reader.getLine() + " (" + e.getMessage() + ")");
+                }
+            }
+        }
+        repository.addAll(subjects);
+        return errors;
+    }
+
+    /**
+     * Saves the subjects: normally by appending the changes since the last save to the journal,
+     * or by writing a full snapshot when compacting. If the data file had invalid lines, the changes
+     * are only appended to the journal.
+     *
+     * @param compact True to always write a full snapshot.
+     * @throws IOException If the data could not be written.
+     */
+    public void save(boolean compact) throws IOException {
+        if (compact || invalidLines > 0) {
+            snapshot();
+            return;
+        }
+        // Saving writes a snapshot if the journal has grown long
+        beginWrite();
+        try {
+            store.save(repository.toList());
+        } finally {
+            endWrite();
+        }
+    }
+
+    /**
+     * Returns true once enough changes have been journaled that snapshot() should be called.
+     *
+     * @return True if a snapshot is due.
+     */
+    public boolean isSnapshotDue() {
+        return invalidLines == 0 && changesSinceSnapshot >= SNAPSHOT_CHANGES;
+    }
+
+    /**
+     * Writes the subjects to the data file in full and discards the journal, so the next load does not
+     * have to replay it. If the data file had invalid lines, it is left as it is and the changes are
+     * appended to the journal instead.
+     *
+     * @throws IOException If the data could not be written. The previous data is left intact.
+     */
+    public void snapshot() throws IOException {
+        if (invalidLines > 0) {
+            store.flush();
+            return;
+        }
+        beginWrite();
+        try {
+            store.compact(repository.toList());
+        } finally {
+            endWrite();
+        }
+        changesSinceSnapshot = 0;
+    }
+
+    /**
+     * Does what snapshot() does on the autosave thread, so writing a large data file does not hold up
+     * the caller. The subjects are copied first and may go on changing; those changes are journaled
+     * after the snapshot. If autosave is not running, the snapshot is written on the calling thread.
+     *
+     * @param done Called with null once the snapshot is written, or with the error. It is called on
+     *             the autosave thread when autosave is running.
+     */
+    public void snapshotInBackground(Consumer<IOException> done) {
+        if (autosave == null) {
+            try {
+                snapshot();
+            } catch (IOException e) {
+                done.accept(e);
+                return;
+            }
+            done.accept(null);
+            return;
+        }
+        SubjectStorage.Compaction compaction;
+        if (invalidLines > 0) {
+            compaction = store::flush;
+        } else {
+            compaction = store.prepareCompact(repository.toList());
+            changesSinceSnapshot = 0;
+        }
+        DataFileWatcher writing = externalChanges.getWatcher();
+        autosave.compact(() -> {
+            if (writing != null) {
+                writing.beginWrite();
+            }
+            try {
+                compaction.run();
+            } finally {
+                if (writing != null) {
+                    writing.endWrite();
+                }
+            }
+        }, done);
+    }
+
+    /**
+     * Starts saving changes in the background. Call it once the data has been loaded, so that nothing
+     * is appended to the journal while it is still being read.
+     *
+     * @param listener Told on the autosave thread when saving fails or succeeds again.
+     */
+    public void startAutosave(AutosaveScheduler.Listener listener) {
+        if (autosave == null) {
+            autosave = new AutosaveScheduler(store, sessionLog, timerEngine, timerCheckpoint,
+                    AUTOSAVE_DELAY_MILLIS, AUTOSAVE_MAX_DELAY_MILLIS, TIMER_CHECKPOINT_MILLIS, listener);
+        }
+    }
+
+    /**
+     * Stops saving in the background, after writing any changes that are still waiting and
+     * checkpointing the running timers.
+     *
+     * @throws IOException If the final save failed.
+     */
+    public void stopAutosave() throws IOException {
+        if (autosave != null) {
+            AutosaveScheduler stopped = autosave;
+            autosave = null;
+            stopped.close();
+        }
+    }
+
+    /**
+     * Stops autosave and sync and releases the storage, e.g. a database connection.
+     *
+     * @throws IOException If the final save failed or the storage could not be closed.
+     */
+    public void close() throws IOException {
+        try {
+            externalChanges.stop();
+            sync.stop();
+            stopAutosave();
+            sessionLog.flush();
+        } finally {
+            store.close();
+        }
+    }
+
+    /**
+     * Writes the changes made so far to the journal, and the sessions to the session log: in the
+     * background if autosave is running, otherwise right away.
+     *
+     * @throws IOException If autosave is not running and the changes could not be written.
+     */
+    public void saveNow() throws IOException {
+        if (autosave != null) {
+            autosave.saveNow();
+        } else {
+            store.flush();
+            sessionLog.flush();
+        }
+    }
+
+    /**
+     * Recovers sessions that were still being timed when the application last stopped without
+     * stopping them, e.g. after a crash. Each one is finished at its last checkpoint: the time is added
+     * to its subject and the session to the session history, unless it was already recorded.
+     * Must be called after load().
+     *
+     * @return The recovered sessions.
+     * @throws IOException If the checkpoint could not be read or the recovered sessions could not be saved.
+     */
+    public List<TimerCheckpoint.Entry> recoverTimers() throws IOException {
+        List<TimerCheckpoint.Entry> recovered = new ArrayList<>();
+        for (TimerCheckpoint.Entry entry : timerCheckpoint.read()) {
+            Subject subject = repository.findByName(entry.getName());
+            if (subject == null || entry.getElapsedMillis() <= 0 || sessionLog.hasSession(entry.getName(), entry.getStartMillis())) {
+                continue;
+            }
+            applyTime(subject, entry.getElapsedMillis());
+            sessionLog.record(subject.getName(), entry.getStartMillis(), entry.getElapsedMillis());
+            recovered.add(entry);
+        }
+        // Make the recovered time and sessions durable before the checkpoint that describes them is removed
+        store.flush();
+        sessionLog.flush();
+        timerCheckpoint.delete();
+        return recovered;
+    }
+
+    /**
+     * Adds a new subject with no time or tasks.
+     *
+     * @param name The subject name.
+     * @return The new subject.
+     * @throws IllegalArgumentException If the name is blank, contains control characters or is already taken.
+     */
+    public Subject addSubject(String name) {
+        if (name.isBlank()) {
+            throw new IllegalArgumentException("Subject name cannot be blank.");
+        } else if (!isValidName(name)) {
+            throw new IllegalArgumentException("Subject name cannot contain line breaks or tabs.");
+        } else if (repository.containsName(name)) {
+            throw new IllegalArgumentException("Subject already exists.");
+        }
+        Subject subject = new Subject(name);
+        repository.add(subject);
+        SubjectChange change = SubjectChange.addSubject(name);
+        record(change);
+        history.record(change, subject);
+        return subject;
+    }
+
+    /**
+     * Removes a subject that is not being timed.
+     *
+     * @param subject The subject to remove.
+     * @throws IllegalArgumentException If the subject is being timed.
+     */
+    public void removeSubject(Subject subject) {
+        checkNotTimed(subject);
+        if (repository.remove(subject)) {
+            SubjectChange change = SubjectChange.removeSubject(subject.getName());
+            record(change);
+            history.record(change, subject);
+        }
+    }
+
+    /**
+     * Adds study time to a subject.
+     *
+     * @param subject The subject.
+     * @param time The time to add in milliseconds.
+     */
+    public void addTime(Subject subject, long time) {
+        history.record(applyTime(subject, time));
+    }
+
+    /**
+     * Adds a task to a subject.
+     *
+     * @param subject The subject.
+     * @param task The task name.
+     * @throws IllegalArgumentException If the task name is blank, contains control characters or the subject already has it.
+     */
+    public void addTask(Subject subject, String task) {
+        if (task.isBlank()) {
+            throw new IllegalArgumentException("Task name cannot be blank.");
+        } else if (!isValidName(task)) {
+            throw new IllegalArgumentException("Task name cannot contain line breaks or tabs.");
+        } else if (!subject.addTask(task)) {
+            throw new IllegalArgumentException("Task already exists.");
+        }
+        SubjectChange change = SubjectChange.addTask(subject.getName(), task);
+        record(change);
+        history.record(change);
+    }
+
+    /**
+     * Removes a task from a subject.
+     *
+     * @param subject The subject.
+     * @param task The task name.
+     * @return True if the subject had the task.
+     */
+    public boolean removeTask(Subject subject, String task) {
+        if (!subject.removeTask(task)) {
+            return false;
+        }
+        SubjectChange change = SubjectChange.removeTask(subject.getName(), task);
+        record(change);
+        history.record(change);
+        return true;
+    }
+
+    public boolean canUndo() {
+        return history.canUndo();
+    }
+
+    public boolean canRedo() {
+        return history.canRedo();
+    }
+
+    /**
+     * Describes the edit that undo() would reverse, e.g. "Remove Subject Math".
+     *
+     * @return The description, or null if there is nothing to undo.
+     */
+    public String getUndoDescription() {
+        UndoHistory.Entry entry = history.peekUndo();
+        return entry != null ? entry.describe() : null;
+    }
+
+    /**
+     * Describes the edit that redo() would make again.
+     *
+     * @return The description, or null if there is nothing to redo.
+     */
+    public String getRedoDescription() {
+        UndoHistory.Entry entry = history.peekRedo();
+        return entry != null ? entry.describe() : null;
+    }
+
+    /**
+     * Reverses the last edit. A removed subject comes back at the end of the list with the time and
+     * tasks it had when it was removed.
+     *
+     * @return True if an edit was undone, false if there was nothing to undo.
+     * @throws IllegalArgumentException If the edit would remove a subject that is being timed.
+     */
+    public boolean undo() {
+        UndoHistory.Entry entry = history.peekUndo();
+        if (entry == null) {
+            return false;
+        }
+        SubjectChange change = entry.getChange();
+        switch (change.getType()) {
+            case ADD_SUBJECT:
+                Subject added = findForHistory(change);
+                checkNotTimed(added);
+                history.undo();
+                // Keep what was added to the subject since, so redo brings it back the same
+                history.update(true, added);
+                delete(added);
+                break;
+            case REMOVE_SUBJECT:
+                checkNameFree(change);
+                history.undo();
+                restore(entry.buildSubject());
+                break;
+            case ADD_TIME:
+                Subject timed = findForHistory(change);
+                history.undo();
+                applyTime(timed, -change.getTime());
+                break;
+            case ADD_TASK:
+                Subject withTask = findForHistory(change);
+                history.undo();
+                if (withTask.removeTask(change.getTask())) {
+                    record(SubjectChange.removeTask(change.getName(), change.getTask()));
+                }
+                break;
+            case REMOVE_TASK:
+                Subject withoutTask = findForHistory(change);
+                history.undo();
+                if (withoutTask.addTask(change.getTask())) {
+                    record(SubjectChange.addTask(change.getName(), change.getTask()));
+                }
+                break;
+        }
+        return true;
+    }
+
+    /**
+     * Makes the last undone edit again.
+     *
+     * @return True if an edit was redone, false if there was nothing to redo.
+     * @throws IllegalArgumentException If the edit would remove a subject that is being timed.
+     */
+    public boolean redo() {
+        UndoHistory.Entry entry = history.peekRedo();
+        if (entry == null) {
+            return false;
+        }
+        SubjectChange change = entry.getChange();
+        switch (change.getType()) {
+            case ADD_SUBJECT:
+                checkNameFree(change);
+                history.redo();
+                restore(entry.buildSubject());
+                break;
+            case REMOVE_SUBJECT:
+                Subject removed = findForHistory(change);
+                checkNotTimed(removed);
+                history.redo();
+                history.update(false, removed);
+                delete(removed);
+                break;
+            case ADD_TIME:
+                Subject timed = findForHistory(change);
+                history.redo();
+                applyTime(timed, change.getTime());
+                break;
+            case ADD_TASK:
+                Subject withoutTask = findForHistory(change);
+                history.redo();
+                if (withoutTask.addTask(change.getTask())) {
+                    record(change);
+                }
+                break;
+            case REMOVE_TASK:
+                Subject withTask = findForHistory(change);
+                history.redo();
+                if (withTask.removeTask(change.getTask())) {
+                    record(change);
+                }
+                break;
+        }
+        return true;
+    }
+
+    /**
+     * Starts timing a subject.
+     *
+     * @param subject The subject to time.
+     * @return True if the timer was started, false if the subject was already being timed.
+     */
+    public boolean startTimer(Subject subject) {
+        if (!timerEngine.start(subject)) {
+            return false;
+        }
+        if (autosave != null) {
+            autosave.timersChanged();
+        }
+        return true;
+    }
+
+    /**
+     * Stops timing a subject, adds the elapsed time to it and records the session in the session history.
+     * With autosave running, the time, the session and the timer checkpoint are written on the autosave
+     * thread and this does not wait for the disk.
+     *
+     * @param subject The subject to stop timing.
+     * @return The finished timing, or null if the subject was not being timed.
+     * @throws IOException If autosave is not running and the time could not be written to the journal or
+     *                     the session to the session log. The time is still added.
+     */
+    public TimerEngine.Timing stopTimer(Subject subject) throws IOException {
+        TimerEngine.Timing timing = timerEngine.stop(subject);
+        if (timing == null) {
+            return null;
+        }
+        long elapsed = timing.getElapsedMillis();
+        applyTime(subject, elapsed);
+        sessionLog.record(subject.getName(), timing.getStartMillis(), elapsed);
+        if (autosave != null) {
+            autosave.timerStopped();
+        } else {
+            // The time is written before the session, since recoverTimers() skips a logged session and
+            // would not add the time again after a crash
+            store.flush();
+            sessionLog.flush();
+        }
+        return timing;
+    }
+
+    /**
+     * Stops every running timer as by stopTimer(Subject), e.g. before exiting.
+     *
+     * @throws IOException If a session could not be written to the session log. All timers are still stopped.
+     */
+    public void stopAllTimers() throws IOException {
+        IOException error = null;
+        for (TimerEngine.Timing timing : timerEngine.getRunning()) {
+            try {
+                stopTimer(timing.getSubject());
+            } catch (IOException e) {
+                error = e;
+            }
+        }
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    /**
+     * Builds the analytics report: total study time, most/least studied subjects, averages, the share
+     * of time spent on the most and least studied subjects and recent activity from the session history.
+     *
+     * Totals include the archived subjects.
+     *
+     * @param topK The number of subjects to list in each section.
+     * @return The report text, or null if there are no subjects.
+     * @throws IOException If the archive could not be read.
+     */
+    public String buildReport(int topK) throws IOException {
+        SubjectArchive.Summary archived = archiver.getArchive().getSummary();
+        if (repository.isEmpty() && archived.getCount() == 0) {
+            return null;
+        }
+        return buildReport(getAnalytics(), sessionLog, archived, topK);
+    }
+
+    /**
+     * Starts an analytics report whose rows are listed a page or chunk at a time, for large numbers of
+     * subjects. Must be called on the thread that changes the subjects.
+     *
+     * Totals include the archived subjects; the rows are the subjects in use.
+     *
+     * @param owner Runs reads of the analytics on the thread that changes the subjects, for exports.
+     * @return The report, or null if there are no subjects.
+     * @throws IOException If the archive could not be read.
+     */
+    public AnalyticsReport buildAnalyticsReport(Executor owner) throws IOException {
+        SubjectArchive.Summary archived = archiver.getArchive().getSummary();
+        if (repository.isEmpty() && archived.getCount() == 0) {
+            return null;
+        }
+        return new AnalyticsReport(getAnalytics(), sessionLog, archived, owner);
+    }
+
+    /**
+     * Builds the analytics report for any set of analytics, e.g. over subjects merged from many files.
+     *
+     * @param analytics The analytics of a non-empty repository.
+     * @param sessionLog The session history to report recent activity from, or null for none.
+     * @param topK The number of subjects to list in each section.
+     * @return The report text.
+     */
+    public static String buildReport(StudyAnalytics analytics, SessionLog sessionLog, int topK) {
+        return buildReport(analytics, sessionLog, null, topK);
+    }
+
+    /**
+     * Builds the analytics report with lifetime totals that include archived subjects. The shares
+     * are of the lifetime total time.
+     *
+     * @param analytics The analytics of the subjects in use.
+     * @param sessionLog The session history to report recent activity from, or null for none.
+     * @param archived The aggregates of the archived subjects, or null for none.
+     * @param topK The number of subjects to list in each section.
+     * @return The report text.
+     */
+    public static String buildReport(StudyAnalytics analytics, SessionLog sessionLog, SubjectArchive.Summary archived, int topK) {
+        SubjectArchive.Summary lifetime = SubjectArchive.Summary.lifetime(analytics, archived);
+        long totalTime = lifetime.getTotalTime();
+
+        StringBuilder report = new StringBuilder();
+        report.append("Study Analytics Report\n\n");
+        report.append("Total Study Time: ").append(TimeFormatter.formatDuration(totalTime)).append("\n");
+        if (archived != null && archived.getCount() > 0) {
+            report.append("Archived Subjects: ").append(archived.getCount())
+                  .append(" (").append(TimeFormatter.formatDuration(archived.getTotalTime())).append(")\n");
+        }
+        report.append("\n");
+        report.append("Most Studied Subject: ").append(lifetime.getMostStudied())
+              .append(" (").append(TimeFormatter.formatDuration(lifetime.getMostStudiedTime())).append(")\n");
+        report.append("Least Studied Subject: ").append(lifetime.getLeastStudied())
+              .append(" (").append(TimeFormatter.formatDuration(lifetime.getLeastStudiedTime())).append(")\n\n");
+        report.append("Average Time per Subject: ").append(TimeFormatter.formatDuration(totalTime / lifetime.getCount())).append("\n");
+        report.append("Total Tasks: ").append(lifetime.getTotalTasks()).append("\n");
+        report.append("Average Tasks per Subject: ").append(String.format("%.1f", lifetime.getTotalTasks() / (double) lifetime.getCount())).append("\n\n");
+
+        // Time distribution for the most and least studied subjects in use
+        if (analytics.getSubjectCount() > 0) {
+            appendDistribution(report, "Most Studied:", analytics.getMostStudied(topK), totalTime);
+        }
+        if (analytics.getSubjectCount() > topK) {
+            report.append("\n");
+            appendDistribution(report, "Least Studied:", analytics.getLeastStudied(topK), totalTime);
+        }
+
+        // Recent activity from the session log rollups
+        if (sessionLog != null && sessionLog.getSessionCount() > 0) {
+            Map<String, Long> lastWeek = sessionLog.getTimeBySubject(7);
+            Map<String, Long> lastMonth = sessionLog.getTimeBySubject(30);
+            long lastMonthTotal = 0;
+            for (long time : lastMonth.values()) {
+                lastMonthTotal += time;
+            }
+            long lastWeekTotal = 0;
+            for (long time : lastWeek.values()) {
+                lastWeekTotal += time;
+            }
+            report.append("\nLast 7 Days: ").append(TimeFormatter.formatDuration(lastWeekTotal)).append("\n");
+            report.append("Last 30 Days: ").append(TimeFormatter.formatDuration(lastMonthTotal)).append("\n");
+            lastMonth.entrySet().stream()
+                    .sorted(Map.Entry.<String, Long>comparingByValue().reversed())
+                    .limit(topK)
+                    .forEach(entry -> report.append("  ").append(entry.getKey()).append(": ")
+                            .append(TimeFormatter.formatDuration(entry.getValue())).append("\n"));
+        }
+        return report.toString();
+    }
+
+    /**
+     * Validates a subject or task name: any text without control characters such as line breaks and
+     * tabs, which would not display in the list. The data file quotes whatever else a name contains.
+     *
+     * @param input The name to validate.
+     * @return True if the name is valid.
+     */
+    public static boolean isValidName(String input) {
+        if (input.isEmpty()) {
+            return false;
+        }
+        for (int i = 0; i < input.length(); i++) {
+            if (Character.isISOControl(input.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns true while autosave is running, so changes are written in the background.
+     */
+    boolean isAutosaving() {
+        return autosave != null;
+    }
+
+    /**
+     * Records a change made here in the store and for sync.
+     */
+    void record(SubjectChange change) {
+        journal(change);
+        share(change);
+    }
+
+    /**
+     * Records a change made here for sync only, e.g. one that is already in the data file.
+     */
+    void share(SubjectChange change) {
+        sync.recordLocal(change);
+    }
+
+    /**
+     * Records a change in the store and lets autosave know about it.
+     */
+    void journal(SubjectChange change) {
+        store.record(change);
+        changesSinceSnapshot++;
+        if (autosave != null) {
+            autosave.changed();
+        }
+    }
+
+    /**
+     * Adds time to a subject and records the change, without adding it to the undo history.
+     */
+    private SubjectChange applyTime(Subject subject, long time) {
+        subject.addTime(time);
+        SubjectChange change = SubjectChange.addTime(subject.getName(), time);
+        record(change);
+        return change;
+    }
+
+    /**
+     * Adds a subject rebuilt from the undo history, recording the changes that recreate it in the journal.
+     */
+    void restore(Subject subject) {
+        repository.add(subject);
+        record(SubjectChange.addSubject(subject.getName()));
+        if (subject.getTime() != 0) {
+            record(SubjectChange.addTime(subject.getName(), subject.getTime()));
+        }
+        for (String task : subject.getTasks()) {
+            record(SubjectChange.addTask(subject.getName(), task));
+        }
+    }
+
+    /**
+     * Journals the changes that recreate a subject as it is.
+     */
+    void journalSubject(Subject subject) {
+        journal(SubjectChange.addSubject(subject.getName()));
+        if (subject.getTime() != 0) {
+            journal(SubjectChange.addTime(subject.getName(), subject.getTime()));
+        }
+        for (String task : subject.getTasks()) {
+            journal(SubjectChange.addTask(subject.getName(), task));
+        }
+    }
+
+    private void beginWrite() {
+        DataFileWatcher watcher = externalChanges.getWatcher();
+        if (watcher != null) {
+            watcher.beginWrite();
+        }
+    }
+
+    private void endWrite() {
+        DataFileWatcher watcher = externalChanges.getWatcher();
+        if (watcher != null) {
+            watcher.endWrite();
+        }
+    }
+
+    private void delete(Subject subject) {
+        repository.remove(subject);
+        record(SubjectChange.removeSubject(subject.getName()));
+    }
+
+    private void checkNotTimed(Subject subject) {
+        if (timerEngine.isRunning(subject)) {
+            throw new IllegalArgumentException("Please stop timing this subject to delete it.");
+        }
+    }
+
+    private void checkNameFree(SubjectChange change) {
+        if (repository.containsName(change.getName())) {
+            throw new IllegalArgumentException("Subject already exists.");
+        }
+    }
+
+    /**
+     * Finds the subject an edit in the undo history applies to.
+     */
+    private Subject findForHistory(SubjectChange change) {
+        Subject subject = repository.findByName(change.getName());
+        if (subject == null) {
+            throw new IllegalArgumentException("Subject " + change.getName() + " no longer exists.");
+        }
+        return subject;
+    }
+
+    /**
+     * Appends the percentage of total time spent on each of the given subjects to the report.
+     */
+    private static void appendDistribution(StringBuilder report, String title, List<StudyAnalytics.Entry> entries, long totalTime) {
+        report.append(title).append("\n");
+        for (StudyAnalytics.Entry entry : entries) {
+            double percentage = (entry.getTime() / (double) totalTime) * 100; // Calculate percentage of total time spent studying this subject
+            report.append(String.format("%s: %.1f%%\n", entry.getName(), percentage));
+        }
+    }
+}
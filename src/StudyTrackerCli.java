@@ -0,0 +1,279 @@
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * StudyTrackerCli runs StudyTracker without a display, for batch jobs such as nightly rollups over
+ * many data files. It never touches AWT, so it also works with -Djava.awt.headless=true.
+ *
+ * Commands:
+ *   import <data file> <input>...  merges CSV or .bin inputs into the data file: new subjects are added,
+ *                                  subjects that already exist get the input's time added and any missing tasks
+ *   aggregate <input>...           merges the inputs in memory and prints the analytics report over them
+ *   report <data file> [topK]      prints the analytics report
+ *   export <data file> <output>    writes the subjects as CSV, as a BinarySnapshot if the output ends in ".bin",
+ *                                  or into an embedded database if it ends in ".db"
+ *   export-report <data file> <output>  writes the analytics report with a row per subject, as CSV, HTML or
+ *                                  JSON by the output's extension
+ *   archive <data file> <days>     moves subjects not timed for that many days to the archive beside the data file
+ *   restore <data file> <subject>  moves an archived subject back into the data file
+ *   sync <data file> <host:port>...  exchanges changes with other instances' sync servers
+ *   serve <data file> <port>       runs a sync server for the data file until stopped
+ *
+ * Inputs may be files or directories, which are searched for .csv and .bin files. They are parsed in
+ * parallel by BulkImporter, on as many threads as -Dstudytracker.threads (default: one per core).
+ * A data file ending in ".db" is an embedded database; see JdbcSubjectStore.
+ *
+ * sync and serve need the secret shared by the instances in -Dstudytracker.sync.secret. serve only
+ * accepts syncs from this machine unless -Dstudytracker.sync.bind names the address to listen on.
+ */
+public class StudyTrackerCli {
+    private static final int MAX_REPORTED_ERRORS = 20;
+    private static final int REPORT_TOP_K = 10;
+
+    public static void main(String[] args) {
+        if (args.length < 2) {
+            usage();
+            return;
+        }
+        try {
+            if (args[0].equals("aggregate")) {
+                aggregate(merge(args, 1));
+                return;
+            }
+            StudyTracker tracker = new StudyTracker(Paths.get(args[1]));
+            List<String> errors = tracker.load();
+            report(errors, errors.size(), args[1]);
+            switch (args[0]) {
+                case "import":
+                    if (args.length < 3) {
+                        usage();
+                        return;
+                    }
+                    importFiles(tracker, merge(args, 2), args[1]);
+                    break;
+                case "report":
+                    String report = tracker.buildReport(args.length > 2 ? Integer.parseInt(args[2]) : REPORT_TOP_K);
+                    System.out.print(report != null ? report : "No data available for analysis.\n");
+                    break;
+                case "export":
+                    if (args.length != 3) {
+                        usage();
+                        return;
+                    }
+                    export(tracker, Paths.get(args[2]));
+                    System.out.println("Exported " + tracker.getRepository().size() + " subjects to " + args[2]);
+                    break;
+                case "export-report":
+                    if (args.length != 3) {
+                        usage();
+                        return;
+                    }
+                    AnalyticsReport analyticsReport = tracker.buildAnalyticsReport(Runnable::run);
+                    if (analyticsReport == null) {
+                        System.out.println("No data available for analysis.");
+                    } else {
+                        analyticsReport.export(Paths.get(args[2]), StudyAnalytics.Order.TIME_DESCENDING);
+                        System.out.println("Exported the report on " + analyticsReport.getSubjectCount() + " subjects to " + args[2]);
+                    }
+                    break;
+                case "archive":
+                    if (args.length != 3) {
+                        usage();
+                        return;
+                    }
+                    int archived = tracker.getArchiver().archiveInactive(Integer.parseInt(args[2]));
+                    System.out.println("Archived " + archived + " subjects, " + tracker.getRepository().size() + " left in " + args[1]);
+                    break;
+                case "restore":
+                    if (args.length != 3) {
+                        usage();
+                        return;
+                    }
+                    Subject restored = tracker.getArchiver().restore(args[2]);
+                    System.out.println("Restored " + restored.getName() + " into " + args[1]);
+                    break;
+                case "sync":
+                    if (args.length < 3) {
+                        usage();
+                        return;
+                    }
+                    sync(tracker, Arrays.copyOfRange(args, 2, args.length));
+                    break;
+                case "serve":
+                    if (args.length != 3) {
+                        usage();
+                        return;
+                    }
+                    serve(tracker, Integer.parseInt(args[2]));
+                    break;
+                default:
+                    usage();
+            }
+            tracker.close();
+        } catch (IOException | IllegalArgumentException e) {
+            System.err.println("Error: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Parses and merges the input files and directories named from the given argument on.
+     */
+    private static BulkImporter.Result merge(String[] args, int from) throws IOException {
+        List<Path> inputs = new ArrayList<>();
+        for (String arg : Arrays.copyOfRange(args, from, args.length)) {
+            inputs.add(Paths.get(arg));
+        }
+        int threads = Integer.getInteger("studytracker.threads", Runtime.getRuntime().availableProcessors());
+        long start = System.nanoTime();
+        BulkImporter.Result result = new BulkImporter(threads).importFiles(BulkImporter.findDataFiles(inputs));
+        long millis = (System.nanoTime() - start) / 1_000_000;
+        System.err.println("Read " + result.getRowCount() + " rows from " + result.getFileCount() + " files in "
+                + millis + " ms on " + threads + " threads");
+        report(result.getErrors(), result.getErrorCount(), "the input files");
+        return result;
+    }
+
+    /**
+     * Applies merged subjects to the tracker and writes a compacted data file. Subjects that already
+     * exist get the merged time added and any tasks they do not have yet.
+     */
+    private static void importFiles(StudyTracker tracker, BulkImporter.Result result, String dataFile) throws IOException {
+        SubjectRepository repository = tracker.getRepository();
+        int added = 0;
+        int merged = 0;
+        for (Subject subject : result.getSubjects()) {
+            Subject existing = repository.findByName(subject.getName());
+            if (existing == null) {
+                existing = tracker.addSubject(subject.getName());
+                added++;
+            } else {
+                merged++;
+            }
+            if (subject.getTime() != 0) {
+                tracker.addTime(existing, subject.getTime());
+            }
+            for (String task : subject.getTasks()) {
+                if (!existing.hasTask(task)) {
+                    tracker.addTask(existing, task);
+                }
+            }
+        }
+        tracker.save(true);
+        System.out.println("Imported " + result.getFileCount() + " files into " + dataFile + ": "
+                + added + " subjects added, " + merged + " merged, " + repository.size() + " in total");
+    }
+
+    /**
+     * Prints the analytics report over merged subjects.
+     */
+    private static void aggregate(BulkImporter.Result result) {
+        if (result.getSubjects().isEmpty()) {
+            System.out.println("No data available for analysis.");
+            return;
+        }
+        InMemorySubjectRepository repository = new InMemorySubjectRepository();
+        repository.addAll(result.getSubjects());
+        System.out.print(StudyTracker.buildReport(new StudyAnalytics(repository), null, REPORT_TOP_K));
+    }
+
+    /**
+     * Syncs the data file with each peer in turn. A peer that cannot be reached is reported and skipped.
+     */
+    private static void sync(StudyTracker tracker, String[] peers) throws IOException {
+        tracker.getSync().enable();
+        for (String peer : peers) {
+            try {
+                SyncConnection.Result result = tracker.getSync().sync(SyncServer.parseAddress(peer), System.getProperty("studytracker.sync.secret"));
+                System.out.println("Synced with " + peer + ": " + result);
+            } catch (IOException | IllegalArgumentException e) {
+                System.err.println("Sync with " + peer + " failed: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Serves syncs of the data file until the process is stopped. Received changes are written to the
+     * journal as each sync finishes.
+     */
+    private static void serve(StudyTracker tracker, int port) throws IOException {
+        // The endpoint applies one sync at a time, so the changes can be made on the connection threads
+        InetSocketAddress address = SyncServer.bindAddress(System.getProperty("studytracker.sync.bind"), port);
+        String secret = System.getProperty("studytracker.sync.secret");
+        tracker.getSync().start(address, Collections.emptyList(), 0, secret, Runnable::run, new SyncServer.Listener() {
+            @Override
+            public void synced(SyncConnection.Result result) {
+                System.out.println("Synced with " + result.getPeer() + ": " + result);
+            }
+
+            @Override
+            public void syncFailed(IOException e) {
+                System.err.println("Sync failed: " + e.getMessage());
+            }
+        });
+        System.out.println("Serving syncs of " + tracker.getStore().getLocation() + " on " + address);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                tracker.close();
+            } catch (IOException e) {
+                System.err.println("Error: " + e.getMessage());
+            }
+        }));
+        try {
+            Thread.currentThread().join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void export(StudyTracker tracker, Path output) throws IOException {
+        if (output.getFileName().toString().endsWith(".bin")) {
+            BinarySnapshot.write(output, tracker.getRepository().toList());
+        } else if (JdbcSubjectStore.isDatabase(output)) {
+            try (JdbcSubjectStore database = new JdbcSubjectStore(JdbcSubjectStore.url(output))) {
+                database.replaceAll(tracker.getRepository().toList());
+            }
+        } else {
+            SubjectStore.writeCsv(output, tracker.getRepository().toList());
+        }
+    }
+
+    /**
+     * Prints the invalid lines skipped while reading to standard error.
+     *
+     * @param errors Messages for the first skipped lines.
+     * @param errorCount The total number of skipped lines.
+     * @param source What was being read.
+     */
+    private static void report(List<String> errors, int errorCount, String source) {
+        if (errorCount == 0) {
+            return;
+        }
+        System.err.println("Invalid data in " + source + ": " + errorCount + (errorCount == 1 ? " line was" : " lines were") + " skipped");
+        for (int i = 0; i < Math.min(errors.size(), MAX_REPORTED_ERRORS); i++) {
+            System.err.println("  " + errors.get(i));
+        }
+        if (errorCount > Math.min(errors.size(), MAX_REPORTED_ERRORS)) {
+            System.err.println("  ... and " + (errorCount - Math.min(errors.size(), MAX_REPORTED_ERRORS)) + " more");
+        }
+    }
+
+    private static void usage() {
+        System.err.println("Usage: java StudyTrackerCli import <data file> <input file or directory>...");
+        System.err.println("       java StudyTrackerCli aggregate <input file or directory>...");
+        System.err.println("       java StudyTrackerCli report <data file> [topK]");
+        System.err.println("       java StudyTrackerCli export <data file> <output.csv|output.bin|output.db>");
+        System.err.println("       java StudyTrackerCli export-report <data file> <output.csv|output.html|output.json>");
+        System.err.println("       java StudyTrackerCli archive <data file> <days>");
+        System.err.println("       java StudyTrackerCli restore <data file> <subject>");
+        System.err.println("       java StudyTrackerCli sync <data file> <host:port>...");
+        System.err.println("       java StudyTrackerCli serve <data file> <port>");
+        System.exit(2);
+    }
+}
@@ -1,35 +1,96 @@
 import java.awt.*;
 import java.awt.event.ActionEvent;
+import java.awt.event.InputEvent;
+import java.awt.event.KeyEvent;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
-import java.io.BufferedReader;
-import java.io.File;
-import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.file.Paths;
+import java.time.LocalTime;
+import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 import javax.swing.*;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.event.ListDataEvent;
+import javax.swing.event.ListDataListener;
 
 /**
  * The StudyTrackerGUI class provides a graphical user interface for managing study tasks and subjects.
  * It allows users to add/remove subjects and tasks, track time spent on subjects, and save/load data
  * to/from a CSV file. Analytics such as total study time and averages can also be viewed.
+ * The logic lives in StudyTracker; this class only collects input and shows the results.
+ *
+ * To start quickly, the data file is read on a background thread while the window is built, and the
+ * window is shown before it is loaded. After a normal exit the subjects are mapped from the StateCache
+ * instead of being parsed. The analytics dialog is only built when analytics are first viewed.
  */
 public class StudyTrackerGUI extends JFrame {
     private final int windowWidth, windowHeight;
     private final JTextField subjectField, taskField;
-    private final DefaultListModel<Subject> listModel;
+    private final SubjectListModel listModel;
+    private final SubjectFilterModel filterModel;
     private final JList<Subject> subjectList;
+    private final JTextField searchField;
 
-    private boolean timer = false;
-    private int storedIndex = -1;
-    private long start;
-    private long stop;
+    // The headless core: subjects, persistence, timers and analytics
+    private final StudyTracker tracker;
 
-    // Stopwatch UI components
+    // Concurrent per-subject timers, owned by the tracker
+    private final TimerEngine timerEngine;
+
+    // Stopwatch UI components, refreshed by one shared tick while any timer runs
     private JLabel stopwatchLabel;
     private JPanel clockPanel;
     private Timer stopwatchTimer;
+    private JButton startStopButton;
+
+    // Undo and redo of edits, enabled while there is something to undo or redo
+    private JButton undoButton;
+    private JButton redoButton;
+
+    // The buttons that change the subjects, disabled together with undo and redo until the data has been
+    // loaded and while subjects are archived. A subject added while loading could duplicate a loaded one,
+    // or be dropped when a lazy load finishes.
+    private final List<JButton> editButtons = new ArrayList<>();
+    private boolean editingEnabled = true;
+
+    // Background loading of data.csv
+    private JProgressBar loadProgressBar;
+    private SubjectLoadWorker loadWorker;
+
+    // True once the data file has been read without errors, so a full snapshot may replace it
+    private boolean loaded = false;
+
+    // Shows when changes were last autosaved
+    private JLabel saveStatusLabel;
+    private boolean saveFailureShown = false;
+
+    // True while exit() waits for the final snapshot
+    private boolean exiting = false;
+
+    // True while archiveInactive() moves subjects to the archive in the background
+    private boolean archiving = false;
+
+    // Number of subjects on each page of the analytics table
+    private static final int ANALYTICS_PAGE_SIZE = 200;
+
+    // Built the first time analytics are viewed
+    private AnalyticsDialog analyticsDialog;
+
+    // Default seconds between syncs with the peers in -Dstudytracker.sync.peers
+    private static final int SYNC_INTERVAL_SECONDS = 60;
+
+    // Listeners that block the event dispatch thread longer than this are logged when metrics are enabled
+    private static final long EDT_STALL_MILLIS = 50;
+
+    private static final LatencyHistogram TIMER_TOGGLE_TIME = Metrics.timer("gui.timer.toggle");
+    private static final LatencyHistogram SAVE_REQUEST_TIME = Metrics.timer("gui.save");
+    private static final LatencyHistogram ANALYTICS_TIME = Metrics.timer("analytics.report");
 
     /**
      * Constructor for the StudyTrackerGUI class.
@@ -40,12 +101,29 @@ public class StudyTrackerGUI extends JFrame {
         windowWidth = 800;
         windowHeight = 600;
 
+        // The data file can be switched to the binary format with -Dstudytracker.data=data.bin
+        String dataFile = System.getProperty("studytracker.data", "data.csv");
+
         // Initialize list model and JList for subject display
-        listModel = new DefaultListModel<>();
-        subjectList = new JList<>(listModel);
+        listModel = new SubjectListModel();
+        tracker = new StudyTracker(Paths.get(dataFile), listModel);
+        timerEngine = tracker.getTimerEngine();
+        filterModel = new SubjectFilterModel(listModel);
+        subjectList = new JList<>(filterModel);
+
+        // Start reading data.csv in the background right away, so it is read while the window is built.
+        // Its rows are added on this thread, once the window is showing.
+        loadProgressBar = new JProgressBar(0, 100);
+        loadProgressBar.setStringPainted(true);
+        loadProgressBar.setString("Loading data...");
+        loadDataFromCSV();
 
         // Apply a custom cell renderer to display subjects details
-        subjectList.setCellRenderer(new SubjectListCellRenderer());
+        subjectList.setCellRenderer(new SubjectListCellRenderer(timerEngine));
+
+        // Fixed cell sizes let the JList lay out without building every row, so only visible rows are loaded
+        List<String> prototypeTasks = Arrays.asList("Homework", "Reading", "Review", "Exam Prep");
+        subjectList.setPrototypeCellValue(new Subject("Prototype Subject Name", 0, prototypeTasks));
 
         // Configure JFrame properties
         setTitle("Study Tracker");
@@ -53,21 +131,11 @@ public class StudyTrackerGUI extends JFrame {
         setDefaultCloseOperation(JFrame.DO_NOTHING_ON_CLOSE);
         setLayout(new GridLayout(2, 1, 5, 0));
 
-        // Window Listener for asking the user if they want to save before closing
+        // Window Listener for saving everything before closing
         addWindowListener(new WindowAdapter() {
             @Override
             public void windowClosing(WindowEvent e) {
-                int choice = JOptionPane.showConfirmDialog(null, 
-                    "Do you want to save before exiting?", 
-                    "Exit Confirmation", 
-                    JOptionPane.YES_NO_OPTION);
-                
-                if (choice == JOptionPane.YES_OPTION) {
-                    saveData();
-                    System.exit(0);
-                } else if (choice == JOptionPane.NO_OPTION) {
-                    System.exit(0);
-                }
+                exit();
             }
         });
 
@@ -82,42 +150,110 @@ public class StudyTrackerGUI extends JFrame {
         clockPanel.add(stopwatchLabel);
         // Initially hidden until timer starts
         clockPanel.setVisible(false);  
-        subjectPanel.add(clockPanel, BorderLayout.NORTH);
 
-        // Populate subjectList from data.csv
-        String filePath = "data.csv";
-        loadDataFromCSV(filePath);
+        // Search box that filters the list by subject or task as the user types
+        JPanel searchPanel = new JPanel(new BorderLayout(5, 0));
+        searchPanel.add(new JLabel("Search:"), BorderLayout.WEST);
+        searchField = new JTextField();
+        searchField.getDocument().addDocumentListener(new DocumentListener() {
+            @Override
+            public void insertUpdate(DocumentEvent e) {
+                filterModel.setQuery(searchField.getText());
+            }
+
+            @Override
+            public void removeUpdate(DocumentEvent e) {
+                filterModel.setQuery(searchField.getText());
+            }
+
+            @Override
+            public void changedUpdate(DocumentEvent e) {
+                filterModel.setQuery(searchField.getText());
+            }
+        });
+        searchPanel.add(searchField, BorderLayout.CENTER);
+
+        JPanel northPanel = new JPanel(new BorderLayout());
+        northPanel.add(clockPanel, BorderLayout.NORTH);
+        northPanel.add(searchPanel, BorderLayout.CENTER);
+        northPanel.add(loadProgressBar, BorderLayout.SOUTH);
+        subjectPanel.add(northPanel, BorderLayout.NORTH);
 
-        // Panel for remove subject & task buttons
-        JPanel subjButtonPanel = new JPanel(new GridLayout(1, 2, 0, 5));
+        // Panel for remove subject & task and undo & redo buttons
+        JPanel subjButtonPanel = new JPanel(new GridLayout(2, 2, 0, 5));
 
         // Button for removing a selected subject
         JButton subjRemoveButton = new JButton("Remove Subject");
         subjRemoveButton.addActionListener((ActionEvent e) -> {
-            int selectedIndex = subjectList.getSelectedIndex();
-            if (selectedIndex != -1) {
-                if (!timer) {
-                    listModel.remove(selectedIndex);
-                } else {
-                    JOptionPane.showMessageDialog(this, "Please stop timing to delete subjects.", "Error", JOptionPane.ERROR_MESSAGE);
-                }                
+            Subject selected = subjectList.getSelectedValue();
+            if (selected != null) {
+                try {
+                    tracker.removeSubject(selected);
+                } catch (IllegalArgumentException ex) {
+                    JOptionPane.showMessageDialog(this, ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+                }
             } else {
                 JOptionPane.showMessageDialog(this, "Please select a subject to delete.", "Error", JOptionPane.ERROR_MESSAGE);
             }
         });
         subjButtonPanel.add(subjRemoveButton);
+        editButtons.add(subjRemoveButton);
 
         // Button for removing a selected task
         JButton taskRemoveButton = new JButton("Remove Task");
         taskRemoveButton.addActionListener((ActionEvent e) -> {
-            int selectedIndex = subjectList.getSelectedIndex();
-            if (selectedIndex != -1) {
-                removeTask(selectedIndex);
+            Subject selected = subjectList.getSelectedValue();
+            if (selected != null) {
+                removeTask(selected);
             } else {
                 JOptionPane.showMessageDialog(this, "Please select a subject to delete a task from.", "Error", JOptionPane.ERROR_MESSAGE);
             }
         });
         subjButtonPanel.add(taskRemoveButton);
+        editButtons.add(taskRemoveButton);
+
+        // Buttons for undoing and redoing edits, also bound to Ctrl+Z and Ctrl+Y / Ctrl+Shift+Z
+        Action undoAction = new AbstractAction("Undo") {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                undo();
+            }
+        };
+        Action redoAction = new AbstractAction("Redo") {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                redo();
+            }
+        };
+        undoButton = new JButton(undoAction);
+        redoButton = new JButton(redoAction);
+        subjButtonPanel.add(undoButton);
+        subjButtonPanel.add(redoButton);
+        InputMap inputMap = getRootPane().getInputMap(JComponent.WHEN_IN_FOCUSED_WINDOW);
+        inputMap.put(KeyStroke.getKeyStroke(KeyEvent.VK_Z, InputEvent.CTRL_DOWN_MASK), "undo");
+        inputMap.put(KeyStroke.getKeyStroke(KeyEvent.VK_Y, InputEvent.CTRL_DOWN_MASK), "redo");
+        inputMap.put(KeyStroke.getKeyStroke(KeyEvent.VK_Z, InputEvent.CTRL_DOWN_MASK | InputEvent.SHIFT_DOWN_MASK), "redo");
+        getRootPane().getActionMap().put("undo", undoAction);
+        getRootPane().getActionMap().put("redo", redoAction);
+        updateUndoButtons();
+
+        // Every edit changes the list model, so keep the undo and redo buttons in step with it
+        listModel.addListDataListener(new ListDataListener() {
+            @Override
+            public void intervalAdded(ListDataEvent e) {
+                updateUndoButtons();
+            }
+
+            @Override
+            public void intervalRemoved(ListDataEvent e) {
+                updateUndoButtons();
+            }
+
+            @Override
+            public void contentsChanged(ListDataEvent e) {
+                updateUndoButtons();
+            }
+        });
 
         // Add buttons to subjectPanel
         subjectPanel.add(subjButtonPanel, BorderLayout.SOUTH);
@@ -137,6 +273,7 @@ public class StudyTrackerGUI extends JFrame {
             addSubject();
         });
         inputPanel.add(subjAddButton);
+        editButtons.add(subjAddButton);
 
         // Text field for task input
         taskField = new JTextField();
@@ -145,52 +282,47 @@ public class StudyTrackerGUI extends JFrame {
         // Button for adding a task
         JButton taskAddButton = new JButton("Add Task");
         taskAddButton.addActionListener((ActionEvent e) -> {
-            int selectedIndex = subjectList.getSelectedIndex();
-            if (selectedIndex != -1) {
-                addTask(selectedIndex);
+            Subject selected = subjectList.getSelectedValue();
+            if (selected != null) {
+                addTask(selected);
             } else {
                 JOptionPane.showMessageDialog(this, "Please select a subject to add a task to.", "Error", JOptionPane.ERROR_MESSAGE);
             }
         });
         inputPanel.add(taskAddButton);
+        editButtons.add(taskAddButton);
 
         // Add input panel to secondary panel
         secondaryPanel.add(inputPanel, BorderLayout.NORTH);
 
+        // Autosave status
+        saveStatusLabel = new JLabel(" ", SwingConstants.CENTER);
+        secondaryPanel.add(saveStatusLabel, BorderLayout.CENTER);
+
         // Button to start and stop time
-        JButton startStopButton = new JButton("Start Timer");
+        startStopButton = new JButton("Start Timer");
         startStopButton.addActionListener((ActionEvent e) -> {
-            int selectedIndex = subjectList.getSelectedIndex();
-            if (selectedIndex != -1) {
-                if (!timer) {
+            long start = Metrics.start();
+            Subject selected = subjectList.getSelectedValue();
+            if (selected != null) {
+                if (!timerEngine.isRunning(selected)) {
                     // Starting the timer
-                    storedIndex = selectedIndex;
-                    start = System.currentTimeMillis();
-                    startStopButton.setText("Stop Timer");
-                    timer = true;
-
-                    // Show and start stopwatch
-                    clockPanel.setVisible(true);
-                    startStopwatchTimer(selectedIndex);
+                    tracker.startTimer(selected);
                 } else {
-                    // Stopping the timer
-                    stop = System.currentTimeMillis();
-                    long elapsed = stop - start;
-                    listModel.elementAt(storedIndex).addTime(elapsed);
-                    startStopButton.setText("Start Timer");
-                    timer = false;
-                    storedIndex = -1;
-
-                    // Stop and hide stopwatch
-                    stopStopwatchTimer();
-                    clockPanel.setVisible(false);
+                    // Stopping the timer adds the time to the subject and the session history
+                    stopTimer(selected);
                 }
+
+                // Show or hide the stopwatch and update the button for the selection
+                updateStopwatch();
                 subjectList.repaint();
+                TIMER_TOGGLE_TIME.recordSince(start);
             } else {
                 JOptionPane.showMessageDialog(this, "Please select a subject to start timing.", "Error", JOptionPane.ERROR_MESSAGE);
             }
         });
         secondButtonPanel.add(startStopButton);
+        editButtons.add(startStopButton);
 
         // Button to save current information to a .csv file
         JButton saveButton = new JButton("Save Data");
@@ -205,6 +337,21 @@ public class StudyTrackerGUI extends JFrame {
             showAnalytics();
         });
         secondButtonPanel.add(analyticsButton);
+        editButtons.add(analyticsButton);
+
+        // Buttons to move inactive subjects to the archive and bring one back
+        JButton archiveButton = new JButton("Archive...");
+        archiveButton.addActionListener((ActionEvent e) -> {
+            archiveInactive();
+        });
+        secondButtonPanel.add(archiveButton);
+        editButtons.add(archiveButton);
+        JButton restoreButton = new JButton("Restore...");
+        restoreButton.addActionListener((ActionEvent e) -> {
+            restoreArchived();
+        });
+        secondButtonPanel.add(restoreButton);
+        editButtons.add(restoreButton);
 
         // Add secondButtonPanel to secondaryPanel
         secondaryPanel.add(secondButtonPanel, BorderLayout.SOUTH);
@@ -215,57 +362,87 @@ public class StudyTrackerGUI extends JFrame {
         secondaryPanel.setBorder(BorderFactory.createTitledBorder("Controls"));
         add(secondaryPanel);
 
+        // Keep the start/stop button in step with whether the selected subject is being timed
+        subjectList.addListSelectionListener(e -> updateStartStopButton());
+
+        // Enabled once the load worker has replayed the journal
+        setEditingEnabled(false);
+
         // Make the frame visible
         setVisible(true);
+        StartupTimings.phase("frame");
     }
 
     /**
-     * Starts the stopwatch timer or restarts it if it's already running.
-     * Updates the stopwatch label immediately and at one-second intervals thereafter.
+     * Starts the shared stopwatch tick while any timer is running and stops it when none are.
+     * Updates the stopwatch immediately and at one-second intervals thereafter.
      */
-    private void startStopwatchTimer(int selectedIndex) {
-        if (stopwatchTimer != null && stopwatchTimer.isRunning()) {
+    private void updateStopwatch() {
+        boolean running = !timerEngine.isEmpty();
+        if (running && (stopwatchTimer == null || !stopwatchTimer.isRunning())) {
+            stopwatchTimer = new Timer(1000, e -> tickStopwatch());
+            stopwatchTimer.start();
+        } else if (!running && stopwatchTimer != null) {
             stopwatchTimer.stop();
         }
-        stopwatchTimer = new Timer(1000, e -> updateStopwatchLabel(selectedIndex));
-        stopwatchTimer.start();
-        updateStopwatchLabel(selectedIndex); // Immediate update
+        clockPanel.setVisible(running);
+        updateStartStopButton();
+        tickStopwatch(); // Immediate update
     }
 
     /**
-     * Stops the stopwatch timer if it is currently running.
+     * Updates the stopwatch label with the elapsed time of every running timer in the format "HH:mm:ss",
+     * and repaints only the visible list rows whose subject is being timed.
      */
-    private void stopStopwatchTimer() {
-        if (stopwatchTimer != null) {
-            stopwatchTimer.stop();
+    private void tickStopwatch() {
+        StringBuilder text = new StringBuilder();
+        for (TimerEngine.Timing timing : timerEngine.getRunning()) {
+            if (text.length() > 0) {
+                text.append("   ");
+            }
+            text.append(timing.getSubject().getName()).append(": ");
+            TimeFormatter.formatClock(timing.getElapsedMillis(), text);
+        }
+        stopwatchLabel.setText(text.toString());
+
+        int first = subjectList.getFirstVisibleIndex();
+        int last = subjectList.getLastVisibleIndex();
+        for (int i = first; i >= 0 && i <= last; i++) {
+            if (timerEngine.isRunning(filterModel.getElementAt(i))) {
+                subjectList.repaint(subjectList.getCellBounds(i, i));
+            }
         }
     }
 
     /**
-     * Updates the stopwatch label with the formatted elapsed time since the timer started.
-     * The time is displayed in the format "HH:mm:ss".
+     * Sets the start/stop button text for the selected subject.
      */
-    private void updateStopwatchLabel(int selectedIndex) {
-        // Calculate elapsed time
-        long elapsed = System.currentTimeMillis() - start;
-        long hours = (elapsed / (1000 * 60 * 60)) % 24;
-        long minutes = (elapsed / (1000 * 60)) % 60;
-        long seconds = (elapsed / 1000) % 60;
-
-        String name = listModel.elementAt(selectedIndex).getName();
-        String timeFormatted = String.format("%s: %02d:%02d:%02d", name, hours, minutes, seconds);
-        stopwatchLabel.setText(timeFormatted);
+    private void updateStartStopButton() {
+        Subject selected = subjectList.getSelectedValue();
+        startStopButton.setText(selected != null && timerEngine.isRunning(selected) ? "Stop Timer" : "Start Timer");
+    }
+
+    /**
+     * Stops timing a subject, adding the elapsed time to it and to the session history.
+     *
+     * @param subject The subject that was timed.
+     */
+    private void stopTimer(Subject subject) {
+        try {
+            tracker.stopTimer(subject);
+        } catch (IOException e) {
+            JOptionPane.showMessageDialog(this, "Error saving session history: " + e.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+        }
     }
 
     /**
      * Removes a task from the selected subject. Opens a dialog for the user to select which task to remove.
      * Displays an error if no tasks are available or no task is selected.
      *
-     * @param selectedIndex The index of the selected subject in the list model.
+     * @param selectedSubject The selected subject.
      */
-    private void removeTask(int selectedIndex) {
-        Subject selectedSubject = listModel.getElementAt(selectedIndex);
-        ArrayList<String> tasks = selectedSubject.getTasks();
+    private void removeTask(Subject selectedSubject) {
+        List<String> tasks = selectedSubject.getTasks();
         if (tasks.isEmpty()) {
             JOptionPane.showMessageDialog(this, "No tasks available to remove.", "Error", JOptionPane.ERROR_MESSAGE);
             return;
@@ -284,8 +461,12 @@ public class StudyTrackerGUI extends JFrame {
 
         // Check if the user selected a task
         if (taskToRemove != null) {
-            tasks.remove(taskToRemove);
-            JOptionPane.showMessageDialog(this, "Task removed successfully.", "Success", JOptionPane.INFORMATION_MESSAGE);
+            // The task may have been removed meanwhile, e.g. by a sync or a reload of the data file
+            if (tracker.removeTask(selectedSubject, taskToRemove)) {
+                JOptionPane.showMessageDialog(this, "Task removed successfully.", "Success", JOptionPane.INFORMATION_MESSAGE);
+            } else {
+                JOptionPane.showMessageDialog(this, "Task not found.", "Error", JOptionPane.ERROR_MESSAGE);
+            }
         } else {
             JOptionPane.showMessageDialog(this, "No task selected.", "Error", JOptionPane.ERROR_MESSAGE);
         }
@@ -297,233 +478,462 @@ public class StudyTrackerGUI extends JFrame {
      * Displays error messages if the input is invalid (e.g., blank or duplicate subject names).
      */
     private void addSubject() {
-        String newSubjectName = subjectField.getText();
-        if (newSubjectName.isBlank()) {
-            JOptionPane.showMessageDialog(this, "Subject name cannot be blank.", "Error", JOptionPane.ERROR_MESSAGE);
-            return;
-        } else if (!checkInput(newSubjectName)) {
-            JOptionPane.showMessageDialog(this, "Subject name must be alphanumeric.", "Error", JOptionPane.ERROR_MESSAGE);
+        try {
+            tracker.addSubject(subjectField.getText());
+        } catch (IllegalArgumentException e) {
+            JOptionPane.showMessageDialog(this, e.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
             return;
-        } else {
-
-            for (int i = 0; i < listModel.size(); i++) {
-                if (listModel.get(i).getName().equalsIgnoreCase(newSubjectName)) {
-                    JOptionPane.showMessageDialog(this, "Subject already exists.", "Error", JOptionPane.ERROR_MESSAGE);
-                    return;
-                }
-            }
-
-            Subject newSubject = new Subject(newSubjectName);
-            listModel.addElement(newSubject);
-            JOptionPane.showMessageDialog(this, "Subject added successfully.", "Success", JOptionPane.INFORMATION_MESSAGE);
         }
+        JOptionPane.showMessageDialog(this, "Subject added successfully.", "Success", JOptionPane.INFORMATION_MESSAGE);
 
         subjectField.setText("");
     }
 
     /**
      * Adds a new task to the specified subject in the list model.
-     * Displays error messages if the task name is invalid (e.g., blank or non-alphanumeric).
+     * Displays error messages if the task name is invalid (e.g., blank or containing line breaks).
      *
-     * @param selectedIndex The index of the selected subject in the list model.
+     * @param subject The selected subject.
      */
-    private void addTask(int selectedIndex) {
-        String newTask = taskField.getText();
-        if (newTask.isBlank()) {
-            JOptionPane.showMessageDialog(this, "Task name cannot be blank.", "Error", JOptionPane.ERROR_MESSAGE);
-            return;
-        } else if (!checkInput(newTask)) {
-            JOptionPane.showMessageDialog(this, "Task name must be alphanumeric.", "Error", JOptionPane.ERROR_MESSAGE);
+    private void addTask(Subject subject) {
+        try {
+            tracker.addTask(subject, taskField.getText());
+        } catch (IllegalArgumentException e) {
+            JOptionPane.showMessageDialog(this, e.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
             return;
-        } else {
-            listModel.getElementAt(selectedIndex).addTask(newTask);
-            JOptionPane.showMessageDialog(this, "Task added successfully.", "Success", JOptionPane.INFORMATION_MESSAGE);
         }
+        JOptionPane.showMessageDialog(this, "Task added successfully.", "Success", JOptionPane.INFORMATION_MESSAGE);
         subjectList.repaint();
         taskField.setText("");
     }
 
     /**
-     * Validates user input to ensure it is alphanumeric with optional spaces.
+     * Undoes the last edit, showing an error if it cannot be undone, e.g. because it would remove a
+     * subject that is being timed.
+     */
+    private void undo() {
+        if (!editingEnabled) {
+            return;
+        }
+        try {
+            tracker.undo();
+        } catch (IllegalArgumentException e) {
+            JOptionPane.showMessageDialog(this, e.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+        }
+        updateUndoButtons();
+        subjectList.repaint();
+    }
+
+    /**
+     * Redoes the last undone edit, showing an error if it cannot be redone.
+     */
+    private void redo() {
+        if (!editingEnabled) {
+            return;
+        }
+        try {
+            tracker.redo();
+        } catch (IllegalArgumentException e) {
+            JOptionPane.showMessageDialog(this, e.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+        }
+        updateUndoButtons();
+        subjectList.repaint();
+    }
+
+    /**
+     * Enables the undo and redo buttons when there is something to undo or redo, and names the edit
+     * in their tooltips.
+     */
+    private void updateUndoButtons() {
+        String undoDescription = tracker.getUndoDescription();
+        String redoDescription = tracker.getRedoDescription();
+        undoButton.setEnabled(editingEnabled && undoDescription != null);
+        undoButton.setToolTipText(undoDescription != null ? "Undo " + undoDescription : null);
+        redoButton.setEnabled(editingEnabled && redoDescription != null);
+        redoButton.setToolTipText(redoDescription != null ? "Redo " + redoDescription : null);
+    }
+
+    /**
+     * Enables or disables the buttons that change the subjects, and undo and redo.
      *
-     * @param input The input string to validate.
-     * @return True if the input is valid, false otherwise.
+     * @param enabled True to enable them.
      */
-    private static boolean checkInput(String input) {
-        return input.matches("[a-zA-Z0-9 ]+");
+    private void setEditingEnabled(boolean enabled) {
+        editingEnabled = enabled;
+        for (JButton button : editButtons) {
+            button.setEnabled(enabled);
+        }
+        updateUndoButtons();
+    }
+
+    /**
+     * Returns true while the load worker is still reading the data file.
+     */
+    private boolean isLoading() {
+        return loadWorker != null && !loadWorker.isDone();
     }
 
     /**
-     * Saves the current list of subjects and tasks to a CSV file.
-     * Displays a confirmation message on successful save or an error message on failure.
+     * Writes the changes made since the last save to the journal right away instead of waiting for
+     * autosave. The write happens in the background; the status label shows when it is done.
      */
     private void saveData() {
-        File file = new File("data.csv");
-        try (FileWriter writer = new FileWriter(file)) {
-            writer.write("Subject Name,Time,Tasks\n");
-            for (int i = 0; i < listModel.size(); i++) {
-                Subject subject = listModel.getElementAt(i);
-                writer.write(subject.getName() + "," + subject.getTime());
-                if (subject.getTasks().isEmpty()) {
-                    writer.write("\n");
-                } else {
-                    for (String task : subject.getTasks()) {
-                        writer.write("," + task);
-                    }
-                    writer.write("\n");
-                }
-            }
-            JOptionPane.showMessageDialog(this, "Data saved successfully.");
-        } catch (Exception e) {
+        if (isLoading()) {
+            JOptionPane.showMessageDialog(this, "Please wait until data has finished loading.", "Error", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+        long start = Metrics.start();
+        try {
+            tracker.saveNow();
+            SAVE_REQUEST_TIME.recordSince(start);
+            saveStatusLabel.setText("Saving...");
+        } catch (IOException e) {
             JOptionPane.showMessageDialog(this, "Error saving data: " + e.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
         }
     }
 
     /**
-     * Loads data from a CSV file into the list model.
-     * Skips invalid lines and displays error messages for each skipped line.
-     *
-     * @param filePath The path to the CSV file to load.
+     * Asks for a number of days and moves the subjects that have not been timed for that long to the
+     * archive. The data file is rewritten without them, so only a file that loaded without errors is.
+     * The archive is written on a background thread and the data file on the autosave thread; the
+     * subjects cannot be changed meanwhile.
      */
-    private void loadDataFromCSV(String filePath) {
-        try (BufferedReader reader = new BufferedReader(new FileReader(filePath))) {
-            String line;
-            int count = 1;
-            reader.readLine(); // Ignore header line
-            while ((line = reader.readLine()) != null) {
+    private void archiveInactive() {
+        if (!loaded) {
+            JOptionPane.showMessageDialog(this, "The data file has invalid lines, so subjects cannot be archived.", "Error", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+        String input = (String) JOptionPane.showInputDialog(this, "Archive subjects not timed for this many days:",
+                "Archive Subjects", JOptionPane.PLAIN_MESSAGE, null, null, "365");
+        if (input == null) {
+            return;
+        }
+        SubjectArchiver.Archiving inactive;
+        try {
+            inactive = tracker.getArchiver().prepare(Integer.parseInt(input.trim()));
+        } catch (NumberFormatException e) {
+            JOptionPane.showMessageDialog(this, "Please enter a whole number of days.", "Error", JOptionPane.ERROR_MESSAGE);
+            return;
+        } catch (IllegalArgumentException e) {
+            JOptionPane.showMessageDialog(this, e.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+        if (inactive == null) {
+            JOptionPane.showMessageDialog(this, "0 subjects archived.", "Archive Subjects", JOptionPane.INFORMATION_MESSAGE);
+            return;
+        }
+        archiving = true;
+        setEditingEnabled(false);
+        saveStatusLabel.setText("Archiving " + inactive.size() + " subjects...");
+        new SwingWorker<Void, Void>() {
+            @Override
+            protected Void doInBackground() throws IOException {
+                inactive.write();
+                return null;
+            }
+
+            @Override
+            protected void done() {
                 try {
-                    listModel.addElement(parseSubject(line));
-                    count++;
-                } catch (IllegalArgumentException e) {
-                    // Tell the user there were errors and continue with next line
-                    JOptionPane.showMessageDialog(null, "Invalid data in data.csv\nError parsing line " + ++count + ": " + line + "\nReason: " + e.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+                    get();
+                } catch (Exception e) {
+                    finishArchive(inactive, e.getCause() != null ? e.getCause() : e);
+                    return;
                 }
+                tracker.getArchiver().finish(inactive, e -> SwingUtilities.invokeLater(() -> finishArchive(inactive, e)));
             }
+        }.execute();
+    }
+
+    /**
+     * Lets the subjects be changed again once archiveInactive() is done, and reports the outcome.
+     *
+     * @param inactive The subjects that were archived.
+     * @param error The error writing the archive, the data file or the session log, or null.
+     */
+    private void finishArchive(SubjectArchiver.Archiving inactive, Throwable error) {
+        archiving = false;
+        setEditingEnabled(true);
+        if (error != null) {
+            saveStatusLabel.setText("Archiving failed: " + error.getMessage());
+            JOptionPane.showMessageDialog(this, "Error archiving subjects: " + error.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+        } else {
+            saveStatusLabel.setText(inactive.size() + " subjects archived");
+            JOptionPane.showMessageDialog(this, inactive.size() + " subjects archived.", "Archive Subjects", JOptionPane.INFORMATION_MESSAGE);
+        }
+    }
+
+    /**
+     * Asks for the name of an archived subject and moves it back into the list, selecting it.
+     */
+    private void restoreArchived() {
+        String name = JOptionPane.showInputDialog(this, "Name of the archived subject to restore:", "Restore Subject", JOptionPane.PLAIN_MESSAGE);
+        if (name == null || name.isBlank()) {
+            return;
+        }
+        try {
+            Subject subject = tracker.getArchiver().restore(name.trim());
+            subjectList.setSelectedValue(subject, true);
+        } catch (IllegalArgumentException e) {
+            JOptionPane.showMessageDialog(this, e.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
         } catch (IOException e) {
-            JOptionPane.showMessageDialog(null, "Error reading file: " + e.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+            JOptionPane.showMessageDialog(this, "Error restoring subject: " + e.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
         }
     }
 
     /**
-     * Parses a single line of CSV data into a Subject object.
-     * Validates the data format and throws an IllegalArgumentException for invalid data.
-     *
-     * @param input The CSV line to parse.
-     * @return A Subject object created from the CSV data.
-     * @throws IllegalArgumentException If the input data is invalid.
+     * Starts autosave once the data has been loaded. Changes are written in the background shortly
+     * after they are made; the status label shows the last save, and a failure is reported once.
      */
-    private static Subject parseSubject(String input) {
-        // Remove any leading/trailing whitespace and newlines
-        input = input.trim();
+    private void startAutosave() {
+        tracker.startAutosave(new AutosaveScheduler.Listener() {
+            @Override
+            public void saved() {
+                String time = LocalTime.now().format(DateTimeFormatter.ofPattern("HH:mm:ss"));
+                SwingUtilities.invokeLater(() -> {
+                    saveStatusLabel.setText("All changes saved at " + time);
+                    saveFailureShown = false;
+                    snapshotIfDue();
+                });
+            }
 
-        // Split the string by commas
-        String[] parts = input.split(",");
+            @Override
+            public void saveFailed(IOException e) {
+                SwingUtilities.invokeLater(() -> {
+                    saveStatusLabel.setText("Autosave failed: " + e.getMessage());
+                    if (!saveFailureShown) {
+                        saveFailureShown = true;
+                        JOptionPane.showMessageDialog(StudyTrackerGUI.this, "Error saving data: " + e.getMessage()
+                                + "\nChanges will be saved again automatically.", "Error", JOptionPane.ERROR_MESSAGE);
+                    }
+                });
+            }
+        });
+    }
 
-        // Ensure the array has the expected number of elements
-        if (parts.length < 2) {
-            throw new IllegalArgumentException("Invalid data format");
+    /**
+     * Starts syncing with other instances if -Dstudytracker.sync.port (to accept syncs) or
+     * -Dstudytracker.sync.peers (a comma separated list of host:port to sync with every
+     * studytracker.sync.interval seconds, default 60) is set. Every instance needs the same
+     * -Dstudytracker.sync.secret. Syncs are only accepted from this machine unless
+     * -Dstudytracker.sync.bind names the address to listen on, e.g. 0.0.0.0 for the LAN. Received
+     * changes are applied on the Event Dispatch Thread; failed syncs are logged to standard error.
+     */
+    private void startSync() {
+        Integer port = Integer.getInteger("studytracker.sync.port");
+        String peerList = System.getProperty("studytracker.sync.peers", "");
+        if (port == null && peerList.isBlank()) {
+            return;
+        }
+        try {
+            List<InetSocketAddress> peers = new ArrayList<>();
+            for (String peer : peerList.split(",")) {
+                if (!peer.isBlank()) {
+                    peers.add(SyncServer.parseAddress(peer.trim()));
+                }
+            }
+            long interval = TimeUnit.SECONDS.toMillis(Integer.getInteger("studytracker.sync.interval", SYNC_INTERVAL_SECONDS));
+            InetSocketAddress address = port != null ? SyncServer.bindAddress(System.getProperty("studytracker.sync.bind"), port) : null;
+            tracker.getSync().start(address, peers, interval, System.getProperty("studytracker.sync.secret"), SwingUtilities::invokeLater,
+                    new SyncServer.Listener() {
+                        @Override
+                        public void synced(SyncConnection.Result result) {
+                        }
+
+                        @Override
+                        public void syncFailed(IOException e) {
+                            System.err.println("Sync failed: " + e.getMessage());
+                        }
+                    });
+        } catch (IOException | IllegalArgumentException e) {
+            JOptionPane.showMessageDialog(this, "Error starting sync: " + e.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
         }
+    }
 
-        // Get the name (trim whitespace)
-        String name = parts[0].trim();
+    /**
+     * Picks up changes that scripts or other programs make to data.csv while the window is open, if
+     * -Dstudytracker.watch=true is set. Only the subjects whose rows changed are updated, added or
+     * removed, so the selection and running timers are kept; the status label shows the last reload.
+     */
+    private void startWatching() {
+        if (!Boolean.getBoolean("studytracker.watch")) {
+            return;
+        }
+        try {
+            tracker.getExternalChanges().start(SwingUtilities::invokeLater, new DataFileWatcher.Listener() {
+                @Override
+                public void changed(DataFileWatcher.Diff diff) {
+                    String time = LocalTime.now().format(DateTimeFormatter.ofPattern("HH:mm:ss"));
+                    int count = diff.getChanges().size();
+                    saveStatusLabel.setText("Reloaded " + count + (count == 1 ? " subject" : " subjects") + " from the data file at " + time);
+                }
 
-        if (!checkInput(name)) {
-            throw new IllegalArgumentException("Invalid name value");
+                @Override
+                public void failed(IOException e) {
+                    SwingUtilities.invokeLater(() -> saveStatusLabel.setText("Reload failed: " + e.getMessage()));
+                }
+            });
+        } catch (IOException | IllegalArgumentException e) {
+            JOptionPane.showMessageDialog(this, "Error watching data file: " + e.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
         }
+    }
 
-        // Get the time (convert to long)
-        long time = Long.parseLong(parts[1].trim());
+    /**
+     * Folds the journal into the data file once it has grown long, so the next start does not have to
+     * replay it. The data file is written on the autosave thread, like the journal.
+     */
+    private void snapshotIfDue() {
+        // As on exit, a file that had invalid lines is not rewritten
+        if (!loaded || !tracker.isSnapshotDue()) {
+            return;
+        }
+        tracker.snapshotInBackground(e -> {
+            if (e != null) {
+                SwingUtilities.invokeLater(() -> saveStatusLabel.setText("Snapshot failed: " + e.getMessage()));
+            }
+        });
+    }
 
-        // Get the tasks (create a list from the remaining parts)
-        ArrayList<String> tasks = new ArrayList<>();
-        for (int i = 2; i < parts.length; i++) {
-            String task = parts[i].trim();
-            if (!checkInput(task)) {
-                throw new IllegalArgumentException("Invalid task value");
+    /**
+     * Stops all timers, saves everything and exits. When the data was loaded, a full snapshot is written
+     * on the autosave thread so the journal does not keep growing; the window takes no input meanwhile.
+     * If saving fails the user can choose to stay.
+     */
+    private void exit() {
+        if (isLoading()) {
+            int choice = JOptionPane.showConfirmDialog(this, "Data is still loading. Exit anyway?", "Exit Confirmation", JOptionPane.YES_NO_OPTION);
+            if (choice == JOptionPane.YES_OPTION) {
+                System.exit(0);
             }
-            tasks.add(task);
+            return;
+        }
+        if (exiting) {
+            return;
+        } else if (archiving) {
+            JOptionPane.showMessageDialog(this, "Please wait until the subjects have been archived.", "Error", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+        try {
+            tracker.stopAllTimers();
+        } catch (IOException e) {
+            // The time is still added to the subjects and saved below
+            JOptionPane.showMessageDialog(this, "Error saving session history: " + e.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
         }
+        if (!loaded) {
+            finishExit(null);
+            return;
+        }
+        exiting = true;
+        setEnabled(false);
+        saveStatusLabel.setText("Saving...");
+        tracker.snapshotInBackground(e -> SwingUtilities.invokeLater(() -> finishExit(e)));
+    }
 
-        // Create and return the Student object
-        if (tasks.isEmpty()) {
-            return new Subject(name, time);
-        } else {
-            return new Subject(name, time, tasks);
+    /**
+     * Closes the tracker and exits once the snapshot written by exit() is done, or lets the user stay
+     * if it failed.
+     *
+     * @param snapshotError The error writing the snapshot, or null.
+     */
+    private void finishExit(IOException snapshotError) {
+        IOException error = snapshotError;
+        if (error == null) {
+            try {
+                tracker.close();
+                System.exit(0);
+            } catch (IOException e) {
+                error = e;
+            }
         }
+        exiting = false;
+        setEnabled(true);
+        int choice = JOptionPane.showConfirmDialog(this, "Error saving data: " + error.getMessage() + "\nExit anyway?",
+                "Error", JOptionPane.YES_NO_OPTION, JOptionPane.ERROR_MESSAGE);
+        if (choice == JOptionPane.YES_OPTION) {
+            System.exit(0);
+        }
+        startAutosave();
+        updateStopwatch();
+    }
+
+    /**
+     * Loads data from a CSV file into the list model on a background thread.
+     * Subjects appear in the list as they are parsed, or all at once from the StateCache if the file
+     * has not changed since it was last saved; invalid lines are skipped and reported together once
+     * loading has finished, and changes saved to the journal are then replayed.
+     */
+    private void loadDataFromCSV() {
+        loadProgressBar.setValue(0);
+        loadProgressBar.setVisible(true);
+        loadWorker = new SubjectLoadWorker(tracker, listModel, loadProgressBar, this);
+        loadWorker.addPropertyChangeListener(e -> {
+            // Fired after the worker's done(), so the journal has been replayed
+            if ("state".equals(e.getPropertyName()) && e.getNewValue() == SwingWorker.StateValue.DONE) {
+                try {
+                    loaded = loadWorker.get().isEmpty();
+                } catch (Exception ex) {
+                    // Already reported by the worker; keep the data file as it is
+                }
+                setEditingEnabled(true);
+                StartupTimings.phase("load");
+                StartupTimings.finish(loadWorker.isLazy() ? "opened lazily" : "parsed");
+                startAutosave();
+                startSync();
+                startWatching();
+            }
+        });
+        loadWorker.execute();
     }
 
     /**
-     * Displays analytics for the current list of subjects, including total study time,
-     * most/least studied subjects, average time per subject, and task distribution.
+     * Displays analytics for the current list of subjects: a summary with the total study time,
+     * most/least studied subjects and averages, and a table with every subject's time and share of
+     * the total. The table shows one page of rows at a time and is sorted by clicking the Subject or
+     * Time header; the whole report can be exported to a CSV, HTML or JSON file.
      */
     private void showAnalytics() {
-        if (listModel.isEmpty()) {
+        // Aggregates are built on first use and kept up to date as subjects change
+        long start = Metrics.start();
+        AnalyticsReport report;
+        try {
+            report = tracker.buildAnalyticsReport(SwingUtilities::invokeLater);
+        } catch (IOException e) {
+            JOptionPane.showMessageDialog(this, "Error reading the archive: " + e.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+        if (report == null) {
+            ANALYTICS_TIME.recordSince(start);
             JOptionPane.showMessageDialog(this, "No data available for analysis.", "Analytics", JOptionPane.INFORMATION_MESSAGE);
             return;
         }
 
-        // Variables
-        long totalTime = 0;
-        Subject mostStudiedSubject = null;
-        Subject leastStudiedSubject = null;
-        int totalTasks = 0;
-        
-        // Analyze data
-        for (int i = 0; i < listModel.size(); i++) {
-            Subject current = listModel.getElementAt(i);
-            totalTime += current.getTime();
-            totalTasks += current.getTasks().size();
-            
-            if (mostStudiedSubject == null || current.getTime() > mostStudiedSubject.getTime()) {
-                mostStudiedSubject = current;
-            }
-            if (leastStudiedSubject == null || current.getTime() < leastStudiedSubject.getTime()) {
-                leastStudiedSubject = current;
-            }
+        analyticsDialog().setReport(report);
+        ANALYTICS_TIME.recordSince(start);
+        analyticsDialog.setVisible(true);
+    }
+
+    /**
+     * Returns the analytics dialog, building it the first time analytics are viewed.
+     */
+    private AnalyticsDialog analyticsDialog() {
+        if (analyticsDialog == null) {
+            analyticsDialog = new AnalyticsDialog(this, ANALYTICS_PAGE_SIZE);
         }
-    
-        // Calculate averages
-        double avgTimePerSubject = totalTime / (double) listModel.size();
-        double avgTasksPerSubject = totalTasks / (double) listModel.size();
-    
-        // Create analytics report
-        StringBuilder report = new StringBuilder();
-        report.append("Study Analytics Report\n\n");
-        report.append("Total Study Time: ").append(TimeFormatter.formatDuration(totalTime)).append("\n\n");
-        report.append("Most Studied Subject: ").append(mostStudiedSubject.getName())
-              .append(" (").append(TimeFormatter.formatDuration(mostStudiedSubject.getTime())).append(")\n");
-        report.append("Least Studied Subject: ").append(leastStudiedSubject.getName())
-              .append(" (").append(TimeFormatter.formatDuration(leastStudiedSubject.getTime())).append(")\n\n");
-        report.append("Average Time per Subject: ").append(TimeFormatter.formatDuration((long)avgTimePerSubject)).append("\n");
-        report.append("Total Tasks: ").append(totalTasks).append("\n");
-        report.append("Average Tasks per Subject: ").append(String.format("%.1f", avgTasksPerSubject)).append("\n\n");
-        
-        // Time distribution by subject
-        report.append("Time Distribution:\n");
-        for (int i = 0; i < listModel.size(); i++) { // Calculate percentage of total time for each subject
-            Subject subject = listModel.getElementAt(i); // Get the subject
-            double percentage = (subject.getTime() / (double) totalTime) * 100; // Calculate percentage of total time spent studying this subject
-            report.append(String.format("%s: %.1f%%\n", subject.getName(), percentage));// Append the subject name and percentage to the report
-        }
-    
-        // Show analytics in a scrollable dialog
-        JTextArea textArea = new JTextArea(report.toString()); // Create a text area with the report text
-        textArea.setEditable(false);//read only
-        textArea.setFont(new Font("Monospaced", Font.PLAIN, 12)); 
-        
-        JScrollPane scrollPane = new JScrollPane(textArea);
-        scrollPane.setPreferredSize(new Dimension(400, 300));
-        
-        JOptionPane.showMessageDialog(this, scrollPane, "Study Analytics",  // the text is shown as a pop up dialogue window
-            JOptionPane.PLAIN_MESSAGE);
+        return analyticsDialog;
     }
 
     /**
      * Main method to run the StudyTrackerGUI application.
+     * Metrics are recorded and exported when -Dstudytracker.metrics is set; see Metrics. The time each
+     * phase of startup takes is then also printed; see StartupTimings.
      * 
      * @param args Command-line arguments (not used).
      */
     public static void main(String[] args) {
+        StartupTimings.phase("jvm");
+        // Only when -Dstudytracker.metrics is set
+        Metrics.install();
+        EdtStallDetector.install(EDT_STALL_MILLIS);
         SwingUtilities.invokeLater(StudyTrackerGUI::new);
     }
 }
@@ -1,49 +1,270 @@
-import java.util.ArrayList;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.RandomAccess;
 
+/**
+ * Subject is one subject of study: its name, total study time and tasks.
+ *
+ * Subjects are safe to change and read from any thread, so background loaders, timers and import jobs
+ * can update them while the Event Dispatch Thread renders them. The time is added atomically with a
+ * VarHandle, so no addition is lost. The task ids are held in an array that is never changed once
+ * published: adding or removing a task swaps in a new array with a compare-and-set, so readers always
+ * see a complete set of tasks without locking. Each read returns the latest value of the time or the
+ * tasks; the change listener is told about every change on the thread that made it.
+ */
 public class Subject {
+    private static final int[] NO_TASKS = new int[0];
+    private static final VarHandle TIME;
+    private static final VarHandle TASK_IDS;
+
+    static {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            TIME = lookup.findVarHandle(Subject.class, "time", long.class);
+            TASK_IDS = lookup.findVarHandle(Subject.class, "taskIds", int[].class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
     private final String name;
-    private long time = 0;
-    private final ArrayList<String> tasks;
+    private volatile long time = 0;
+
+    // Task ids from TaskDictionary in the order the tasks were added. Replaced, never modified.
+    private volatile int[] taskIds = NO_TASKS;
+
+    // Display text built by toString(), valid while the time and tasks are those it was built from
+    private volatile DisplayText text;
+    private volatile ChangeListener changeListener;
+
+    /**
+     * ChangeListener is notified after a subject's time or tasks change, on the thread that changed it.
+     */
+    public interface ChangeListener {
+        void subjectChanged(Subject subject);
+    }
 
-    public Subject(String name, long time, ArrayList<String> tasks) {
+    /**
+     * Creates a subject with the given tasks. A task that is listed more than once is kept once.
+     *
+     * @param name The subject name.
+     * @param time The study time in milliseconds.
+     * @param tasks The task names.
+     */
+    public Subject(String name, long time, Collection<String> tasks) {
         this.name = name;
         this.time = time;
-        this.tasks = tasks;
+        int[] ids = new int[tasks.size()];
+        int count = 0;
+        for (String task : tasks) {
+            int id = TaskDictionary.intern(task);
+            if (indexOf(ids, count, id) < 0) {
+                ids[count++] = id;
+            }
+        }
+        this.taskIds = count == ids.length ? ids : Arrays.copyOf(ids, count);
     }
 
     public Subject(String name, long time) {
         this.name = name;
         this.time = time;
-        this.tasks = new ArrayList<>();
     }
 
     public Subject(String name) {
         this.name = name;
-        this.tasks = new ArrayList<>();
     }
 
     public String getName() {
         return name;
     }
 
-    public ArrayList<String> getTasks() {
-        return tasks;
+    /**
+     * Returns the tasks in the order they were added, as a read-only snapshot: later changes to the
+     * subject do not change the returned list.
+     *
+     * @return The task names.
+     */
+    public List<String> getTasks() {
+        int[] ids = taskIds;
+        return ids.length == 0 ? Collections.emptyList() : new TaskView(ids);
+    }
+
+    public int getTaskCount() {
+        return taskIds.length;
+    }
+
+    /**
+     * Checks whether the subject has a task, without adding the name to the TaskDictionary.
+     *
+     * @param task The task name.
+     * @return True if the subject has the task.
+     */
+    public boolean hasTask(String task) {
+        int id = TaskDictionary.find(task);
+        int[] ids = taskIds;
+        return id >= 0 && indexOf(ids, ids.length, id) >= 0;
     }
 
     public long getTime() {
         return time;
     }
 
+    /**
+     * Adds study time atomically.
+     *
+     * @param time The time to add in milliseconds.
+     */
     public void addTime(long time) {
-        this.time += time;
+        TIME.getAndAdd(this, time);
+        changed();
+    }
+
+    /**
+     * Adds a task unless the subject already has it.
+     *
+     * @param task The task name.
+     * @return True if the task was added.
+     */
+    public boolean addTask(String task) {
+        int id = TaskDictionary.intern(task);
+        while (true) {
+            int[] ids = taskIds;
+            if (indexOf(ids, ids.length, id) >= 0) {
+                return false;
+            }
+            int[] added = Arrays.copyOf(ids, ids.length + 1);
+            added[ids.length] = id;
+            if (TASK_IDS.compareAndSet(this, ids, added)) {
+                changed();
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Removes a task, keeping the order of the remaining ones.
+     *
+     * @param task The task name.
+     * @return True if the subject had the task.
+     */
+    public boolean removeTask(String task) {
+        int id = TaskDictionary.find(task);
+        if (id < 0) {
+            return false;
+        }
+        while (true) {
+            int[] ids = taskIds;
+            int index = indexOf(ids, ids.length, id);
+            if (index < 0) {
+                return false;
+            }
+            int[] removed = NO_TASKS;
+            if (ids.length > 1) {
+                removed = new int[ids.length - 1];
+                System.arraycopy(ids, 0, removed, 0, index);
+                System.arraycopy(ids, index + 1, removed, index, ids.length - index - 1);
+            }
+            if (TASK_IDS.compareAndSet(this, ids, removed)) {
+                changed();
+                return true;
+            }
+        }
+    }
+
+    public void setChangeListener(ChangeListener changeListener) {
+        this.changeListener = changeListener;
     }
 
-    public void addTask(String task) {
-        tasks.add(task);
+    // Subjects have a handful of tasks, so a scan over the ids beats hashing
+    private static int indexOf(int[] ids, int count, int id) {
+        for (int i = 0; i < count; i++) {
+            if (ids[i] == id) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void changed() {
+        ChangeListener listener = changeListener;
+        if (listener != null) {
+            listener.subjectChanged(this);
+        }
     }
 
     @Override
     public String toString() {
-        return "Name: " + name + ", Time: " + TimeFormatter.formatDuration(time) + ", Tasks: " + tasks.toString();
+        long currentTime = time;
+        int[] ids = taskIds;
+        DisplayText cached = text;
+        // Every change to the tasks publishes a new array, so the same array means the same tasks
+        if (cached != null && cached.time == currentTime && cached.taskIds == ids) {
+            return cached.text;
+        }
+        StringBuilder builder = new StringBuilder(64).append("Name: ").append(name).append(", Time: ");
+        TimeFormatter.formatDuration(currentTime, builder).append(", Tasks: [");
+        for (int i = 0; i < ids.length; i++) {
+            if (i > 0) {
+                builder.append(", ");
+            }
+            builder.append(TaskDictionary.name(ids[i]));
+        }
+        builder.append(']');
+        String built = builder.toString();
+        text = new DisplayText(currentTime, ids, built);
+        return built;
+    }
+
+    /**
+     * The display text and the time and tasks it was built from.
+     */
+    private static class DisplayText {
+        final long time;
+        final int[] taskIds;
+        final String text;
+
+        DisplayText(long time, int[] taskIds, String text) {
+            this.time = time;
+            this.taskIds = taskIds;
+            this.text = text;
+        }
+    }
+
+    /**
+     * Read-only list of the task names in one version of the task ids, resolved through the TaskDictionary on access.
+     */
+    private static class TaskView extends AbstractList<String> implements RandomAccess {
+        private final int[] ids;
+
+        TaskView(int[] ids) {
+            this.ids = ids;
+        }
+
+        @Override
+        public String get(int index) {
+            if (index < 0 || index >= ids.length) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + ids.length);
+            }
+            return TaskDictionary.name(ids[index]);
+        }
+
+        @Override
+        public int size() {
+            return ids.length;
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            if (!(o instanceof String)) {
+                return false;
+            }
+            int id = TaskDictionary.find((String) o);
+            return id >= 0 && Subject.indexOf(ids, ids.length, id) >= 0;
+        }
     }
 }
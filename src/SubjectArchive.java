@@ -0,0 +1,704 @@
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * SubjectArchive is the cold tier of the subjects. Subjects nobody has studied for a long time are
+ * moved here from the data file together with their timing sessions. The data file, the subject list
+ * and the session log then only hold the subjects in use. Any archived subject can be restored on
+ * its own.
+ *
+ * Entries are kept sorted by normalized name in blocks of up to BLOCK_ENTRIES, and each block is
+ * deflate-compressed on its own. Inside a block:
+ *   - a name is stored as the number of bytes it shares with the previous name, plus the rest;
+ *   - numbers are varints, zigzag-encoded where they can be negative;
+ *   - each session start is stored as the difference from the previous one.
+ * The index at the end of the file has each block's first name and its aggregates: count, total time,
+ * total tasks, and most and least studied subject. Opening the archive reads only the index. Looking
+ * up a subject decompresses one block. getSummary() adds up the block aggregates without reading any
+ * block.
+ *
+ * Layout (big-endian):
+ * <pre>
+ * blocks:  deflated entries; an entry is the shared name length, suffix length, suffix (UTF-8), time,
+ *          task count, per task: length, UTF-8 bytes, session count, per session: start delta, duration
+ * index:   magic, version, block count (ints), per block: first name (UTF), offset (long), length and raw
+ *          length (ints), CRC32 of the raw entries (long), count (int), time and tasks (longs), most studied
+ *          name (UTF) and time (long), least studied name (UTF) and time (long)
+ * trailer: index offset (long), magic (int)
+ * </pre>
+ * A change writes a temporary file, fsyncs it, renames it over the archive and fsyncs the directory.
+ * Blocks that do not change are copied without being decompressed. It is not thread-safe.
+ */
+public class SubjectArchive {
+    private static final int MAGIC = 0x53544152; // "STAR"
+    private static final int VERSION = 1;
+    private static final int TRAILER_SIZE = Long.BYTES + Integer.BYTES;
+    private static final int BLOCK_ENTRIES = 256;
+    private static final int WRITE_BUFFER_SIZE = 256 * 1024;
+
+    private static final Comparator<Entry> BY_KEY = Comparator.comparing(Entry::getKey);
+
+    /**
+     * An archived subject with its timing sessions.
+     */
+    public static class Entry {
+        private final Subject subject;
+        private final String key;
+        private final long[] sessions;
+
+        /**
+         * @param subject The subject.
+         * @param sessions The start and duration of each session, alternating, as SessionLog.getSessions() returns them.
+         */
+        public Entry(Subject subject, long[] sessions) {
+            this.subject = subject;
+            this.key = SubjectRepository.normalize(subject.getName());
+            this.sessions = sessions;
+        }
+
+        public Subject getSubject() {
+            return subject;
+        }
+
+        public int getSessionCount() {
+            return sessions.length / 2;
+        }
+
+        public long getSessionStart(int index) {
+            return sessions[2 * index];
+        }
+
+        public long getSessionDuration(int index) {
+            return sessions[2 * index + 1];
+        }
+
+        String getKey() {
+            return key;
+        }
+
+        /**
+         * Combines two entries of the same subject, e.g. one archived again after it was recreated.
+         */
+        Entry merge(Entry other) {
+            Set<String> tasks = new LinkedHashSet<>(subject.getTasks());
+            tasks.addAll(other.subject.getTasks());
+            long[] combined = Arrays.copyOf(sessions, sessions.length + other.sessions.length);
+            System.arraycopy(other.sessions, 0, combined, sessions.length, other.sessions.length);
+            return new Entry(new Subject(subject.getName(), subject.getTime() + other.subject.getTime(), tasks), combined);
+        }
+    }
+
+    /**
+     * Aggregates of archived subjects, so lifetime totals can include them without reading them.
+     */
+    public static class Summary {
+        private int count;
+        private long totalTime;
+        private long totalTasks;
+        private String mostStudied;
+        private long mostStudiedTime;
+        private String leastStudied;
+        private long leastStudiedTime;
+
+        public int getCount() {
+            return count;
+        }
+
+        public long getTotalTime() {
+            return totalTime;
+        }
+
+        public long getTotalTasks() {
+            return totalTasks;
+        }
+
+        /**
+         * Returns the name of the archived subject with the most time.
+         *
+         * @return The name, or null if nothing is archived.
+         */
+        public String getMostStudied() {
+            return mostStudied;
+        }
+
+        public long getMostStudiedTime() {
+            return mostStudiedTime;
+        }
+
+        /**
+         * Returns the name of the archived subject with the least time.
+         *
+         * @return The name, or null if nothing is archived.
+         */
+        public String getLeastStudied() {
+            return leastStudied;
+        }
+
+        public long getLeastStudiedTime() {
+            return leastStudiedTime;
+        }
+
+        /**
+         * Combines the aggregates of the subjects in use with those of the archived subjects, for
+         * lifetime totals. On a tie the subject in use is the most or least studied.
+         *
+         * @param analytics The analytics of the subjects in use.
+         * @param archived The aggregates of the archived subjects, or null for none.
+         * @return The combined aggregates.
+         */
+        public static Summary lifetime(StudyAnalytics analytics, Summary archived) {
+            Summary total = new Summary();
+            StudyAnalytics.Entry most = analytics.getMostStudied();
+            if (most != null) {
+                StudyAnalytics.Entry least = analytics.getLeastStudied();
+                total.add(analytics.getSubjectCount(), analytics.getTotalTime(), analytics.getTotalTasks(),
+                        most.getName(), most.getTime(), least.getName(), least.getTime());
+            }
+            if (archived != null) {
+                total.add(archived);
+            }
+            return total;
+        }
+
+        void add(Subject subject) {
+            add(1, subject.getTime(), subject.getTaskCount(), subject.getName(), subject.getTime(), subject.getName(), subject.getTime());
+        }
+
+        void add(Summary other) {
+            if (other.count > 0) {
+                add(other.count, other.totalTime, other.totalTasks, other.mostStudied, other.mostStudiedTime,
+                        other.leastStudied, other.leastStudiedTime);
+            }
+        }
+
+        private void add(int count, long time, long tasks, String most, long mostTime, String least, long leastTime) {
+            if (this.count == 0 || mostTime > mostStudiedTime) {
+                mostStudied = most;
+                mostStudiedTime = mostTime;
+            }
+            if (this.count == 0 || leastTime < leastStudiedTime) {
+                leastStudied = least;
+                leastStudiedTime = leastTime;
+            }
+            this.count += count;
+            this.totalTime += time;
+            this.totalTasks += tasks;
+        }
+
+        void write(DataOutput out) throws IOException {
+            out.writeInt(count);
+            out.writeLong(totalTime);
+            out.writeLong(totalTasks);
+            out.writeUTF(mostStudied);
+            out.writeLong(mostStudiedTime);
+            out.writeUTF(leastStudied);
+            out.writeLong(leastStudiedTime);
+        }
+
+        static Summary read(DataInput in) throws IOException {
+            Summary summary = new Summary();
+            summary.count = in.readInt();
+            summary.totalTime = in.readLong();
+            summary.totalTasks = in.readLong();
+            summary.mostStudied = in.readUTF();
+            summary.mostStudiedTime = in.readLong();
+            summary.leastStudied = in.readUTF();
+            summary.leastStudiedTime = in.readLong();
+            return summary;
+        }
+    }
+
+    /**
+     * Where a block is and what it holds, as listed in the index.
+     */
+    private static class Block {
+        final String firstKey;
+        final long offset;
+        final int length;
+        final int rawLength;
+        final long checksum;
+        final Summary summary;
+
+        Block(String firstKey, long offset, int length, int rawLength, long checksum, Summary summary) {
+            this.firstKey = firstKey;
+            this.offset = offset;
+            this.length = length;
+            this.rawLength = rawLength;
+            this.checksum = checksum;
+            this.summary = summary;
+        }
+    }
+
+    private final Path path;
+    private final Path tempPath;
+    private List<Block> blocks;
+    private Summary summary;
+
+    private SubjectArchive(Path path, List<Block> blocks) {
+        this.path = path;
+        this.tempPath = path.resolveSibling(path.getFileName() + ".tmp");
+        setBlocks(blocks);
+    }
+
+    /**
+     * Opens an archive by reading its index. A missing file is an empty archive, created when the first
+     * subject is archived.
+     *
+     * @param path The archive file.
+     * @return The archive.
+     * @throws IOException If the file could not be read or is not an archive.
+     */
+    public static SubjectArchive open(Path path) throws IOException {
+        Files.deleteIfExists(path.resolveSibling(path.getFileName() + ".tmp"));
+        if (!Files.exists(path)) {
+            return new SubjectArchive(path, new ArrayList<>());
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < TRAILER_SIZE) {
+                throw new IOException("Not a study tracker archive: " + path);
+            }
+            ByteBuffer trailer = read(channel, size - TRAILER_SIZE, TRAILER_SIZE);
+            long indexPos = trailer.getLong(0);
+            if (trailer.getInt(Long.BYTES) != MAGIC || indexPos < 0 || indexPos > size - TRAILER_SIZE) {
+                throw new IOException("Not a study tracker archive: " + path);
+            }
+            ByteBuffer index = read(channel, indexPos, (int) (size - TRAILER_SIZE - indexPos));
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(index.array()));
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a study tracker archive: " + path);
+            }
+            int version = in.readInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported archive version " + version);
+            }
+            int blockCount = in.readInt();
+            List<Block> blocks = new ArrayList<>(blockCount);
+            for (int i = 0; i < blockCount; i++) {
+                blocks.add(new Block(in.readUTF(), in.readLong(), in.readInt(), in.readInt(), in.readLong(), Summary.read(in)));
+            }
+            return new SubjectArchive(path, blocks);
+        }
+    }
+
+    /**
+     * Returns the aggregates of every archived subject, from the index.
+     *
+     * @return The summary.
+     */
+    public Summary getSummary() {
+        return summary;
+    }
+
+    public int size() {
+        return summary.getCount();
+    }
+
+    /**
+     * Looks up an archived subject by name, ignoring case, decompressing only its block.
+     *
+     * @param name The subject name.
+     * @return The entry, or null if no subject of that name is archived.
+     * @throws IOException If the archive could not be read.
+     */
+    public Entry find(String name) throws IOException {
+        String key = SubjectRepository.normalize(name);
+        int index = blockFor(key);
+        if (index < 0) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            for (Entry entry : readBlock(channel, blocks.get(index))) {
+                if (entry.getKey().equals(key)) {
+                    return entry;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Adds subjects to the archive. A subject that is already archived is combined with its entry:
+     * the times are added and the tasks and sessions joined. Only the blocks the new entries fall into
+     * are decompressed and written again.
+     *
+     * @param entries The subjects to archive.
+     * @throws IOException If the archive could not be written. It is then unchanged.
+     */
+    public void add(List<Entry> entries) throws IOException {
+        if (entries.isEmpty()) {
+            return;
+        }
+        List<Entry> added = new ArrayList<>(entries);
+        added.sort(BY_KEY);
+        List<Entry> sorted = new ArrayList<>(added.size());
+        for (Entry entry : added) {
+            int last = sorted.size() - 1;
+            if (last >= 0 && sorted.get(last).getKey().equals(entry.getKey())) {
+                sorted.set(last, sorted.get(last).merge(entry));
+            } else {
+                sorted.add(entry);
+            }
+        }
+
+        rewrite((channel, writer) -> {
+            int next = 0;
+            for (int i = 0; i < blocks.size(); i++) {
+                Block block = blocks.get(i);
+                String end = i + 1 < blocks.size() ? blocks.get(i + 1).firstKey : null;
+                if (next == sorted.size() || !before(sorted.get(next), end)) {
+                    writer.copy(channel, block);
+                    continue;
+                }
+                for (Entry old : readBlock(channel, block)) {
+                    while (next < sorted.size() && sorted.get(next).getKey().compareTo(old.getKey()) < 0) {
+                        writer.add(sorted.get(next++));
+                    }
+                    if (next < sorted.size() && sorted.get(next).getKey().equals(old.getKey())) {
+                        old = old.merge(sorted.get(next++));
+                    }
+                    writer.add(old);
+                }
+                while (next < sorted.size() && before(sorted.get(next), end)) {
+                    writer.add(sorted.get(next++));
+                }
+            }
+            while (next < sorted.size()) {
+                writer.add(sorted.get(next++));
+            }
+        });
+    }
+
+    /**
+     * Takes a subject out of the archive, e.g. to restore it. Only its block is written again.
+     *
+     * @param name The subject name.
+     * @return The entry that was removed, or null if no subject of that name is archived.
+     * @throws IOException If the archive could not be read or written. It is then unchanged.
+     */
+    public Entry remove(String name) throws IOException {
+        String key = SubjectRepository.normalize(name);
+        int index = blockFor(key);
+        if (index < 0) {
+            return null;
+        }
+        List<Entry> entries;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            entries = readBlock(channel, blocks.get(index));
+        }
+        Entry removed = null;
+        for (int i = 0; i < entries.size(); i++) {
+            if (entries.get(i).getKey().equals(key)) {
+                removed = entries.remove(i);
+                break;
+            }
+        }
+        if (removed == null) {
+            return null;
+        }
+        rewrite((channel, writer) -> {
+            for (int i = 0; i < blocks.size(); i++) {
+                if (i == index) {
+                    for (Entry entry : entries) {
+                        writer.add(entry);
+                    }
+                } else {
+                    writer.copy(channel, blocks.get(i));
+                }
+            }
+        });
+        return removed;
+    }
+
+    private static boolean before(Entry entry, String end) {
+        return end == null || entry.getKey().compareTo(end) < 0;
+    }
+
+    /**
+     * Returns the index of the block that would hold a key: the last one whose first key is not after it.
+     */
+    private int blockFor(String key) {
+        int low = 0;
+        int high = blocks.size() - 1;
+        int found = -1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (blocks.get(mid).firstKey.compareTo(key) <= 0) {
+                found = mid;
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return found;
+    }
+
+    private void setBlocks(List<Block> blocks) {
+        Summary total = new Summary();
+        for (Block block : blocks) {
+            total.add(block.summary);
+        }
+        this.blocks = blocks;
+        this.summary = total;
+    }
+
+    /**
+     * Writes what the body produces to the temporary file and renames it over the archive.
+     */
+    private void rewrite(Body body) throws IOException {
+        List<Block> written;
+        try (FileChannel source = Files.exists(path) ? FileChannel.open(path, StandardOpenOption.READ) : null;
+             FileChannel target = FileChannel.open(tempPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+             Writer writer = new Writer(target)) {
+            body.write(source, writer);
+            written = writer.finish();
+            target.force(true);
+        } catch (IOException e) {
+            Files.deleteIfExists(tempPath);
+            throw e;
+        }
+        Files.move(tempPath, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        // The data file is changed next on the strength of this rename, so it must survive a crash first
+        SubjectStore.forceDirectory(path);
+        setBlocks(written);
+    }
+
+    private interface Body {
+        void write(FileChannel source, Writer writer) throws IOException;
+    }
+
+    /**
+     * Reads, checks and decodes the entries of a block.
+     */
+    private static List<Entry> readBlock(FileChannel channel, Block block) throws IOException {
+        byte[] compressed = read(channel, block.offset, block.length).array();
+        byte[] raw = new byte[block.rawLength];
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(compressed);
+            if (inflater.inflate(raw) != raw.length || !inflater.finished()) {
+                throw new IOException("Archive block is corrupt");
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Archive block is corrupt", e);
+        } finally {
+            inflater.end();
+        }
+        CRC32 crc = new CRC32();
+        crc.update(raw);
+        if (crc.getValue() != block.checksum) {
+            throw new IOException("Archive block checksum mismatch, the file is corrupt");
+        }
+
+        ByteBuffer in = ByteBuffer.wrap(raw);
+        List<Entry> entries = new ArrayList<>(block.summary.getCount());
+        byte[] name = new byte[0];
+        while (in.hasRemaining()) {
+            int shared = (int) readVarLong(in);
+            int suffix = (int) readVarLong(in);
+            name = Arrays.copyOf(name, shared + suffix);
+            in.get(name, shared, suffix);
+            long time = unzigzag(readVarLong(in));
+            int taskCount = (int) readVarLong(in);
+            List<String> tasks = new ArrayList<>(taskCount);
+            for (int i = 0; i < taskCount; i++) {
+                byte[] task = new byte[(int) readVarLong(in)];
+                in.get(task);
+                tasks.add(new String(task, StandardCharsets.UTF_8));
+            }
+            long[] sessions = new long[2 * (int) readVarLong(in)];
+            long start = 0;
+            for (int i = 0; i < sessions.length; i += 2) {
+                start += unzigzag(readVarLong(in));
+                sessions[i] = start;
+                sessions[i + 1] = unzigzag(readVarLong(in));
+            }
+            String subjectName = new String(name, StandardCharsets.UTF_8);
+            Subject subject = tasks.isEmpty() ? new Subject(subjectName, time) : new Subject(subjectName, time, tasks);
+            entries.add(new Entry(subject, sessions));
+        }
+        return entries;
+    }
+
+    private static ByteBuffer read(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Archive is truncated");
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    private static void writeVarLong(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private static long readVarLong(ByteBuffer in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IOException("Archive block is corrupt");
+    }
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * Writes entries in blocks, followed by the index.
+     */
+    private static class Writer implements Closeable {
+        private final DataOutputStream out;
+        private final Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+        private final List<Block> blocks = new ArrayList<>();
+        private final ByteArrayOutputStream raw = new ByteArrayOutputStream(64 * 1024);
+        private long position = 0;
+
+        // The block being filled
+        private int entryCount = 0;
+        private String firstKey;
+        private Summary summary;
+        private byte[] previousName = new byte[0];
+
+        Writer(FileChannel channel) {
+            this.out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), WRITE_BUFFER_SIZE));
+        }
+
+        void add(Entry entry) throws IOException {
+            if (entryCount == 0) {
+                firstKey = entry.getKey();
+                summary = new Summary();
+                previousName = new byte[0];
+            }
+            Subject subject = entry.getSubject();
+            byte[] name = subject.getName().getBytes(StandardCharsets.UTF_8);
+            int shared = 0;
+            int limit = Math.min(name.length, previousName.length);
+            while (shared < limit && name[shared] == previousName[shared]) {
+                shared++;
+            }
+            writeVarLong(raw, shared);
+            writeVarLong(raw, name.length - shared);
+            raw.write(name, shared, name.length - shared);
+            writeVarLong(raw, zigzag(subject.getTime()));
+            List<String> tasks = subject.getTasks();
+            writeVarLong(raw, tasks.size());
+            for (String task : tasks) {
+                byte[] bytes = task.getBytes(StandardCharsets.UTF_8);
+                writeVarLong(raw, bytes.length);
+                raw.write(bytes, 0, bytes.length);
+            }
+            writeVarLong(raw, entry.getSessionCount());
+            long previousStart = 0;
+            for (int i = 0; i < entry.getSessionCount(); i++) {
+                writeVarLong(raw, zigzag(entry.getSessionStart(i) - previousStart));
+                writeVarLong(raw, zigzag(entry.getSessionDuration(i)));
+                previousStart = entry.getSessionStart(i);
+            }
+            previousName = name;
+            summary.add(subject);
+            if (++entryCount == BLOCK_ENTRIES) {
+                endBlock();
+            }
+        }
+
+        /**
+         * Copies a block from the old file as it is.
+         */
+        void copy(FileChannel source, Block block) throws IOException {
+            endBlock();
+            out.write(read(source, block.offset, block.length).array());
+            blocks.add(new Block(block.firstKey, position, block.length, block.rawLength, block.checksum, block.summary));
+            position += block.length;
+        }
+
+        List<Block> finish() throws IOException {
+            endBlock();
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(blocks.size());
+            for (Block block : blocks) {
+                out.writeUTF(block.firstKey);
+                out.writeLong(block.offset);
+                out.writeInt(block.length);
+                out.writeInt(block.rawLength);
+                out.writeLong(block.checksum);
+                block.summary.write(out);
+            }
+            out.writeLong(position);
+            out.writeInt(MAGIC);
+            out.flush();
+            return blocks;
+        }
+
+        private void endBlock() throws IOException {
+            if (entryCount == 0) {
+                return;
+            }
+            byte[] bytes = raw.toByteArray();
+            CRC32 crc = new CRC32();
+            crc.update(bytes);
+            deflater.reset();
+            deflater.setInput(bytes);
+            deflater.finish();
+            byte[] buffer = new byte[Math.max(64, bytes.length / 2)];
+            int length = 0;
+            while (!deflater.finished()) {
+                if (length == buffer.length) {
+                    buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                }
+                length += deflater.deflate(buffer, length, buffer.length - length);
+            }
+            out.write(buffer, 0, length);
+            blocks.add(new Block(firstKey, position, length, bytes.length, crc.getValue(), summary));
+            position += length;
+            raw.reset();
+            entryCount = 0;
+        }
+
+        @Override
+        public void close() {
+            deflater.end();
+        }
+    }
+}
@@ -0,0 +1,211 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * SubjectArchiver moves a StudyTracker's subjects that nobody has timed for a while, with their
+ * sessions, to a SubjectArchive beside the data file, so loading and saving only pay for the subjects
+ * in use. restore() brings one back.
+ *
+ * The archive is written first, so a subject is never lost: if the application stops before the
+ * subject is removed from the data file, it is in both. Archiving removes the subjects like any other
+ * change, so sync peers see them removed. prepare() and finish() do what archiveInactive() does in
+ * steps, so the files are written off the thread that changes the subjects. A data file with invalid
+ * lines is never rewritten, so its subjects cannot be archived.
+ *
+ * Like StudyTracker it is not thread-safe, except for getArchive() and Archiving.write().
+ */
+public class SubjectArchiver {
+    private static final LatencyHistogram ARCHIVE_TIME = Metrics.timer("archive.move");
+
+    private final StudyTracker tracker;
+    private final Path path;
+
+    // Opened on first use
+    private SubjectArchive archive;
+
+    /**
+     * @param tracker The tracker whose subjects are archived.
+     * @param path The archive file.
+     */
+    SubjectArchiver(StudyTracker tracker, Path path) {
+        this.tracker = tracker;
+        this.path = path;
+    }
+
+    /**
+     * Returns the archive of inactive subjects, opening it on first use. Opening only reads its index.
+     * It may be called on any thread, e.g. by Archiving.write().
+     *
+     * @return The archive.
+     * @throws IOException If the archive could not be read.
+     */
+    public synchronized SubjectArchive getArchive() throws IOException {
+        if (archive == null) {
+            archive = SubjectArchive.open(path);
+        }
+        return archive;
+    }
+
+    /**
+     * Moves the subjects whose last session ended more than the given number of days ago to the archive,
+     * with their sessions, and writes the data file without them. Subjects that are being timed or were
+     * never timed stay.
+     *
+     * @param days The number of days without a session after which a subject is archived.
+     * @return The number of subjects archived.
+     * @throws IOException If the archive, the data file or the session log could not be written.
+     * @throws IllegalArgumentException If days is less than 1 or the data file has invalid lines.
+     */
+    public int archiveInactive(int days) throws IOException {
+        Archiving archiving = prepare(days);
+        if (archiving == null) {
+            return 0;
+        }
+        long start = Metrics.start();
+        archiving.write();
+        remove(archiving);
+        // Rewrite the data file without them, and only then drop their sessions
+        tracker.snapshot();
+        tracker.getSessionLog().removeSessions(archiving.names);
+        ARCHIVE_TIME.recordSince(start);
+        return archiving.size();
+    }
+
+    /**
+     * Picks the subjects archiveInactive() would archive, copying them and their sessions, so the
+     * archive can be written on another thread with Archiving.write() and the move finished with
+     * finish().
+     *
+     * @param days The number of days without a session after which a subject is archived.
+     * @return The subjects to archive, or null if there are none.
+     * @throws IllegalArgumentException If days is less than 1 or the data file has invalid lines.
+     */
+    public Archiving prepare(int days) {
+        if (days < 1) {
+            throw new IllegalArgumentException("Please enter a number of days of at least 1.");
+        } else if (tracker.getInvalidLineCount() > 0) {
+            throw new IllegalArgumentException("The data file has invalid lines, so subjects cannot be archived.");
+        }
+        SubjectRepository repository = tracker.getRepository();
+        SessionLog sessionLog = tracker.getSessionLog();
+        long cutoff = System.currentTimeMillis() - TimeUnit.DAYS.toMillis(days);
+        Map<String, Long> lastEnds = sessionLog.getLastSessionEnds();
+        List<Subject> inactive = new ArrayList<>();
+        List<String> names = new ArrayList<>();
+        for (int i = 0; i < repository.size(); i++) {
+            Long end = lastEnds.get(SubjectRepository.normalize(repository.nameAt(i)));
+            if (end != null && end < cutoff) {
+                Subject subject = repository.get(i);
+                if (!tracker.getTimerEngine().isRunning(subject)) {
+                    inactive.add(subject);
+                    names.add(subject.getName());
+                }
+            }
+        }
+        if (inactive.isEmpty()) {
+            return null;
+        }
+        Map<String, long[]> sessions = sessionLog.getSessions(names);
+        List<SubjectArchive.Entry> entries = new ArrayList<>(inactive.size());
+        for (Subject subject : inactive) {
+            entries.add(new SubjectArchive.Entry(new Subject(subject.getName(), subject.getTime(), subject.getTasks()),
+                    sessions.get(SubjectRepository.normalize(subject.getName()))));
+        }
+        return new Archiving(inactive, names, entries);
+    }
+
+    /**
+     * Finishes moving subjects whose Archiving.write() succeeded: removes them and their sessions, and
+     * writes the data file without them and then the session log on the autosave thread, as
+     * StudyTracker.snapshotInBackground() does. The subjects should not have been edited since prepare().
+     *
+     * @param archiving The archived subjects.
+     * @param done Called with null once both files are written, or with the error. It is called on the
+     *             autosave thread when autosave is running.
+     */
+    public void finish(Archiving archiving, Consumer<IOException> done) {
+        long start = Metrics.start();
+        remove(archiving);
+        SessionLog.Removal sessions = tracker.getSessionLog().removeSessionsLater(archiving.names);
+        tracker.snapshotInBackground(e -> {
+            if (e == null) {
+                try {
+                    sessions.run();
+                    ARCHIVE_TIME.recordSince(start);
+                } catch (IOException ex) {
+                    e = ex;
+                }
+            }
+            done.accept(e);
+        });
+    }
+
+    /**
+     * Moves an archived subject back into the repository, with its time, tasks and sessions.
+     *
+     * @param name The subject name, ignoring case.
+     * @return The restored subject.
+     * @throws IOException If the archive could not be read or written, or the subject could not be saved.
+     * @throws IllegalArgumentException If no subject of that name is archived or the name is taken.
+     */
+    public Subject restore(String name) throws IOException {
+        if (tracker.getRepository().containsName(name)) {
+            throw new IllegalArgumentException("Subject already exists.");
+        }
+        SubjectArchive.Entry entry = getArchive().find(name);
+        if (entry == null) {
+            throw new IllegalArgumentException("No archived subject is named " + name + ".");
+        }
+        Subject subject = entry.getSubject();
+        tracker.restore(subject);
+        SessionLog sessionLog = tracker.getSessionLog();
+        for (int i = 0; i < entry.getSessionCount(); i++) {
+            sessionLog.record(subject.getName(), entry.getSessionStart(i), entry.getSessionDuration(i));
+        }
+        tracker.getStore().flush();
+        sessionLog.flush();
+        archive.remove(name);
+        return subject;
+    }
+
+    private void remove(Archiving archiving) {
+        tracker.getRepository().removeAll(archiving.subjects);
+        for (String name : archiving.names) {
+            tracker.record(SubjectChange.removeSubject(name));
+        }
+    }
+
+    /**
+     * Subjects picked by prepare(), copied so they can be written to the archive on any thread.
+     */
+    public class Archiving {
+        private final List<Subject> subjects;
+        private final List<String> names;
+        private final List<SubjectArchive.Entry> entries;
+
+        private Archiving(List<Subject> subjects, List<String> names, List<SubjectArchive.Entry> entries) {
+            this.subjects = subjects;
+            this.names = names;
+            this.entries = entries;
+        }
+
+        public int size() {
+            return subjects.size();
+        }
+
+        /**
+         * Adds the subjects to the archive. Nothing else is changed, so it may run on any thread while
+         * the archive is not used otherwise.
+         *
+         * @throws IOException If the archive could not be written. It is then unchanged.
+         */
+        public void write() throws IOException {
+            getArchive().add(entries);
+        }
+    }
+}
@@ -0,0 +1,97 @@
+/**
+ * SubjectChange describes a single mutation of the subject list: a subject added or removed,
+ * time added to a subject, or a task added to or removed from a subject.
+ * Changes are recorded as they happen so they can be appended to the journal instead of
+ * rewriting the whole data file.
+ */
+public class SubjectChange {
+
+    /**
+     * The kind of change, with the single-character code used to store it in the journal.
+     */
+    public enum Type {
+        ADD_SUBJECT('N'),
+        REMOVE_SUBJECT('D'),
+        ADD_TIME('T'),
+        ADD_TASK('A'),
+        REMOVE_TASK('R');
+
+        private final char code;
+
+        Type(char code) {
+            this.code = code;
+        }
+
+        public char getCode() {
+            return code;
+        }
+
+        /**
+         * Looks up the type stored under the given journal code.
+         *
+         * @param code The journal code.
+         * @return The matching type, or null if the code is unknown.
+         */
+        public static Type fromCode(char code) {
+            for (Type type : values()) {
+                if (type.code == code) {
+                    return type;
+                }
+            }
+            return null;
+        }
+    }
+
+    private final Type type;
+    private final String name;
+    private final long time;
+    private final String task;
+
+    private SubjectChange(Type type, String name, long time, String task) {
+        this.type = type;
+        this.name = name;
+        this.time = time;
+        this.task = task;
+    }
+
+    public static SubjectChange addSubject(String name) {
+        return new SubjectChange(Type.ADD_SUBJECT, name, 0, null);
+    }
+
+    public static SubjectChange removeSubject(String name) {
+        return new SubjectChange(Type.REMOVE_SUBJECT, name, 0, null);
+    }
+
+    public static SubjectChange addTime(String name, long time) {
+        return new SubjectChange(Type.ADD_TIME, name, time, null);
+    }
+
+    public static SubjectChange addTask(String name, String task) {
+        return new SubjectChange(Type.ADD_TASK, name, 0, task);
+    }
+
+    public static SubjectChange removeTask(String name, String task) {
+        return new SubjectChange(Type.REMOVE_TASK, name, 0, task);
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getTime() {
+        return time;
+    }
+
+    public String getTask() {
+        return task;
+    }
+
+    @Override
+    public String toString() {
+        return type + " " + name + (type == Type.ADD_TIME ? " " + time : "") + (task != null ? " " + task : "");
+    }
+}
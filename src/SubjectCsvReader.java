@@ -0,0 +1,577 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * SubjectCsvReader reads subjects from a CSV stream one row at a time.
+ * Rows are tokenized directly out of a reusable character buffer, so no intermediate line
+ * strings or split arrays are created; a String is only allocated for each accepted name and task.
+ *
+ * Each row is name,time,task,task... Fields are quoted as in RFC 4180 when they contain a comma,
+ * a double quote or surrounding whitespace. Names and tasks may hold any text but control characters,
+ * as StudyTracker.isValidName() requires, so a field with a line break or a tab is invalid.
+ * The header row names the format version, as written by SubjectCsvWriter:
+ *   Subject Name,Time,Tasks,format=2
+ * Files from before the version was added have the header "Subject Name,Time,Tasks" and never contain
+ * quotes, so they are read by the same parser as version 1.
+ *
+ * A stray quote would otherwise join every following line into one record. A record only spans lines
+ * if its quote is closed within MAX_RECORD_LINES lines and it then parses, which it cannot, since the
+ * line breaks it holds are control characters. Instead only its first line is taken as the (invalid)
+ * row, and the lines after it are read again as rows of their own.
+ */
+public class SubjectCsvReader implements Closeable {
+    /** The newest format version, written by SubjectCsvWriter. */
+    public static final int FORMAT_VERSION = 2;
+    /** The header row of the newest format. */
+    public static final String HEADER = "Subject Name,Time,Tasks,format=" + FORMAT_VERSION;
+
+    private static final String VERSION_FIELD = "format=";
+    private static final int BUFFER_SIZE = 64 * 1024;
+    // A quoted field may span at most this many lines; a quote left open for longer is a stray one
+    private static final int MAX_RECORD_LINES = 100;
+
+    private final Reader in;
+    // Replaced by a smaller array while lines that were read ahead are read again
+    private char[] buffer = new char[BUFFER_SIZE];
+    private int bufferPos = 0;
+    private int bufferEnd = 0;
+
+    // The current row, copied out of the buffer so it can span buffer refills
+    private char[] line = new char[256];
+    private int lineLength = 0;
+    private int lineNumber = 0;
+    private long charsRead = 0;
+    private boolean eof = false;
+    // Whether the last line read was ended by "\r", "\n" or "\r\n", to put back into quoted fields
+    private boolean lastLineHadCr = false;
+    private boolean lastLineHadLf = false;
+    private final int version;
+
+    /**
+     * Creates a reader over the given character stream and reads the header row.
+     *
+     * @param in The stream to read CSV data from.
+     * @throws IOException If the header line cannot be read, or names a newer format version.
+     */
+    public SubjectCsvReader(Reader in) throws IOException {
+        this.in = in;
+        readRecord();
+        this.version = parseVersion(line, 0, lineLength);
+        if (version > FORMAT_VERSION) {
+            throw new IOException("Unsupported data format version " + version + ", this version reads up to " + FORMAT_VERSION);
+        }
+    }
+
+    /**
+     * Reads the next subject from the stream.
+     * Blank trailing input ends the stream; an invalid row throws after it has been consumed,
+     * so the caller can report it and keep reading.
+     *
+     * @return The next Subject, or null when the end of the stream is reached.
+     * @throws IOException If the underlying stream fails.
+     * @throws IllegalArgumentException If the current row is invalid.
+     */
+    public Subject next() throws IOException {
+        if (!readRecord()) {
+            return null;
+        }
+        return parseLine(line, 0, lineLength);
+    }
+
+    /**
+     * Reads the next row without parsing it, so it can be hashed with hashRow() and only parsed with
+     * parseRow() if needed.
+     *
+     * @return False when the end of the stream is reached.
+     * @throws IOException If the underlying stream fails.
+     */
+    public boolean nextRow() throws IOException {
+        return readRecord();
+    }
+
+    /**
+     * Returns a 64-bit FNV-1a hash of the raw text of the row most recently read. Rows with the same
+     * text have the same hash; it is computed without allocating.
+     *
+     * @return The hash of the current row.
+     */
+    public long hashRow() {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < lineLength; i++) {
+            hash = (hash ^ line[i]) * 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    /**
+     * Parses the row most recently read by nextRow().
+     *
+     * @return The Subject in the row.
+     * @throws IllegalArgumentException If the row is invalid.
+     */
+    public Subject parseRow() {
+        return parseLine(line, 0, lineLength);
+    }
+
+    /**
+     * Returns the format version named by the header row.
+     *
+     * @return The version, 1 for files written before versions were added.
+     */
+    public int getVersion() {
+        return version;
+    }
+
+    /**
+     * Returns the 1-based line number of the row most recently returned by next().
+     *
+     * @return The current line number, counting the header as line 1.
+     */
+    public int getLineNumber() {
+        return lineNumber;
+    }
+
+    /**
+     * Returns the raw text of the row most recently read. Intended for error reporting only.
+     *
+     * @return The current row as a String.
+     */
+    public String getLine() {
+        return new String(line, 0, lineLength);
+    }
+
+    /**
+     * Returns the number of characters consumed from the stream so far, including line terminators.
+     *
+     * @return The number of characters read.
+     */
+    public long getCharsRead() {
+        return charsRead;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    /**
+     * Copies the next row into the line buffer, joining lines while a quoted field is still open.
+     * If the quote is not closed within MAX_RECORD_LINES lines, or the joined row does not parse, the
+     * row is cut back to its first line and the rest is read again.
+     *
+     * @return False if the stream was already exhausted.
+     */
+    private boolean readRecord() throws IOException {
+        lineLength = 0;
+        if (!readLine()) {
+            return false;
+        }
+        if (!hasOpenQuote(line, 0, lineLength)) {
+            return true;
+        }
+        int firstLength = lineLength;
+        int firstNumber = lineNumber;
+        boolean firstHadCr = lastLineHadCr;
+        boolean firstHadLf = lastLineHadLf;
+        int lines = 1;
+        boolean open = true;
+        while (open && lines < MAX_RECORD_LINES) {
+            // The line break belongs to the quoted field
+            if (lastLineHadCr) {
+                appendToLine('\r');
+            }
+            if (lastLineHadLf) {
+                appendToLine('\n');
+            }
+            int from = lineLength;
+            if (!readLine()) {
+                break;
+            }
+            lines++;
+            if (hasOpenQuote(line, from, lineLength)) {
+                open = false;
+            }
+        }
+        if (open || !parses()) {
+            unreadAfter(firstLength + (firstHadCr ? 1 : 0) + (firstHadLf ? 1 : 0));
+            lineLength = firstLength;
+            lineNumber = firstNumber;
+            lastLineHadCr = firstHadCr;
+            lastLineHadLf = firstHadLf;
+        }
+        return true;
+    }
+
+    private boolean parses() {
+        try {
+            parseLine(line, 0, lineLength);
+            return true;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Puts the lines joined into the current row after the given index back in front of the buffer,
+     * with the terminator of the last one, so they are read again.
+     */
+    private void unreadAfter(int from) {
+        int count = Math.max(0, lineLength - from);
+        int terminator = (lastLineHadCr ? 1 : 0) + (lastLineHadLf ? 1 : 0);
+        char[] merged = new char[count + terminator + bufferEnd - bufferPos];
+        System.arraycopy(line, from, merged, 0, count);
+        if (lastLineHadCr) {
+            merged[count++] = '\r';
+        }
+        if (lastLineHadLf) {
+            merged[count++] = '\n';
+        }
+        System.arraycopy(buffer, bufferPos, merged, count, bufferEnd - bufferPos);
+        charsRead -= count;
+        buffer = merged;
+        bufferPos = 0;
+        bufferEnd = merged.length;
+    }
+
+    /**
+     * Appends the next line (without its terminator) to the line buffer.
+     *
+     * @return False if the stream was already exhausted.
+     */
+    private boolean readLine() throws IOException {
+        lastLineHadCr = false;
+        lastLineHadLf = false;
+        if (eof && bufferPos >= bufferEnd) {
+            return false;
+        }
+        boolean any = false;
+        while (true) {
+            if (bufferPos >= bufferEnd) {
+                if (!fill()) {
+                    if (any) {
+                        lineNumber++;
+                    }
+                    return any;
+                }
+            }
+            any = true;
+            int start = bufferPos;
+            while (bufferPos < bufferEnd) {
+                char c = buffer[bufferPos];
+                if (c == '\n' || c == '\r') {
+                    appendToLine(start, bufferPos);
+                    bufferPos++;
+                    charsRead++;
+                    lastLineHadCr = c == '\r';
+                    lastLineHadLf = c == '\n';
+                    if (c == '\r') {
+                        // Swallow the '\n' of a "\r\n" terminator, refilling if it is in the next chunk
+                        if (bufferPos >= bufferEnd) {
+                            fill();
+                        }
+                        if (bufferPos < bufferEnd && buffer[bufferPos] == '\n') {
+                            bufferPos++;
+                            charsRead++;
+                            lastLineHadLf = true;
+                        }
+                    }
+                    lineNumber++;
+                    return true;
+                }
+                bufferPos++;
+                charsRead++;
+            }
+            appendToLine(start, bufferPos);
+        }
+    }
+
+    private boolean fill() throws IOException {
+        if (eof) {
+            return false;
+        }
+        if (buffer.length != BUFFER_SIZE) {
+            buffer = new char[BUFFER_SIZE];
+        }
+        int n = in.read(buffer, 0, buffer.length);
+        if (n <= 0) {
+            eof = true;
+            bufferPos = bufferEnd = 0;
+            return false;
+        }
+        bufferPos = 0;
+        bufferEnd = n;
+        return true;
+    }
+
+    private void appendToLine(int from, int to) {
+        int count = to - from;
+        if (count == 0) {
+            return;
+        }
+        ensureLineCapacity(count);
+        System.arraycopy(buffer, from, line, lineLength, count);
+        lineLength += count;
+    }
+
+    private void appendToLine(char c) {
+        ensureLineCapacity(1);
+        line[lineLength++] = c;
+    }
+
+    private void ensureLineCapacity(int count) {
+        if (lineLength + count > line.length) {
+            char[] grown = new char[Math.max(line.length * 2, lineLength + count)];
+            System.arraycopy(line, 0, grown, 0, lineLength);
+            line = grown;
+        }
+    }
+
+    /**
+     * Parses one row of CSV data into a Subject object.
+     * Behaves like the original split-based parser for unquoted fields: they are trimmed and empty
+     * trailing fields are ignored. Quoted fields are taken exactly as written. The name and every task
+     * must not be empty or hold control characters.
+     *
+     * @param chars The characters holding the row.
+     * @param from The index of the first character of the row.
+     * @param to The index after the last character of the row.
+     * @return A Subject object created from the row.
+     * @throws IllegalArgumentException If the row is invalid.
+     */
+    static Subject parseLine(char[] chars, int from, int to) {
+        // Trim the row, then ignore trailing empty fields as String.split does
+        int end = to;
+        while (end > from && chars[end - 1] <= ' ') {
+            end--;
+        }
+        while (from < end && chars[from] <= ' ') {
+            from++;
+        }
+        while (end > from && chars[end - 1] == ',') {
+            end--;
+        }
+
+        // Name
+        int comma = fieldEnd(chars, from, end);
+        if (comma == end) {
+            throw new IllegalArgumentException("Invalid data format");
+        }
+        String name = field(chars, from, comma);
+        if (name == null) {
+            throw new IllegalArgumentException("Invalid name value");
+        }
+
+        // Time
+        int timeStart = comma + 1;
+        int timeEnd = fieldEnd(chars, timeStart, end);
+        long time = parseTime(chars, timeStart, timeEnd);
+
+        // Tasks
+        ArrayList<String> tasks = null;
+        int pos = timeEnd + 1;
+        while (pos <= end && timeEnd < end) {
+            int next = fieldEnd(chars, pos, end);
+            String task = field(chars, pos, next);
+            if (task == null) {
+                throw new IllegalArgumentException("Invalid task value");
+            }
+            if (tasks == null) {
+                tasks = new ArrayList<>();
+            }
+            tasks.add(task);
+            pos = next + 1;
+        }
+
+        if (tasks == null) {
+            return new Subject(name, time);
+        } else {
+            return new Subject(name, time, tasks);
+        }
+    }
+
+    /**
+     * Splits one row into its fields, unquoting quoted fields. Unlike parseLine, nothing is trimmed.
+     * Used for the journal, whose lines are written with the same quoting.
+     *
+     * @param record The row, without its terminator.
+     * @return The fields.
+     * @throws IllegalArgumentException If a field is quoted incorrectly.
+     */
+    public static List<String> splitFields(String record) {
+        char[] chars = record.toCharArray();
+        List<String> fields = new ArrayList<>();
+        int pos = 0;
+        while (true) {
+            int next = fieldEnd(chars, pos, chars.length);
+            fields.add(unquote(chars, pos, next));
+            if (next == chars.length) {
+                return fields;
+            }
+            pos = next + 1;
+        }
+    }
+
+    /**
+     * Returns true if a quoted field is still open at the end of the given characters. Escaped quotes
+     * come in pairs, so counting quotes is enough.
+     *
+     * @param chars The characters holding the row so far.
+     * @param from The index of the first character.
+     * @param to The index after the last character.
+     * @return True if the row continues on the next line.
+     */
+    static boolean hasOpenQuote(char[] chars, int from, int to) {
+        boolean open = false;
+        for (int i = from; i < to; i++) {
+            if (chars[i] == '"') {
+                open = !open;
+            }
+        }
+        return open;
+    }
+
+    /**
+     * Reads the version from a header row: the number after "format=" in any of its fields, or 1 if
+     * there is none.
+     */
+    private static int parseVersion(char[] chars, int from, int to) {
+        int pos = from;
+        while (pos < to) {
+            int next = fieldEnd(chars, pos, to);
+            String field = new String(chars, pos, next - pos).trim();
+            if (field.startsWith(VERSION_FIELD)) {
+                try {
+                    return Integer.parseInt(field.substring(VERSION_FIELD.length()));
+                } catch (NumberFormatException e) {
+                    return Integer.MAX_VALUE;
+                }
+            }
+            pos = next + 1;
+        }
+        return 1;
+    }
+
+    /**
+     * Trims an unquoted field or unquotes a quoted one, only allocating a String once it is known to be valid.
+     *
+     * @return The field, or null if it is empty or holds a control character.
+     * @throws IllegalArgumentException If the field is quoted incorrectly.
+     */
+    private static String field(char[] chars, int from, int to) {
+        while (from < to && chars[from] <= ' ') {
+            from++;
+        }
+        while (to > from && chars[to - 1] <= ' ') {
+            to--;
+        }
+        if (from == to) {
+            return null;
+        }
+        for (int i = from; i < to; i++) {
+            if (Character.isISOControl(chars[i])) {
+                return null;
+            }
+        }
+        String field = unquote(chars, from, to);
+        return field.isEmpty() ? null : field;
+    }
+
+    /**
+     * Returns the text of a field exactly as written, with its quotes removed and escaped quotes
+     * ("") unescaped if it is quoted.
+     *
+     * @throws IllegalArgumentException If the field is quoted incorrectly.
+     */
+    private static String unquote(char[] chars, int from, int to) {
+        if (from == to || chars[from] != '"') {
+            if (indexOf(chars, '"', from, to) >= 0) {
+                throw new IllegalArgumentException("Invalid quoting");
+            }
+            return new String(chars, from, to - from);
+        }
+        if (to - from < 2 || chars[to - 1] != '"') {
+            throw new IllegalArgumentException("Invalid quoting");
+        }
+        from++;
+        to--;
+        int quote = indexOf(chars, '"', from, to);
+        if (quote < 0) {
+            return new String(chars, from, to - from);
+        }
+        StringBuilder text = new StringBuilder(to - from);
+        while (quote >= 0) {
+            if (quote + 1 >= to || chars[quote + 1] != '"') {
+                throw new IllegalArgumentException("Invalid quoting");
+            }
+            text.append(chars, from, quote + 1 - from);
+            from = quote + 2;
+            quote = indexOf(chars, '"', from, to);
+        }
+        return text.append(chars, from, to - from).toString();
+    }
+
+    /**
+     * Returns the index of the comma that ends the field starting at from, or to if it is the last field.
+     * Commas inside quotes do not end a field.
+     */
+    private static int fieldEnd(char[] chars, int from, int to) {
+        boolean quoted = false;
+        for (int i = from; i < to; i++) {
+            char c = chars[i];
+            if (c == '"') {
+                quoted = !quoted;
+            } else if (c == ',' && !quoted) {
+                return i;
+            }
+        }
+        return to;
+    }
+
+    private static long parseTime(char[] chars, int from, int to) {
+        while (from < to && chars[from] <= ' ') {
+            from++;
+        }
+        while (to > from && chars[to - 1] <= ' ') {
+            to--;
+        }
+        if (from == to) {
+            throw new IllegalArgumentException("Invalid time value");
+        }
+        boolean negative = false;
+        int i = from;
+        if (chars[i] == '-' || chars[i] == '+') {
+            negative = chars[i] == '-';
+            i++;
+            if (i == to) {
+                throw new IllegalArgumentException("Invalid time value");
+            }
+        }
+        // Accumulate negatively so Long.MIN_VALUE parses, like Long.parseLong
+        long result = 0;
+        long limit = negative ? Long.MIN_VALUE : -Long.MAX_VALUE;
+        for (; i < to; i++) {
+            int digit = chars[i] - '0';
+            if (digit < 0 || digit > 9 || result < limit / 10) {
+                throw new IllegalArgumentException("Invalid time value");
+            }
+            result *= 10;
+            if (result < limit + digit) {
+                throw new IllegalArgumentException("Invalid time value");
+            }
+            result -= digit;
+        }
+        return negative ? result : -result;
+    }
+
+    private static int indexOf(char[] chars, char c, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (chars[i] == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,112 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * SubjectCsvWriter writes subjects in the format read by SubjectCsvReader, starting with the header
+ * row that names the format version. A field is quoted only if it needs to be: when it contains a
+ * comma, a double quote or a line break, or begins or ends with whitespace. Most fields need no
+ * quoting and are written straight through after one scan.
+ */
+public class SubjectCsvWriter implements Closeable {
+    private final Writer out;
+
+    /**
+     * Creates a writer and writes the header row.
+     *
+     * @param out The stream to write to. It should be buffered.
+     * @throws IOException If the header could not be written.
+     */
+    public SubjectCsvWriter(Writer out) throws IOException {
+        this.out = out;
+        out.write(SubjectCsvReader.HEADER);
+        out.write('\n');
+    }
+
+    /**
+     * Writes one subject as a row.
+     *
+     * @param subject The subject to write.
+     * @throws IOException If the row could not be written.
+     */
+    public void write(Subject subject) throws IOException {
+        writeField(subject.getName());
+        out.write(',');
+        out.write(Long.toString(subject.getTime()));
+        for (String task : subject.getTasks()) {
+            out.write(',');
+            writeField(task);
+        }
+        out.write('\n');
+    }
+
+    /**
+     * Writes everything buffered so far to the underlying stream.
+     *
+     * @throws IOException If the stream could not be flushed.
+     */
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+
+    /**
+     * Appends a field to a row being built, quoting it if it needs to be. Used for journal lines.
+     *
+     * @param text The row so far.
+     * @param field The field text.
+     */
+    public static void appendField(StringBuilder text, String field) {
+        if (!needsQuotes(field)) {
+            text.append(field);
+            return;
+        }
+        text.append('"');
+        for (int i = 0; i < field.length(); i++) {
+            char c = field.charAt(i);
+            if (c == '"') {
+                text.append('"');
+            }
+            text.append(c);
+        }
+        text.append('"');
+    }
+
+    private void writeField(String field) throws IOException {
+        if (!needsQuotes(field)) {
+            out.write(field);
+            return;
+        }
+        out.write('"');
+        int from = 0;
+        int quote;
+        while ((quote = field.indexOf('"', from)) >= 0) {
+            out.write(field, from, quote + 1 - from);
+            out.write('"');
+            from = quote + 1;
+        }
+        out.write(field, from, field.length() - from);
+        out.write('"');
+    }
+
+    /**
+     * Returns true if the field would not be read back as written without quotes.
+     */
+    private static boolean needsQuotes(String field) {
+        int length = field.length();
+        if (length == 0 || field.charAt(0) <= ' ' || field.charAt(length - 1) <= ' ') {
+            return true;
+        }
+        for (int i = 0; i < length; i++) {
+            char c = field.charAt(i);
+            if (c == ',' || c == '"' || c == '\n' || c == '\r') {
+                return true;
+            }
+        }
+        return false;
+    }
+}
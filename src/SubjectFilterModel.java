@@ -0,0 +1,233 @@
+import java.util.Arrays;
+import javax.swing.AbstractListModel;
+import javax.swing.event.ListDataEvent;
+import javax.swing.event.ListDataListener;
+
+/**
+ * SubjectFilterModel is a filtered view of a SubjectListModel that the JList displays.
+ *
+ * With an empty query every row is passed through without copying. Otherwise the view holds the rows
+ * whose name or any task contains the query, ignoring case, in model order. Typing more characters only
+ * re-checks the rows that already matched, and deleting some only checks the rows that did not. Rows
+ * added, removed or changed in the underlying model are handled incrementally: only those rows are
+ * checked and only their place in the view is updated, so the full list is only scanned when the query
+ * is changed in some other way.
+ */
+public class SubjectFilterModel extends AbstractListModel<Subject> implements ListDataListener {
+    private static final long serialVersionUID = 1L;
+
+    private final SubjectListModel model;
+    private String query = "";
+    private int[] matches = new int[0];
+    private int matchCount = 0;
+
+    /**
+     * Creates an unfiltered view of the given model.
+     *
+     * @param model The model to filter.
+     */
+    public SubjectFilterModel(SubjectListModel model) {
+        this.model = model;
+        model.addListDataListener(this);
+    }
+
+    /**
+     * Changes the filter query and updates the view.
+     *
+     * @param newQuery The text to search for in subject names and tasks; blank shows every subject.
+     */
+    public void setQuery(String newQuery) {
+        newQuery = newQuery.trim();
+        if (newQuery.equals(query)) {
+            return;
+        }
+        int oldSize = getSize();
+        String oldQuery = query;
+        query = newQuery;
+
+        if (!query.isEmpty()) {
+            if (!oldQuery.isEmpty() && query.regionMatches(true, 0, oldQuery, 0, oldQuery.length())) {
+                // The query was extended, so only the current matches can still match
+                int kept = 0;
+                for (int i = 0; i < matchCount; i++) {
+                    if (matches(model.getElementAt(matches[i]))) {
+                        matches[kept++] = matches[i];
+                    }
+                }
+                matchCount = kept;
+            } else if (!oldQuery.isEmpty() && containsIgnoreCase(oldQuery, query)) {
+                // The query was shortened, so the current matches still match and only the other rows are checked
+                int[] known = matches;
+                int knownCount = matchCount;
+                matches = new int[Math.max(16, knownCount)];
+                matchCount = 0;
+                int next = 0;
+                for (int row = 0; row < model.size(); row++) {
+                    if (next < knownCount && known[next] == row) {
+                        append(row);
+                        next++;
+                    } else if (matches(model.getElementAt(row))) {
+                        append(row);
+                    }
+                }
+            } else {
+                matchCount = 0;
+                for (int row = 0; row < model.size(); row++) {
+                    if (matches(model.getElementAt(row))) {
+                        append(row);
+                    }
+                }
+            }
+        }
+
+        if (oldSize > 0) {
+            fireIntervalRemoved(this, 0, oldSize - 1);
+        }
+        if (getSize() > 0) {
+            fireIntervalAdded(this, 0, getSize() - 1);
+        }
+    }
+
+    public boolean isFiltered() {
+        return !query.isEmpty();
+    }
+
+    @Override
+    public int getSize() {
+        return isFiltered() ? matchCount : model.getSize();
+    }
+
+    @Override
+    public Subject getElementAt(int index) {
+        return model.getElementAt(isFiltered() ? matches[index] : index);
+    }
+
+    @Override
+    public void intervalAdded(ListDataEvent e) {
+        if (!isFiltered()) {
+            fireIntervalAdded(this, e.getIndex0(), e.getIndex1());
+            return;
+        }
+        // The rows after the new ones move down, and the new ones are then checked like changed rows
+        for (int i = lowerBound(e.getIndex0()); i < matchCount; i++) {
+            matches[i] += e.getIndex1() - e.getIndex0() + 1;
+        }
+        rematch(e.getIndex0(), e.getIndex1());
+    }
+
+    @Override
+    public void intervalRemoved(ListDataEvent e) {
+        if (!isFiltered()) {
+            fireIntervalRemoved(this, e.getIndex0(), e.getIndex1());
+            return;
+        }
+        int removedCount = e.getIndex1() - e.getIndex0() + 1;
+        int kept = 0;
+        int firstRemoved = -1;
+        int lastRemoved = -1;
+        for (int i = 0; i < matchCount; i++) {
+            int row = matches[i];
+            if (row < e.getIndex0()) {
+                matches[kept++] = row;
+            } else if (row > e.getIndex1()) {
+                matches[kept++] = row - removedCount;
+            } else {
+                if (firstRemoved < 0) {
+                    firstRemoved = i;
+                }
+                lastRemoved = i;
+            }
+        }
+        matchCount = kept;
+        if (firstRemoved >= 0) {
+            fireIntervalRemoved(this, firstRemoved, lastRemoved);
+        }
+    }
+
+    @Override
+    public void contentsChanged(ListDataEvent e) {
+        if (!isFiltered()) {
+            fireContentsChanged(this, e.getIndex0(), e.getIndex1());
+            return;
+        }
+        rematch(e.getIndex0(), e.getIndex1());
+    }
+
+    /**
+     * Checks the model rows from..to again and replaces their matches in the view with the result. The
+     * listeners are told that those view rows changed if the same rows still match, otherwise that the
+     * old ones were removed and the new ones added.
+     */
+    private void rematch(int from, int to) {
+        int start = lowerBound(from);
+        int end = lowerBound(to + 1);
+        int[] found = new int[Math.min(16, to - from + 1)];
+        int foundCount = 0;
+        for (int row = from; row <= to; row++) {
+            if (matches(model.getElementAt(row))) {
+                if (foundCount == found.length) {
+                    found = Arrays.copyOf(found, found.length * 2);
+                }
+                found[foundCount++] = row;
+            }
+        }
+        int oldCount = end - start;
+        boolean same = Arrays.equals(matches, start, end, found, 0, foundCount);
+        if (matchCount - oldCount + foundCount > matches.length) {
+            matches = Arrays.copyOf(matches, Math.max(16, Math.max(matches.length * 2, matchCount - oldCount + foundCount)));
+        }
+        System.arraycopy(matches, end, matches, start + foundCount, matchCount - end);
+        System.arraycopy(found, 0, matches, start, foundCount);
+        matchCount += foundCount - oldCount;
+
+        if (same) {
+            if (foundCount > 0) {
+                fireContentsChanged(this, start, start + foundCount - 1);
+            }
+            return;
+        }
+        if (oldCount > 0) {
+            fireIntervalRemoved(this, start, start + oldCount - 1);
+        }
+        if (foundCount > 0) {
+            fireIntervalAdded(this, start, start + foundCount - 1);
+        }
+    }
+
+    /**
+     * Returns the position in the view of the first match at or after the given model row.
+     */
+    private int lowerBound(int row) {
+        int i = Arrays.binarySearch(matches, 0, matchCount, row);
+        return i >= 0 ? i : -i - 1;
+    }
+
+    private void append(int row) {
+        if (matchCount == matches.length) {
+            matches = Arrays.copyOf(matches, Math.max(16, matches.length * 2));
+        }
+        matches[matchCount++] = row;
+    }
+
+    private boolean matches(Subject subject) {
+        if (containsIgnoreCase(subject.getName(), query)) {
+            return true;
+        }
+        for (String task : subject.getTasks()) {
+            if (containsIgnoreCase(task, query)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean containsIgnoreCase(String text, String part) {
+        int last = text.length() - part.length();
+        for (int i = 0; i <= last; i++) {
+            if (text.regionMatches(true, i, part, 0, part.length())) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -3,20 +3,42 @@ import javax.swing.*;
 
 /**
  * SubjectListCellRenderer is the same as the DefaultListCellRenderer except its text also includes the index in the JList of the value being rendered in the cell.
+ * Subjects that are being timed also show their running time.
  */
 public class SubjectListCellRenderer extends DefaultListCellRenderer {
+    private static final LatencyHistogram RENDER_TIME = Metrics.timer("render.cell");
+
+    private final TimerEngine timerEngine;
+
+    // Reused for every cell; rendering only happens on the event dispatch thread
+    private final StringBuilder text = new StringBuilder(128);
+
+    public SubjectListCellRenderer(TimerEngine timerEngine) {
+        this.timerEngine = timerEngine;
+    }
 
     @Override
     public Component getListCellRendererComponent(JList<?> list, Object value, int index, boolean isSelected, boolean cellHasFocus) {
+        long start = Metrics.start();
+
         // Call the superclass method to ensure default rendering behavior
         super.getListCellRendererComponent(list, value, index, isSelected, cellHasFocus);
 
         // Cast the value to Subject
         Subject subject = (Subject) value;
 
-        // Set the text to include the index and the subject's details
-        setText((index + 1) + ". " + subject.toString());
+        // Set the text to include the index and the subject's details (cached by Subject until it changes)
+        long elapsed = timerEngine.getElapsedMillis(subject);
+        if (elapsed < 0) {
+            setText((index + 1) + ". " + subject.toString());
+        } else {
+            text.setLength(0);
+            text.append(index + 1).append(". ").append(subject.toString()).append("  [Timing ");
+            TimeFormatter.formatClock(elapsed, text).append(']');
+            setText(text.toString());
+        }
 
+        RENDER_TIME.recordSince(start);
         return this;
     }
 }
@@ -0,0 +1,458 @@
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import javax.swing.AbstractListModel;
+import javax.swing.SwingUtilities;
+
+/**
+ * SubjectListModel is the list model behind the subject JList.
+ *
+ * Rows either hold a Subject directly (subjects added in memory) or refer to a row of a SubjectSource,
+ * such as a memory-mapped BinarySnapshot. Source rows are only built into Subjects when they are
+ * requested, which for a JList with fixed cell sizes means only the rows in the viewport. Built rows
+ * are held weakly, plus a small ring of recently used rows, so memory stays flat while scrolling.
+ * A source row that is changed through addTime/addTask/removeTask is pinned in memory from then on.
+ *
+ * The model also keeps a case-insensitive index from subject name to row, built on first use and
+ * maintained on add and remove, so duplicate checks and lookups by name are O(1).
+ * SubjectModelListeners are told about added and removed subjects and about changes to any subject.
+ * It is the Swing-backed SubjectRepository; headless code uses InMemorySubjectRepository instead.
+ * Like any Swing model it is only used on the Event Dispatch Thread, except that its subjects may be
+ * changed from other threads: those changes are passed on to the listeners on the Event Dispatch Thread.
+ */
+public class SubjectListModel extends AbstractListModel<Subject> implements SubjectRepository, Subject.ChangeListener {
+    private static final long serialVersionUID = 1L;
+    private static final int RECENT_ROWS = 512;
+    // More runs of removed rows than this are shown as one refresh of the list
+    private static final int MAX_REMOVE_EVENTS = 64;
+
+    private SubjectSource source;
+    // Each slot is a Subject, a WeakReference to a built source row, or null for an unbuilt source row
+    private Object[] slots = new Object[16];
+    private int[] sourceRows = new int[16];
+    private int size = 0;
+
+    private final Subject[] recent = new Subject[RECENT_ROWS];
+    private int recentPos = 0;
+    private final Set<Subject> pinned = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    // Normalized name -> row. Rows at or after staleFrom may have shifted since they were indexed.
+    private Map<String, Integer> nameIndex;
+    private int staleFrom = Integer.MAX_VALUE;
+
+    private final List<SubjectModelListener> modelListeners = new ArrayList<>();
+
+    /**
+     * Replaces the contents of the model with the rows of a source. No subjects are built.
+     *
+     * @param source The source to show.
+     */
+    public void setSource(SubjectSource source) {
+        clear();
+        this.source = source;
+        int count = source.size();
+        ensureCapacity(count);
+        for (int i = 0; i < count; i++) {
+            sourceRows[i] = i;
+        }
+        size = count;
+        if (count > 0) {
+            fireIntervalAdded(this, 0, count - 1);
+            fireRowsAdded(0, count - 1);
+        }
+    }
+
+    public void addSubjectModelListener(SubjectModelListener listener) {
+        modelListeners.add(listener);
+    }
+
+    public void removeSubjectModelListener(SubjectModelListener listener) {
+        modelListeners.remove(listener);
+    }
+
+    @Override
+    public int getSize() {
+        return size;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override
+    public Subject getElementAt(int index) {
+        Subject subject = builtAt(index);
+        if (subject == null) {
+            subject = source.get(sourceRows[index]);
+            subject.setChangeListener(this);
+            slots[index] = new WeakReference<>(subject);
+        }
+        recent[recentPos] = subject;
+        recentPos = (recentPos + 1) % RECENT_ROWS;
+        return subject;
+    }
+
+    @Override
+    public Subject get(int index) {
+        return getElementAt(index);
+    }
+
+    @Override
+    public void add(Subject subject) {
+        addElement(subject);
+    }
+
+    @Override
+    public boolean remove(Subject subject) {
+        return removeElement(subject);
+    }
+
+    /**
+     * Appends a subject to the end of the list.
+     *
+     * @param subject The subject to add.
+     */
+    public void addElement(Subject subject) {
+        ensureCapacity(size + 1);
+        slots[size] = subject;
+        sourceRows[size] = -1;
+        subject.setChangeListener(this);
+        if (nameIndex != null) {
+            nameIndex.put(SubjectRepository.normalize(subject.getName()), size);
+        }
+        size++;
+        fireIntervalAdded(this, size - 1, size - 1);
+        fireRowsAdded(size - 1, size - 1);
+    }
+
+    /**
+     * Appends subjects to the end of the list with a single model event.
+     *
+     * @param subjects The subjects to add.
+     */
+    public void addAll(Collection<? extends Subject> subjects) {
+        if (subjects.isEmpty()) {
+            return;
+        }
+        ensureCapacity(size + subjects.size());
+        int first = size;
+        for (Subject subject : subjects) {
+            slots[size] = subject;
+            sourceRows[size] = -1;
+            subject.setChangeListener(this);
+            if (nameIndex != null) {
+                nameIndex.put(SubjectRepository.normalize(subject.getName()), size);
+            }
+            size++;
+        }
+        fireIntervalAdded(this, first, size - 1);
+        fireRowsAdded(first, size - 1);
+    }
+
+    /**
+     * Removes the subject at the given index.
+     *
+     * @param index The index of the subject to remove.
+     * @return The removed subject.
+     */
+    public Subject remove(int index) {
+        Subject subject = getElementAt(index);
+        pinned.remove(subject);
+        if (nameIndex != null) {
+            nameIndex.remove(SubjectRepository.normalize(subject.getName()));
+            staleFrom = Math.min(staleFrom, index);
+        }
+        System.arraycopy(slots, index + 1, slots, index, size - index - 1);
+        System.arraycopy(sourceRows, index + 1, sourceRows, index, size - index - 1);
+        size--;
+        slots[size] = null;
+        subject.setChangeListener(null);
+        fireIntervalRemoved(this, index, index);
+        for (SubjectModelListener listener : modelListeners) {
+            listener.subjectRemoved(subject);
+        }
+        return subject;
+    }
+
+    /**
+     * Removes the given subjects that are in the list, compacting the rows in one pass. Each run of
+     * removed rows is one intervalRemoved event, from the last run to the first so the indexes of each
+     * event are still valid; if the rows are too scattered for that, the list is refreshed with one
+     * event instead, which clears the selection.
+     *
+     * @param subjects The subjects to remove.
+     * @return The number of subjects removed.
+     */
+    @Override
+    public int removeAll(Collection<? extends Subject> subjects) {
+        Set<Subject> remove = Collections.newSetFromMap(new IdentityHashMap<>());
+        remove.addAll(subjects);
+        List<Subject> gone = new ArrayList<>();
+        // Start and end of each run of removed rows, in the old indexes
+        List<int[]> runs = new ArrayList<>();
+        int oldSize = size;
+        int kept = 0;
+        for (int i = 0; i < oldSize; i++) {
+            Subject subject = builtAt(i);
+            if (subject != null && remove.contains(subject)) {
+                gone.add(subject);
+                pinned.remove(subject);
+                if (nameIndex != null) {
+                    nameIndex.remove(SubjectRepository.normalize(subject.getName()));
+                    staleFrom = Math.min(staleFrom, kept);
+                }
+                int[] last = runs.isEmpty() ? null : runs.get(runs.size() - 1);
+                if (last != null && last[1] == i - 1) {
+                    last[1] = i;
+                } else {
+                    runs.add(new int[] {i, i});
+                }
+            } else {
+                slots[kept] = slots[i];
+                sourceRows[kept] = sourceRows[i];
+                kept++;
+            }
+        }
+        if (gone.isEmpty()) {
+            return 0;
+        }
+        Arrays.fill(slots, kept, oldSize, null);
+        size = kept;
+        if (runs.size() <= MAX_REMOVE_EVENTS) {
+            for (int r = runs.size() - 1; r >= 0; r--) {
+                fireIntervalRemoved(this, runs.get(r)[0], runs.get(r)[1]);
+            }
+        } else {
+            fireIntervalRemoved(this, 0, oldSize - 1);
+            if (size > 0) {
+                fireIntervalAdded(this, 0, size - 1);
+            }
+        }
+        for (Subject subject : gone) {
+            subject.setChangeListener(null);
+            for (SubjectModelListener listener : modelListeners) {
+                listener.subjectRemoved(subject);
+            }
+        }
+        return gone.size();
+    }
+
+    /**
+     * Removes the given subject if it is in the list.
+     *
+     * @param subject The subject to remove.
+     * @return True if the subject was removed.
+     */
+    public boolean removeElement(Subject subject) {
+        int index = indexOfName(subject.getName());
+        if (index < 0 || getElementAt(index) != subject) {
+            index = indexOf(subject);
+        }
+        if (index < 0) {
+            return false;
+        }
+        remove(index);
+        return true;
+    }
+
+    /**
+     * Returns the index of the given subject instance without building any source rows.
+     *
+     * @param subject The subject to look for.
+     * @return The index of the subject, or -1 if it is not in the list.
+     */
+    public int indexOf(Subject subject) {
+        for (int i = 0; i < size; i++) {
+            Object slot = slots[i];
+            if (slot == subject || (slot instanceof WeakReference && ((WeakReference<?>) slot).get() == subject)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns true if a subject with the given name, ignoring case, is in the list.
+     *
+     * @param name The name to look for.
+     * @return True if the name is taken.
+     */
+    public boolean containsName(String name) {
+        return index().containsKey(SubjectRepository.normalize(name));
+    }
+
+    /**
+     * Returns the row of the subject with the given name, ignoring case.
+     *
+     * @param name The name to look for.
+     * @return The index of the subject, or -1 if there is none.
+     */
+    public int indexOfName(String name) {
+        Integer row = index().get(SubjectRepository.normalize(name));
+        if (row == null) {
+            return -1;
+        }
+        if (row >= staleFrom) {
+            reindexFrom(staleFrom);
+            row = nameIndex.get(SubjectRepository.normalize(name));
+        }
+        return row;
+    }
+
+    /**
+     * Returns the subject with the given name, ignoring case.
+     *
+     * @param name The name to look for.
+     * @return The subject, or null if there is none.
+     */
+    public Subject findByName(String name) {
+        int index = indexOfName(name);
+        return index < 0 ? null : getElementAt(index);
+    }
+
+    /**
+     * Returns the name of the subject at the given row without building a source row.
+     *
+     * @param index The index of the subject.
+     * @return The subject's name.
+     */
+    public String nameAt(int index) {
+        Subject subject = builtAt(index);
+        return subject != null ? subject.getName() : source.nameAt(sourceRows[index]);
+    }
+
+    /**
+     * Returns the time of the subject at the given row without building a source row.
+     *
+     * @param index The index of the subject.
+     * @return The subject's time in milliseconds.
+     */
+    public long timeAt(int index) {
+        Subject subject = builtAt(index);
+        return subject != null ? subject.getTime() : source.timeAt(sourceRows[index]);
+    }
+
+    /**
+     * Returns the number of tasks of the subject at the given row without building a source row.
+     *
+     * @param index The index of the subject.
+     * @return The subject's task count.
+     */
+    public int taskCountAt(int index) {
+        Subject subject = builtAt(index);
+        return subject != null ? subject.getTaskCount() : source.taskCountAt(sourceRows[index]);
+    }
+
+    /**
+     * Removes all subjects and detaches the source.
+     */
+    public void clear() {
+        int oldSize = size;
+        Arrays.fill(slots, 0, size, null);
+        Arrays.fill(recent, null);
+        pinned.clear();
+        nameIndex = null;
+        staleFrom = Integer.MAX_VALUE;
+        size = 0;
+        source = null;
+        if (oldSize > 0) {
+            fireIntervalRemoved(this, 0, oldSize - 1);
+        }
+        for (SubjectModelListener listener : modelListeners) {
+            listener.cleared();
+        }
+    }
+
+    /**
+     * Builds every row and returns the subjects in list order, e.g. for writing a snapshot.
+     *
+     * @return A new list containing all subjects.
+     */
+    public List<Subject> toList() {
+        List<Subject> subjects = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            subjects.add(getElementAt(i));
+        }
+        return subjects;
+    }
+
+    /**
+     * Pins a changed source row so its changes are not lost when the row would otherwise be released,
+     * and passes the change on to the model listeners.
+     */
+    @Override
+    public void subjectChanged(Subject subject) {
+        if (!SwingUtilities.isEventDispatchThread()) {
+            // Listeners read the subject's latest state, so a change that arrives late is still counted right
+            SwingUtilities.invokeLater(() -> {
+                if (findByName(subject.getName()) == subject) {
+                    subjectChanged(subject);
+                }
+            });
+            return;
+        }
+        pinned.add(subject);
+        for (SubjectModelListener listener : modelListeners) {
+            listener.subjectChanged(subject);
+        }
+    }
+
+    /**
+     * Returns the subject at the given row if it is already built, without building it.
+     */
+    @SuppressWarnings("unchecked")
+    private Subject builtAt(int index) {
+        checkIndex(index);
+        Object slot = slots[index];
+        if (slot instanceof Subject) {
+            return (Subject) slot;
+        }
+        return slot == null ? null : ((WeakReference<Subject>) slot).get();
+    }
+
+    private void fireRowsAdded(int from, int to) {
+        for (SubjectModelListener listener : modelListeners) {
+            listener.rowsAdded(from, to);
+        }
+    }
+
+    private Map<String, Integer> index() {
+        if (nameIndex == null) {
+            nameIndex = new HashMap<>(Math.max(16, size * 4 / 3 + 1));
+            reindexFrom(0);
+        }
+        return nameIndex;
+    }
+
+    private void reindexFrom(int from) {
+        for (int i = from; i < size; i++) {
+            nameIndex.put(SubjectRepository.normalize(nameAt(i)), i);
+        }
+        staleFrom = Integer.MAX_VALUE;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > slots.length) {
+            int newCapacity = Math.max(capacity, slots.length * 2);
+            slots = Arrays.copyOf(slots, newCapacity);
+            sourceRows = Arrays.copyOf(sourceRows, newCapacity);
+        }
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new ArrayIndexOutOfBoundsException(index + " >= " + size);
+        }
+    }
+}
@@ -0,0 +1,175 @@
+import java.awt.Component;
+import java.awt.Dimension;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import javax.swing.*;
+
+/**
+ * SubjectLoadWorker loads subjects from the tracker's storage on a background thread.
+ * Parsed subjects are handed to the Event Dispatch Thread in batches and appended to the list model,
+ * so the window stays responsive and the list fills in progressively. Invalid lines are collected
+ * and reported in a single summary dialog once loading is finished. Before reading, the store is
+ * recovered from any interrupted save, and its journal is replayed once the snapshot is loaded.
+ * Timing sessions interrupted by a crash are then recovered from the timer checkpoint.
+ * A binary snapshot, a valid StateCache of a CSV file or a database is only opened; the list model
+ * builds its subjects lazily.
+ */
+public class SubjectLoadWorker extends SwingWorker<List<String>, Subject> {
+    private static final int MAX_REPORTED_ERRORS = 20;
+
+    private static final LatencyHistogram READ_TIME = Metrics.timer("load.read");
+    private static final LatencyHistogram TOTAL_TIME = Metrics.timer("load.total");
+    private static final Metrics.Counter ROWS = Metrics.counter("load.rows");
+    private static final Metrics.Counter ERRORS = Metrics.counter("load.errors");
+
+    private final StudyTracker tracker;
+    private final SubjectStorage store;
+    private final SessionLog sessionLog;
+    private final String location;
+    private final SubjectListModel listModel;
+    private final JProgressBar progressBar;
+    private final Component parent;
+    private int errorCount = 0;
+    private List<SubjectChange> journal;
+    private SubjectSource source;
+    private long startNanos;
+
+    /**
+     * Creates a worker that loads the tracker's data file into the list model.
+     *
+     * @param tracker The tracker whose store and session history are loaded.
+     * @param listModel The list model to append subjects to; the tracker's repository.
+     * @param progressBar The progress bar to update while loading, hidden when done.
+     * @param parent The component that owns the error summary dialog.
+     */
+    public SubjectLoadWorker(StudyTracker tracker, SubjectListModel listModel, JProgressBar progressBar, Component parent) {
+        this.tracker = tracker;
+        this.store = tracker.getStore();
+        this.sessionLog = tracker.getSessionLog();
+        this.location = store.getLocation();
+        this.listModel = listModel;
+        this.progressBar = progressBar;
+        this.parent = parent;
+        addPropertyChangeListener(e -> {
+            if ("progress".equals(e.getPropertyName())) {
+                progressBar.setValue((Integer) e.getNewValue());
+            }
+        });
+    }
+
+    /**
+     * Returns true if the subjects were opened as a source that builds them lazily, such as a binary
+     * snapshot, a StateCache or a database, rather than parsed. Only known once the worker is done.
+     *
+     * @return True if nothing was parsed.
+     */
+    public boolean isLazy() {
+        return source != null;
+    }
+
+    /**
+     * Reads the subjects, publishing them in batches, then reads the journal and session history.
+     *
+     * @return The messages for the invalid lines that were skipped, up to MAX_REPORTED_ERRORS.
+     */
+    @Override
+    protected List<String> doInBackground() throws IOException {
+        startNanos = Metrics.start();
+        store.recover();
+
+        List<String> errors = new ArrayList<>();
+        source = store.load(new SubjectStorage.Sink() {
+            @Override
+            public void subjects(List<Subject> batch) {
+                publish(batch.toArray(new Subject[0]));
+                ROWS.add(batch.size());
+            }
+
+            @Override
+            public void invalid(String message) {
+                // Remember the first errors and count the rest
+                if (++errorCount <= MAX_REPORTED_ERRORS) {
+                    errors.add(message);
+                }
+            }
+
+            @Override
+            public void progress(int percent) {
+                setProgress(percent);
+            }
+        }, true);
+        journal = store.readJournal();
+        sessionLog.load();
+        READ_TIME.recordSince(startNanos);
+        ERRORS.add(errorCount);
+        return errors;
+    }
+
+    /**
+     * Appends a batch of parsed subjects to the list model with a single model event.
+     */
+    @Override
+    protected void process(List<Subject> chunks) {
+        listModel.addAll(chunks);
+    }
+
+    /**
+     * Replays the journal, recovers interrupted sessions, hides the progress bar and reports any read
+     * failure or skipped lines in one dialog.
+     */
+    @Override
+    protected void done() {
+        progressBar.setVisible(false);
+        try {
+            List<String> errors = get();
+            // A file with skipped lines is not rewritten, so they are not lost
+            tracker.setInvalidLineCount(errorCount);
+            if (source != null) {
+                listModel.setSource(source);
+            }
+            SubjectStore.replay(journal, listModel);
+            TOTAL_TIME.recordSince(startNanos);
+            recoverTimers();
+            if (errorCount > 0) {
+                StringBuilder message = new StringBuilder();
+                message.append("Invalid data in ").append(location).append('\n');
+                message.append(errorCount).append(errorCount == 1 ? " line was" : " lines were").append(" skipped:\n\n");
+                for (String error : errors) {
+                    message.append(error).append('\n');
+                }
+                if (errorCount > errors.size()) {
+                    message.append("... and ").append(errorCount - errors.size()).append(" more\n");
+                }
+                JTextArea textArea = new JTextArea(message.toString());
+                textArea.setEditable(false);
+                JScrollPane scrollPane = new JScrollPane(textArea);
+                scrollPane.setPreferredSize(new Dimension(400, 200));
+                JOptionPane.showMessageDialog(parent, scrollPane, "Error", JOptionPane.ERROR_MESSAGE);
+            }
+        } catch (ExecutionException e) {
+            JOptionPane.showMessageDialog(parent, "Error reading file: " + e.getCause().getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Finishes the sessions that were being timed when the application stopped without stopping them.
+     */
+    private void recoverTimers() {
+        try {
+            List<TimerCheckpoint.Entry> recovered = tracker.recoverTimers();
+            if (!recovered.isEmpty()) {
+                StringBuilder message = new StringBuilder("Recovered timing sessions that were interrupted:\n\n");
+                for (TimerCheckpoint.Entry entry : recovered) {
+                    message.append(entry.getName()).append(": ").append(TimeFormatter.formatDuration(entry.getElapsedMillis())).append('\n');
+                }
+                JOptionPane.showMessageDialog(parent, message.toString(), "Timers Recovered", JOptionPane.INFORMATION_MESSAGE);
+            }
+        } catch (IOException e) {
+            JOptionPane.showMessageDialog(parent, "Error recovering timers: " + e.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+        }
+    }
+}
@@ -0,0 +1,34 @@
+/**
+ * SubjectModelListener is notified of changes to the subjects in a SubjectRepository.
+ * Unlike a ListDataListener it receives the removed subject itself and changes made to a subject's
+ * time or tasks, which is what components that keep derived state need.
+ */
+public interface SubjectModelListener {
+
+    /**
+     * Called after rows have been added.
+     *
+     * @param from The index of the first added row.
+     * @param to The index of the last added row.
+     */
+    void rowsAdded(int from, int to);
+
+    /**
+     * Called after a subject has been removed.
+     *
+     * @param subject The removed subject.
+     */
+    void subjectRemoved(Subject subject);
+
+    /**
+     * Called after a subject's time or tasks have changed.
+     *
+     * @param subject The changed subject.
+     */
+    void subjectChanged(Subject subject);
+
+    /**
+     * Called after all rows have been removed.
+     */
+    void cleared();
+}
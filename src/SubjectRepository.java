@@ -0,0 +1,128 @@
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * SubjectRepository is an ordered collection of subjects with unique names, ignoring case.
+ *
+ * It is the part of the list model that the core logic needs: persistence replays journals into it,
+ * StudyAnalytics follows it through SubjectModelListener events and StudyTracker edits it. Swing code
+ * uses SubjectListModel, which loads rows lazily and drives the JList; headless code such as
+ * StudyTrackerCli uses InMemorySubjectRepository, which needs no AWT at all.
+ */
+public interface SubjectRepository {
+
+    /**
+     * Returns the number of subjects.
+     *
+     * @return The subject count.
+     */
+    int size();
+
+    boolean isEmpty();
+
+    /**
+     * Returns the subject at the given position.
+     *
+     * @param index The index of the subject.
+     * @return The subject.
+     */
+    Subject get(int index);
+
+    /**
+     * Returns the name of the subject at the given position, without building it if it is loaded lazily.
+     *
+     * @param index The index of the subject.
+     * @return The subject's name.
+     */
+    String nameAt(int index);
+
+    /**
+     * Returns the time of the subject at the given position, without building it if it is loaded lazily.
+     *
+     * @param index The index of the subject.
+     * @return The subject's time in milliseconds.
+     */
+    long timeAt(int index);
+
+    /**
+     * Returns the task count of the subject at the given position, without building it if it is loaded lazily.
+     *
+     * @param index The index of the subject.
+     * @return The subject's task count.
+     */
+    int taskCountAt(int index);
+
+    /**
+     * Appends a subject. The caller is responsible for checking that its name is not taken.
+     *
+     * @param subject The subject to add.
+     */
+    void add(Subject subject);
+
+    /**
+     * Appends subjects with a single rowsAdded event.
+     *
+     * @param subjects The subjects to add.
+     */
+    void addAll(Collection<? extends Subject> subjects);
+
+    /**
+     * Removes the given subject if it is in the repository.
+     *
+     * @param subject The subject to remove.
+     * @return True if the subject was removed.
+     */
+    boolean remove(Subject subject);
+
+    /**
+     * Removes the given subjects that are in the repository in one pass, instead of shifting the rows
+     * after each one. Listeners are told about each removed subject.
+     *
+     * @param subjects The subjects to remove.
+     * @return The number of subjects removed.
+     */
+    int removeAll(Collection<? extends Subject> subjects);
+
+    /**
+     * Returns true if a subject with the given name, ignoring case, is in the repository.
+     *
+     * @param name The name to look for.
+     * @return True if the name is taken.
+     */
+    boolean containsName(String name);
+
+    /**
+     * Returns the subject with the given name, ignoring case.
+     *
+     * @param name The name to look for.
+     * @return The subject, or null if there is none.
+     */
+    Subject findByName(String name);
+
+    /**
+     * Returns every subject in order, e.g. for writing a snapshot.
+     *
+     * @return A new list containing all subjects.
+     */
+    List<Subject> toList();
+
+    /**
+     * Removes all subjects.
+     */
+    void clear();
+
+    void addSubjectModelListener(SubjectModelListener listener);
+
+    void removeSubjectModelListener(SubjectModelListener listener);
+
+    /**
+     * Normalizes a subject name for case-insensitive comparison.
+     *
+     * @param name The name to normalize.
+     * @return The normalized name.
+     */
+    static String normalize(String name) {
+        return name.toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,45 @@
+/**
+ * SubjectSource is a read-only, indexed store of subjects that can build any subject on demand.
+ * SubjectListModel uses it to materialize only the rows that are actually looked at.
+ */
+public interface SubjectSource {
+
+    /**
+     * Returns the number of subjects in the source.
+     *
+     * @return The subject count.
+     */
+    int size();
+
+    /**
+     * Returns the name of the subject at the given index without building the Subject.
+     *
+     * @param index The index of the subject.
+     * @return The subject's name.
+     */
+    String nameAt(int index);
+
+    /**
+     * Returns the time of the subject at the given index without building the Subject.
+     *
+     * @param index The index of the subject.
+     * @return The subject's time in milliseconds.
+     */
+    long timeAt(int index);
+
+    /**
+     * Returns the number of tasks of the subject at the given index without building the Subject.
+     *
+     * @param index The index of the subject.
+     * @return The subject's task count.
+     */
+    int taskCountAt(int index);
+
+    /**
+     * Builds the subject at the given index. Each call may return a new Subject instance.
+     *
+     * @param index The index of the subject.
+     * @return The subject.
+     */
+    Subject get(int index);
+}
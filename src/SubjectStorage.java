@@ -0,0 +1,173 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * SubjectStorage is where StudyTracker keeps its subjects between runs. Changes are recorded as they
+ * are made and written by flush(); what a write costs depends on the implementation.
+ *
+ * SubjectStore keeps a CSV or BinarySnapshot file plus a journal of changes. JdbcSubjectStore keeps
+ * the subjects, their tasks and the timing sessions in an embedded database. CSV stays the import and
+ * export format for both, through StudyTrackerCli.
+ *
+ * Changes may be recorded and flushed from different threads, e.g. by the autosave thread.
+ */
+public interface SubjectStorage extends Closeable {
+
+    /**
+     * Receives what load() reads, on the loading thread.
+     */
+    interface Sink {
+
+        /**
+         * Called with the next subjects in storage order.
+         *
+         * @param batch The subjects.
+         */
+        void subjects(List<Subject> batch);
+
+        /**
+         * Called for each stored record that was skipped because it is invalid.
+         *
+         * @param message What was wrong, including where.
+         */
+        void invalid(String message);
+
+        /**
+         * Called as loading progresses.
+         *
+         * @param percent How much has been read, from 0 to 100.
+         */
+        void progress(int percent);
+    }
+
+    /**
+     * A compaction prepared by prepareCompact(), to be run once on any thread.
+     */
+    interface Compaction {
+
+        /**
+         * Writes the prepared data.
+         *
+         * @throws IOException If the data could not be written. The previous data is left intact.
+         */
+        void run() throws IOException;
+    }
+
+    /**
+     * Opens the storage for a data file: an embedded database if the name ends in ".db", otherwise a
+     * SubjectStore.
+     *
+     * @param dataFile The data file.
+     * @return The storage.
+     */
+    static SubjectStorage open(Path dataFile) {
+        if (JdbcSubjectStore.isDatabase(dataFile)) {
+            return new JdbcSubjectStore(JdbcSubjectStore.url(dataFile));
+        }
+        return new SubjectStore(dataFile);
+    }
+
+    /**
+     * Describes where the subjects are stored, for messages.
+     *
+     * @return The file name or database URL.
+     */
+    String getLocation();
+
+    /**
+     * Brings the storage back to a consistent state after a crash. Must be called before load().
+     *
+     * @throws IOException If the storage could not be repaired.
+     */
+    void recover() throws IOException;
+
+    /**
+     * Reads the stored subjects.
+     *
+     * @param sink Receives the subjects that are read, invalid records and progress.
+     * @param lazy True to return a SubjectSource that reads subjects on demand, if the storage supports it,
+     *             instead of passing every subject to the sink.
+     * @return The source of the subjects that were not passed to the sink, or null if all were.
+     * @throws IOException If the storage could not be read.
+     */
+    SubjectSource load(Sink sink, boolean lazy) throws IOException;
+
+    /**
+     * Reads the changes that were saved after the subjects returned by load() and must be replayed on
+     * top of them with SubjectStore.replay().
+     *
+     * @return The changes in the order they were made, empty if there are none.
+     * @throws IOException If the changes could not be read.
+     */
+    List<SubjectChange> readJournal() throws IOException;
+
+    /**
+     * Records a change to be written by the next call to save() or flush().
+     *
+     * @param change The change to record.
+     */
+    void record(SubjectChange change);
+
+    /**
+     * Returns true if there are recorded changes that have not been saved yet.
+     *
+     * @return True if there are unsaved changes.
+     */
+    boolean hasPendingChanges();
+
+    /**
+     * Writes the recorded changes durably without reading the subjects, so it can be called from any
+     * thread. If the write fails, the changes stay recorded for the next attempt.
+     *
+     * @return True if there were changes to write.
+     * @throws IOException If the changes could not be written.
+     */
+    boolean flush() throws IOException;
+
+    /**
+     * Saves the recorded changes, writing the subjects in full if the storage needs it.
+     *
+     * @param subjects The current subjects.
+     * @throws IOException If the data could not be written.
+     */
+    void save(List<Subject> subjects) throws IOException;
+
+    /**
+     * Brings the stored data to its most compact form, e.g. by folding a journal into a full snapshot.
+     *
+     * @param subjects The current subjects.
+     * @throws IOException If the data could not be written. The previous data is left intact.
+     */
+    void compact(List<Subject> subjects) throws IOException;
+
+    /**
+     * Prepares a compaction of the subjects as they are now, so it can be written on another thread
+     * while the subjects go on changing. Call it on the thread that changes the subjects. Changes
+     * recorded after this call are not part of the compaction and are kept for the next flush().
+     * The default compacts when run, for storage whose compact() does not read the subjects.
+     *
+     * @param subjects The current subjects.
+     * @return The compaction to run.
+     */
+    default Compaction prepareCompact(List<Subject> subjects) {
+        return () -> compact(subjects);
+    }
+
+    /**
+     * Creates the storage for the timing session history that belongs with these subjects.
+     *
+     * @return The session storage.
+     */
+    SessionLog.Storage openSessionStorage();
+
+    /**
+     * Releases the storage. Recorded changes that were not flushed are not written.
+     *
+     * @throws IOException If the storage could not be closed.
+     */
+    @Override
+    default void close() throws IOException {
+    }
+}
@@ -0,0 +1,586 @@
+import java.io.BufferedWriter;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * SubjectStore persists subjects as a CSV snapshot plus an append-only journal of changes.
+ *
+ * A save only appends the changes made since the last save to the journal and fsyncs it, so its cost
+ * grows with the number of changes rather than the number of subjects. Compaction writes a full
+ * snapshot to a temporary file, fsyncs it and atomically renames it over the data file, so a crash
+ * at any point leaves either the old or the new data intact. Each rename is made durable by fsyncing
+ * the directory before the next step depends on it. recover() finishes or discards an interrupted
+ * compaction and must be called before the snapshot is read.
+ *
+ * Snapshots are written as CSV, or in the BinarySnapshot format when the data file name ends in ".bin".
+ * A CSV snapshot is also written as a StateCache, which load() maps instead of parsing the CSV for as
+ * long as the data file is unchanged. -Dstudytracker.cache=false turns the cache off.
+ *
+ * Changes may be recorded and flushed to the journal from different threads, e.g. by the autosave
+ * thread, and file writes are serialized. Snapshots must be written by the thread that changes the
+ * subjects, since they read the subjects themselves, unless prepareCompact() copied them there first.
+ * Timing sessions are kept in a SessionLog file next to the data file.
+ */
+public class SubjectStore implements SubjectStorage {
+    private static final int WRITE_BUFFER_SIZE = 256 * 1024;
+    private static final int LOAD_BATCH_SIZE = 1000;
+    private static final long COMPACT_THRESHOLD_BYTES = 1024 * 1024;
+    // Windows cannot open a directory to fsync it
+    private static final boolean WINDOWS = System.getProperty("os.name", "").startsWith("Windows");
+
+    private static final LatencyHistogram FLUSH_TIME = Metrics.timer("store.flush");
+    private static final LatencyHistogram COMPACT_TIME = Metrics.timer("store.compact");
+    private static final Metrics.Counter CHANGES_WRITTEN = Metrics.counter("store.changes.written");
+
+    private final Path snapshotPath;
+    private final Path journalPath;
+    private final Path tempPath;
+    private final Path compactingPath;
+    private final List<SubjectChange> pending = new ArrayList<>();
+    // Binary copy of a CSV data file, null for a binary data file or when disabled
+    private final StateCache cache;
+
+    // Serializes journal appends, compactions and recovery between threads
+    private final Object ioLock = new Object();
+
+    // The compaction prepared by prepareCompact() that has not run yet, and how many of the pending
+    // changes, from the front, its snapshot contains. Guarded by pending.
+    private Object preparedCompaction;
+    private int compactCut = -1;
+
+    /**
+     * Creates a store for the given data file. The journal and temporary files live next to it.
+     *
+     * @param snapshotPath The path of the CSV data file.
+     */
+    public SubjectStore(Path snapshotPath) {
+        this.snapshotPath = snapshotPath;
+        this.journalPath = sibling(snapshotPath, ".journal");
+        this.tempPath = sibling(snapshotPath, ".tmp");
+        this.compactingPath = sibling(snapshotPath, ".journal.done");
+        this.cache = isBinary() || !Boolean.parseBoolean(System.getProperty("studytracker.cache", "true"))
+                ? null : new StateCache(snapshotPath);
+    }
+
+    public Path getSnapshotPath() {
+        return snapshotPath;
+    }
+
+    @Override
+    public String getLocation() {
+        return snapshotPath.toString();
+    }
+
+    /**
+     * Returns true if snapshots are stored in the BinarySnapshot format rather than CSV.
+     *
+     * @return True for a binary data file.
+     */
+    public boolean isBinary() {
+        return snapshotPath.getFileName().toString().endsWith(".bin");
+    }
+
+    /**
+     * Reads the snapshot. A CSV snapshot is parsed as a stream and passed to the sink in batches,
+     * skipping invalid lines, unless its StateCache is valid. A binary snapshot or cache is only mapped
+     * when lazy, otherwise every subject is built. A missing snapshot is treated as empty, since autosave may only have written a journal so far.
+     *
+     * @param sink Receives the subjects, invalid lines and progress.
+     * @param lazy True to return a binary snapshot or cache as a SubjectSource.
+     * @return The mapped binary snapshot or cache when lazy, otherwise null.
+     * @throws IOException If the snapshot could not be read.
+     */
+    @Override
+    public SubjectSource load(Sink sink, boolean lazy) throws IOException {
+        if (!Files.exists(snapshotPath)) {
+            sink.progress(100);
+            return null;
+        }
+        BinarySnapshot snapshot = null;
+        if (isBinary()) {
+            snapshot = BinarySnapshot.open(snapshotPath);
+        } else if (cache != null) {
+            snapshot = cache.open();
+        }
+        if (snapshot != null) {
+            if (!lazy) {
+                List<Subject> subjects = new ArrayList<>(snapshot.size());
+                for (int i = 0; i < snapshot.size(); i++) {
+                    subjects.add(snapshot.get(i));
+                }
+                sink.subjects(subjects);
+            }
+            sink.progress(100);
+            return lazy ? snapshot : null;
+        }
+        loadCsv(sink);
+        return null;
+    }
+
+    /**
+     * Streams a CSV snapshot to the sink in batches, reporting progress by the share of the file read.
+     * A subject whose name, ignoring case, was already read is reported as an invalid line.
+     */
+    private void loadCsv(Sink sink) throws IOException {
+        long length = Math.max(1, Files.size(snapshotPath));
+        Subject[] batch = new Subject[LOAD_BATCH_SIZE];
+        int batchSize = 0;
+        Set<String> names = new HashSet<>();
+
+        try (SubjectCsvReader reader = new SubjectCsvReader(new FileReader(snapshotPath.toFile(), StandardCharsets.UTF_8))) {
+            while (true) {
+                try {
+                    Subject subject = reader.next();
+                    if (subject == null) {
+                        break;
+                    }
+                    if (!names.add(SubjectRepository.normalize(subject.getName()))) {
+                        throw new IllegalArgumentException("Duplicate subject name");
+                    }
+                    batch[batchSize++] = subject;
+                    if (batchSize == LOAD_BATCH_SIZE) {
+                        sink.subjects(Arrays.asList(batch));
+                        batch = new Subject[LOAD_BATCH_SIZE];
+                        batchSize = 0;
+                        sink.progress((int) Math.min(100, reader.getCharsRead() * 100 / length));
+                    }
+                } catch (IllegalArgumentException e) {
+                    // Report the error and continue with next line
+                    sink.invalid("Line " + reader.getLineNumber() + ": " + reader.getLine() + " (" + e.getMessage() + ")");
+                }
+            }
+        }
+        if (batchSize > 0) {
+            sink.subjects(Arrays.asList(Arrays.copyOf(batch, batchSize)));
+        }
+        sink.progress(100);
+    }
+
+    @Override
+    public SessionLog.Storage openSessionStorage() {
+        return new SessionLog.FileStorage(sibling(snapshotPath, ".sessions"));
+    }
+
+    /**
+     * Records a change to be written by the next call to save() or flush().
+     *
+     * @param change The change to record.
+     */
+    @Override
+    public void record(SubjectChange change) {
+        synchronized (pending) {
+            pending.add(change);
+        }
+    }
+
+    /**
+     * Returns true if there are recorded changes that have not been saved yet.
+     *
+     * @return True if there are unsaved changes.
+     */
+    @Override
+    public boolean hasPendingChanges() {
+        synchronized (pending) {
+            return !pending.isEmpty();
+        }
+    }
+
+    /**
+     * Appends the recorded changes to the journal and fsyncs it. Unlike save() this never writes a
+     * snapshot, so it does not read the subjects and can be called from any thread.
+     * If the write fails, the changes stay recorded for the next attempt.
+     *
+     * @return True if there were changes to write.
+     * @throws IOException If the journal could not be written.
+     */
+    @Override
+    public boolean flush() throws IOException {
+        long start = Metrics.start();
+        synchronized (ioLock) {
+            List<SubjectChange> changes;
+            synchronized (pending) {
+                // Changes the prepared snapshot does not contain must outlive the journal it discards
+                List<SubjectChange> written = compactCut >= 0 ? pending.subList(0, compactCut) : pending;
+                changes = new ArrayList<>(written);
+                written.clear();
+                if (compactCut >= 0) {
+                    compactCut = 0;
+                }
+            }
+            if (changes.isEmpty()) {
+                return false;
+            }
+            try {
+                appendJournal(changes);
+            } catch (IOException e) {
+                synchronized (pending) {
+                    pending.addAll(0, changes);
+                    if (compactCut >= 0) {
+                        compactCut += changes.size();
+                    }
+                }
+                throw e;
+            }
+            CHANGES_WRITTEN.add(changes.size());
+            FLUSH_TIME.recordSince(start);
+            return true;
+        }
+    }
+
+    /**
+     * Saves the recorded changes. The changes are appended to the journal, unless there is no snapshot
+     * yet or the journal has grown past the compaction threshold, in which case a full snapshot is written.
+     *
+     * @param subjects The current subjects, used if a snapshot has to be written.
+     * @throws IOException If the data could not be written.
+     */
+    @Override
+    public void save(List<Subject> subjects) throws IOException {
+        synchronized (ioLock) {
+            if (!Files.exists(snapshotPath)
+                    || (Files.exists(journalPath) && Files.size(journalPath) > COMPACT_THRESHOLD_BYTES)) {
+                compact(subjects);
+                return;
+            }
+            flush();
+        }
+    }
+
+    /**
+     * Writes a full snapshot of the subjects and discards the journal.
+     *
+     * @param subjects The current subjects.
+     * @throws IOException If the snapshot could not be written. The previous data is left intact.
+     */
+    @Override
+    public void compact(List<Subject> subjects) throws IOException {
+        compact(subjects, null);
+    }
+
+    /**
+     * Copies the subjects, so the snapshot can be written on another thread, e.g. the autosave thread,
+     * while they go on changing. Until it has run, flush() holds back the changes recorded after this
+     * call, since the journal they would be appended to is discarded by the compaction. Preparing
+     * another compaction, or compacting directly, supersedes this one, which then writes nothing.
+     *
+     * @param subjects The current subjects.
+     * @return The compaction to run.
+     */
+    @Override
+    public Compaction prepareCompact(List<Subject> subjects) {
+        List<Subject> copies = new ArrayList<>(subjects.size());
+        for (Subject subject : subjects) {
+            copies.add(new Subject(subject.getName(), subject.getTime(), subject.getTasks()));
+        }
+        Object token = new Object();
+        synchronized (pending) {
+            preparedCompaction = token;
+            compactCut = pending.size();
+        }
+        return () -> compact(copies, token);
+    }
+
+    /**
+     * Writes a snapshot and discards the journal and the pending changes the snapshot contains.
+     *
+     * @param token The prepared compaction being run, or null to compact the subjects as they are now.
+     */
+    private void compact(List<Subject> subjects, Object token) throws IOException {
+        long start = Metrics.start();
+        synchronized (ioLock) {
+            synchronized (pending) {
+                if (token != null && token != preparedCompaction) {
+                    return;
+                }
+            }
+            BasicFileAttributes written;
+            try {
+                written = writeSnapshot(subjects);
+            } catch (IOException | RuntimeException e) {
+                synchronized (pending) {
+                    // The pending changes stay recorded, so flush() may write all of them again
+                    if (token != null && token == preparedCompaction) {
+                        preparedCompaction = null;
+                        compactCut = -1;
+                    }
+                }
+                throw e;
+            }
+            synchronized (pending) {
+                (token != null ? pending.subList(0, compactCut) : pending).clear();
+                preparedCompaction = null;
+                compactCut = -1;
+            }
+            if (cache != null) {
+                try {
+                    cache.write(subjects, written);
+                } catch (IOException e) {
+                    // The data file is saved; without the cache the next start parses it
+                }
+            }
+        }
+        COMPACT_TIME.recordSince(start);
+    }
+
+    /**
+     * Writes the subjects to the temporary file and renames it over the snapshot, discarding the journal.
+     *
+     * @return The attributes of a written CSV snapshot, null for a binary one.
+     */
+    private BasicFileAttributes writeSnapshot(List<Subject> subjects) throws IOException {
+        BasicFileAttributes written = null;
+        if (isBinary()) {
+            BinarySnapshot.write(tempPath, subjects);
+        } else {
+            writeCsv(tempPath, subjects);
+            // A rename keeps the size and modification time the cache is checked against
+            written = Files.readAttributes(tempPath, BasicFileAttributes.class);
+        }
+
+        // The journal is now contained in the temporary snapshot. Marking it as done first lets
+        // recover() complete the rename if we crash before it happens.
+        // Each rename must reach the disk before the next one, or a crash could leave the new snapshot
+        // with the old journal, which would then be replayed twice.
+        if (Files.exists(journalPath)) {
+            Files.move(journalPath, compactingPath, StandardCopyOption.ATOMIC_MOVE);
+            forceDirectory(snapshotPath);
+        }
+        Files.move(tempPath, snapshotPath, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        forceDirectory(snapshotPath);
+        Files.deleteIfExists(compactingPath);
+        return written;
+    }
+
+    /**
+     * Brings the files back to a consistent state after a crash.
+     * An interrupted compaction is completed if its snapshot was fully written, and discarded otherwise.
+     *
+     * @throws IOException If the files could not be repaired.
+     */
+    @Override
+    public void recover() throws IOException {
+        synchronized (ioLock) {
+            if (Files.exists(compactingPath)) {
+                if (Files.exists(tempPath)) {
+                    Files.move(tempPath, snapshotPath, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                    forceDirectory(snapshotPath);
+                }
+                Files.delete(compactingPath);
+            } else {
+                Files.deleteIfExists(tempPath);
+            }
+        }
+    }
+
+    /**
+     * Reads the changes stored in the journal. A trailing line without a line terminator, left by a
+     * crash during an append, is ignored.
+     *
+     * @return The journaled changes in the order they were made.
+     * @throws IOException If the journal exists but could not be read.
+     */
+    @Override
+    public List<SubjectChange> readJournal() throws IOException {
+        List<SubjectChange> changes = new ArrayList<>();
+        if (!Files.exists(journalPath)) {
+            return changes;
+        }
+        String content = new String(Files.readAllBytes(journalPath), StandardCharsets.UTF_8);
+        int start = 0;
+        boolean quoted = false;
+        // A line break inside a quoted name or task does not end the change
+        for (int i = 0; i < content.length(); i++) {
+            char c = content.charAt(i);
+            if (c == '"') {
+                quoted = !quoted;
+            } else if (c == '\n' && !quoted) {
+                SubjectChange change = decode(content.substring(start, i));
+                if (change != null) {
+                    changes.add(change);
+                }
+                start = i + 1;
+            }
+        }
+        return changes;
+    }
+
+    /**
+     * Applies journaled changes to a repository that holds the snapshot contents.
+     * For a SubjectListModel this must be called on the Event Dispatch Thread.
+     *
+     * @param changes The changes to apply.
+     * @param repository The repository to update.
+     */
+    public static void replay(List<SubjectChange> changes, SubjectRepository repository) {
+        if (changes.isEmpty()) {
+            return;
+        }
+        for (SubjectChange change : changes) {
+            Subject subject = repository.findByName(change.getName());
+            switch (change.getType()) {
+                case ADD_SUBJECT:
+                    if (subject == null) {
+                        repository.add(new Subject(change.getName()));
+                    }
+                    break;
+                case REMOVE_SUBJECT:
+                    if (subject != null) {
+                        repository.remove(subject);
+                    }
+                    break;
+                case ADD_TIME:
+                    if (subject != null) {
+                        subject.addTime(change.getTime());
+                    }
+                    break;
+                case ADD_TASK:
+                    if (subject != null) {
+                        subject.addTask(change.getTask());
+                    }
+                    break;
+                case REMOVE_TASK:
+                    if (subject != null) {
+                        subject.removeTask(change.getTask());
+                    }
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Writes subjects in the data.csv format to the given file through a large buffer and fsyncs it.
+     *
+     * @param path The file to write.
+     * @param subjects The subjects to store.
+     * @throws IOException If the file could not be written.
+     */
+    public static void writeCsv(Path path, List<Subject> subjects) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            SubjectCsvWriter writer = new SubjectCsvWriter(new BufferedWriter(
+                    new OutputStreamWriter(Channels.newOutputStream(channel), StandardCharsets.UTF_8), WRITE_BUFFER_SIZE));
+            for (Subject subject : subjects) {
+                writer.write(subject);
+            }
+            writer.flush();
+            channel.force(true);
+        }
+    }
+
+    /**
+     * Fsyncs the directory holding a file, so that a rename over the file, or its creation, survives a
+     * crash. Does nothing on Windows, where the file system commits renames itself.
+     *
+     * @param file A file in the directory.
+     * @throws IOException If the directory could not be fsynced.
+     */
+    public static void forceDirectory(Path file) throws IOException {
+        if (WINDOWS) {
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(file.toAbsolutePath().getParent(), StandardOpenOption.READ)) {
+            channel.force(true);
+        }
+    }
+
+    private void appendJournal(List<SubjectChange> changes) throws IOException {
+        StringBuilder text = new StringBuilder();
+        for (SubjectChange change : changes) {
+            encode(change, text);
+        }
+        boolean created = !Files.exists(journalPath);
+        try (FileChannel channel = FileChannel.open(journalPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            long validLength = channel.size();
+            ByteBuffer buffer = ByteBuffer.wrap(text.toString().getBytes(StandardCharsets.UTF_8));
+            try {
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                channel.force(true);
+            } catch (IOException e) {
+                // Cut off a partly written line so a retry does not append to it
+                try {
+                    channel.truncate(validLength);
+                } catch (IOException ignored) {
+                    // Nothing more can be done here; the error below is what gets reported
+                }
+                throw e;
+            }
+        }
+        if (created) {
+            forceDirectory(journalPath);
+        }
+    }
+
+    /**
+     * Encodes a change as one journal line: code,name[,time|task], with the name and task quoted as in
+     * the CSV data file.
+     */
+    private static void encode(SubjectChange change, StringBuilder text) {
+        text.append(change.getType().getCode()).append(',');
+        SubjectCsvWriter.appendField(text, change.getName());
+        if (change.getType() == SubjectChange.Type.ADD_TIME) {
+            text.append(',').append(change.getTime());
+        } else if (change.getTask() != null) {
+            text.append(',');
+            SubjectCsvWriter.appendField(text, change.getTask());
+        }
+        text.append('\n');
+    }
+
+    /**
+     * Decodes a journal line, returning null for lines that are not valid changes.
+     */
+    private static SubjectChange decode(String line) {
+        String[] parts;
+        try {
+            parts = SubjectCsvReader.splitFields(line).toArray(new String[0]);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        if (parts.length < 2 || parts.length > 3 || parts[0].length() != 1) {
+            return null;
+        }
+        SubjectChange.Type type = SubjectChange.Type.fromCode(parts[0].charAt(0));
+        if (type == null) {
+            return null;
+        }
+        String name = parts[1];
+        try {
+            switch (type) {
+                case ADD_SUBJECT:
+                    return SubjectChange.addSubject(name);
+                case REMOVE_SUBJECT:
+                    return SubjectChange.removeSubject(name);
+                case ADD_TIME:
+                    return parts.length == 3 ? SubjectChange.addTime(name, Long.parseLong(parts[2])) : null;
+                case ADD_TASK:
+                    return parts.length == 3 ? SubjectChange.addTask(name, parts[2]) : null;
+                case REMOVE_TASK:
+                    return parts.length == 3 ? SubjectChange.removeTask(name, parts[2]) : null;
+                default:
+                    return null;
+            }
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static Path sibling(Path path, String suffix) {
+        return path.resolveSibling(path.getFileName() + suffix);
+    }
+}
@@ -0,0 +1,233 @@
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.InetSocketAddress;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SubjectSync replicates a StudyTracker's subjects to instances on other machines. Once enabled, every
+ * change is also recorded in a SyncReplica, kept in a sync file next to the data file, so instances
+ * can exchange their changes as deltas (see SyncConnection).
+ *
+ * Changes received from a peer are applied to the subjects and journaled, but are not edits and cannot
+ * be undone. A subject that a peer removes while it is being timed here keeps its timer; the time is
+ * recorded in the session history when it is stopped.
+ *
+ * Like StudyTracker it is not thread-safe. Received changes are applied by an executor on the thread
+ * that changes the subjects.
+ */
+public class SubjectSync {
+    private final StudyTracker tracker;
+    private final Path path;
+
+    // Null until enabled
+    private SyncReplica replica;
+    private SyncServer server;
+    private ScheduledThreadPoolExecutor scheduler;
+
+    /**
+     * @param tracker The tracker whose subjects are synced.
+     * @param path The sync file.
+     */
+    SubjectSync(StudyTracker tracker, Path path) {
+        this.tracker = tracker;
+        this.path = path;
+    }
+
+    /**
+     * Returns the server that accepts syncs from other instances.
+     *
+     * @return The server, or null if sync was not started with an address to listen on.
+     */
+    public SyncServer getServer() {
+        return server;
+    }
+
+    /**
+     * Starts recording changes for sync in the sync file. Changes made to the data file while sync was
+     * not enabled are recorded as changes made here. Must be called after StudyTracker.load().
+     *
+     * @return The replica.
+     * @throws IOException If the sync file could not be read or written.
+     */
+    public SyncReplica enable() throws IOException {
+        if (replica == null) {
+            SyncReplica opened = SyncReplica.open(path);
+            opened.catchUp(tracker.getRepository().toList());
+            opened.flush();
+            replica = opened;
+        }
+        return replica;
+    }
+
+    /**
+     * Returns the endpoint through which this instance takes part in syncs. Received changes are applied
+     * by the given executor, which must run them on the thread that changes the subjects, e.g. the
+     * Event Dispatch Thread; the sync waits for them. enable() must have been called.
+     *
+     * @param executor Runs the updates to the subjects.
+     * @return The endpoint.
+     */
+    public SyncConnection.Endpoint getEndpoint(Executor executor) {
+        SyncReplica enabled = replica;
+        return new SyncConnection.Endpoint() {
+            @Override
+            public SyncReplica getReplica() {
+                return enabled;
+            }
+
+            @Override
+            public synchronized void apply(List<SyncDelta> deltas) throws IOException {
+                Set<String> changed = enabled.merge(deltas);
+                if (changed.isEmpty()) {
+                    return;
+                }
+                FutureTask<Void> update = new FutureTask<>(() -> {
+                    for (String name : changed) {
+                        reconcile(enabled, name);
+                    }
+                    if (!tracker.isAutosaving()) {
+                        tracker.getStore().flush();
+                    }
+                    return null;
+                });
+                executor.execute(update);
+                try {
+                    update.get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while applying synced changes");
+                } catch (ExecutionException e) {
+                    throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+                }
+            }
+        };
+    }
+
+    /**
+     * Syncs with a peer on the calling thread, which must be the thread that changes the subjects.
+     * enable() must have been called.
+     *
+     * @param peer The peer's sync server.
+     * @param secret The secret shared with the peer.
+     * @return What was exchanged.
+     * @throws IOException If the sync failed.
+     * @throws IllegalArgumentException If the secret is empty.
+     */
+    public SyncConnection.Result sync(InetSocketAddress peer, String secret) throws IOException {
+        return SyncServer.connect(peer, getEndpoint(Runnable::run), secret);
+    }
+
+    /**
+     * Enables sync, listens for syncs from other instances and syncs with the given peers at a fixed interval.
+     *
+     * @param address The address to listen on, or null to only sync with the peers. See SyncServer.bindAddress().
+     * @param peers The peers to sync with.
+     * @param intervalMillis The interval between syncs with the peers.
+     * @param secret The secret shared with the peers and with the instances that sync with this one.
+     * @param executor Runs the updates to the subjects; see getEndpoint().
+     * @param listener Told about each sync, on a background thread.
+     * @throws IOException If the sync file could not be opened or the address could not be bound.
+     * @throws IllegalArgumentException If the secret is empty.
+     */
+    public void start(InetSocketAddress address, List<InetSocketAddress> peers, long intervalMillis, String secret,
+                      Executor executor, SyncServer.Listener listener) throws IOException {
+        if (server != null || scheduler != null) {
+            return;
+        }
+        SyncConnection.checkSecret(secret);
+        enable();
+        SyncConnection.Endpoint endpoint = getEndpoint(executor);
+        if (address != null) {
+            server = new SyncServer(address, endpoint, secret, listener);
+        }
+        if (!peers.isEmpty()) {
+            scheduler = new ScheduledThreadPoolExecutor(1, runnable -> {
+                Thread thread = new Thread(runnable, "sync");
+                thread.setDaemon(true);
+                return thread;
+            });
+            scheduler.scheduleWithFixedDelay(() -> {
+                for (InetSocketAddress peer : peers) {
+                    try {
+                        listener.synced(SyncServer.connect(peer, endpoint, secret));
+                    } catch (IOException e) {
+                        listener.syncFailed(e);
+                    }
+                }
+            }, 0, intervalMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Stops listening for and making syncs, and writes the changes recorded for sync.
+     *
+     * @throws IOException If the changes could not be written.
+     */
+    public void stop() throws IOException {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+        if (server != null) {
+            SyncServer stopped = server;
+            server = null;
+            stopped.close();
+        }
+        if (replica != null) {
+            replica.flush();
+        }
+    }
+
+    /**
+     * Records a change made here for the peers, if sync is enabled.
+     */
+    void recordLocal(SubjectChange change) {
+        if (replica != null) {
+            replica.recordLocal(change);
+        }
+    }
+
+    /**
+     * Brings a subject in line with its replicated state after changes from a peer were merged,
+     * journaling what changed.
+     */
+    private void reconcile(SyncReplica replica, String name) {
+        SubjectRepository repository = tracker.getRepository();
+        Subject replicated = replica.view(name);
+        Subject subject = repository.findByName(name);
+        if (replicated == null) {
+            if (subject != null) {
+                repository.remove(subject);
+                tracker.journal(SubjectChange.removeSubject(subject.getName()));
+            }
+            return;
+        }
+        if (subject == null) {
+            repository.add(replicated);
+            tracker.journalSubject(replicated);
+            return;
+        }
+        long time = replicated.getTime() - subject.getTime();
+        if (time != 0) {
+            subject.addTime(time);
+            tracker.journal(SubjectChange.addTime(subject.getName(), time));
+        }
+        for (String task : replicated.getTasks()) {
+            if (subject.addTask(task)) {
+                tracker.journal(SubjectChange.addTask(subject.getName(), task));
+            }
+        }
+        for (String task : subject.getTasks()) {
+            if (!replicated.hasTask(task) && subject.removeTask(task)) {
+                tracker.journal(SubjectChange.removeTask(subject.getName(), task));
+            }
+        }
+    }
+}
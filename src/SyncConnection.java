@@ -0,0 +1,370 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.List;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * SyncConnection runs one sync between two replicas over a pair of streams, such as a socket's.
+ *
+ *   client                                  server
+ *   HELLO  replica id, nonce            ->
+ *                                       <-  HELLO  replica id, nonce
+ *   AUTH   proof, version vector        ->
+ *                                       <-  AUTH   proof, version vector
+ *                                       <-  DELTAS the client is missing, in batches, then END
+ *   DELTAS the server is missing, then END ->
+ *                                       <-  END once they are applied
+ *
+ * Both sides must know the same shared secret. A proof is an HMAC-SHA256 of both nonces and the
+ * sender's role, keyed with the secret, so it cannot be replayed. The server checks the client's proof
+ * before it tells it anything but its replica id, and each side checks the other's proof before it
+ * sends or accepts any deltas. The data itself is not encrypted.
+ *
+ * Each message is a frame: its compressed length, its raw length and the deflated message. Deltas are
+ * sent in batches of up to BATCH_SIZE per frame, so a sync costs about as much as the changes since
+ * the last one, however many subjects there are. Both sides end up with every delta either had.
+ */
+public class SyncConnection {
+    private static final int HELLO = 'H';
+    private static final int AUTH = 'A';
+    private static final int DELTAS = 'D';
+    private static final int END = 'E';
+    private static final int PROTOCOL_VERSION = 2;
+    private static final int NONCE_BYTES = 16;
+    private static final int CLIENT = 'C';
+    private static final int SERVER = 'S';
+    private static final SecureRandom RANDOM = new SecureRandom();
+    private static final int BATCH_SIZE = 512;
+    private static final int MAX_FRAME_BYTES = 64 * 1024 * 1024;
+
+    /**
+     * The replica on one side of a sync.
+     */
+    public interface Endpoint {
+
+        SyncReplica getReplica();
+
+        /**
+         * Applies deltas received from the peer, e.g. by merging them into the replica and updating the
+         * subjects. Returns once they are applied.
+         *
+         * @param deltas The received deltas.
+         * @throws IOException If they could not be applied.
+         */
+        void apply(List<SyncDelta> deltas) throws IOException;
+    }
+
+    /**
+     * What a sync exchanged.
+     */
+    public static class Result {
+        private String peer;
+        private int deltasSent;
+        private int deltasReceived;
+        private long bytesSent;
+        private long bytesReceived;
+
+        /**
+         * Returns the peer's replica id.
+         *
+         * @return The id.
+         */
+        public String getPeer() {
+            return peer;
+        }
+
+        public int getDeltasSent() {
+            return deltasSent;
+        }
+
+        public int getDeltasReceived() {
+            return deltasReceived;
+        }
+
+        public long getBytesSent() {
+            return bytesSent;
+        }
+
+        public long getBytesReceived() {
+            return bytesReceived;
+        }
+
+        @Override
+        public String toString() {
+            return "sent " + deltasSent + " deltas (" + bytesSent + " bytes), received " + deltasReceived
+                    + " deltas (" + bytesReceived + " bytes)";
+        }
+    }
+
+    private final DataInputStream in;
+    private final DataOutputStream out;
+    private final Endpoint endpoint;
+    private final boolean client;
+    private final byte[] secret;
+    private final byte[] nonce = new byte[NONCE_BYTES];
+    private byte[] peerNonce;
+    private final Result result = new Result();
+    private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+    private final Inflater inflater = new Inflater();
+
+    private SyncConnection(InputStream in, OutputStream out, Endpoint endpoint, boolean client, String secret) {
+        checkSecret(secret);
+        this.in = new DataInputStream(in);
+        this.out = new DataOutputStream(out);
+        this.endpoint = endpoint;
+        this.client = client;
+        this.secret = secret.getBytes(StandardCharsets.UTF_8);
+        RANDOM.nextBytes(nonce);
+    }
+
+    /**
+     * Syncs with a server as the client.
+     *
+     * @param in The stream from the server.
+     * @param out The stream to the server.
+     * @param endpoint The local replica.
+     * @param secret The secret shared with the server.
+     * @return What was exchanged.
+     * @throws IOException If the sync failed, e.g. because the server does not know the secret. Deltas
+     *                     that were applied stay applied, and are not sent again.
+     * @throws IllegalArgumentException If the secret is empty.
+     */
+    public static Result sync(InputStream in, OutputStream out, Endpoint endpoint, String secret) throws IOException {
+        SyncConnection connection = new SyncConnection(in, out, endpoint, true, secret);
+        try {
+            connection.sendHello();
+            connection.receiveHello();
+            connection.sendAuth(CLIENT);
+            VersionVector seen = connection.receiveAuth(SERVER);
+            connection.endpoint.apply(connection.receiveDeltas());
+            connection.sendDeltas(seen);
+            connection.receive(END);
+            return connection.result;
+        } finally {
+            connection.close();
+        }
+    }
+
+    /**
+     * Serves a client's sync.
+     *
+     * @param in The stream from the client.
+     * @param out The stream to the client.
+     * @param endpoint The local replica.
+     * @param secret The secret shared with the client.
+     * @return What was exchanged.
+     * @throws IOException If the sync failed, e.g. because the client does not know the secret.
+     * @throws IllegalArgumentException If the secret is empty.
+     */
+    public static Result serve(InputStream in, OutputStream out, Endpoint endpoint, String secret) throws IOException {
+        SyncConnection connection = new SyncConnection(in, out, endpoint, false, secret);
+        try {
+            connection.receiveHello();
+            connection.sendHello();
+            VersionVector seen = connection.receiveAuth(CLIENT);
+            connection.sendAuth(SERVER);
+            connection.sendDeltas(seen);
+            connection.endpoint.apply(connection.receiveDeltas());
+            connection.send(connection.message(END));
+            return connection.result;
+        } finally {
+            connection.close();
+        }
+    }
+
+    /**
+     * Checks that a shared secret was given.
+     *
+     * @param secret The secret.
+     * @throws IllegalArgumentException If it is null or empty.
+     */
+    static void checkSecret(String secret) {
+        if (secret == null || secret.isEmpty()) {
+            throw new IllegalArgumentException("Sync needs a shared secret. Set it with -Dstudytracker.sync.secret.");
+        }
+    }
+
+    private void sendHello() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream message = message(HELLO, bytes);
+        message.writeInt(PROTOCOL_VERSION);
+        message.writeUTF(endpoint.getReplica().getId());
+        message.write(nonce);
+        send(bytes);
+    }
+
+    private void receiveHello() throws IOException {
+        DataInputStream message = receive(HELLO);
+        int version = message.readInt();
+        if (version != PROTOCOL_VERSION) {
+            throw new IOException("Peer speaks sync protocol version " + version + ", expected " + PROTOCOL_VERSION);
+        }
+        result.peer = message.readUTF();
+        peerNonce = new byte[NONCE_BYTES];
+        message.readFully(peerNonce);
+    }
+
+    /**
+     * Sends the proof that this side, in the given role, knows the secret, and the local version vector.
+     */
+    private void sendAuth(int role) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream message = message(AUTH, bytes);
+        message.write(proof(role));
+        endpoint.getReplica().getVersionVector().write(message);
+        send(bytes);
+    }
+
+    /**
+     * Receives the peer's proof and checks it before reading its version vector.
+     */
+    private VersionVector receiveAuth(int role) throws IOException {
+        DataInputStream message = receive(AUTH);
+        byte[] expected = proof(role);
+        byte[] received = new byte[expected.length];
+        message.readFully(received);
+        if (!MessageDigest.isEqual(expected, received)) {
+            throw new IOException("Sync peer " + result.peer + " does not know the shared secret");
+        }
+        return VersionVector.read(message);
+    }
+
+    /**
+     * Computes the proof of the side in the given role for this connection's pair of nonces.
+     */
+    private byte[] proof(int role) throws IOException {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(secret, "HmacSHA256"));
+            mac.update((byte) role);
+            mac.update(client ? nonce : peerNonce);
+            mac.update(client ? peerNonce : nonce);
+            return mac.doFinal();
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Cannot compute the sync proof", e);
+        }
+    }
+
+    /**
+     * Sends the deltas a peer with the given version vector is missing, in batches, followed by END.
+     */
+    private void sendDeltas(VersionVector seen) throws IOException {
+        List<SyncDelta> deltas = endpoint.getReplica().deltasSince(seen);
+        for (int from = 0; from < deltas.size(); from += BATCH_SIZE) {
+            int to = Math.min(deltas.size(), from + BATCH_SIZE);
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream message = message(DELTAS, bytes);
+            message.writeInt(to - from);
+            for (SyncDelta delta : deltas.subList(from, to)) {
+                delta.write(message);
+            }
+            send(bytes);
+        }
+        result.deltasSent = deltas.size();
+        send(message(END));
+    }
+
+    private List<SyncDelta> receiveDeltas() throws IOException {
+        List<SyncDelta> deltas = new ArrayList<>();
+        while (true) {
+            DataInputStream message = receive(-1);
+            int type = message.readUnsignedByte();
+            if (type == END) {
+                break;
+            } else if (type != DELTAS) {
+                throw new IOException("Unexpected sync message " + (char) type);
+            }
+            int count = message.readInt();
+            for (int i = 0; i < count; i++) {
+                deltas.add(SyncDelta.read(message));
+            }
+        }
+        result.deltasReceived = deltas.size();
+        return deltas;
+    }
+
+    private ByteArrayOutputStream message(int type) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        message(type, bytes);
+        return bytes;
+    }
+
+    private static DataOutputStream message(int type, ByteArrayOutputStream bytes) throws IOException {
+        DataOutputStream message = new DataOutputStream(bytes);
+        message.writeByte(type);
+        return message;
+    }
+
+    /**
+     * Compresses a message and writes it as one frame.
+     */
+    private void send(ByteArrayOutputStream message) throws IOException {
+        byte[] raw = message.toByteArray();
+        deflater.reset();
+        deflater.setInput(raw);
+        deflater.finish();
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(Math.max(64, raw.length / 2));
+        byte[] buffer = new byte[8192];
+        while (!deflater.finished()) {
+            compressed.write(buffer, 0, deflater.deflate(buffer));
+        }
+        out.writeInt(compressed.size());
+        out.writeInt(raw.length);
+        compressed.writeTo(out);
+        out.flush();
+        result.bytesSent += 8 + compressed.size();
+    }
+
+    /**
+     * Reads one frame and decompresses it. If a type is given, the message must be of that type and
+     * is returned after it; otherwise the type is left to be read.
+     */
+    private DataInputStream receive(int type) throws IOException {
+        int compressedLength = in.readInt();
+        int rawLength = in.readInt();
+        if (compressedLength < 0 || rawLength < 1 || compressedLength > MAX_FRAME_BYTES || rawLength > MAX_FRAME_BYTES) {
+            throw new IOException("Invalid sync frame");
+        }
+        byte[] compressed = new byte[compressedLength];
+        in.readFully(compressed);
+        result.bytesReceived += 8 + compressedLength;
+
+        byte[] raw = new byte[rawLength];
+        inflater.reset();
+        inflater.setInput(compressed);
+        try {
+            if (inflater.inflate(raw) != rawLength || !inflater.finished()) {
+                throw new IOException("Invalid sync frame");
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Invalid sync frame", e);
+        }
+        DataInputStream message = new DataInputStream(new ByteArrayInputStream(raw));
+        if (type >= 0) {
+            int received = message.readUnsignedByte();
+            if (received != type) {
+                throw new IOException("Unexpected sync message " + (char) received + ", expected " + (char) type);
+            }
+        }
+        return message;
+    }
+
+    private void close() {
+        deflater.end();
+        inflater.end();
+    }
+}
@@ -0,0 +1,221 @@
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * SyncDelta is one change to a subject as it is replicated between instances: the SubjectChange,
+ * tagged with the replica that made it and its sequence number there.
+ *
+ * Removing a subject or a task only removes what its replica had seen when it was made, so a change
+ * made concurrently on another instance is not lost: REMOVE_TASK lists the tags of the task's adds
+ * it saw, and REMOVE_SUBJECT lists the tags of the subject's and its tasks' adds and how much time
+ * it had seen from each replica. ADD_SUBJECT lists the same, since a subject added again starts
+ * out empty. See SyncReplica for how deltas are merged.
+ */
+public class SyncDelta {
+
+    /**
+     * Identifies a delta by the replica that made it and its sequence number there.
+     */
+    public static class Tag implements Comparable<Tag> {
+        private final String replica;
+        private final long seq;
+
+        public Tag(String replica, long seq) {
+            this.replica = replica;
+            this.seq = seq;
+        }
+
+        public String getReplica() {
+            return replica;
+        }
+
+        public long getSeq() {
+            return seq;
+        }
+
+        @Override
+        public int compareTo(Tag other) {
+            int compared = replica.compareTo(other.replica);
+            return compared != 0 ? compared : Long.compare(seq, other.seq);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Tag)) {
+                return false;
+            }
+            Tag other = (Tag) o;
+            return seq == other.seq && replica.equals(other.replica);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(replica, seq);
+        }
+
+        @Override
+        public String toString() {
+            return replica + ":" + seq;
+        }
+    }
+
+    /**
+     * The time a replica had added to a subject up to one of its deltas, as seen by a removal.
+     */
+    public static class TimeMark {
+        private final String replica;
+        private final long seq;
+        private final long total;
+
+        public TimeMark(String replica, long seq, long total) {
+            this.replica = replica;
+            this.seq = seq;
+            this.total = total;
+        }
+
+        public String getReplica() {
+            return replica;
+        }
+
+        public long getSeq() {
+            return seq;
+        }
+
+        public long getTotal() {
+            return total;
+        }
+    }
+
+    private final Tag tag;
+    private final SubjectChange change;
+    private final List<Tag> removedTags;
+    private final List<TimeMark> clearedTime;
+
+    /**
+     * @param tag The replica and sequence number of the change.
+     * @param change The change.
+     * @param removedTags The tags of the adds the change removes; empty unless it adds or removes a
+     *                    subject or removes a task.
+     * @param clearedTime The time the change clears; empty unless it adds or removes a subject.
+     */
+    public SyncDelta(Tag tag, SubjectChange change, List<Tag> removedTags, List<TimeMark> clearedTime) {
+        this.tag = tag;
+        this.change = change;
+        this.removedTags = removedTags;
+        this.clearedTime = clearedTime;
+    }
+
+    public Tag getTag() {
+        return tag;
+    }
+
+    public String getReplica() {
+        return tag.replica;
+    }
+
+    public long getSeq() {
+        return tag.seq;
+    }
+
+    public SubjectChange getChange() {
+        return change;
+    }
+
+    public List<Tag> getRemovedTags() {
+        return removedTags;
+    }
+
+    public List<TimeMark> getClearedTime() {
+        return clearedTime;
+    }
+
+    /**
+     * Writes the delta in the format of the sync file and the sync protocol.
+     *
+     * @param out The output.
+     * @throws IOException If the delta could not be written.
+     */
+    public void write(DataOutput out) throws IOException {
+        out.writeUTF(tag.replica);
+        out.writeLong(tag.seq);
+        out.writeByte(change.getType().getCode());
+        out.writeUTF(change.getName());
+        switch (change.getType()) {
+            case ADD_TIME:
+                out.writeLong(change.getTime());
+                break;
+            case ADD_TASK:
+            case REMOVE_TASK:
+                out.writeUTF(change.getTask());
+                break;
+            default:
+                break;
+        }
+        out.writeInt(removedTags.size());
+        for (Tag removed : removedTags) {
+            out.writeUTF(removed.replica);
+            out.writeLong(removed.seq);
+        }
+        out.writeInt(clearedTime.size());
+        for (TimeMark mark : clearedTime) {
+            out.writeUTF(mark.replica);
+            out.writeLong(mark.seq);
+            out.writeLong(mark.total);
+        }
+    }
+
+    /**
+     * Reads a delta written by write().
+     *
+     * @param in The input.
+     * @return The delta.
+     * @throws IOException If the delta could not be read or is not valid.
+     */
+    public static SyncDelta read(DataInput in) throws IOException {
+        Tag tag = new Tag(in.readUTF(), in.readLong());
+        SubjectChange.Type type = SubjectChange.Type.fromCode((char) in.readUnsignedByte());
+        if (type == null) {
+            throw new IOException("Unknown change in delta " + tag);
+        }
+        String name = in.readUTF();
+        SubjectChange change;
+        switch (type) {
+            case ADD_SUBJECT:
+                change = SubjectChange.addSubject(name);
+                break;
+            case REMOVE_SUBJECT:
+                change = SubjectChange.removeSubject(name);
+                break;
+            case ADD_TIME:
+                change = SubjectChange.addTime(name, in.readLong());
+                break;
+            case ADD_TASK:
+                change = SubjectChange.addTask(name, in.readUTF());
+                break;
+            default:
+                change = SubjectChange.removeTask(name, in.readUTF());
+                break;
+        }
+        int tagCount = in.readInt();
+        List<Tag> removedTags = tagCount == 0 ? Collections.emptyList() : new ArrayList<>(tagCount);
+        for (int i = 0; i < tagCount; i++) {
+            removedTags.add(new Tag(in.readUTF(), in.readLong()));
+        }
+        int markCount = in.readInt();
+        List<TimeMark> clearedTime = markCount == 0 ? Collections.emptyList() : new ArrayList<>(markCount);
+        for (int i = 0; i < markCount; i++) {
+            clearedTime.add(new TimeMark(in.readUTF(), in.readLong(), in.readLong()));
+        }
+        return new SyncDelta(tag, change, removedTags, clearedTime);
+    }
+
+    @Override
+    public String toString() {
+        return tag + " " + change;
+    }
+}
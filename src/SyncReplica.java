@@ -0,0 +1,434 @@
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * SyncReplica is one instance's copy of the replicated subject data: every SyncDelta it has made or
+ * received, and the subjects they add up to. Instances exchange the deltas the other is missing, as
+ * told by their VersionVectors, and apply them in any order that keeps each replica's own deltas in
+ * sequence; they all end up with the same subjects, without conflicts:
+ *   - time is kept per replica and added up, so time studied on different machines is never lost;
+ *   - a subject or task is there while any add of it has not been removed. A removal only removes
+ *     the adds it had seen, so an add made concurrently on another instance wins;
+ *   - removing a subject also clears the time and tasks it had seen, so a subject that is added again
+ *     starts out empty everywhere.
+ * If two instances add the same name with different case, the name of the add with the lowest tag is
+ * shown.
+ *
+ * The deltas are stored in a sync file next to the data file: a header with the replica id, then one
+ * length-prefixed delta per record. Local deltas are buffered until flush(); received deltas are
+ * written before they are applied. The file is never compacted, so it grows with the number of changes.
+ * All methods are thread-safe.
+ */
+public class SyncReplica {
+    private static final int MAGIC = 0x53545359; // "STSY"
+    private static final int FORMAT_VERSION = 1;
+
+    /**
+     * The replicated state of one subject name, visible or not.
+     */
+    private static class SubjectState {
+        // Adds of the subject that have not been removed, with the name each one used
+        final Map<SyncDelta.Tag, String> tags = new HashMap<>();
+        // Adds of each task that have not been removed, in the order the tasks were first added
+        final Map<String, Set<SyncDelta.Tag>> tasks = new LinkedHashMap<>();
+        // Last sequence number and total time added by each replica
+        final Map<String, long[]> time = new HashMap<>();
+        // The same as seen by the latest removal that saw each replica's time
+        final Map<String, long[]> cleared = new HashMap<>();
+
+        boolean isVisible() {
+            return !tags.isEmpty();
+        }
+
+        String getName() {
+            return tags.get(Collections.min(tags.keySet()));
+        }
+
+        long getTime() {
+            long total = 0;
+            for (Map.Entry<String, long[]> entry : time.entrySet()) {
+                long[] clearedTime = cleared.get(entry.getKey());
+                total += entry.getValue()[1] - (clearedTime != null ? clearedTime[1] : 0);
+            }
+            return total;
+        }
+    }
+
+    private final Path path;
+    private final String id;
+    private final VersionVector versionVector = new VersionVector();
+    private final Map<String, SubjectState> states = new HashMap<>();
+
+    // Every delta in the order it was applied, and the log positions of each replica's deltas by sequence number
+    private final List<SyncDelta> log = new ArrayList<>();
+    private final Map<String, List<Integer>> positions = new HashMap<>();
+
+    // Local deltas not yet written to the sync file
+    private final List<SyncDelta> pending = new ArrayList<>();
+
+    private SyncReplica(Path path, String id) {
+        this.path = path;
+        this.id = id;
+    }
+
+    /**
+     * Creates a replica that is only kept in memory, e.g. as a stand-in peer.
+     *
+     * @return A new replica with a random id.
+     */
+    public static SyncReplica inMemory() {
+        return new SyncReplica(null, UUID.randomUUID().toString());
+    }
+
+    /**
+     * Opens the replica stored in a sync file, creating the file with a new replica id if it does not
+     * exist. A record cut short by a crash is discarded.
+     *
+     * @param path The sync file.
+     * @return The replica.
+     * @throws IOException If the file could not be read or created, or is not a sync file.
+     */
+    public static SyncReplica open(Path path) throws IOException {
+        if (!Files.exists(path)) {
+            SyncReplica replica = new SyncReplica(path, UUID.randomUUID().toString());
+            replica.append(header(replica.id), StandardOpenOption.CREATE_NEW);
+            return replica;
+        }
+
+        SyncReplica replica;
+        long validLength;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+                throw new IOException(path + " is not a sync file");
+            }
+            String id = in.readUTF();
+            replica = new SyncReplica(path, id);
+            validLength = header(id).length;
+            while (true) {
+                int length;
+                try {
+                    length = in.readInt();
+                    byte[] record = new byte[length];
+                    in.readFully(record);
+                    replica.apply(SyncDelta.read(new DataInputStream(new ByteArrayInputStream(record))));
+                } catch (EOFException e) {
+                    break;
+                }
+                validLength += 4 + length;
+            }
+        }
+        if (validLength < Files.size(path)) {
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+                channel.truncate(validLength);
+            }
+        }
+        return replica;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public synchronized VersionVector getVersionVector() {
+        return new VersionVector(versionVector);
+    }
+
+    /**
+     * Returns the number of deltas the replica has, from every replica.
+     *
+     * @return The delta count.
+     */
+    public synchronized int getDeltaCount() {
+        return log.size();
+    }
+
+    /**
+     * Returns the deltas a peer with the given version vector is missing, in the order they were applied here.
+     * Local deltas are flushed first: one that reached a peer but was lost in a crash would have its
+     * sequence number reused for a different change.
+     *
+     * @param seen The peer's version vector.
+     * @return The missing deltas.
+     * @throws IOException If the local deltas could not be written.
+     */
+    public synchronized List<SyncDelta> deltasSince(VersionVector seen) throws IOException {
+        flush();
+        List<Integer> missing = new ArrayList<>();
+        for (Map.Entry<String, List<Integer>> entry : positions.entrySet()) {
+            List<Integer> replicaPositions = entry.getValue();
+            long from = Math.min(seen.get(entry.getKey()), replicaPositions.size());
+            missing.addAll(replicaPositions.subList((int) from, replicaPositions.size()));
+        }
+        Collections.sort(missing);
+        List<SyncDelta> deltas = new ArrayList<>(missing.size());
+        for (int position : missing) {
+            deltas.add(log.get(position));
+        }
+        return deltas;
+    }
+
+    /**
+     * Records a change made on this instance as a new delta. The delta is written by the next flush().
+     *
+     * @param change The change, already applied to the instance's subjects.
+     * @return The new delta.
+     */
+    public synchronized SyncDelta recordLocal(SubjectChange change) {
+        SubjectState state = states.get(SubjectRepository.normalize(change.getName()));
+        List<SyncDelta.Tag> removedTags = Collections.emptyList();
+        List<SyncDelta.TimeMark> clearedTime = Collections.emptyList();
+        if (state != null) {
+            switch (change.getType()) {
+                case ADD_SUBJECT:
+                case REMOVE_SUBJECT:
+                    // Everything seen so far is cleared, so the subject is gone or starts out empty
+                    removedTags = new ArrayList<>(state.tags.keySet());
+                    for (Set<SyncDelta.Tag> taskTags : state.tasks.values()) {
+                        removedTags.addAll(taskTags);
+                    }
+                    clearedTime = new ArrayList<>();
+                    for (Map.Entry<String, long[]> entry : state.time.entrySet()) {
+                        clearedTime.add(new SyncDelta.TimeMark(entry.getKey(), entry.getValue()[0], entry.getValue()[1]));
+                    }
+                    break;
+                case REMOVE_TASK:
+                    Set<SyncDelta.Tag> taskTags = state.tasks.get(change.getTask());
+                    if (taskTags != null) {
+                        removedTags = new ArrayList<>(taskTags);
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+        SyncDelta delta = new SyncDelta(new SyncDelta.Tag(id, versionVector.get(id) + 1), change, removedTags, clearedTime);
+        apply(delta);
+        pending.add(delta);
+        return delta;
+    }
+
+    /**
+     * Brings the replica in line with an instance's subjects, recording each difference as a local
+     * change: when sync is first enabled, every subject is added, and afterwards changes made while it
+     * was not enabled, or lost in a crash before they were flushed, are picked up.
+     *
+     * @param subjects The instance's subjects.
+     * @return The number of changes recorded.
+     */
+    public synchronized int catchUp(List<Subject> subjects) {
+        int before = pending.size();
+        Set<String> present = new HashSet<>();
+        for (Subject subject : subjects) {
+            String key = SubjectRepository.normalize(subject.getName());
+            present.add(key);
+            Subject replicated = view(key);
+            if (replicated == null) {
+                recordLocal(SubjectChange.addSubject(subject.getName()));
+                replicated = new Subject(subject.getName());
+            }
+            long time = subject.getTime() - replicated.getTime();
+            if (time != 0) {
+                recordLocal(SubjectChange.addTime(subject.getName(), time));
+            }
+            for (String task : subject.getTasks()) {
+                if (!replicated.hasTask(task)) {
+                    recordLocal(SubjectChange.addTask(subject.getName(), task));
+                }
+            }
+            for (String task : replicated.getTasks()) {
+                if (!subject.hasTask(task)) {
+                    recordLocal(SubjectChange.removeTask(subject.getName(), task));
+                }
+            }
+        }
+        for (Map.Entry<String, SubjectState> entry : new ArrayList<>(states.entrySet())) {
+            if (entry.getValue().isVisible() && !present.contains(entry.getKey())) {
+                recordLocal(SubjectChange.removeSubject(entry.getValue().getName()));
+            }
+        }
+        return pending.size() - before;
+    }
+
+    /**
+     * Applies deltas received from a peer, skipping the ones already seen. They are written to the
+     * sync file first.
+     *
+     * @param deltas The deltas, with each replica's in sequence.
+     * @return The normalized names of the subjects whose replicated state changed.
+     * @throws IOException If a delta skips some of its replica's deltas, or the deltas could not be written.
+     */
+    public synchronized Set<String> merge(List<SyncDelta> deltas) throws IOException {
+        List<SyncDelta> added = new ArrayList<>();
+        VersionVector next = new VersionVector(versionVector);
+        for (SyncDelta delta : deltas) {
+            long seen = next.get(delta.getReplica());
+            if (delta.getSeq() <= seen) {
+                continue;
+            } else if (delta.getSeq() != seen + 1) {
+                throw new IOException("Delta " + delta + " arrived before " + delta.getReplica() + ":" + (seen + 1));
+            }
+            next.set(delta.getReplica(), delta.getSeq());
+            added.add(delta);
+        }
+        // Local deltas go first so the file keeps the order they were applied in
+        int local = pending.size();
+        pending.addAll(added);
+        try {
+            flush();
+        } catch (IOException e) {
+            pending.subList(local, pending.size()).clear();
+            throw e;
+        }
+
+        Set<String> changed = new LinkedHashSet<>();
+        for (SyncDelta delta : added) {
+            apply(delta);
+            changed.add(SubjectRepository.normalize(delta.getChange().getName()));
+        }
+        return changed;
+    }
+
+    /**
+     * Returns the replicated state of a subject.
+     *
+     * @param name The subject name, in any case.
+     * @return A new Subject with the replicated name, time and tasks, or null if the subject is not there.
+     */
+    public synchronized Subject view(String name) {
+        SubjectState state = states.get(SubjectRepository.normalize(name));
+        if (state == null || !state.isVisible()) {
+            return null;
+        }
+        return new Subject(state.getName(), state.getTime(), state.tasks.keySet());
+    }
+
+    /**
+     * Writes the local deltas recorded since the last flush to the sync file.
+     *
+     * @throws IOException If they could not be written; they are kept for the next attempt.
+     */
+    public synchronized void flush() throws IOException {
+        if (pending.isEmpty()) {
+            return;
+        }
+        if (path != null) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            ByteArrayOutputStream record = new ByteArrayOutputStream();
+            for (SyncDelta delta : pending) {
+                record.reset();
+                delta.write(new DataOutputStream(record));
+                out.writeInt(record.size());
+                record.writeTo(out);
+            }
+            append(bytes.toByteArray(), StandardOpenOption.APPEND);
+        }
+        pending.clear();
+    }
+
+    /**
+     * Applies a delta that follows the last one seen from its replica.
+     */
+    private void apply(SyncDelta delta) {
+        SubjectChange change = delta.getChange();
+        SubjectState state = states.computeIfAbsent(SubjectRepository.normalize(change.getName()), key -> new SubjectState());
+        switch (change.getType()) {
+            case ADD_SUBJECT:
+                clear(state, delta);
+                state.tags.put(delta.getTag(), change.getName());
+                break;
+            case REMOVE_SUBJECT:
+                clear(state, delta);
+                break;
+            case ADD_TIME:
+                long[] time = state.time.computeIfAbsent(delta.getReplica(), replica -> new long[2]);
+                time[0] = delta.getSeq();
+                time[1] += change.getTime();
+                break;
+            case ADD_TASK:
+                state.tasks.computeIfAbsent(change.getTask(), task -> new HashSet<>()).add(delta.getTag());
+                break;
+            case REMOVE_TASK:
+                Set<SyncDelta.Tag> taskTags = state.tasks.get(change.getTask());
+                if (taskTags != null) {
+                    taskTags.removeAll(delta.getRemovedTags());
+                    if (taskTags.isEmpty()) {
+                        state.tasks.remove(change.getTask());
+                    }
+                }
+                break;
+        }
+
+        versionVector.set(delta.getReplica(), delta.getSeq());
+        positions.computeIfAbsent(delta.getReplica(), replica -> new ArrayList<>()).add(log.size());
+        log.add(delta);
+    }
+
+    /**
+     * Removes the adds and time that an added or removed subject's delta had seen.
+     */
+    private static void clear(SubjectState state, SyncDelta delta) {
+        if (delta.getRemovedTags().isEmpty() && delta.getClearedTime().isEmpty()) {
+            return;
+        }
+        Set<SyncDelta.Tag> removed = new HashSet<>(delta.getRemovedTags());
+        state.tags.keySet().removeAll(removed);
+        state.tasks.values().removeIf(taskTags -> taskTags.removeAll(removed) && taskTags.isEmpty());
+        for (SyncDelta.TimeMark mark : delta.getClearedTime()) {
+            long[] cleared = state.cleared.get(mark.getReplica());
+            if (cleared == null || cleared[0] < mark.getSeq()) {
+                state.cleared.put(mark.getReplica(), new long[] {mark.getSeq(), mark.getTotal()});
+            }
+        }
+    }
+
+    private static byte[] header(String id) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(MAGIC);
+        out.writeInt(FORMAT_VERSION);
+        out.writeUTF(id);
+        return bytes.toByteArray();
+    }
+
+    private void append(byte[] bytes, StandardOpenOption mode) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, mode)) {
+            long validLength = channel.size();
+            ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            try {
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                channel.force(true);
+            } catch (IOException e) {
+                // Cut off a partly written record so a retry does not append to it
+                try {
+                    channel.truncate(validLength);
+                } catch (IOException ignored) {
+                    // Nothing more can be done here; the error below is what gets reported
+                }
+                throw e;
+            }
+        }
+    }
+}
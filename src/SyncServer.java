@@ -0,0 +1,160 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * SyncServer accepts syncs from other instances over TCP, on localhost or the LAN, and connect() syncs
+ * with one as a client. Each connection runs one SyncConnection on its own daemon thread.
+ *
+ * Both sides must know the same shared secret, which SyncConnection checks before any deltas are
+ * exchanged. The server listens on the loopback interface unless another address is given explicitly.
+ */
+public class SyncServer implements Closeable {
+    private static final int SOCKET_TIMEOUT_MILLIS = 30_000;
+
+    /**
+     * Told about finished and failed syncs. Called on the connection's thread.
+     */
+    public interface Listener {
+
+        void synced(SyncConnection.Result result);
+
+        void syncFailed(IOException e);
+    }
+
+    private final ServerSocket serverSocket;
+    private final SyncConnection.Endpoint endpoint;
+    private final String secret;
+    private final Listener listener;
+    private final ExecutorService connections = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "sync-connection");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Starts listening for syncs.
+     *
+     * @param address The address to listen on; port 0 picks a free port. See bindAddress().
+     * @param endpoint The local replica.
+     * @param secret The secret shared with the clients.
+     * @param listener Told about each sync.
+     * @throws IOException If the address could not be bound.
+     * @throws IllegalArgumentException If the secret is empty.
+     */
+    public SyncServer(InetSocketAddress address, SyncConnection.Endpoint endpoint, String secret, Listener listener) throws IOException {
+        SyncConnection.checkSecret(secret);
+        this.serverSocket = new ServerSocket();
+        serverSocket.bind(address);
+        this.endpoint = endpoint;
+        this.secret = secret;
+        this.listener = listener;
+        Thread acceptor = new Thread(this::accept, "sync-server");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * Syncs with the server at the given address.
+     *
+     * @param address The server's address.
+     * @param endpoint The local replica.
+     * @param secret The secret shared with the server.
+     * @return What was exchanged.
+     * @throws IOException If the sync failed.
+     * @throws IllegalArgumentException If the secret is empty.
+     */
+    public static SyncConnection.Result connect(InetSocketAddress address, SyncConnection.Endpoint endpoint, String secret) throws IOException {
+        try (Socket socket = new Socket()) {
+            socket.connect(address, SOCKET_TIMEOUT_MILLIS);
+            socket.setSoTimeout(SOCKET_TIMEOUT_MILLIS);
+            return SyncConnection.sync(new BufferedInputStream(socket.getInputStream()),
+                    new BufferedOutputStream(socket.getOutputStream()), endpoint, secret);
+        }
+    }
+
+    /**
+     * Returns the address to listen on: the loopback interface, so only this machine can connect, unless
+     * a host is given, e.g. 0.0.0.0 for every interface or the machine's LAN address.
+     *
+     * @param host The host name or address to listen on, or null for the loopback interface.
+     * @param port The port; 0 picks a free port.
+     * @return The socket address.
+     * @throws IOException If the host name could not be resolved.
+     */
+    public static InetSocketAddress bindAddress(String host, int port) throws IOException {
+        InetAddress address = host == null || host.isBlank() ? InetAddress.getLoopbackAddress() : InetAddress.getByName(host.trim());
+        return new InetSocketAddress(address, port);
+    }
+
+    /**
+     * Parses a peer address written as host:port.
+     *
+     * @param peer The address.
+     * @return The socket address.
+     * @throws IllegalArgumentException If it is not host:port.
+     */
+    public static InetSocketAddress parseAddress(String peer) {
+        int colon = peer.lastIndexOf(':');
+        try {
+            return new InetSocketAddress(peer.substring(0, colon), Integer.parseInt(peer.substring(colon + 1)));
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Expected host:port, got " + peer);
+        }
+    }
+
+    /**
+     * Stops accepting syncs. Syncs that are running are finished.
+     *
+     * @throws IOException If the socket could not be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        connections.shutdown();
+        serverSocket.close();
+    }
+
+    private void accept() {
+        while (!serverSocket.isClosed()) {
+            Socket socket;
+            try {
+                socket = serverSocket.accept();
+            } catch (IOException e) {
+                // Closed
+                return;
+            }
+            try {
+                connections.execute(() -> serve(socket));
+            } catch (RejectedExecutionException e) {
+                // Closed while accepting
+                try {
+                    socket.close();
+                } catch (IOException ignored) {
+                }
+                return;
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        try (socket) {
+            socket.setSoTimeout(SOCKET_TIMEOUT_MILLIS);
+            listener.synced(SyncConnection.serve(new BufferedInputStream(socket.getInputStream()),
+                    new BufferedOutputStream(socket.getOutputStream()), endpoint, secret));
+        } catch (IOException e) {
+            listener.syncFailed(e);
+        }
+    }
+}
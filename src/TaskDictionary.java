@@ -0,0 +1,82 @@
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * TaskDictionary interns task names for the whole application and gives each distinct name a small
+ * int id, so a subject can store its tasks as an int[] instead of a list of strings.
+ *
+ * Task names repeat heavily across subjects ("Homework", "Reading", ...), so the dictionary stays small
+ * while each subject needs only four bytes per task. Ids are never reused or removed; a name keeps its
+ * id for the lifetime of the process.
+ *
+ * Looking up ids and names is lock-free and safe from any thread, e.g. the parallel BulkImporter.
+ * Adding a new name takes a lock.
+ */
+public final class TaskDictionary {
+    private static final ConcurrentHashMap<String, Integer> ids = new ConcurrentHashMap<>();
+
+    // Written under the class lock; replaced by a larger copy when full
+    private static volatile String[] names = new String[64];
+    private static int count = 0;
+
+    private TaskDictionary() {
+    }
+
+    /**
+     * Returns the id of a task name, adding the name if it is new.
+     *
+     * @param name The task name.
+     * @return The id of the name.
+     */
+    public static int intern(String name) {
+        Integer id = ids.get(name);
+        if (id != null) {
+            return id;
+        }
+        synchronized (TaskDictionary.class) {
+            id = ids.get(name);
+            if (id != null) {
+                return id;
+            }
+            String[] current = names;
+            if (count == current.length) {
+                current = Arrays.copyOf(current, count * 2);
+            }
+            current[count] = name;
+            // The volatile write publishes the new name to name() before its id is handed out
+            names = current;
+            ids.put(name, count);
+            return count++;
+        }
+    }
+
+    /**
+     * Returns the id of a task name without adding it.
+     *
+     * @param name The task name.
+     * @return The id of the name, or -1 if no task has this name.
+     */
+    public static int find(String name) {
+        Integer id = ids.get(name);
+        return id != null ? id : -1;
+    }
+
+    /**
+     * Returns the task name with the given id.
+     *
+     * @param id An id returned by intern().
+     * @return The interned name.
+     */
+    public static String name(int id) {
+        return names[id];
+    }
+
+    /**
+     * Returns the number of distinct task names.
+     *
+     * @return The number of names interned so far.
+     */
+    public static int size() {
+        return ids.size();
+    }
+}
@@ -1,45 +1,112 @@
 public class TimeFormatter {
+    // Time constants
+    private static final long SECONDS_IN_MILLI = 1000;
+    private static final long MINUTES_IN_MILLI = SECONDS_IN_MILLI * 60;
+    private static final long HOURS_IN_MILLI = MINUTES_IN_MILLI * 60;
+    private static final long DAYS_IN_MILLI = HOURS_IN_MILLI * 24;
 
+    // Direct-mapped cache of formatted durations, keyed by whole seconds
+    private static final int CACHE_SIZE = 4096;
+    private static final CacheEntry[] CACHE = new CacheEntry[CACHE_SIZE];
+
+    /**
+     * A cached formatted duration. Entries are immutable so the cache can be read from any thread.
+     */
+    private static class CacheEntry {
+        final long seconds;
+        final String text;
+
+        CacheEntry(long seconds, String text) {
+            this.seconds = seconds;
+            this.text = text;
+        }
+    }
+
+    /**
+     * Formats a duration as e.g. "1 hours 2 minutes 3 seconds". The output only depends on the whole
+     * number of seconds, so results are cached per second and repeated calls do not allocate.
+     *
+     * @param milliseconds The duration in milliseconds.
+     * @return The formatted duration.
+     */
     public static String formatDuration(long milliseconds) {
-        // Define time constants
-        long secondsInMilli = 1000;
-        long minutesInMilli = secondsInMilli * 60;
-        long hoursInMilli = minutesInMilli * 60;
-        long daysInMilli = hoursInMilli * 24;
+        long seconds = milliseconds / SECONDS_IN_MILLI;
+        int slot = (int) (seconds ^ (seconds >>> 32)) & (CACHE_SIZE - 1);
+        CacheEntry entry = CACHE[slot];
+        if (entry != null && entry.seconds == seconds) {
+            return entry.text;
+        }
+        String text = formatDuration(milliseconds, new StringBuilder(48)).toString();
+        CACHE[slot] = new CacheEntry(seconds, text);
+        return text;
+    }
 
+    /**
+     * Appends a duration formatted as by formatDuration(long) to the given builder without any
+     * intermediate allocation.
+     *
+     * @param milliseconds The duration in milliseconds.
+     * @param out The builder to append to.
+     * @return The builder.
+     */
+    public static StringBuilder formatDuration(long milliseconds, StringBuilder out) {
         // Calculate the number of days, hours, minutes, and seconds
-        long days = milliseconds / daysInMilli;
-        milliseconds %= daysInMilli;
-
-        long hours = milliseconds / hoursInMilli;
-        milliseconds %= hoursInMilli;
+        long days = milliseconds / DAYS_IN_MILLI;
+        milliseconds %= DAYS_IN_MILLI;
 
-        long minutes = milliseconds / minutesInMilli;
-        milliseconds %= minutesInMilli;
+        long hours = milliseconds / HOURS_IN_MILLI;
+        milliseconds %= HOURS_IN_MILLI;
 
-        long seconds = milliseconds / secondsInMilli;
+        long minutes = milliseconds / MINUTES_IN_MILLI;
+        milliseconds %= MINUTES_IN_MILLI;
 
-        // Build the display string
-        StringBuilder timeString = new StringBuilder();
+        long seconds = milliseconds / SECONDS_IN_MILLI;
 
         if (days > 0) {
-            timeString.append(days).append(" days ");
+            out.append(days).append(" days ");
         }
         if (hours > 0 || days > 0) {  // Show hours if there are any days or hours
-            timeString.append(hours).append(" hours ");
+            out.append(hours).append(" hours ");
         }
         if (minutes > 0 || hours > 0 || days > 0) { // Show minutes if there's any higher unit
-            timeString.append(minutes).append(" minutes ");
-        }
-        if (seconds > 0 || minutes > 0 || hours > 0 || days > 0) {  // Show seconds if there's any higher unit
-            timeString.append(seconds).append(" seconds");
+            out.append(minutes).append(" minutes ");
         }
 
-        // If the time is less than a minute, show seconds only
-        if (timeString.length() == 0) {
-            timeString.append(seconds).append(" seconds");
-        }
+        // Seconds are always shown, so the text never ends in a space
+        return out.append(seconds).append(" seconds");
+    }
+
+    /**
+     * Formats a duration as a fixed-width "HH:mm:ss" stopwatch reading. Hours wrap at 24.
+     *
+     * @param milliseconds The duration in milliseconds.
+     * @return The formatted reading.
+     */
+    public static String formatClock(long milliseconds) {
+        return formatClock(milliseconds, new StringBuilder(8)).toString();
+    }
+
+    /**
+     * Appends a fixed-width "HH:mm:ss" stopwatch reading to the given builder without any intermediate allocation.
+     *
+     * @param milliseconds The duration in milliseconds.
+     * @param out The builder to append to.
+     * @return The builder.
+     */
+    public static StringBuilder formatClock(long milliseconds, StringBuilder out) {
+        int hours = (int) ((milliseconds / HOURS_IN_MILLI) % 24);
+        int minutes = (int) ((milliseconds / MINUTES_IN_MILLI) % 60);
+        int seconds = (int) ((milliseconds / SECONDS_IN_MILLI) % 60);
+        appendTwoDigits(hours, out).append(':');
+        appendTwoDigits(minutes, out).append(':');
+        return appendTwoDigits(seconds, out);
+    }
 
-        return timeString.toString().trim();
+    private static StringBuilder appendTwoDigits(int value, StringBuilder out) {
+        if (value < 0) {
+            // Negative durations only come from clock errors; keep them readable like String.format did
+            return out.append(String.format("%02d", value));
+        }
+        return out.append((char) ('0' + value / 10)).append((char) ('0' + value % 10));
     }
 }
@@ -0,0 +1,121 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * TimerCheckpoint stores the running timers in a small file next to the data file, so that the time
+ * of an active session is not lost if the application crashes or is killed.
+ *
+ * The file is rewritten atomically at every checkpoint and deleted when no timer is running. If it
+ * still exists at startup, the sessions in it were interrupted and can be recovered up to their last
+ * checkpoint. Each line is startMillis,elapsedMillis,subject name.
+ */
+public class TimerCheckpoint {
+
+    /**
+     * A timer as it was at the last checkpoint.
+     */
+    public static class Entry {
+        private final String name;
+        private final long startMillis;
+        private final long elapsedMillis;
+
+        private Entry(String name, long startMillis, long elapsedMillis) {
+            this.name = name;
+            this.startMillis = startMillis;
+            this.elapsedMillis = elapsedMillis;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getStartMillis() {
+            return startMillis;
+        }
+
+        public long getElapsedMillis() {
+            return elapsedMillis;
+        }
+    }
+
+    private final Path path;
+    private final Path tempPath;
+
+    /**
+     * @param path The checkpoint file.
+     */
+    public TimerCheckpoint(Path path) {
+        this.path = path;
+        this.tempPath = path.resolveSibling(path.getFileName() + ".tmp");
+    }
+
+    /**
+     * Saves the given timers with their elapsed time so far, or deletes the checkpoint if there are none.
+     *
+     * @param timings The running timers.
+     * @throws IOException If the checkpoint could not be written.
+     */
+    public synchronized void write(List<TimerEngine.Timing> timings) throws IOException {
+        if (timings.isEmpty()) {
+            delete();
+            return;
+        }
+        StringBuilder text = new StringBuilder();
+        for (TimerEngine.Timing timing : timings) {
+            text.append(timing.getStartMillis()).append(',').append(timing.getElapsedMillis()).append(',')
+                .append(timing.getSubject().getName()).append('\n');
+        }
+        try (FileChannel channel = FileChannel.open(tempPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.wrap(text.toString().getBytes(StandardCharsets.UTF_8));
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        }
+        Files.move(tempPath, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        SubjectStore.forceDirectory(path);
+    }
+
+    /**
+     * Reads the timers saved by the last checkpoint. Lines that cannot be parsed are skipped.
+     *
+     * @return The checkpointed timers, empty if there is no checkpoint.
+     * @throws IOException If the checkpoint exists but could not be read.
+     */
+    public synchronized List<Entry> read() throws IOException {
+        List<Entry> entries = new ArrayList<>();
+        if (!Files.exists(path)) {
+            return entries;
+        }
+        for (String line : Files.readAllLines(path, StandardCharsets.UTF_8)) {
+            String[] parts = line.split(",", 3);
+            if (parts.length < 3) {
+                continue;
+            }
+            try {
+                entries.add(new Entry(parts[2], Long.parseLong(parts[0]), Long.parseLong(parts[1])));
+            } catch (NumberFormatException e) {
+                // Skip the damaged line
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Deletes the checkpoint, e.g. once its sessions have been recovered.
+     *
+     * @throws IOException If the file could not be deleted.
+     */
+    public synchronized void delete() throws IOException {
+        Files.deleteIfExists(path);
+        Files.deleteIfExists(tempPath);
+    }
+}
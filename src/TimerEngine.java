@@ -0,0 +1,113 @@
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * TimerEngine runs any number of study timers at once, one per subject.
+ *
+ * Timers are keyed by the Subject itself rather than its position in the list, so they keep running
+ * when other subjects are added, removed or filtered out of view. Elapsed time is measured with
+ * System.nanoTime(), which is monotonic and unaffected by changes to the wall clock; the wall-clock
+ * start is only kept to date the session. Running timers are held in a ConcurrentHashMap of immutable
+ * entries, so timers can be started, stopped and read from any thread without locking.
+ */
+public class TimerEngine {
+
+    /**
+     * A running or finished timer.
+     */
+    public static class Timing {
+        private final Subject subject;
+        private final long startNanos;
+        private final long startMillis;
+        private final long elapsedMillis;
+
+        private Timing(Subject subject, long startNanos, long startMillis, long elapsedMillis) {
+            this.subject = subject;
+            this.startNanos = startNanos;
+            this.startMillis = startMillis;
+            this.elapsedMillis = elapsedMillis;
+        }
+
+        public Subject getSubject() {
+            return subject;
+        }
+
+        /**
+         * Returns the wall-clock time the timer was started.
+         *
+         * @return The start time in epoch milliseconds.
+         */
+        public long getStartMillis() {
+            return startMillis;
+        }
+
+        /**
+         * Returns the elapsed time: the final time for a stopped timer, or the time so far for a running one.
+         *
+         * @return The elapsed time in milliseconds.
+         */
+        public long getElapsedMillis() {
+            return elapsedMillis >= 0 ? elapsedMillis : (System.nanoTime() - startNanos) / 1_000_000;
+        }
+    }
+
+    private final ConcurrentHashMap<Subject, Timing> running = new ConcurrentHashMap<>();
+
+    /**
+     * Starts timing a subject.
+     *
+     * @param subject The subject to time.
+     * @return True if the timer was started, false if the subject was already being timed.
+     */
+    public boolean start(Subject subject) {
+        return running.putIfAbsent(subject, new Timing(subject, System.nanoTime(), System.currentTimeMillis(), -1)) == null;
+    }
+
+    /**
+     * Stops timing a subject. The elapsed time is not added to the subject; that is up to the caller.
+     *
+     * @param subject The subject to stop timing.
+     * @return The finished timing, or null if the subject was not being timed.
+     */
+    public Timing stop(Subject subject) {
+        Timing timing = running.remove(subject);
+        if (timing == null) {
+            return null;
+        }
+        long elapsed = (System.nanoTime() - timing.startNanos) / 1_000_000;
+        return new Timing(subject, timing.startNanos, timing.startMillis, elapsed);
+    }
+
+    public boolean isRunning(Subject subject) {
+        return running.containsKey(subject);
+    }
+
+    public boolean isEmpty() {
+        return running.isEmpty();
+    }
+
+    /**
+     * Returns the time elapsed so far on a running timer.
+     *
+     * @param subject The timed subject.
+     * @return The elapsed time in milliseconds, or -1 if the subject is not being timed.
+     */
+    public long getElapsedMillis(Subject subject) {
+        Timing timing = running.get(subject);
+        return timing == null ? -1 : timing.getElapsedMillis();
+    }
+
+    /**
+     * Returns the running timers, oldest first.
+     *
+     * @return A snapshot of the running timers.
+     */
+    public List<Timing> getRunning() {
+        Collection<Timing> values = running.values();
+        List<Timing> timings = new ArrayList<>(values);
+        timings.sort((a, b) -> Long.signum(a.startNanos - b.startNanos));
+        return timings;
+    }
+}
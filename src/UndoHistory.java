@@ -0,0 +1,209 @@
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * UndoHistory keeps the most recent edits as SubjectChange events in a fixed-size ring buffer, so
+ * undo and redo are O(1) and the history never holds more than its capacity, however long the session.
+ * When it is full, recording an edit drops the oldest one. Recording an edit discards everything that
+ * could have been redone.
+ *
+ * Adding or removing a subject also stores the subject's time and tasks (as TaskDictionary ids), so
+ * that undoing a removal, or redoing an addition, brings the subject back as it was.
+ */
+public class UndoHistory {
+
+    /**
+     * An edit with what is needed to reverse it.
+     */
+    public static class Entry {
+        private final SubjectChange change;
+        private final long subjectTime;
+        private final int[] subjectTaskIds;
+
+        private Entry(SubjectChange change, long subjectTime, int[] subjectTaskIds) {
+            this.change = change;
+            this.subjectTime = subjectTime;
+            this.subjectTaskIds = subjectTaskIds;
+        }
+
+        public SubjectChange getChange() {
+            return change;
+        }
+
+        /**
+         * Rebuilds the subject as it was when it was added or removed.
+         *
+         * @return A new Subject with the stored time and tasks.
+         */
+        public Subject buildSubject() {
+            Subject subject = new Subject(change.getName(), subjectTime);
+            for (int id : subjectTaskIds) {
+                subject.addTask(TaskDictionary.name(id));
+            }
+            return subject;
+        }
+
+        /**
+         * Describes the edit for menus and tooltips, e.g. "Remove Subject Math".
+         *
+         * @return The description.
+         */
+        public String describe() {
+            switch (change.getType()) {
+                case ADD_SUBJECT:
+                    return "Add Subject " + change.getName();
+                case REMOVE_SUBJECT:
+                    return "Remove Subject " + change.getName();
+                case ADD_TIME:
+                    return "Add Time to " + change.getName();
+                case ADD_TASK:
+                    return "Add Task " + change.getTask() + " to " + change.getName();
+                case REMOVE_TASK:
+                    return "Remove Task " + change.getTask() + " from " + change.getName();
+                default:
+                    return change.toString();
+            }
+        }
+    }
+
+    private static final int[] NO_TASKS = new int[0];
+
+    private final Entry[] entries;
+    // Index in entries of the oldest edit
+    private int first = 0;
+    // Edits that can be undone, followed by edits that can be redone
+    private int undoCount = 0;
+    private int size = 0;
+
+    /**
+     * @param capacity The number of edits to keep.
+     */
+    public UndoHistory(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        this.entries = new Entry[capacity];
+    }
+
+    /**
+     * Records an edit that does not add or remove a subject.
+     *
+     * @param change The edit.
+     */
+    public void record(SubjectChange change) {
+        push(new Entry(change, 0, NO_TASKS));
+    }
+
+    /**
+     * Records adding or removing a subject, with its time and tasks.
+     *
+     * @param change The edit.
+     * @param subject The subject that was added or removed.
+     */
+    public void record(SubjectChange change, Subject subject) {
+        push(new Entry(change, subject.getTime(), taskIds(subject)));
+    }
+
+    public boolean canUndo() {
+        return undoCount > 0;
+    }
+
+    public boolean canRedo() {
+        return undoCount < size;
+    }
+
+    /**
+     * Returns the edit that undo() would return, without moving.
+     *
+     * @return The last edit, or null if there is nothing to undo.
+     */
+    public Entry peekUndo() {
+        return canUndo() ? entries[slot(undoCount - 1)] : null;
+    }
+
+    /**
+     * Returns the edit that redo() would return, without moving.
+     *
+     * @return The last undone edit, or null if there is nothing to redo.
+     */
+    public Entry peekRedo() {
+        return canRedo() ? entries[slot(undoCount)] : null;
+    }
+
+    /**
+     * Steps back over the last edit. The caller reverses it.
+     *
+     * @return The edit to reverse, or null if there is nothing to undo.
+     */
+    public Entry undo() {
+        Entry entry = peekUndo();
+        if (entry != null) {
+            undoCount--;
+        }
+        return entry;
+    }
+
+    /**
+     * Steps forward over the last undone edit. The caller applies it again.
+     *
+     * @return The edit to apply, or null if there is nothing to redo.
+     */
+    public Entry redo() {
+        Entry entry = peekRedo();
+        if (entry != null) {
+            undoCount++;
+        }
+        return entry;
+    }
+
+    /**
+     * Replaces the entry that was just undone or redone, e.g. to store the state of a subject that the
+     * undo removed so that redo can restore it.
+     *
+     * @param undone True if the entry was returned by undo(), false if by redo().
+     * @param subject The subject's current state.
+     */
+    public void update(boolean undone, Subject subject) {
+        int index = slot(undone ? undoCount : undoCount - 1);
+        entries[index] = new Entry(entries[index].change, subject.getTime(), taskIds(subject));
+    }
+
+    /**
+     * Forgets every edit, e.g. after the subjects were reloaded from elsewhere.
+     */
+    public void clear() {
+        Arrays.fill(entries, null);
+        first = 0;
+        undoCount = 0;
+        size = 0;
+    }
+
+    private void push(Entry entry) {
+        // Anything that could be redone no longer applies
+        for (int i = undoCount; i < size; i++) {
+            entries[slot(i)] = null;
+        }
+        size = undoCount;
+        if (size == entries.length) {
+            entries[first] = null;
+            first = (first + 1) % entries.length;
+            size--;
+        }
+        entries[slot(size)] = entry;
+        size++;
+        undoCount = size;
+    }
+
+    private static int[] taskIds(Subject subject) {
+        List<String> tasks = subject.getTasks();
+        int[] taskIds = new int[tasks.size()];
+        for (int i = 0; i < taskIds.length; i++) {
+            taskIds[i] = TaskDictionary.intern(tasks.get(i));
+        }
+        return taskIds;
+    }
+
+    private int slot(int position) {
+        return (first + position) % entries.length;
+    }
+}
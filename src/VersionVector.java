@@ -0,0 +1,71 @@
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * VersionVector holds, for each replica, the sequence number of the last of its deltas that has been
+ * applied. Since every replica applies another's deltas in order, it says exactly which deltas a
+ * replica has, so a sync only sends the ones it is missing.
+ */
+public class VersionVector {
+    private final Map<String, Long> seqs = new HashMap<>();
+
+    public VersionVector() {
+    }
+
+    public VersionVector(VersionVector other) {
+        seqs.putAll(other.seqs);
+    }
+
+    /**
+     * Returns the sequence number of the last delta seen from a replica.
+     *
+     * @param replica The replica id.
+     * @return The sequence number, or 0 if none has been seen.
+     */
+    public long get(String replica) {
+        return seqs.getOrDefault(replica, 0L);
+    }
+
+    public void set(String replica, long seq) {
+        seqs.put(replica, seq);
+    }
+
+    /**
+     * Returns true if the delta with the given tag has been seen.
+     *
+     * @param tag The delta's tag.
+     * @return True if it has been seen.
+     */
+    public boolean contains(SyncDelta.Tag tag) {
+        return tag.getSeq() <= get(tag.getReplica());
+    }
+
+    public Map<String, Long> toMap() {
+        return new HashMap<>(seqs);
+    }
+
+    public void write(DataOutput out) throws IOException {
+        out.writeInt(seqs.size());
+        for (Map.Entry<String, Long> entry : seqs.entrySet()) {
+            out.writeUTF(entry.getKey());
+            out.writeLong(entry.getValue());
+        }
+    }
+
+    public static VersionVector read(DataInput in) throws IOException {
+        VersionVector vector = new VersionVector();
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            vector.set(in.readUTF(), in.readLong());
+        }
+        return vector;
+    }
+
+    @Override
+    public String toString() {
+        return seqs.toString();
+    }
+}